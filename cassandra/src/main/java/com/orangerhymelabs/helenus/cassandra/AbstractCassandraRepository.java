@@ -15,20 +15,22 @@
  */
 package com.orangerhymelabs.helenus.cassandra;
 
-import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.CodecNotFoundException;
 import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.datastax.driver.core.exceptions.PagingStateException;
 import com.google.common.base.Function;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
@@ -48,9 +50,16 @@ import com.orangerhymelabs.helenus.persistence.StatementFactoryHandler;
  */
 public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 {
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
 	private Session session;
 	private String keyspace;
 	private F statementFactory;
+	private int readInLimit = ReadInExecutor.DEFAULT_MAX_IN_FLIGHT;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private RequestLimiter requestLimiter = RequestLimiter.UNLIMITED;
+	private ExecutionProfiles executionProfiles = ExecutionProfiles.NONE;
+	private HedgedReads hedgedReads = HedgedReads.DISABLED;
 
 	protected AbstractCassandraRepository(Session session, String keyspace, Class<F> factoryClass)
 	{
@@ -62,6 +71,7 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 		this.session = session;
 		this.keyspace = keyspace;
 		this.statementFactory = newStatementFactory(factoryClass, session, keyspace, table);
+		this.requestLimiter = RequestLimiter.of(session);
 	}
 
 	protected AbstractCassandraRepository(Session session, String keyspace, F factory)
@@ -69,6 +79,7 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 		this.session = session;
 		this.keyspace = keyspace;
 		this.statementFactory = factory;
+		this.requestLimiter = RequestLimiter.of(session);
 	}
 
 	protected AbstractCassandraRepository(Session session, String keyspace)
@@ -78,7 +89,25 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 
 	public ListenableFuture<T> create(T entity)
 	{
-		ListenableFuture<ResultSet> future = submitCreate(entity);
+		return create(entity, null);
+	}
+
+	/**
+	 * Create the entity, executing with the given per-request profile on top of the CREATE profile.
+	 * 
+	 * @param entity the entity to create.
+	 * @param profile a per-request ExecutionProfile, or null.
+	 */
+	public ListenableFuture<T> create(T entity, ExecutionProfile profile)
+	{
+		return created(submitCreate(entity, profile), entity);
+	}
+
+	/**
+	 * Translate the result of a create statement: the entity if it was applied, otherwise a DuplicateItemException.
+	 */
+	protected ListenableFuture<T> created(ListenableFuture<ResultSet> future, T entity)
+	{
 		return Futures.transformAsync(future, new AsyncFunction<ResultSet, T>()
 		{
 			@Override
@@ -97,20 +126,37 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 
 	public ListenableFuture<Boolean> exists(Identifier id)
 	{
-		ListenableFuture<ResultSet> future = submitExists(id);
+		return exists(id, null);
+	}
+
+	public ListenableFuture<Boolean> exists(Identifier id, ExecutionProfile profile)
+	{
+		ListenableFuture<ResultSet> future = submitExists(id, profile);
 		return Futures.transform(future, new Function<ResultSet, Boolean>()
 		{
 			@Override
 			public Boolean apply(ResultSet result)
 			{
-				return result.one().getLong(0) > 0;
+				return !result.isExhausted();
 			}
 		}, MoreExecutors.directExecutor());
 	}
 
 	public ListenableFuture<T> update(T entity)
 	{
-		ListenableFuture<ResultSet> future = submitUpdate(entity);
+		return update(entity, null);
+	}
+
+	public ListenableFuture<T> update(T entity, ExecutionProfile profile)
+	{
+		return updated(submitUpdate(entity, profile), entity);
+	}
+
+	/**
+	 * Translate the result of an update statement: the entity if it was applied, otherwise an ItemNotFoundException.
+	 */
+	protected ListenableFuture<T> updated(ListenableFuture<ResultSet> future, T entity)
+	{
 		return Futures.transformAsync(future, new AsyncFunction<ResultSet, T>()
 		{
 			@Override
@@ -128,7 +174,12 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 
 	public ListenableFuture<Boolean> delete(Identifier id)
 	{
-		ListenableFuture<ResultSet> future = submitDelete(id);
+		return delete(id, null);
+	}
+
+	public ListenableFuture<Boolean> delete(Identifier id, ExecutionProfile profile)
+	{
+		ListenableFuture<ResultSet> future = submitDelete(id, profile);
 		return Futures.transformAsync(future, new AsyncFunction<ResultSet, Boolean>()
 		{
 			@Override
@@ -146,7 +197,28 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 
 	public ListenableFuture<T> read(Identifier id)
 	{
-		ListenableFuture<ResultSet> rs = submitRead(id);
+		return read(id, null);
+	}
+
+	/**
+	 * Read the entity, executing with the given per-request profile on top of the READ profile.
+	 * For example, ExecutionProfile.consistency(ConsistencyLevel.LOCAL_ONE) for a stale-tolerant read.
+	 * 
+	 * @param id the entity identifier.
+	 * @param profile a per-request ExecutionProfile, or null.
+	 */
+	public ListenableFuture<T> read(Identifier id, ExecutionProfile profile)
+	{
+		return read(id, profile, rowMarshaller());
+	}
+
+	/**
+	 * Read the entity, marshalling its row with the given marshaller (e.g. one that populates only
+	 * some of the entity).
+	 */
+	protected ListenableFuture<T> read(Identifier id, ExecutionProfile profile, Function<Row, T> marshaller)
+	{
+		ListenableFuture<ResultSet> rs = submitRead(id, profile);
 		return Futures.transformAsync(rs, new AsyncFunction<ResultSet, T>()
 		{
 			@Override
@@ -157,7 +229,7 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 					return Futures.immediateFailedFuture(new ItemNotFoundException(id.toString()));
 				}
 
-				return Futures.immediateFuture(marshalRow(result.one()));
+				return complete(marshaller.apply(result.one()), completer());
 			}
 		}, MoreExecutors.directExecutor());
 	}
@@ -167,19 +239,141 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 		return readAll(statementFactory.readAll(), parms);
 	}
 
+	public ListenableFuture<List<T>> readAll(ExecutionProfile profile, Object... parms)
+	{
+		return readAll(statementFactory.readAll(), profile, parms);
+	}
+
 	public ListenableFuture<List<T>> readAll(PreparedStatement statement, Object... parms)
 	{
-		ListenableFuture<ResultSet> future = submitStatement(statement, parms);
+		return readAll(statement, null, parms);
+	}
+
+	public ListenableFuture<List<T>> readAll(PreparedStatement statement, ExecutionProfile profile, Object... parms)
+	{
+		ListenableFuture<ResultSet> future = submitStatement(Operation.READ_ALL, profile, statement, parms);
 		return Futures.transformAsync(future, new AsyncFunction<ResultSet, List<T>>()
 		{
 			@Override
 			public ListenableFuture<List<T>> apply(ResultSet input)
 			{
-				return Futures.immediateFuture(marshalAll(input));
+				return completeAll(marshalAll(input), completer());
 			}
 		}, MoreExecutors.directExecutor());
 	}
 
+	/**
+	 * Stream the results of the readAll() statement a page at a time, without holding the entire
+	 * result in memory.
+	 * 
+	 * @param fetchSize the number of rows per page. Zero or less uses the READ_ALL profile fetch size, if set, otherwise fetchSize().
+	 * @param pagingState an opaque paging state from a prior ResultPage, or null to start at the beginning.
+	 * @param parms the readAll() statement parameters.
+	 * @return a ResultStream over the marshalled rows.
+	 */
+	public ResultStream<T> streamAll(int fetchSize, String pagingState, Object... parms)
+	{
+		return streamAll(statementFactory.readAll(), fetchSize, pagingState, parms);
+	}
+
+	public ResultStream<T> streamAll(ExecutionProfile profile, int fetchSize, String pagingState, Object... parms)
+	{
+		return streamAll(statementFactory.readAll(), profile, fetchSize, pagingState, parms);
+	}
+
+	public ResultStream<T> streamAll(PreparedStatement statement, int fetchSize, String pagingState, Object... parms)
+	{
+		return streamAll(statement, null, fetchSize, pagingState, parms);
+	}
+
+	public ResultStream<T> streamAll(PreparedStatement statement, ExecutionProfile profile, int fetchSize, String pagingState, Object... parms)
+	{
+		return new ResultStream<T>(executePage(statement, profile, fetchSize, pagingState, parms), rowMarshaller(), completer());
+	}
+
+	/**
+	 * Stream the results of a statement that's still being prepared, e.g. one built for the request.
+	 */
+	protected ResultStream<T> streamAll(ListenableFuture<PreparedStatement> statement, ExecutionProfile profile, int fetchSize, String pagingState, Object... parms)
+	{
+		return new ResultStream<T>(executePage(statement, profile, fetchSize, pagingState, parms), rowMarshaller(), completer());
+	}
+
+	/**
+	 * Stream the rows of a statement that doesn't select whole entities (e.g. aggregates), marshalled by the given function.
+	 */
+	protected <R> ResultStream<R> streamAll(ListenableFuture<PreparedStatement> statement, Function<Row, R> marshaller, ExecutionProfile profile, int fetchSize, String pagingState, Object... parms)
+	{
+		return new ResultStream<R>(executePage(statement, profile, fetchSize, pagingState, parms), marshaller);
+	}
+
+	private ListenableFuture<ResultSet> executePage(ListenableFuture<PreparedStatement> statement, ExecutionProfile profile, int fetchSize, String pagingState, Object... parms)
+	{
+		return Futures.transformAsync(statement, new AsyncFunction<PreparedStatement, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(PreparedStatement ps)
+			{
+				return executePage(ps, profile, fetchSize, pagingState, parms);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<ResultSet> executePage(PreparedStatement statement, ExecutionProfile profile, int fetchSize, String pagingState, Object... parms)
+	{
+		ListenableFuture<ResultSet> future;
+
+		try
+		{
+			BoundStatement bs = new BoundStatement(statement);
+
+			if (parms != null)
+			{
+				bs.bind(parms);
+			}
+
+			ExecutionProfile effective = profileFor(Operation.READ_ALL, profile);
+			effective.apply(bs);
+
+			if (fetchSize > 0)
+			{
+				bs.setFetchSize(fetchSize);
+			}
+			else if (!effective.hasFetchSize())
+			{
+				bs.setFetchSize(this.fetchSize);
+			}
+
+			if (pagingState != null)
+			{
+				bs.setPagingState(PagingState.fromString(pagingState));
+			}
+
+			future = execute(bs);
+		}
+		catch (PagingStateException | IllegalArgumentException e)
+		{
+			future = Futures.immediateFailedFuture(e);
+		}
+
+		return future;
+	}
+
+	/**
+	 * Set the default number of rows per page for streamAll().
+	 * 
+	 * @param fetchSize rows per page.
+	 */
+	public void fetchSize(int fetchSize)
+	{
+		this.fetchSize = fetchSize;
+	}
+
+	public int fetchSize()
+	{
+		return fetchSize;
+	}
+
 	/**
 	 * Read all given identifiers.
 	 * 
@@ -187,31 +381,161 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 	 * coordinator node. Sends an individual query for each partition key, so reaches the appropriate replica
 	 * directly and collates the results client-side.
 	 * 
+	 * Results are in the same order as the given identifiers. Identifiers that don't exist are represented
+	 * by a null in their position. Use readInOrder() for an explicit 'missing' marker.
+	 * 
 	 * @param ids the partition keys (identifiers) to select.
 	 */
 	public ListenableFuture<List<T>> readIn(Identifier... ids)
 	{
-		List<ListenableFuture<ResultSet>> futures = submitReadIn(ids);
-		List<ListenableFuture<T>> results = new ArrayList<>(ids.length);
+		return readIn(null, ids);
+	}
 
-		for (ListenableFuture<ResultSet> future : futures)
+	public ListenableFuture<List<T>> readIn(ExecutionProfile profile, Identifier... ids)
+	{
+		return Futures.transform(readInOrder(profile, ids), new Function<List<Optional<T>>, List<T>>()
 		{
-			results.add(Futures.transformAsync(future, new AsyncFunction<ResultSet, T>()
+			@Override
+			public List<T> apply(List<Optional<T>> input)
 			{
-				@Override
-				public ListenableFuture<T> apply(ResultSet input)
-				{
-					if (!input.isExhausted())
-					{
-						return Futures.immediateFuture(marshalRow(input.one()));
-					}
+				List<T> results = new ArrayList<>(input.size());
 
-					return Futures.immediateFuture(null);
+				for (Optional<T> result : input)
+				{
+					results.add(result.orElse(null));
 				}
-			}, MoreExecutors.directExecutor()));
+
+				return results;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read all given identifiers, returning the results in the same order as the identifiers.
+	 * 
+	 * The reads are grouped by replica and dispatched with at most readInLimit() statements in flight
+	 * at once. An identifier that doesn't exist is represented by Optional.empty() in its position.
+	 * 
+	 * @param ids the partition keys (identifiers) to select.
+	 * @return a list of results, one for each identifier, in identifier order.
+	 */
+	public ListenableFuture<List<Optional<T>>> readInOrder(Identifier... ids)
+	{
+		return readInOrder(null, ids);
+	}
+
+	public ListenableFuture<List<Optional<T>>> readInOrder(ExecutionProfile profile, Identifier... ids)
+	{
+		if (ids == null) return Futures.immediateFuture(Collections.<Optional<T>>emptyList());
+
+		ExecutionProfile effective = profileFor(Operation.READ, profile);
+		List<BoundStatement> statements = new ArrayList<>(ids.length);
+
+		for (Identifier id : ids)
+		{
+			BoundStatement bs = new BoundStatement(statementFactory.read());
+			bindIdentity(bs, id);
+			statements.add(effective.apply(bs));
 		}
 
-		return Futures.allAsList(results);
+		ListenableFuture<List<Optional<T>>> results = new ReadInExecutor<T>(session, requestLimiter, hedgedReads, keyspace, readInLimit, rowMarshaller()).execute(statements);
+		AsyncFunction<T, T> completer = completer();
+
+		if (completer == null) return results;
+
+		return Futures.transformAsync(results, new AsyncFunction<List<Optional<T>>, List<Optional<T>>>()
+		{
+			@Override
+			public ListenableFuture<List<Optional<T>>> apply(List<Optional<T>> input)
+			{
+				List<ListenableFuture<Optional<T>>> completed = new ArrayList<>(input.size());
+
+				for (Optional<T> result : input)
+				{
+					completed.add(result.isPresent() ? Futures.transform(complete(result.get(), completer), new Function<T, Optional<T>>()
+					{
+						@Override
+						public Optional<T> apply(T entity)
+						{
+							return Optional.ofNullable(entity);
+						}
+					}, MoreExecutors.directExecutor()) : Futures.immediateFuture(result));
+				}
+
+				return Futures.allAsList(completed);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Set the maximum number of concurrent statements a single readIn() may have outstanding.
+	 * 
+	 * @param limit the maximum in-flight statements per readIn() call.
+	 */
+	public void readInLimit(int limit)
+	{
+		this.readInLimit = limit;
+	}
+
+	public int readInLimit()
+	{
+		return readInLimit;
+	}
+
+	/**
+	 * Set the admission controller every statement from this repository goes through. Share one
+	 * RequestLimiter between all repositories on the same Session. Defaults to the limiter registered
+	 * for the session (see RequestLimiter.register()).
+	 * 
+	 * @param limiter a RequestLimiter, or null for no limit.
+	 */
+	public void requestLimiter(RequestLimiter limiter)
+	{
+		this.requestLimiter = (limiter != null ? limiter : RequestLimiter.UNLIMITED);
+	}
+
+	public RequestLimiter requestLimiter()
+	{
+		return requestLimiter;
+	}
+
+	/**
+	 * Set the ExecutionProfile applied to each operation's statements (typically configured per table).
+	 * 
+	 * @param profiles the per-operation profiles, or null for driver defaults.
+	 */
+	public void executionProfiles(ExecutionProfiles profiles)
+	{
+		this.executionProfiles = (profiles != null ? profiles : ExecutionProfiles.NONE);
+	}
+
+	public ExecutionProfiles executionProfiles()
+	{
+		return executionProfiles;
+	}
+
+	/**
+	 * Set the speculative execution applied to this repository's single-entity reads, read() and readIn().
+	 * Share one HedgedReads between all repositories for the same table.
+	 * 
+	 * @param hedgedReads a HedgedReads, or null to disable hedging.
+	 */
+	public void hedgedReads(HedgedReads hedgedReads)
+	{
+		this.hedgedReads = (hedgedReads != null ? hedgedReads : HedgedReads.DISABLED);
+	}
+
+	public HedgedReads hedgedReads()
+	{
+		return hedgedReads;
+	}
+
+	/**
+	 * Returns this repository's profile for the operation, with the per-request profile (if any) applied on top.
+	 */
+	protected ExecutionProfile profileFor(Operation operation, ExecutionProfile override)
+	{
+		return executionProfiles.profile(operation, override);
 	}
 
 	public Session session()
@@ -259,39 +583,89 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 		return results;
 	}
 
+	protected Function<Row, T> rowMarshaller()
+	{
+		return new Function<Row, T>()
+		{
+			@Override
+			public T apply(Row row)
+			{
+				return marshalRow(row);
+			}
+		};
+	}
+
+	/**
+	 * Returns a function that finishes reading a marshalled entity asynchronously (e.g. fetching parts of
+	 * it stored elsewhere), applied to every entity read by this repository, or null (the default) if
+	 * marshalRow() always produces a complete entity.
+	 */
+	protected AsyncFunction<T, T> completer()
+	{
+		return null;
+	}
+
+	static <T> ListenableFuture<T> complete(T entity, AsyncFunction<T, T> completer)
+	{
+		if (completer == null || entity == null) return Futures.immediateFuture(entity);
+
+		try
+		{
+			return completer.apply(entity);
+		}
+		catch (Exception e)
+		{
+			return Futures.immediateFailedFuture(e);
+		}
+	}
+
+	static <T> ListenableFuture<List<T>> completeAll(List<T> entities, AsyncFunction<T, T> completer)
+	{
+		if (completer == null) return Futures.immediateFuture(entities);
+
+		List<ListenableFuture<T>> completed = new ArrayList<>(entities.size());
+
+		for (T entity : entities)
+		{
+			completed.add(complete(entity, completer));
+		}
+
+		return Futures.allAsList(completed);
+	}
+
 	protected abstract void bindCreate(BoundStatement bs, T entity);
 	protected abstract void bindUpdate(BoundStatement bs, T entity);
 	protected abstract T marshalRow(Row row);
 
-	protected ResultSetFuture submitCreate(T entity)
+	protected ListenableFuture<ResultSet> submitCreate(T entity, ExecutionProfile profile)
 	{
 		BoundStatement bs = new BoundStatement(statementFactory.create());
 		bindCreate(bs, entity);
-		return session.executeAsync(bs);
+		return execute(bs, Operation.CREATE, profile);
 	}
 
-	protected ResultSetFuture submitDelete(Identifier id)
+	protected ListenableFuture<ResultSet> submitDelete(Identifier id, ExecutionProfile profile)
 	{
 		BoundStatement bs = new BoundStatement(statementFactory.delete());
 		bindIdentity(bs, id);
-		return session.executeAsync(bs);
+		return execute(bs, Operation.DELETE, profile);
 	}
 
-	private ListenableFuture<ResultSet> submitExists(Identifier id)
+	protected ListenableFuture<ResultSet> submitExists(Identifier id, ExecutionProfile profile)
 	{
-		BoundStatement bs = new BoundStatement(statementFactory().exists());
+		BoundStatement bs = new BoundStatement(statementFactory.exists());
 		bindIdentity(bs, id);
-		return session().executeAsync(bs);
+		return execute(bs, Operation.EXISTS, profile);
 	}
 
-	private ResultSetFuture submitRead(Identifier id)
+	protected ListenableFuture<ResultSet> submitRead(Identifier id, ExecutionProfile profile)
 	{
 		BoundStatement bs = new BoundStatement(statementFactory.read());
 		bindIdentity(bs, id);
-		return session.executeAsync(bs);
+		return execute(bs, Operation.READ, profile);
 	}
 
-	protected ResultSetFuture submitStatement(PreparedStatement statement, Object... parms)
+	protected ListenableFuture<ResultSet> submitStatement(PreparedStatement statement, Object... parms)
 	{
 		BoundStatement bs = new BoundStatement(statement);
 
@@ -300,43 +674,60 @@ public abstract class AbstractCassandraRepository<T, F extends StatementFactory>
 			bs.bind(parms);
 		}
 
-		return session.executeAsync(bs);
+		return execute(bs);
 	}
 
-	protected ResultSetFuture submitUpdate(T entity)
+	protected ListenableFuture<ResultSet> submitStatement(Operation operation, ExecutionProfile profile, PreparedStatement statement, Object... parms)
+	{
+		BoundStatement bs = new BoundStatement(statement);
+
+		if (parms != null)
+		{
+			bs.bind(parms);
+		}
+
+		return execute(bs, operation, profile);
+	}
+
+	protected ListenableFuture<ResultSet> submitUpdate(T entity, ExecutionProfile profile)
 	{
 		BoundStatement bs = new BoundStatement(statementFactory.update());
 		bindUpdate(bs, entity);
-		return session.executeAsync(bs);
+		return execute(bs, Operation.UPDATE, profile);
 	}
 
 	/**
-	 * Leverages the token-awareness of the driver to optimally query each node directly instead of invoking a
-	 * coordinator node. Sends an individual query for each partition key, so reaches the appropriate replica
-	 * directly and collates the results client-side.
-	 * 
-	 * @param ids the partition keys (identifiers) to select.
-	 * @return a List of ListenableFuture instances for each underlying ResultSet--one for each ID.
+	 * Apply the operation's execution profile (and the per-request override, if any) to the statement, then execute it.
 	 */
-	private  List<ListenableFuture<ResultSet>> submitReadIn(Identifier... ids)
+	protected ListenableFuture<ResultSet> execute(Statement statement, Operation operation, ExecutionProfile override)
 	{
-		if (ids == null) return Collections.emptyList();
+		profileFor(operation, override).apply(statement);
 
-		List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>(ids.length);
-
-		for (Identifier id : ids)
+		if (operation == Operation.READ)
 		{
-			BoundStatement bs = new BoundStatement(statementFactory.read());
-			bindIdentity(bs, id);
-			futures.add(session.executeAsync(bs));
+			return hedgedReads.execute(statement, new AsyncFunction<Statement, ResultSet>()
+			{
+				@Override
+				public ListenableFuture<ResultSet> apply(Statement input)
+				{
+					return execute(input);
+				}
+			});
 		}
 
-		return Futures.inCompletionOrder(futures);
+		return execute(statement);
+	}
+
+	/**
+	 * Execute a statement via the request limiter. All statements issued by a repository should go through here.
+	 */
+	protected ListenableFuture<ResultSet> execute(Statement statement)
+	{
+		return requestLimiter.execute(session, statement);
 	}
 
-	@SuppressWarnings("unchecked")
 	private F newStatementFactory(Class<F> factoryClass, Session session, String keyspace, String table)
 	{
-		return (F) Proxy.newProxyInstance(factoryClass.getClassLoader(), (Class<F>[]) new Class[]{factoryClass}, new StatementFactoryHandler(session, keyspace, table));
+		return StatementFactoryHandler.newFactory(factoryClass, session, keyspace, table);
 	}
 }
@@ -15,12 +15,23 @@
 */
 package com.orangerhymelabs.helenus.cassandra;
 
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Cluster.Builder;
+import com.datastax.driver.core.CodecRegistry;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.Session;
+import com.orangerhymelabs.helenus.cassandra.document.BSONCodec;
+import com.orangerhymelabs.helenus.cassandra.document.DocumentCache;
+import com.orangerhymelabs.helenus.cassandra.document.DocumentChunks;
+import com.orangerhymelabs.helenus.cassandra.document.ViewAck;
+import com.orangerhymelabs.helenus.cassandra.document.ViewMetrics;
 import com.orangerhymelabs.helenus.exception.ConfigurationException;
 
 /**
@@ -36,6 +47,32 @@ public class CassandraConfig
 	private static final String DATA_CENTER = "cassandra.dataCenter";
 	private static final String READ_CONSISTENCY_LEVEL = "cassandra.readConsistencyLevel";
 	private static final String WRITE_CONSISTENCY_LEVEL = "cassandra.writeConsistencyLevel";
+	private static final String READ_IN_MAX_IN_FLIGHT = "cassandra.readIn.maxInFlight";
+	private static final String FETCH_SIZE = "cassandra.fetchSize";
+	private static final String MAX_IN_FLIGHT = "cassandra.limiter.maxInFlight";
+	private static final String MAX_IN_FLIGHT_PER_HOST = "cassandra.limiter.maxInFlightPerHost";
+	private static final String MAX_QUEUED = "cassandra.limiter.maxQueued";
+	private static final String QUEUE_TIMEOUT_MILLIS = "cassandra.limiter.queueTimeoutMillis";
+	private static final String PROFILE_PREFIX = "cassandra.profile.";
+	private static final String HEDGE_PREFIX = "cassandra.hedge.";
+	private static final String HEDGE_ENABLED = "enabled";
+	private static final String HEDGE_PERCENTILE = "percentile";
+	private static final String HEDGE_MIN_DELAY_MILLIS = "minDelayMillis";
+	private static final String HEDGE_MAX_DELAY_MILLIS = "maxDelayMillis";
+	private static final String HEDGE_MIN_SAMPLES = "minSamples";
+	private static final String HEDGE_DELAY_MILLIS = "delayMillis";
+	private static final String EXISTS_FILTER_PREFIX = "cassandra.existsFilter.";
+	private static final String EXISTS_FILTER_EXPECTED_KEYS = "expectedKeys";
+	private static final String EXISTS_FILTER_FALSE_POSITIVE_RATE = "falsePositiveRate";
+	private static final String CHUNKS_PREFIX = "cassandra.chunks.";
+	private static final String CHUNKS_THRESHOLD_BYTES = "thresholdBytes";
+	private static final String CHUNKS_CHUNK_BYTES = "chunkBytes";
+	private static final String CACHE_PREFIX = "cassandra.cache.";
+	private static final String METRICS_PREFIX = "helenus";
+	private static final String CACHE_MAX_BYTES = "maxBytes";
+	private static final String CACHE_MAX_ENTRY_BYTES = "maxEntryBytes";
+	private static final String CACHE_MAX_AGE_SECONDS = "maxAgeSeconds";
+	private static final String VIEW_ACK = "cassandra.views.ack";
 
 	private String[] contactPoints;
 	private String keyspace;
@@ -43,16 +80,37 @@ public class CassandraConfig
 	private String dataCenter;
 	private ConsistencyLevel readConsistencyLevel;
 	private ConsistencyLevel writeConsistencyLevel;
+	private int readInMaxInFlight;
+	private int fetchSize;
+	private int maxInFlight;
+	private int maxInFlightPerHost;
+	private int maxQueued;
+	private long queueTimeoutMillis;
 
 	private Session session;
 	private Session keyspaceSession;
+	private RequestLimiter requestLimiter;
+	private ViewMetrics viewMetrics;
+	private ExecutionProfiles executionProfiles;
+	private Properties properties;
+	private ConcurrentMap<String, HedgedReads> hedgedReadsByTable = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, ExistenceFilter> existenceFiltersByTable = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, DocumentCache> cachesByTable = new ConcurrentHashMap<>();
+	private MetricRegistry metrics;
 
 	public CassandraConfig(Properties p)
 	{
+		properties = p;
 		port = Integer.parseInt(p.getProperty(PORT_PROPERTY, DEFAULT_PORT));
 		dataCenter = p.getProperty(DATA_CENTER);
 		readConsistencyLevel = ConsistencyLevel.valueOf(p.getProperty(READ_CONSISTENCY_LEVEL, "LOCAL_QUORUM"));
 		writeConsistencyLevel = ConsistencyLevel.valueOf(p.getProperty(WRITE_CONSISTENCY_LEVEL, "LOCAL_QUORUM"));
+		readInMaxInFlight = Integer.parseInt(p.getProperty(READ_IN_MAX_IN_FLIGHT, String.valueOf(ReadInExecutor.DEFAULT_MAX_IN_FLIGHT)));
+		fetchSize = Integer.parseInt(p.getProperty(FETCH_SIZE, String.valueOf(AbstractCassandraRepository.DEFAULT_FETCH_SIZE)));
+		maxInFlight = Integer.parseInt(p.getProperty(MAX_IN_FLIGHT, String.valueOf(RequestLimiter.DEFAULT_MAX_IN_FLIGHT)));
+		maxInFlightPerHost = Integer.parseInt(p.getProperty(MAX_IN_FLIGHT_PER_HOST, String.valueOf(RequestLimiter.DEFAULT_MAX_IN_FLIGHT_PER_HOST)));
+		maxQueued = Integer.parseInt(p.getProperty(MAX_QUEUED, String.valueOf(RequestLimiter.DEFAULT_MAX_QUEUED)));
+		queueTimeoutMillis = Long.parseLong(p.getProperty(QUEUE_TIMEOUT_MILLIS, String.valueOf(RequestLimiter.DEFAULT_QUEUE_TIMEOUT_MILLIS)));
 		keyspace = p.getProperty(KEYSPACE_PROPERTY);
 
 		if (keyspace == null || keyspace.trim().isEmpty())
@@ -113,11 +171,329 @@ public class CassandraConfig
 		return writeConsistencyLevel;
 	}
 
+	/**
+	 * The maximum number of statements a single readIn() call keeps in flight.
+	 * Apply it to a repository via AbstractCassandraRepository.readInLimit(int).
+	 */
+	public int getReadInMaxInFlight()
+	{
+		return readInMaxInFlight;
+	}
+
+	/**
+	 * The default page size for streamed reads.
+	 * Apply it to a repository via AbstractCassandraRepository.fetchSize(int).
+	 */
+	public int getFetchSize()
+	{
+		return fetchSize;
+	}
+
+	/**
+	 * The admission controller shared by all repositories using this configuration's sessions. It's
+	 * registered for those sessions (see RequestLimiter.register()), so repositories created on them
+	 * use it.
+	 */
+	public synchronized RequestLimiter getRequestLimiter()
+	{
+		if (requestLimiter == null)
+		{
+			requestLimiter = new RequestLimiter(maxInFlight, maxInFlightPerHost, maxQueued, queueTimeoutMillis);
+		}
+
+		return requestLimiter;
+	}
+
+	/**
+	 * The default per-operation execution profiles: reads at the read consistency level, writes at the
+	 * write consistency level, overlaid with any properties of the form:
+	 * 
+	 *   cassandra.profile.{operation}.consistencyLevel|idempotent|fetchSize|timeoutMillis
+	 * 
+	 * where {operation} is an Operation key (e.g. read, readAll, exists, create, update, upsert, delete).
+	 * Apply them to a repository via AbstractCassandraRepository.executionProfiles(ExecutionProfiles).
+	 */
+	public synchronized ExecutionProfiles getExecutionProfiles()
+	{
+		if (executionProfiles == null)
+		{
+			executionProfiles = overlayProfiles(ExecutionProfiles.defaults(readConsistencyLevel, writeConsistencyLevel), PROFILE_PREFIX);
+		}
+
+		return executionProfiles;
+	}
+
+	/**
+	 * The execution profiles for a single table, which are the defaults from getExecutionProfiles() overlaid
+	 * with any properties of the form:
+	 * 
+	 *   cassandra.profile.{table}.{operation}.consistencyLevel|idempotent|fetchSize|timeoutMillis
+	 * 
+	 * @param table the database table name (e.g. Table.toDbTable()).
+	 */
+	public ExecutionProfiles getExecutionProfiles(String table)
+	{
+		return overlayProfiles(getExecutionProfiles(), PROFILE_PREFIX + table + ".");
+	}
+
+	private ExecutionProfiles overlayProfiles(ExecutionProfiles profiles, String prefix)
+	{
+		ExecutionProfiles result = profiles;
+
+		for (Operation operation : Operation.values())
+		{
+			String opPrefix = prefix + operation.key() + ".";
+			String consistencyLevel = properties.getProperty(opPrefix + "consistencyLevel");
+			String idempotent = properties.getProperty(opPrefix + "idempotent");
+			String fetchSize = properties.getProperty(opPrefix + "fetchSize");
+			String timeoutMillis = properties.getProperty(opPrefix + "timeoutMillis");
+
+			if (consistencyLevel == null && idempotent == null && fetchSize == null && timeoutMillis == null) continue;
+
+			ExecutionProfile profile = result.profile(operation);
+
+			try
+			{
+				if (consistencyLevel != null) profile = profile.withConsistencyLevel(ConsistencyLevel.valueOf(consistencyLevel.trim()));
+				if (idempotent != null) profile = profile.withIdempotent(Boolean.valueOf(idempotent.trim()));
+				if (fetchSize != null) profile = profile.withFetchSize(Integer.parseInt(fetchSize.trim()));
+				if (timeoutMillis != null) profile = profile.withTimeoutMillis(Integer.parseInt(timeoutMillis.trim()));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new ConfigurationException("Invalid execution profile property: " + opPrefix + "*", e);
+			}
+
+			result = result.with(operation, profile);
+		}
+
+		return result;
+	}
+
+	/**
+	 * The hedged (speculative) read settings for a table, shared by all its repositories so they
+	 * accumulate a single latency histogram. Hedging is off unless enabled with:
+	 * 
+	 *   cassandra.hedge.enabled=true (all tables) or cassandra.hedge.{table}.enabled=true
+	 * 
+	 * and is tuned with cassandra.hedge.[{table}.]percentile|minDelayMillis|maxDelayMillis|minSamples.
+	 * A table may instead use a fixed delay with cassandra.hedge.{table}.delayMillis.
+	 * Apply it to a repository via AbstractCassandraRepository.hedgedReads(HedgedReads).
+	 * 
+	 * @param table the database table name (e.g. Table.toDbTable()).
+	 */
+	public HedgedReads getHedgedReads(String table)
+	{
+		HedgedReads hedgedReads = hedgedReadsByTable.get(table);
+
+		if (hedgedReads != null) return hedgedReads;
+
+		return share(table, newHedgedReads(table));
+	}
+
+	private synchronized HedgedReads share(String table, HedgedReads hedgedReads)
+	{
+		HedgedReads existing = hedgedReadsByTable.putIfAbsent(table, hedgedReads);
+
+		if (existing != null) return existing;
+
+		if (metrics != null) register(table, hedgedReads);
+
+		return hedgedReads;
+	}
+
+	private HedgedReads newHedgedReads(String table)
+	{
+		String tablePrefix = HEDGE_PREFIX + table + ".";
+
+		try
+		{
+			if (!Boolean.parseBoolean(hedgeProperty(tablePrefix, HEDGE_ENABLED, "false"))) return HedgedReads.DISABLED;
+
+			return new HedgedReads(
+				Double.parseDouble(hedgeProperty(tablePrefix, HEDGE_PERCENTILE, String.valueOf(HedgedReads.DEFAULT_PERCENTILE))),
+				Long.parseLong(hedgeProperty(tablePrefix, HEDGE_MIN_DELAY_MILLIS, String.valueOf(HedgedReads.DEFAULT_MIN_DELAY_MILLIS))),
+				Long.parseLong(hedgeProperty(tablePrefix, HEDGE_MAX_DELAY_MILLIS, String.valueOf(HedgedReads.DEFAULT_MAX_DELAY_MILLIS))),
+				Integer.parseInt(hedgeProperty(tablePrefix, HEDGE_MIN_SAMPLES, String.valueOf(HedgedReads.DEFAULT_MIN_SAMPLES))),
+				Long.parseLong(properties.getProperty(tablePrefix + HEDGE_DELAY_MILLIS, "0").trim()));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new ConfigurationException("Invalid hedged read property: " + tablePrefix + "*", e);
+		}
+	}
+
+	/**
+	 * Returns the table-specific hedge property, if set, otherwise the cluster-wide one.
+	 */
+	private String hedgeProperty(String tablePrefix, String name, String defaultValue)
+	{
+		return properties.getProperty(tablePrefix + name, properties.getProperty(HEDGE_PREFIX + name, defaultValue)).trim();
+	}
+
+	/**
+	 * When a table's large documents are split into chunks. Documents stored larger than 1 MB are
+	 * chunked into 256 KB chunks unless set otherwise with:
+	 * 
+	 *   cassandra.chunks.[{table}.]thresholdBytes={n} (zero disables chunking)
+	 *   cassandra.chunks.[{table}.]chunkBytes={n}
+	 * 
+	 * Apply it to a repository via AbstractDocumentRepository.chunks(DocumentChunks).
+	 * 
+	 * @param table the database table name (e.g. Table.toDbTable()).
+	 */
+	public DocumentChunks getDocumentChunks(String table)
+	{
+		String tablePrefix = CHUNKS_PREFIX + table + ".";
+
+		try
+		{
+			return new DocumentChunks(
+				Integer.parseInt(chunksProperty(tablePrefix, CHUNKS_THRESHOLD_BYTES, String.valueOf(DocumentChunks.DEFAULT_THRESHOLD_BYTES))),
+				Integer.parseInt(chunksProperty(tablePrefix, CHUNKS_CHUNK_BYTES, String.valueOf(DocumentChunks.DEFAULT_CHUNK_BYTES))));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid document chunk property: " + tablePrefix + "*", e);
+		}
+	}
+
+	private String chunksProperty(String tablePrefix, String name, String defaultValue)
+	{
+		return properties.getProperty(tablePrefix + name, properties.getProperty(CHUNKS_PREFIX + name, defaultValue)).trim();
+	}
+
+	/**
+	 * The negative-lookup filter for a table, shared by all its repositories, or null if the table
+	 * doesn't have one. A filter is only created for tables with the property:
+	 * 
+	 *   cassandra.existsFilter.{table}.expectedKeys={n}
+	 * 
+	 * optionally with cassandra.existsFilter.{table}.falsePositiveRate (default 0.01). Only configure
+	 * it for tables whose writes all go through this process. See ExistenceFilter.
+	 * Apply it to a repository via AbstractDocumentRepository.existenceFilter(ExistenceFilter).
+	 * 
+	 * @param table the database table name (e.g. Table.toDbTable()).
+	 */
+	public ExistenceFilter getExistenceFilter(String table)
+	{
+		ExistenceFilter filter = existenceFiltersByTable.get(table);
+
+		if (filter != null) return filter;
+
+		String prefix = EXISTS_FILTER_PREFIX + table + ".";
+		String expectedKeys = properties.getProperty(prefix + EXISTS_FILTER_EXPECTED_KEYS);
+
+		if (expectedKeys == null) return null;
+
+		try
+		{
+			filter = new ExistenceFilter(Long.parseLong(expectedKeys.trim()),
+				Double.parseDouble(properties.getProperty(prefix + EXISTS_FILTER_FALSE_POSITIVE_RATE, String.valueOf(ExistenceFilter.DEFAULT_FALSE_POSITIVE_RATE)).trim()));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid existence filter property: " + prefix + "*", e);
+		}
+
+		ExistenceFilter existing = existenceFiltersByTable.putIfAbsent(table, filter);
+		return (existing != null ? existing : filter);
+	}
+
+	/**
+	 * The off-heap document cache for a table, shared by all its repositories, or null if the table
+	 * doesn't have one. A cache is only created for tables with the property:
+	 * 
+	 *   cassandra.cache.{table}.maxBytes={n}
+	 * 
+	 * optionally with cassandra.cache.{table}.maxEntryBytes (default 256KB) and maxAgeSeconds (default
+	 * none). The JVM's -XX:MaxDirectMemorySize must allow for every table's maxBytes. Only configure it
+	 * for tables whose writes all go through this process. See DocumentCache.
+	 * Apply it to a repository via AbstractDocumentRepository.cache(DocumentCache).
+	 * 
+	 * @param table the database table name (e.g. Table.toDbTable()).
+	 */
+	public DocumentCache getDocumentCache(String table)
+	{
+		DocumentCache cache = cachesByTable.get(table);
+
+		if (cache != null) return cache;
+
+		String prefix = CACHE_PREFIX + table + ".";
+		String maxBytes = properties.getProperty(prefix + CACHE_MAX_BYTES);
+
+		if (maxBytes == null) return null;
+
+		try
+		{
+			cache = new DocumentCache(Long.parseLong(maxBytes.trim()),
+				Integer.parseInt(properties.getProperty(prefix + CACHE_MAX_ENTRY_BYTES, String.valueOf(DocumentCache.DEFAULT_MAX_ENTRY_BYTES)).trim()),
+				TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(prefix + CACHE_MAX_AGE_SECONDS, "0").trim())));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid document cache property: " + prefix + "*", e);
+		}
+
+		return share(table, cache);
+	}
+
+	private synchronized DocumentCache share(String table, DocumentCache cache)
+	{
+		DocumentCache existing = cachesByTable.putIfAbsent(table, cache);
+
+		if (existing != null) return existing;
+
+		if (metrics != null) register(table, cache);
+
+		return cache;
+	}
+
+	/**
+	 * When writes of tables with views are acknowledged: once the views are written (views, the default)
+	 * or once the table is (table). See ViewAck.
+	 * 
+	 *   cassandra.views.ack=views|table
+	 * 
+	 * Apply it to a DocumentService via DocumentService.viewAck(ViewAck).
+	 */
+	public ViewAck getViewAck()
+	{
+		String ack = properties.getProperty(VIEW_ACK);
+
+		try
+		{
+			return ViewAck.from(ack != null ? ack.trim() : null);
+		}
+		catch (IllegalStateException e)
+		{
+			throw new ConfigurationException("Invalid view ack property: " + VIEW_ACK, e);
+		}
+	}
+
+	/**
+	 * The view write metrics shared by DocumentServices using this configuration, registered with the
+	 * cluster's metric registry (see registerMetrics()).
+	 * 
+	 * Apply them to a DocumentService via DocumentService.viewMetrics(ViewMetrics).
+	 */
+	public synchronized ViewMetrics getViewMetrics()
+	{
+		if (viewMetrics == null)
+		{
+			viewMetrics = new ViewMetrics();
+		}
+
+		return viewMetrics;
+	}
+
 	public Session getKeyspaceSession()
 	{
 		if (keyspaceSession == null)
 		{
 			keyspaceSession = getCluster().connect(getKeyspace());
+			RequestLimiter.register(keyspaceSession, getRequestLimiter());
+			registerMetrics(keyspaceSession.getCluster());
 		}
 
 		return keyspaceSession;
@@ -128,16 +504,54 @@ public class CassandraConfig
 		if (session == null)
 		{
 			session = getCluster().connect();
+			RequestLimiter.register(session, getRequestLimiter());
+			registerMetrics(session.getCluster());
 		}
 
 		return session;
 	}
 
+	/**
+	 * Register the request limiter's and view writes' metrics, and those of each table's hedged reads and
+	 * document cache (now, or when they're created), with the cluster's metric registry as
+	 * helenus.requests.*, helenus.views.*, helenus.hedgedReads.{table}.* and helenus.cache.{table}.*. Only
+	 * the first cluster connected (with metrics enabled) is used.
+	 */
+	private synchronized void registerMetrics(Cluster cluster)
+	{
+		if (metrics != null || cluster.getMetrics() == null) return;
+
+		metrics = cluster.getMetrics().getRegistry();
+		getRequestLimiter().registerMetrics(metrics, MetricRegistry.name(METRICS_PREFIX, "requests"));
+		getViewMetrics().registerMetrics(metrics, MetricRegistry.name(METRICS_PREFIX, "views"));
+
+		for (Map.Entry<String, HedgedReads> entry : hedgedReadsByTable.entrySet())
+		{
+			register(entry.getKey(), entry.getValue());
+		}
+
+		for (Map.Entry<String, DocumentCache> entry : cachesByTable.entrySet())
+		{
+			register(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void register(String table, HedgedReads hedgedReads)
+	{
+		if (hedgedReads.isEnabled()) hedgedReads.registerMetrics(metrics, MetricRegistry.name(METRICS_PREFIX, "hedgedReads", table));
+	}
+
+	private void register(String table, DocumentCache cache)
+	{
+		cache.registerMetrics(metrics, MetricRegistry.name(METRICS_PREFIX, "cache", table));
+	}
+
 	protected Cluster getCluster()
 	{
 		Builder cb = Cluster.builder();
 		cb.addContactPoints(contactPoints);
 		cb.withPort(getPort());
+		cb.withCodecRegistry(new CodecRegistry().register(BSONCodec.INSTANCE));
 
 		if (getDataCenter() != null)
 		{
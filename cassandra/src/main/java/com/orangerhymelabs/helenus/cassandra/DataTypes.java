@@ -17,6 +17,8 @@ package com.orangerhymelabs.helenus.cassandra;
 
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -121,6 +123,44 @@ public enum DataTypes
 		return bb;
     }
 
+	/**
+	 * Convert a value (e.g. parsed from JSON) to the Java type bound for this type: strings for UUIDs,
+	 * ISO-8601 strings or epoch milliseconds for timestamps, and numbers or numeric strings for numbers.
+	 * 
+	 * @param value the value, possibly null.
+	 * @return the converted value.
+	 * @throws IllegalArgumentException if the value can't be converted.
+	 */
+	public Object convert(Object value)
+	{
+		if (value == null) return null;
+
+		try
+		{
+			switch(this)
+			{
+				case TEXT: return value.toString();
+				case TIMEUUID:
+				case UUID: return (value instanceof UUID ? value : java.util.UUID.fromString(value.toString()));
+				case TIMESTAMP:
+					if (value instanceof Date) return value;
+					if (value instanceof Number) return new Date(((Number) value).longValue());
+					return Date.from(Instant.parse(value.toString()));
+				case INTEGER: return (value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString()));
+				case BIGINT: return (value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString()));
+				case FLOAT: return (value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(value.toString()));
+				case DOUBLE: return (value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString()));
+				case DECIMAL: return (value instanceof BigDecimal ? value : new BigDecimal(value.toString()));
+				default:
+					return value;
+			}
+		}
+		catch (IllegalArgumentException | DateTimeParseException e)
+		{
+			throw new IllegalArgumentException("Cannot convert to " + cassandraType + ": " + value, e);
+		}
+	}
+
 	public static DataTypes from(String name)
     {
 		switch(name.toLowerCase())
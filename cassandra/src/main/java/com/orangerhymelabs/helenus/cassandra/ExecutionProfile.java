@@ -0,0 +1,157 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Statement;
+
+/**
+ * The per-statement execution settings for a repository operation: consistency level, idempotence,
+ * fetch size and read timeout. Unset values leave the driver (or statement) defaults in place.
+ *
+ * Profiles are immutable. The with...() methods return a modified copy, so a profile can be safely
+ * shared between repositories and requests.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class ExecutionProfile
+{
+	/**
+	 * Sets nothing; the statement executes with the driver defaults.
+	 */
+	public static final ExecutionProfile DEFAULT = new ExecutionProfile(null, null, 0, 0);
+
+	private ConsistencyLevel consistencyLevel;
+	private Boolean isIdempotent;
+	private int fetchSize;
+	private int timeoutMillis;
+
+	private ExecutionProfile(ConsistencyLevel consistencyLevel, Boolean isIdempotent, int fetchSize, int timeoutMillis)
+	{
+		super();
+		this.consistencyLevel = consistencyLevel;
+		this.isIdempotent = isIdempotent;
+		this.fetchSize = fetchSize;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * A convenience for a per-request override of only the consistency level (e.g. LOCAL_ONE for stale-tolerant reads).
+	 */
+	public static ExecutionProfile consistency(ConsistencyLevel consistencyLevel)
+	{
+		return DEFAULT.withConsistencyLevel(consistencyLevel);
+	}
+
+	public ExecutionProfile withConsistencyLevel(ConsistencyLevel consistencyLevel)
+	{
+		return new ExecutionProfile(consistencyLevel, isIdempotent, fetchSize, timeoutMillis);
+	}
+
+	public ExecutionProfile withIdempotent(Boolean isIdempotent)
+	{
+		return new ExecutionProfile(consistencyLevel, isIdempotent, fetchSize, timeoutMillis);
+	}
+
+	public ExecutionProfile withFetchSize(int fetchSize)
+	{
+		return new ExecutionProfile(consistencyLevel, isIdempotent, fetchSize, timeoutMillis);
+	}
+
+	public ExecutionProfile withTimeoutMillis(int timeoutMillis)
+	{
+		return new ExecutionProfile(consistencyLevel, isIdempotent, fetchSize, timeoutMillis);
+	}
+
+	public ConsistencyLevel consistencyLevel()
+	{
+		return consistencyLevel;
+	}
+
+	public boolean hasConsistencyLevel()
+	{
+		return (consistencyLevel != null);
+	}
+
+	public Boolean isIdempotent()
+	{
+		return isIdempotent;
+	}
+
+	public boolean hasIdempotent()
+	{
+		return (isIdempotent != null);
+	}
+
+	public int fetchSize()
+	{
+		return fetchSize;
+	}
+
+	public boolean hasFetchSize()
+	{
+		return (fetchSize > 0);
+	}
+
+	public int timeoutMillis()
+	{
+		return timeoutMillis;
+	}
+
+	public boolean hasTimeout()
+	{
+		return (timeoutMillis > 0);
+	}
+
+	/**
+	 * Returns a profile with this profile's settings, replaced by any that are set in the override.
+	 *
+	 * @param override a profile, possibly null.
+	 * @return the combined profile.
+	 */
+	public ExecutionProfile overriddenBy(ExecutionProfile override)
+	{
+		if (override == null || override == DEFAULT) return this;
+
+		return new ExecutionProfile(
+			(override.hasConsistencyLevel() ? override.consistencyLevel : consistencyLevel),
+			(override.hasIdempotent() ? override.isIdempotent : isIdempotent),
+			(override.hasFetchSize() ? override.fetchSize : fetchSize),
+			(override.hasTimeout() ? override.timeoutMillis : timeoutMillis));
+	}
+
+	/**
+	 * Apply the settings in this profile to the statement.
+	 *
+	 * @param statement a statement.
+	 * @return the statement.
+	 */
+	public <S extends Statement> S apply(S statement)
+	{
+		if (hasConsistencyLevel()) statement.setConsistencyLevel(consistencyLevel);
+		if (hasIdempotent()) statement.setIdempotent(isIdempotent);
+		if (hasFetchSize()) statement.setFetchSize(fetchSize);
+		if (hasTimeout()) statement.setReadTimeoutMillis(timeoutMillis);
+		return statement;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ExecutionProfile{consistencyLevel=" + consistencyLevel + ", idempotent=" + isIdempotent + ", fetchSize=" + fetchSize + ", timeoutMillis=" + timeoutMillis + "}";
+	}
+}
@@ -0,0 +1,100 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+/**
+ * The ExecutionProfile for each repository Operation, typically one set per table. Operations without
+ * a profile use ExecutionProfile.DEFAULT. Immutable.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class ExecutionProfiles
+{
+	/**
+	 * No profiles; every statement executes with the driver defaults.
+	 */
+	public static final ExecutionProfiles NONE = new ExecutionProfiles(new EnumMap<Operation, ExecutionProfile>(Operation.class));
+
+	private Map<Operation, ExecutionProfile> profiles;
+
+	private ExecutionProfiles(Map<Operation, ExecutionProfile> profiles)
+	{
+		super();
+		this.profiles = profiles;
+	}
+
+	/**
+	 * Returns profiles that read at the read consistency level and write at the write consistency level.
+	 * Reads, upserts and deletes are marked idempotent. Conditional creates and updates (lightweight
+	 * transactions) are not.
+	 *
+	 * @param read the consistency level for read, readAll and exists.
+	 * @param write the consistency level for create, update, upsert and delete.
+	 */
+	public static ExecutionProfiles defaults(ConsistencyLevel read, ConsistencyLevel write)
+	{
+		Map<Operation, ExecutionProfile> profiles = new EnumMap<>(Operation.class);
+
+		for (Operation operation : Operation.values())
+		{
+			if (operation.isRead())
+			{
+				profiles.put(operation, ExecutionProfile.DEFAULT.withConsistencyLevel(read).withIdempotent(true));
+			}
+			else
+			{
+				boolean isConditional = (operation == Operation.CREATE || operation == Operation.UPDATE);
+				profiles.put(operation, ExecutionProfile.DEFAULT.withConsistencyLevel(write).withIdempotent(!isConditional));
+			}
+		}
+
+		return new ExecutionProfiles(profiles);
+	}
+
+	public ExecutionProfile profile(Operation operation)
+	{
+		ExecutionProfile profile = profiles.get(operation);
+		return (profile != null ? profile : ExecutionProfile.DEFAULT);
+	}
+
+	/**
+	 * Returns the profile for the operation, with any settings in the per-request override applied on top.
+	 *
+	 * @param operation the repository operation.
+	 * @param override a per-request profile, or null.
+	 */
+	public ExecutionProfile profile(Operation operation, ExecutionProfile override)
+	{
+		return profile(operation).overriddenBy(override);
+	}
+
+	/**
+	 * Returns a copy of these profiles with the given profile for the operation.
+	 */
+	public ExecutionProfiles with(Operation operation, ExecutionProfile profile)
+	{
+		Map<Operation, ExecutionProfile> copy = new EnumMap<>(Operation.class);
+		copy.putAll(profiles);
+		copy.put(operation, profile);
+		return new ExecutionProfiles(copy);
+	}
+}
@@ -0,0 +1,158 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * A per-table negative cache for exists() and read(): a Bloom filter of every identifier written to
+ * the table. Once primed with the table's existing keys, an identifier the filter has never seen
+ * definitely doesn't exist, so the answer is served locally without a query. Identifiers the filter
+ * might contain (including false positives, at the configured rate) are still queried.
+ *
+ * Deleted identifiers stay in the filter; they only cost a query, as before.
+ *
+ * The filter is only correct if every write to the table goes through repositories sharing this
+ * instance, in this process. Don't enable it for tables written by other processes or applications.
+ * Once more than expectedKeys identifiers have been added the false positive rate rises, but answers
+ * remain correct.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class ExistenceFilter
+{
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private BloomFilter<Identifier> filter;
+	private volatile boolean isPrimed = false;
+	private AtomicBoolean isPriming = new AtomicBoolean(false);
+	private AtomicLong negatives = new AtomicLong(0L);
+
+	public ExistenceFilter(long expectedKeys)
+	{
+		this(expectedKeys, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * @param expectedKeys the expected number of identifiers in the table.
+	 * @param falsePositiveRate the desired false positive rate (0 < rate < 1) at expectedKeys.
+	 */
+	public ExistenceFilter(long expectedKeys, double falsePositiveRate)
+	{
+		super();
+		this.filter = BloomFilter.create(IdentifierFunnel.INSTANCE, expectedKeys, falsePositiveRate);
+	}
+
+	/**
+	 * Record that the identifier was (or is about to be) written. Call before the write is executed.
+	 */
+	public void put(Identifier id)
+	{
+		if (id != null)
+		{
+			filter.put(id);
+		}
+	}
+
+	/**
+	 * Returns false only if the identifier definitely doesn't exist. Always true until the filter is primed.
+	 */
+	public boolean mightContain(Identifier id)
+	{
+		if (!isPrimed || id == null) return true;
+
+		if (filter.mightContain(id)) return true;
+
+		negatives.incrementAndGet();
+		return false;
+	}
+
+	public boolean isPrimed()
+	{
+		return isPrimed;
+	}
+
+	/**
+	 * Claim the (single) priming scan of the table's existing keys.
+	 *
+	 * @return true if the caller should perform the scan, false if it's done or in progress elsewhere.
+	 */
+	public boolean beginPriming()
+	{
+		return (!isPrimed && isPriming.compareAndSet(false, true));
+	}
+
+	/**
+	 * End the priming scan. If it succeeded, the filter starts answering negative lookups.
+	 *
+	 * @param isSuccessful true if every existing key was put().
+	 */
+	public void endPriming(boolean isSuccessful)
+	{
+		if (isSuccessful)
+		{
+			isPrimed = true;
+		}
+
+		isPriming.set(false);
+	}
+
+	/**
+	 * Returns the number of lookups answered locally as 'does not exist'.
+	 */
+	public long negatives()
+	{
+		return negatives.get();
+	}
+
+	public long approximateKeys()
+	{
+		return filter.approximateElementCount();
+	}
+
+	private enum IdentifierFunnel
+	implements Funnel<Identifier>
+	{
+		INSTANCE;
+
+		@Override
+		public void funnel(Identifier id, PrimitiveSink into)
+		{
+			for (Object component : id.components())
+			{
+				if (component instanceof Date)
+				{
+					into.putLong(((Date) component).getTime());
+				}
+				else
+				{
+					into.putString(String.valueOf(component), StandardCharsets.UTF_8);
+				}
+
+				into.putByte((byte) 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * A ResultStream filtered as it's read: each page holds only the items that match the filter, and the
+ * stream ends as soon as 'limit' items have matched, without reading further pages.
+ *
+ * A page holds the matches of one or more whole underlying pages: pages without a match are skipped
+ * (read, but not handed out), so next() never returns an empty page until the stream is exhausted.
+ * A page's paging state resumes the underlying query after the last page read, so a later request can
+ * continue via a new stream of the same query; its limit then counts from there.
+ *
+ * Calls to next() are serialized: each page is produced only after the prior one.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ * @param <T> The type marshalled from each row.
+ */
+public class FilteredStream<T>
+{
+	private ResultStream<T> results;
+	private Predicate<? super T> filter;
+	private int limit;
+	private long matched = 0L;
+	private volatile boolean isExhausted = false;
+	private ListenableFuture<?> previous = Futures.immediateFuture(null);
+
+	/**
+	 * @param results the unfiltered stream.
+	 * @param filter selects the items to return, or null for all.
+	 * @param limit the maximum number of items to return. Zero or less for no limit.
+	 */
+	public FilteredStream(ResultStream<T> results, Predicate<? super T> filter, int limit)
+	{
+		super();
+		this.results = results;
+		this.filter = filter;
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns true if the last page has been handed out by next().
+	 */
+	public boolean isExhausted()
+	{
+		return isExhausted;
+	}
+
+	/**
+	 * Retrieve the next page of matching items. Once the stream is exhausted, returns an empty page
+	 * with a null paging state.
+	 */
+	public synchronized ListenableFuture<ResultPage<T>> next()
+	{
+		ListenableFuture<ResultPage<T>> page = Futures.transformAsync(previous, new AsyncFunction<Object, ResultPage<T>>()
+		{
+			@Override
+			public ListenableFuture<ResultPage<T>> apply(Object input)
+			{
+				if (isExhausted) return Futures.immediateFuture(new ResultPage<T>(Collections.<T>emptyList(), null));
+
+				return fill(new ArrayList<T>());
+			}
+		}, MoreExecutors.directExecutor());
+
+		previous = page;
+		return page;
+	}
+
+	/**
+	 * Hand every remaining matching item to the consumer, one page at a time, without accumulating them.
+	 *
+	 * @param consumer receives each matching item in result order.
+	 * @return a future containing the number of items consumed.
+	 */
+	public ListenableFuture<Long> forEach(Consumer<? super T> consumer)
+	{
+		return forEach(consumer, 0L);
+	}
+
+	private ListenableFuture<Long> forEach(Consumer<? super T> consumer, long count)
+	{
+		return Futures.transformAsync(next(), new AsyncFunction<ResultPage<T>, Long>()
+		{
+			@Override
+			public ListenableFuture<Long> apply(ResultPage<T> page)
+			{
+				page.items().forEach(consumer);
+				long total = count + page.size();
+
+				if (!page.hasMore())
+				{
+					return Futures.immediateFuture(total);
+				}
+
+				return forEach(consumer, total);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read underlying pages into matches until there's at least one, the limit is reached or the
+	 * results run out.
+	 */
+	private ListenableFuture<ResultPage<T>> fill(List<T> matches)
+	{
+		return Futures.transformAsync(results.next(), new AsyncFunction<ResultPage<T>, ResultPage<T>>()
+		{
+			@Override
+			public ListenableFuture<ResultPage<T>> apply(ResultPage<T> page)
+			{
+				for (T item : page.items())
+				{
+					if (filter != null && !filter.test(item)) continue;
+
+					matches.add(item);
+
+					if (limit > 0 && ++matched >= limit)
+					{
+						isExhausted = true;
+						return Futures.immediateFuture(new ResultPage<T>(matches, null));
+					}
+				}
+
+				if (!page.hasMore())
+				{
+					isExhausted = true;
+					return Futures.immediateFuture(new ResultPage<T>(matches, null));
+				}
+
+				if (matches.isEmpty()) return fill(matches);
+
+				return Futures.immediateFuture(new ResultPage<T>(matches, page.pagingState()));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+}
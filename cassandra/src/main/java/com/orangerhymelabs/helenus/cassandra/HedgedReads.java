@@ -0,0 +1,301 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Speculative (hedged) execution for a table's single-partition reads. If a read hasn't completed
+ * within the hedge delay, the same statement is sent again and whichever response arrives first is
+ * used. With the driver's default token-aware policy (which shuffles replicas) the second request
+ * usually goes to a different replica, so one replica stalled in GC or compaction no longer sets
+ * the tail latency.
+ *
+ * The hedge delay is the configured percentile (e.g. p95) of this table's observed read latency,
+ * taken from a decaying histogram and recomputed every few dozen reads. Until minSamples reads have
+ * been observed no hedges are sent. A fixed delay may be configured instead.
+ *
+ * Only statements that aren't explicitly marked non-idempotent are hedged. Each hedge is a second
+ * statement and goes through the RequestLimiter like any other.
+ *
+ * Create one instance per table and share it between that table's repositories.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class HedgedReads
+{
+	public static final double DEFAULT_PERCENTILE = 0.95;
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 2L;
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 500L;
+	public static final int DEFAULT_MIN_SAMPLES = 100;
+
+	/**
+	 * Never hedges. The default for repositories that haven't been given a HedgedReads.
+	 */
+	public static final HedgedReads DISABLED = new HedgedReads(0.0, 0L, 0L, 0, 0L);
+
+	private static final int RECOMPUTE_INTERVAL = 64;
+
+	private double percentile;
+	private long minDelayMicros;
+	private long maxDelayMicros;
+	private int minSamples;
+	private long fixedDelayMicros;
+
+	private Histogram latencies = new Histogram(new ExponentiallyDecayingReservoir());
+	private AtomicLong samples = new AtomicLong(0L);
+	private volatile long delayMicros = 0L;
+	private Counter hedgesFired = new Counter();
+	private Counter hedgesWon = new Counter();
+
+	public HedgedReads()
+	{
+		this(DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_MIN_SAMPLES, 0L);
+	}
+
+	/**
+	 * @param percentile the latency percentile (0 < percentile < 1) after which a read is hedged. Zero or less disables hedging.
+	 * @param minDelayMillis the lower bound on the hedge delay.
+	 * @param maxDelayMillis the upper bound on the hedge delay. Zero or less for no bound.
+	 * @param minSamples the number of reads to observe before hedging begins.
+	 * @param fixedDelayMillis if greater than zero, always hedge after this delay instead of the percentile.
+	 */
+	public HedgedReads(double percentile, long minDelayMillis, long maxDelayMillis, int minSamples, long fixedDelayMillis)
+	{
+		super();
+		this.percentile = percentile;
+		this.minDelayMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(0L, minDelayMillis));
+		this.maxDelayMicros = (maxDelayMillis > 0 ? TimeUnit.MILLISECONDS.toMicros(maxDelayMillis) : Long.MAX_VALUE);
+		this.minSamples = minSamples;
+		this.fixedDelayMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(0L, fixedDelayMillis));
+
+		if (fixedDelayMicros > 0)
+		{
+			this.delayMicros = fixedDelayMicros;
+		}
+	}
+
+	public boolean isEnabled()
+	{
+		return (fixedDelayMicros > 0 || (percentile > 0.0 && percentile < 1.0));
+	}
+
+	/**
+	 * Execute the statement via the executor, hedging it if it hasn't completed within the current delay.
+	 *
+	 * @param statement a read statement.
+	 * @param executor executes a statement (e.g. through the RequestLimiter).
+	 * @return a future ResultSet from whichever execution completes first.
+	 */
+	public ListenableFuture<ResultSet> execute(Statement statement, AsyncFunction<Statement, ResultSet> executor)
+	{
+		if (!isEnabled() || Boolean.FALSE.equals(statement.isIdempotent()))
+		{
+			return submit(executor, statement);
+		}
+
+		long start = System.nanoTime();
+		ListenableFuture<ResultSet> primary = submit(executor, statement);
+		Futures.addCallback(primary, new FutureCallback<ResultSet>()
+		{
+			@Override
+			public void onSuccess(ResultSet result)
+			{
+				record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				// failures say nothing useful about replica latency.
+			}
+		}, MoreExecutors.directExecutor());
+
+		long delay = delayMicros;
+
+		if (delay <= 0 || primary.isDone()) return primary;
+
+		Race race = new Race();
+		race.join(primary, false);
+		Timer.INSTANCE.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (race.result.isDone()) return;
+
+				hedgesFired.inc();
+				race.join(submit(executor, statement), true);
+			}
+		}, delay, TimeUnit.MICROSECONDS);
+
+		return race.result;
+	}
+
+	/**
+	 * Returns the current hedge delay in milliseconds, or zero if reads aren't being hedged (yet).
+	 */
+	public double delayMillis()
+	{
+		return delayMicros / 1000.0;
+	}
+
+	public long hedgesFired()
+	{
+		return hedgesFired.getCount();
+	}
+
+	public long hedgesWon()
+	{
+		return hedgesWon.getCount();
+	}
+
+	/**
+	 * Returns the observed (primary) read latencies, in microseconds.
+	 */
+	public Histogram latencies()
+	{
+		return latencies;
+	}
+
+	/**
+	 * Register the latency histogram, hedges fired and won counters and hedge delay gauge with the given
+	 * registry (e.g. Cluster.getMetrics().getRegistry()).
+	 *
+	 * @param registry the metric registry.
+	 * @param prefix a name prefix, typically including the table name.
+	 */
+	public void registerMetrics(MetricRegistry registry, String prefix)
+	{
+		registry.register(MetricRegistry.name(prefix, "latency-micros"), latencies);
+		registry.register(MetricRegistry.name(prefix, "hedges-fired"), hedgesFired);
+		registry.register(MetricRegistry.name(prefix, "hedges-won"), hedgesWon);
+		registry.register(MetricRegistry.name(prefix, "delay-millis"), new Gauge<Double>()
+		{
+			@Override
+			public Double getValue()
+			{
+				return delayMillis();
+			}
+		});
+	}
+
+	private void record(long micros)
+	{
+		latencies.update(micros);
+
+		if (fixedDelayMicros > 0) return;
+
+		long count = samples.incrementAndGet();
+
+		if (count >= minSamples && count % RECOMPUTE_INTERVAL == 0)
+		{
+			long delay = (long) latencies.getSnapshot().getValue(percentile);
+			delayMicros = Math.min(maxDelayMicros, Math.max(minDelayMicros, delay));
+		}
+	}
+
+	private static ListenableFuture<ResultSet> submit(AsyncFunction<Statement, ResultSet> executor, Statement statement)
+	{
+		try
+		{
+			return executor.apply(statement);
+		}
+		catch (Exception e)
+		{
+			return Futures.immediateFailedFuture(e);
+		}
+	}
+
+	/**
+	 * The first execution to succeed wins. The result only fails if every execution started fails. A
+	 * winning hedge is counted before the result completes, so it's counted once the caller sees it.
+	 */
+	private class Race
+	{
+		private SettableFuture<ResultSet> result = SettableFuture.create();
+		private AtomicInteger outstanding = new AtomicInteger(0);
+		private AtomicBoolean isWon = new AtomicBoolean(false);
+
+		public void join(ListenableFuture<ResultSet> execution, boolean isHedge)
+		{
+			outstanding.incrementAndGet();
+			Futures.addCallback(execution, new FutureCallback<ResultSet>()
+			{
+				@Override
+				public void onSuccess(ResultSet rs)
+				{
+					outstanding.decrementAndGet();
+
+					if (isWon.compareAndSet(false, true))
+					{
+						if (isHedge) hedgesWon.inc();
+
+						result.set(rs);
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable t)
+				{
+					if (outstanding.decrementAndGet() == 0)
+					{
+						result.setException(t);
+					}
+				}
+			}, MoreExecutors.directExecutor());
+		}
+	}
+
+	/**
+	 * A single daemon timer shared by every HedgedReads, created on first use.
+	 */
+	private static class Timer
+	{
+		private static final ScheduledExecutorService INSTANCE;
+
+		static
+		{
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("helenus-hedged-reads-%d")
+				.setDaemon(true)
+				.build());
+			executor.setRemoveOnCancelPolicy(true);
+			INSTANCE = executor;
+		}
+	}
+}
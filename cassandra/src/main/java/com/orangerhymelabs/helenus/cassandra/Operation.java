@@ -0,0 +1,55 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+/**
+ * The repository operations that can each be given their own ExecutionProfile.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public enum Operation
+{
+	READ("read", true),
+	READ_ALL("readAll", true),
+	EXISTS("exists", true),
+	CREATE("create", false),
+	UPDATE("update", false),
+	UPSERT("upsert", false),
+	DELETE("delete", false);
+
+	private String key;
+	private boolean isRead;
+
+	private Operation(String key, boolean isRead)
+	{
+		this.key = key;
+		this.isRead = isRead;
+	}
+
+	/**
+	 * Returns the name used for this operation in configuration properties (e.g. "readAll").
+	 */
+	public String key()
+	{
+		return key;
+	}
+
+	public boolean isRead()
+	{
+		return isRead;
+	}
+}
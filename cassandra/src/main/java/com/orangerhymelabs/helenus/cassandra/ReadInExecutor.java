@@ -0,0 +1,335 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Executes a multi-key read (readIn) as individual, token-aware statements while keeping a bounded
+ * number of them in flight at once.
+ *
+ * Statements are grouped by the replica set that owns their partition and dispatched round-robin
+ * across those groups, so a large readIn spreads evenly over the cluster instead of flooding the
+ * request queue of whichever host happens to own the first few keys. Duplicate statements (same
+ * routing key and values) are only sent once. Each statement also goes through the session-wide
+ * RequestLimiter, if one is given, and is hedged according to the HedgedReads, if given.
+ *
+ * Results are returned in the order the statements were given. A statement that returns no row
+ * yields Optional.empty() in its position.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ * @param <T> The type marshalled from each row.
+ */
+public class ReadInExecutor<T>
+{
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+	private Session session;
+	private RequestLimiter limiter;
+	private HedgedReads hedgedReads;
+	private String keyspace;
+	private int maxInFlight;
+	private Function<Row, T> marshaller;
+
+	public ReadInExecutor(Session session, String keyspace, int maxInFlight, Function<Row, T> marshaller)
+	{
+		this(session, RequestLimiter.UNLIMITED, keyspace, maxInFlight, marshaller);
+	}
+
+	public ReadInExecutor(Session session, RequestLimiter limiter, String keyspace, int maxInFlight, Function<Row, T> marshaller)
+	{
+		this(session, limiter, HedgedReads.DISABLED, keyspace, maxInFlight, marshaller);
+	}
+
+	public ReadInExecutor(Session session, RequestLimiter limiter, HedgedReads hedgedReads, String keyspace, int maxInFlight, Function<Row, T> marshaller)
+	{
+		super();
+		this.session = session;
+		this.limiter = (limiter != null ? limiter : RequestLimiter.UNLIMITED);
+		this.hedgedReads = (hedgedReads != null ? hedgedReads : HedgedReads.DISABLED);
+		this.keyspace = keyspace;
+		this.maxInFlight = (maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT);
+		this.marshaller = marshaller;
+	}
+
+	public ListenableFuture<List<Optional<T>>> execute(List<BoundStatement> statements)
+	{
+		if (statements == null || statements.isEmpty())
+		{
+			return Futures.immediateFuture(Collections.<Optional<T>>emptyList());
+		}
+
+		return new Execution(statements).start();
+	}
+
+	/**
+	 * Orders the unique statements so that consecutive dispatches target different replica groups.
+	 *
+	 * @param unique the unique statements, keyed by routing key.
+	 * @return a queue of indexes into the unique statement list.
+	 */
+	private Queue<Integer> interleaveByReplicas(List<BoundStatement> unique)
+	{
+		Map<Set<Host>, List<Integer>> groups = new LinkedHashMap<>();
+		Metadata metadata = session.getCluster().getMetadata();
+		Configuration configuration = session.getCluster().getConfiguration();
+		ProtocolVersion protocol = configuration.getProtocolOptions().getProtocolVersion();
+		CodecRegistry codecs = configuration.getCodecRegistry();
+		String quotedKeyspace = Metadata.quote(keyspace);
+
+		for (int i = 0; i < unique.size(); i++)
+		{
+			Set<Host> replicas = Collections.emptySet();
+			ByteBuffer routingKey = unique.get(i).getRoutingKey(protocol, codecs);
+
+			if (routingKey != null)
+			{
+				replicas = metadata.getReplicas(quotedKeyspace, routingKey);
+			}
+
+			List<Integer> group = groups.get(replicas);
+
+			if (group == null)
+			{
+				group = new ArrayList<>();
+				groups.put(replicas, group);
+			}
+
+			group.add(i);
+		}
+
+		Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+		List<Iterator<Integer>> iterators = new ArrayList<>(groups.size());
+
+		for (List<Integer> group : groups.values())
+		{
+			iterators.add(group.iterator());
+		}
+
+		while (!iterators.isEmpty())
+		{
+			Iterator<Iterator<Integer>> i = iterators.iterator();
+
+			while (i.hasNext())
+			{
+				Iterator<Integer> group = i.next();
+
+				if (group.hasNext())
+				{
+					pending.add(group.next());
+				}
+				else
+				{
+					i.remove();
+				}
+			}
+		}
+
+		return pending;
+	}
+
+	private class Execution
+	{
+		private List<BoundStatement> unique = new ArrayList<>();
+		private int[] positions;
+		private AtomicReferenceArray<Optional<T>> results;
+		private Queue<Integer> pending;
+		private AtomicInteger inFlight = new AtomicInteger(0);
+		private AtomicInteger remaining;
+		private SettableFuture<List<Optional<T>>> future = SettableFuture.create();
+
+		public Execution(List<BoundStatement> statements)
+		{
+			super();
+			Map<StatementKey, Integer> indexes = new LinkedHashMap<>();
+			positions = new int[statements.size()];
+
+			for (int i = 0; i < statements.size(); i++)
+			{
+				BoundStatement bs = statements.get(i);
+				StatementKey key = new StatementKey(bs);
+				Integer index = indexes.get(key);
+
+				if (index == null)
+				{
+					index = unique.size();
+					unique.add(bs);
+					indexes.put(key, index);
+				}
+
+				positions[i] = index;
+			}
+
+			results = new AtomicReferenceArray<>(unique.size());
+			remaining = new AtomicInteger(unique.size());
+		}
+
+		public ListenableFuture<List<Optional<T>>> start()
+		{
+			pending = interleaveByReplicas(unique);
+			dispatch();
+			return future;
+		}
+
+		private void dispatch()
+		{
+			while (!future.isDone())
+			{
+				int current = inFlight.get();
+
+				if (current >= maxInFlight) return;
+				if (!inFlight.compareAndSet(current, current + 1)) continue;
+
+				Integer index = pending.poll();
+
+				if (index == null)
+				{
+					inFlight.decrementAndGet();
+					return;
+				}
+
+				submit(index);
+			}
+		}
+
+		private void submit(int index)
+		{
+			ListenableFuture<ResultSet> execution = hedgedReads.execute(unique.get(index), new AsyncFunction<Statement, ResultSet>()
+			{
+				@Override
+				public ListenableFuture<ResultSet> apply(Statement statement)
+				{
+					return limiter.execute(session, statement);
+				}
+			});
+
+			Futures.addCallback(execution, new FutureCallback<ResultSet>()
+			{
+				@Override
+				public void onSuccess(ResultSet rs)
+				{
+					try
+					{
+						results.set(index, (rs.isExhausted() ? Optional.<T>empty() : Optional.ofNullable(marshaller.apply(rs.one()))));
+					}
+					catch (RuntimeException e)
+					{
+						onFailure(e);
+						return;
+					}
+
+					inFlight.decrementAndGet();
+
+					if (remaining.decrementAndGet() == 0)
+					{
+						complete();
+					}
+					else
+					{
+						dispatch();
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable t)
+				{
+					future.setException(t);
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		private void complete()
+		{
+			List<Optional<T>> ordered = new ArrayList<>(positions.length);
+
+			for (int position : positions)
+			{
+				ordered.add(results.get(position));
+			}
+
+			future.set(ordered);
+		}
+	}
+
+	/**
+	 * Identifies duplicate statements within a single readIn by their prepared query and bound values.
+	 */
+	private static class StatementKey
+	{
+		private String query;
+		private List<ByteBuffer> values;
+
+		public StatementKey(BoundStatement bs)
+		{
+			super();
+			this.query = bs.preparedStatement().getQueryString();
+			int count = bs.preparedStatement().getVariables().size();
+			this.values = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++)
+			{
+				values.add(bs.getBytesUnsafe(i));
+			}
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * query.hashCode() + values.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj) return true;
+			if (obj == null || getClass() != obj.getClass()) return false;
+
+			StatementKey that = (StatementKey) obj;
+			return (this.query.equals(that.query) && this.values.equals(that.values));
+		}
+	}
+}
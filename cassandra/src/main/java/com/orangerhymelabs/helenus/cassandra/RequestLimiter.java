@@ -0,0 +1,469 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orangerhymelabs.helenus.exception.RequestRejectedException;
+
+/**
+ * A session-wide admission controller for statements issued by the repositories. At most
+ * maxInFlight statements are outstanding at once, and at most maxInFlightPerHost against any
+ * single replica. Statements that can't be admitted immediately wait (without blocking the
+ * caller) in a bounded FIFO queue. They are failed with a RequestRejectedException if the queue
+ * is full or they wait longer than the queue timeout.
+ *
+ * A statement may be served by any replica of its partition, so it is charged against the
+ * least-loaded of them. Statements without a routing key only count against the global limit.
+ *
+ * Share a single instance between all repositories that use the same Session: register it with
+ * register(Session, RequestLimiter) and every repository created on that session afterwards uses it
+ * (CassandraConfig does this for its sessions).
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class RequestLimiter
+{
+	public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+	public static final int DEFAULT_MAX_IN_FLIGHT_PER_HOST = 256;
+	public static final int DEFAULT_MAX_QUEUED = 4096;
+	public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 1000L;
+
+	/**
+	 * Admits everything, immediately. The default for repositories that haven't been given a limiter.
+	 */
+	public static final RequestLimiter UNLIMITED = new RequestLimiter(0, 0, 0, 0L);
+
+	private static final Map<Session, RequestLimiter> BY_SESSION = Collections.synchronizedMap(new WeakHashMap<Session, RequestLimiter>());
+
+	private int maxInFlight;
+	private int maxInFlightPerHost;
+	private int maxQueued;
+	private long queueTimeoutMillis;
+
+	private int inFlight = 0;
+	private long rejected = 0L;
+	private Map<Host, Integer> inFlightByHost = new HashMap<>();
+	private Deque<Pending> queue = new ArrayDeque<>();
+	private ScheduledExecutorService timer;
+
+	public RequestLimiter()
+	{
+		this(DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT_PER_HOST, DEFAULT_MAX_QUEUED, DEFAULT_QUEUE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param maxInFlight the maximum outstanding statements overall. Zero or less for no global limit.
+	 * @param maxInFlightPerHost the maximum outstanding statements per replica. Zero or less for no per-host limit.
+	 * @param maxQueued the maximum number of statements waiting for a permit. Zero rejects immediately when no permit is available.
+	 * @param queueTimeoutMillis how long a statement may wait for a permit. Zero or less waits indefinitely.
+	 */
+	public RequestLimiter(int maxInFlight, int maxInFlightPerHost, int maxQueued, long queueTimeoutMillis)
+	{
+		super();
+		this.maxInFlight = maxInFlight;
+		this.maxInFlightPerHost = maxInFlightPerHost;
+		this.maxQueued = Math.max(0, maxQueued);
+		this.queueTimeoutMillis = queueTimeoutMillis;
+
+		if (!isUnlimited() && queueTimeoutMillis > 0)
+		{
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("helenus-request-limiter-%d")
+				.setDaemon(true)
+				.build());
+			executor.setRemoveOnCancelPolicy(true);
+			this.timer = executor;
+		}
+	}
+
+	/**
+	 * Set the limiter of the repositories subsequently created on the session.
+	 *
+	 * @param session a session.
+	 * @param limiter a RequestLimiter, or null for no limit.
+	 */
+	public static void register(Session session, RequestLimiter limiter)
+	{
+		if (limiter != null) BY_SESSION.put(session, limiter);
+		else BY_SESSION.remove(session);
+	}
+
+	/**
+	 * Returns the limiter registered for the session, or UNLIMITED if there isn't one.
+	 */
+	public static RequestLimiter of(Session session)
+	{
+		RequestLimiter limiter = (session != null ? BY_SESSION.get(session) : null);
+		return (limiter != null ? limiter : UNLIMITED);
+	}
+
+	public boolean isUnlimited()
+	{
+		return (maxInFlight <= 0 && maxInFlightPerHost <= 0);
+	}
+
+	/**
+	 * Execute the statement as soon as a permit is available.
+	 *
+	 * @param session the session to execute the statement on.
+	 * @param statement the statement to execute.
+	 * @return a future ResultSet, failed with a RequestRejectedException if the statement wasn't admitted.
+	 */
+	public ListenableFuture<ResultSet> execute(Session session, Statement statement)
+	{
+		if (isUnlimited())
+		{
+			return session.executeAsync(statement);
+		}
+
+		Pending request = new Pending(session, statement, replicasFor(session, statement));
+		List<Pending> admitted;
+
+		synchronized (this)
+		{
+			if (queue.isEmpty() && tryAcquire(request))
+			{
+				admitted = Collections.singletonList(request);
+			}
+			else if (queue.size() >= maxQueued)
+			{
+				rejected++;
+				return Futures.immediateFailedFuture(new RequestRejectedException(
+					String.format("Request queue full (%d queued, %d in flight)", queue.size(), inFlight)));
+			}
+			else
+			{
+				queue.add(request);
+				admitted = drain();
+
+				if (!admitted.contains(request) && timer != null)
+				{
+					request.timeout = timer.schedule(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							expire(request);
+						}
+					}, queueTimeoutMillis, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+
+		dispatch(admitted);
+		return request.future;
+	}
+
+	/**
+	 * Returns the number of statements currently outstanding.
+	 */
+	public synchronized int inFlight()
+	{
+		return inFlight;
+	}
+
+	/**
+	 * Returns the number of statements outstanding that were charged against the given host.
+	 */
+	public synchronized int inFlight(Host host)
+	{
+		Integer count = inFlightByHost.get(host);
+		return (count != null ? count : 0);
+	}
+
+	/**
+	 * Returns the number of statements waiting for a permit.
+	 */
+	public synchronized int queued()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * Returns the total number of statements rejected, either because the queue was full or they timed out.
+	 */
+	public synchronized long rejected()
+	{
+		return rejected;
+	}
+
+	/**
+	 * Register in-flight, queued and rejected gauges with the given registry (e.g. Cluster.getMetrics().getRegistry()).
+	 *
+	 * @param registry the metric registry.
+	 * @param prefix a name prefix for the gauges.
+	 */
+	public void registerMetrics(MetricRegistry registry, String prefix)
+	{
+		registry.register(MetricRegistry.name(prefix, "in-flight"), new Gauge<Integer>()
+		{
+			@Override
+			public Integer getValue()
+			{
+				return inFlight();
+			}
+		});
+
+		registry.register(MetricRegistry.name(prefix, "queued"), new Gauge<Integer>()
+		{
+			@Override
+			public Integer getValue()
+			{
+				return queued();
+			}
+		});
+
+		registry.register(MetricRegistry.name(prefix, "rejected"), new Gauge<Long>()
+		{
+			@Override
+			public Long getValue()
+			{
+				return rejected();
+			}
+		});
+	}
+
+	/**
+	 * Stop the queue timeout timer. Statements already queued will still be admitted as permits free up.
+	 */
+	public void shutdown()
+	{
+		if (timer != null)
+		{
+			timer.shutdownNow();
+		}
+	}
+
+	private void dispatch(List<Pending> admitted)
+	{
+		for (Pending request : admitted)
+		{
+			dispatch(request);
+		}
+	}
+
+	private void dispatch(Pending request)
+	{
+		ListenableFuture<ResultSet> future;
+
+		try
+		{
+			future = request.session.executeAsync(request.statement);
+		}
+		catch (RuntimeException e)
+		{
+			future = Futures.immediateFailedFuture(e);
+		}
+
+		Futures.addCallback(future, new FutureCallback<ResultSet>()
+		{
+			@Override
+			public void onSuccess(ResultSet result)
+			{
+				release(request);
+				request.future.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				release(request);
+				request.future.setException(t);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private void release(Pending request)
+	{
+		List<Pending> admitted;
+
+		synchronized (this)
+		{
+			inFlight--;
+
+			if (request.host != null)
+			{
+				int count = inFlightByHost.get(request.host) - 1;
+
+				if (count > 0)
+				{
+					inFlightByHost.put(request.host, count);
+				}
+				else
+				{
+					inFlightByHost.remove(request.host);
+				}
+			}
+
+			admitted = drain();
+		}
+
+		dispatch(admitted);
+	}
+
+	private void expire(Pending request)
+	{
+		synchronized (this)
+		{
+			if (!queue.remove(request)) return;
+
+			rejected++;
+		}
+
+		request.future.setException(new RequestRejectedException(
+			String.format("Request not admitted within %d ms", queueTimeoutMillis)));
+	}
+
+	/**
+	 * Admit as many queued statements as current permits allow, in FIFO order. A statement whose
+	 * replicas are all at their limit doesn't hold up statements for other hosts behind it.
+	 *
+	 * Must be called while holding the lock.
+	 */
+	private List<Pending> drain()
+	{
+		if (queue.isEmpty()) return Collections.emptyList();
+
+		List<Pending> admitted = new ArrayList<>();
+		Iterator<Pending> i = queue.iterator();
+
+		while (i.hasNext() && !isGloballySaturated())
+		{
+			Pending request = i.next();
+
+			if (tryAcquire(request))
+			{
+				i.remove();
+				admitted.add(request);
+
+				if (request.timeout != null)
+				{
+					request.timeout.cancel(false);
+				}
+			}
+		}
+
+		return admitted;
+	}
+
+	private boolean isGloballySaturated()
+	{
+		return (maxInFlight > 0 && inFlight >= maxInFlight);
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private boolean tryAcquire(Pending request)
+	{
+		if (isGloballySaturated()) return false;
+
+		Host host = null;
+
+		if (maxInFlightPerHost > 0 && !request.replicas.isEmpty())
+		{
+			int least = Integer.MAX_VALUE;
+
+			for (Host replica : request.replicas)
+			{
+				int count = inFlight(replica);
+
+				if (count < least)
+				{
+					least = count;
+					host = replica;
+				}
+			}
+
+			if (least >= maxInFlightPerHost) return false;
+
+			inFlightByHost.put(host, least + 1);
+		}
+
+		inFlight++;
+		request.host = host;
+		return true;
+	}
+
+	private Set<Host> replicasFor(Session session, Statement statement)
+	{
+		if (maxInFlightPerHost <= 0) return Collections.emptySet();
+
+		String keyspace = statement.getKeyspace();
+
+		if (keyspace == null)
+		{
+			keyspace = session.getLoggedKeyspace();
+		}
+
+		if (keyspace == null) return Collections.emptySet();
+
+		Configuration configuration = session.getCluster().getConfiguration();
+		ByteBuffer routingKey = statement.getRoutingKey(configuration.getProtocolOptions().getProtocolVersion(), configuration.getCodecRegistry());
+
+		if (routingKey == null) return Collections.emptySet();
+
+		return session.getCluster().getMetadata().getReplicas(Metadata.quote(keyspace), routingKey);
+	}
+
+	private static class Pending
+	{
+		private Session session;
+		private Statement statement;
+		private Set<Host> replicas;
+		private Host host;
+		private Future<?> timeout;
+		private SettableFuture<ResultSet> future = SettableFuture.create();
+
+		public Pending(Session session, Statement statement, Set<Host> replicas)
+		{
+			super();
+			this.session = session;
+			this.statement = statement;
+			this.replicas = replicas;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single page of marshalled rows, plus the opaque paging state needed to resume reading
+ * at the following page (possibly from a different request).
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ * @param <T> The type marshalled from each row.
+ */
+public class ResultPage<T>
+{
+	private List<T> items;
+	private String pagingState;
+
+	public ResultPage(List<T> items, String pagingState)
+	{
+		super();
+		this.items = (items != null ? items : Collections.<T>emptyList());
+		this.pagingState = pagingState;
+	}
+
+	public List<T> items()
+	{
+		return Collections.unmodifiableList(items);
+	}
+
+	public int size()
+	{
+		return items.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return items.isEmpty();
+	}
+
+	/**
+	 * Returns the paging state that resumes reading after this page, or null if this is the last page.
+	 */
+	public String pagingState()
+	{
+		return pagingState;
+	}
+
+	public boolean hasMore()
+	{
+		return (pagingState != null);
+	}
+}
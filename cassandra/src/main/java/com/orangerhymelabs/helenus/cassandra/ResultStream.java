@@ -0,0 +1,182 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * An asynchronous, page-at-a-time view of a (possibly very large) query result. Only one page of
+ * rows is held in memory at a time. As soon as a page has been handed out, the following page is
+ * requested from Cassandra so it is (usually) already available when next() is called again.
+ *
+ * Each page carries the driver's paging state, as an opaque string, so a client can resume the
+ * query in a later request via AbstractCassandraRepository.streamAll(..., pagingState, ...).
+ *
+ * Calls to next() are serialized: each page is produced only after the prior one.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ * @param <T> The type marshalled from each row.
+ */
+public class ResultStream<T>
+{
+	private ListenableFuture<ResultSet> current;
+	private Function<Row, T> marshaller;
+	private AsyncFunction<T, T> completer;
+	private volatile boolean isExhausted = false;
+
+	public ResultStream(ListenableFuture<ResultSet> resultSet, Function<Row, T> marshaller)
+	{
+		this(resultSet, marshaller, null);
+	}
+
+	/**
+	 * @param resultSet the first page.
+	 * @param marshaller marshals each row.
+	 * @param completer finishes each marshalled item asynchronously before its page is handed out, or null.
+	 */
+	public ResultStream(ListenableFuture<ResultSet> resultSet, Function<Row, T> marshaller, AsyncFunction<T, T> completer)
+	{
+		super();
+		this.current = resultSet;
+		this.marshaller = marshaller;
+		this.completer = completer;
+	}
+
+	/**
+	 * Returns true if the last page has been handed out by next().
+	 */
+	public boolean isExhausted()
+	{
+		return isExhausted;
+	}
+
+	/**
+	 * Retrieve the next page of marshalled rows. Once the stream is exhausted, returns an empty page
+	 * with a null paging state.
+	 */
+	public synchronized ListenableFuture<ResultPage<T>> next()
+	{
+		SettableFuture<ResultSet> following = SettableFuture.create();
+		ListenableFuture<ResultSet> previous = current;
+		current = following;
+
+		ListenableFuture<ResultPage<T>> page = Futures.transform(previous, new Function<ResultSet, ResultPage<T>>()
+		{
+			@Override
+			public ResultPage<T> apply(ResultSet rs)
+			{
+				int available = rs.getAvailableWithoutFetching();
+				List<T> items = new ArrayList<>(available);
+
+				for (int i = 0; i < available; i++)
+				{
+					items.add(marshaller.apply(rs.one()));
+				}
+
+				PagingState state = rs.getExecutionInfo().getPagingState();
+
+				if (rs.isFullyFetched())
+				{
+					isExhausted = true;
+					following.set(rs);
+					return new ResultPage<>(items, null);
+				}
+
+				// Prefetch the following page while the caller processes this one.
+				following.setFuture(rs.fetchMoreResults());
+				return new ResultPage<>(items, (state != null ? state.toString() : null));
+			}
+		}, MoreExecutors.directExecutor());
+
+		Futures.addCallback(page, new FutureCallback<ResultPage<T>>()
+		{
+			@Override
+			public void onSuccess(ResultPage<T> result)
+			{
+				// following is set by the transform.
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				following.setException(t);
+			}
+		}, MoreExecutors.directExecutor());
+
+		if (completer == null) return page;
+
+		return Futures.transformAsync(page, new AsyncFunction<ResultPage<T>, ResultPage<T>>()
+		{
+			@Override
+			public ListenableFuture<ResultPage<T>> apply(ResultPage<T> marshalled)
+			{
+				return Futures.transform(AbstractCassandraRepository.completeAll(marshalled.items(), completer), new Function<List<T>, ResultPage<T>>()
+				{
+					@Override
+					public ResultPage<T> apply(List<T> items)
+					{
+						return new ResultPage<>(items, marshalled.pagingState());
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Hand every remaining row to the consumer, one page at a time, without accumulating rows.
+	 *
+	 * @param consumer receives each marshalled row in result order.
+	 * @return a future containing the number of rows consumed.
+	 */
+	public ListenableFuture<Long> forEach(Consumer<? super T> consumer)
+	{
+		return forEach(consumer, 0L);
+	}
+
+	private ListenableFuture<Long> forEach(Consumer<? super T> consumer, long count)
+	{
+		return Futures.transformAsync(next(), new AsyncFunction<ResultPage<T>, Long>()
+		{
+			@Override
+			public ListenableFuture<Long> apply(ResultPage<T> page)
+			{
+				page.items().forEach(consumer);
+				long total = count + page.size();
+
+				if (!page.hasMore())
+				{
+					return Futures.immediateFuture(total);
+				}
+
+				return forEach(consumer, total);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+}
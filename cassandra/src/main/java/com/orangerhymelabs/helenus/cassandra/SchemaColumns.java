@@ -0,0 +1,104 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+
+/**
+ * Brings an existing system table up to date with columns added to its schema since it was first
+ * created. A SchemaProvider's create() calls add() once the table exists, so creating the schema of an
+ * existing keyspace migrates it. Rows read from a table before the migration may lack the new columns;
+ * read them with getString().
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public final class SchemaColumns
+{
+	private static final Logger LOG = LoggerFactory.getLogger(SchemaColumns.class);
+	private static final String ALTER_TABLE = "alter table %s.%s add %s";
+
+	private SchemaColumns()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * Add any of the columns the table doesn't already have. Idempotent.
+	 *
+	 * @param session a session.
+	 * @param keyspace the keyspace.
+	 * @param table the table.
+	 * @param columns the columns, each as a name and type (e.g. "write_mode text").
+	 * @return true if the table has every column.
+	 */
+	public static boolean add(Session session, String keyspace, String table, String... columns)
+	{
+		boolean isComplete = true;
+
+		for (String column : columns)
+		{
+			if (has(session, keyspace, table, column.split(" ")[0])) continue;
+
+			try
+			{
+				session.execute(String.format(ALTER_TABLE, keyspace, table, column));
+			}
+			catch (InvalidQueryException e)
+			{
+				// Added concurrently (e.g. by another node initializing the schema)?
+				if (!has(session, keyspace, table, column.split(" ")[0]))
+				{
+					LOG.error("Column not added to " + keyspace + "." + table + ": " + column, e);
+					isComplete = false;
+				}
+			}
+		}
+
+		return isComplete;
+	}
+
+	/**
+	 * Returns the row's text column, or null if the row doesn't have the column.
+	 */
+	public static String getString(Row row, String column)
+	{
+		return (row.getColumnDefinitions().contains(column) ? row.getString(column) : null);
+	}
+
+	/**
+	 * Returns the table's schema metadata, as last refreshed by the driver, or null if the driver doesn't
+	 * know the table.
+	 */
+	public static TableMetadata table(Session session, String keyspace, String table)
+	{
+		KeyspaceMetadata k = session.getCluster().getMetadata().getKeyspace(keyspace);
+		return (k != null ? k.getTable(table) : null);
+	}
+
+	private static boolean has(Session session, String keyspace, String table, String column)
+	{
+		TableMetadata t = table(session, keyspace, table);
+		return (t != null && t.getColumn(column) != null);
+	}
+}
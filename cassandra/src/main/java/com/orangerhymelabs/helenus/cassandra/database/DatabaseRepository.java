@@ -117,7 +117,7 @@ extends AbstractCassandraRepository<Database, DatabaseStatements>
 		@Query("delete from %s." + Tables.BY_ID + IDENTITY_CQL)
 		PreparedStatement delete();
 
-		@Query("select count(*) from %s." + Tables.BY_ID + IDENTITY_CQL + " limit 1")
+		@Query("select " + Columns.NAME + " from %s." + Tables.BY_ID + IDENTITY_CQL + " limit 1")
 		PreparedStatement exists();
 
 		@Override
@@ -16,38 +16,64 @@
 package com.orangerhymelabs.helenus.cassandra.document;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
-import org.bson.BSON;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.bson.BSON;
+import org.bson.BSONObject;
+
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
 import com.datastax.driver.core.exceptions.CodecNotFoundException;
 import com.datastax.driver.core.exceptions.InvalidTypeException;
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.orangerhymelabs.helenus.cassandra.AbstractCassandraRepository;
+import com.orangerhymelabs.helenus.cassandra.ExecutionProfile;
+import com.orangerhymelabs.helenus.cassandra.ExistenceFilter;
+import com.orangerhymelabs.helenus.cassandra.Operation;
+import com.orangerhymelabs.helenus.cassandra.FilteredStream;
+import com.orangerhymelabs.helenus.cassandra.ResultStream;
+import com.orangerhymelabs.helenus.cassandra.SchemaColumns;
 import com.orangerhymelabs.helenus.cassandra.document.AbstractDocumentRepository.DocumentStatements;
-import com.orangerhymelabs.helenus.cassandra.table.key.KeyComponent;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
+import com.orangerhymelabs.helenus.cassandra.table.WriteMode;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionParser;
+import com.orangerhymelabs.helenus.exception.DuplicateItemException;
 import com.orangerhymelabs.helenus.exception.InvalidIdentifierException;
+import com.orangerhymelabs.helenus.exception.ItemNotFoundException;
 import com.orangerhymelabs.helenus.exception.StorageException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
+import com.orangerhymelabs.helenus.persistence.PreparedStatementCache;
 import com.orangerhymelabs.helenus.persistence.StatementFactory;
 
 /**
@@ -66,6 +92,10 @@ extends AbstractCassandraRepository<Document, DocumentStatements>
 		static final String OBJECT = "object";
 		static final String CREATED_AT = "created_at";
 		static final String UPDATED_AT = "updated_at";
+		static final String OBJECT_TTL = "object_ttl";
+		static final String VERSION = "version";
+		static final String CHUNK = "chunk";
+		static final String DATA = "data";
 	}
 
 	public static class Schema
@@ -83,12 +113,26 @@ extends AbstractCassandraRepository<Document, DocumentStatements>
 		")" +
 		" %s";										// clustering order (optional)
 
+		// Large documents' chunks (see DocumentChunks). Each document is a partition, with its chunks in order.
+		private static final String CREATE_CHUNK_TABLE = "create table if not exists %s.%s" +
+		"(" +
+			"%s," +									// identifying properties
+			Columns.VERSION + " timeuuid," +
+			Columns.CHUNK + " int," +
+			Columns.DATA + " blob," +
+			"primary key ((%s), " + Columns.VERSION + ", " + Columns.CHUNK + ")" +
+		")" +
+		" %s";										// expiry (optional)
+
+		private static final String ALTER_TABLE = "alter table %s.%s with %s;";
+
 		public boolean drop(Session session, String keyspace, String table)
         {
 			ResultSetFuture rs = session.executeAsync(String.format(DROP_TABLE, keyspace, table));
+			ResultSetFuture chunks = session.executeAsync(String.format(DROP_TABLE, keyspace, table + DocumentChunks.TABLE_SUFFIX));
 	        try
 	        {
-				return rs.get().wasApplied();
+				return rs.get().wasApplied() && chunks.get().wasApplied();
 			}
 	        catch (InterruptedException | ExecutionException e)
 	        {
@@ -100,10 +144,24 @@ extends AbstractCassandraRepository<Document, DocumentStatements>
 
         public boolean create(Session session, String keyspace, String table, KeyDefinition key)
         {
-			ResultSetFuture rs = session.executeAsync(String.format(CREATE_TABLE, keyspace, table, key.asColumns(), key.asPrimaryKey(), key.asClusteringKey()));
+			return create(session, keyspace, table, key, 0L);
+        }
+
+        /**
+         * Create the document table (and its chunk table) with a default TTL. Tables with a TTL use
+         * time-window compaction, so whole SSTables of expired documents are dropped instead of compacted.
+         * 
+         * @param ttl the default TTL in seconds, or zero for none.
+         */
+        public boolean create(Session session, String keyspace, String table, KeyDefinition key, long ttl)
+        {
+			String clustering = key.asClusteringKey();
+			String options = (clustering.isEmpty() ? withTtl(ttl) : clustering + (ttl > 0 ? " and " + ttlOptions(ttl) : ""));
+			ResultSetFuture rs = session.executeAsync(String.format(CREATE_TABLE, keyspace, table, key.asColumns(), key.asPrimaryKey(), options));
+			ResultSetFuture chunks = session.executeAsync(String.format(CREATE_CHUNK_TABLE, keyspace, table + DocumentChunks.TABLE_SUFFIX, key.asColumns(), key.asSelectProperties(), withTtl(ttl)));
 			try
 			{
-				return rs.get().wasApplied();
+				return rs.get().wasApplied() && chunks.get().wasApplied();
 			}
 			catch (InterruptedException | ExecutionException e)
 			{
@@ -112,393 +170,1838 @@ extends AbstractCassandraRepository<Document, DocumentStatements>
 			
 			return false;
         }
+
+        /**
+         * Change the default TTL (and compaction strategy to suit) of an existing document table and its
+         * chunk table. Documents already written keep the TTL they were written with. A table whose TTL
+         * is already the given one isn't altered, so its compaction settings are left as they are. Going
+         * to no TTL only resets compaction if it's the time-window compaction a TTL set.
+         * 
+         * @param ttl the default TTL in seconds, or zero for none.
+         * @return a future containing true if both tables have the TTL.
+         */
+        public ListenableFuture<Boolean> ttl(Session session, String keyspace, String table, long ttl)
+        {
+			List<ListenableFuture<ResultSet>> alters = new ArrayList<>();
+			alterTtl(session, keyspace, table, ttl, alters);
+			alterTtl(session, keyspace, table + DocumentChunks.TABLE_SUFFIX, ttl, alters);
+
+			if (alters.isEmpty()) return Futures.immediateFuture(true);
+
+			ListenableFuture<Boolean> altered = Futures.transform(Futures.allAsList(alters), new Function<List<ResultSet>, Boolean>()
+			{
+				@Override
+				public Boolean apply(List<ResultSet> results)
+				{
+					for (ResultSet rs : results)
+					{
+						if (!rs.wasApplied()) return false;
+					}
+
+					return true;
+				}
+			}, MoreExecutors.directExecutor());
+
+			return Futures.catching(altered, Exception.class, new Function<Exception, Boolean>()
+			{
+				@Override
+				public Boolean apply(Exception e)
+				{
+					LOG.error("Document schema TTL change failed", e);
+					return false;
+				}
+			}, MoreExecutors.directExecutor());
+        }
+
+        private static void alterTtl(Session session, String keyspace, String table, long ttl, List<ListenableFuture<ResultSet>> alters)
+        {
+			TableMetadata metadata = SchemaColumns.table(session, keyspace, table);
+			int current = (metadata != null ? metadata.getOptions().getDefaultTimeToLive() : -1);
+
+			if (current == ttl) return;
+
+			String options;
+
+			if (ttl > 0) options = ttlOptions(ttl);
+			else if (isTimeWindow(metadata)) options = "default_time_to_live = 0 and compaction = {'class': 'SizeTieredCompactionStrategy'}";
+			else options = "default_time_to_live = 0";
+
+			alters.add(session.executeAsync(String.format(ALTER_TABLE, keyspace, table, options)));
+        }
+
+        private static boolean isTimeWindow(TableMetadata metadata)
+        {
+			if (metadata == null) return false;
+
+			String strategy = metadata.getOptions().getCompaction().get("class");
+			return (strategy != null && strategy.endsWith("TimeWindowCompactionStrategy"));
+        }
+
+        private static String withTtl(long ttl)
+        {
+			return (ttl > 0 ? "with " + ttlOptions(ttl) : "");
+        }
+
+        /**
+         * Returns the table options for a default TTL: time-window compaction with windows of about a
+         * twentieth of the TTL, so only a few dozen windows are live at once.
+         */
+        private static String ttlOptions(long ttl)
+        {
+			long window = Math.max(60L, ttl / 20);
+			String unit;
+			long size;
+
+			if (window >= 86400L)
+			{
+				unit = "DAYS";
+				size = window / 86400L;
+			}
+			else if (window >= 3600L)
+			{
+				unit = "HOURS";
+				size = window / 3600L;
+			}
+			else
+			{
+				unit = "MINUTES";
+				size = window / 60L;
+			}
+
+			return String.format("default_time_to_live = %d and compaction = {'class': 'TimeWindowCompactionStrategy', "
+				+ "'compaction_window_unit': '%s', 'compaction_window_size': '%d', 'unchecked_tombstone_compaction': 'true'}", ttl, unit, size);
+        }
 	}
 
 	public static class DocumentStatements
 	implements StatementFactory
 	{
-		private static final String CREATE = "create";
-		private static final String DELETE = "delete";
-		private static final String EXISTS = "exists";
-		private static final String READ = "read";
-		private static final String READ_ALL = "readAll";
-		private static final String UPDATE = "update";
-		private static final String UPSERT = "upsert";
-
+		private PreparedStatementCache statements;
+		private String create;
+		private String delete;
+		private String exists;
+		private String read;
+		private String readAll;
+		private String update;
+		private String unconditionalUpdate;
+		private String patch;
+		private String upsert;
+		private String readKeys;
+		private String readSample;
+		private String readRange;
+		private String scan;
+		private String aggregate;
 		private KeyDefinition keys;
-		private Session session;
-		private String keyspace;
-		private String tableName;
-		private Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+		private String writeChunk;
+		private String readChunks;
+		private String deleteChunks;
+		private String deleteChunkVersion;
+		private String readStored;
 
 		public DocumentStatements(Session session, String keyspace, String tableName, KeyDefinition keys)
 		throws KeyDefinitionException
 		{
 			super();
-			this.session = session;
-			this.keyspace = keyspace;
-			this.tableName = tableName;
+			this.statements = PreparedStatementCache.of(session);
 			this.keys = keys;
+			this.create = String.format("insert into %s.%s (%s, %s, %s, %s) values (%s) if not exists using ttl ?",
+				keyspace,
+				tableName,
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				keys.asQuestionMarks(3));
+			this.delete = String.format("delete from %s.%s where %s",
+				keyspace,
+				tableName,
+				keys.asIdentityClause());
+			this.exists = String.format("select %s from %s.%s where %s limit 1",
+				keys.components().get(0).property(),
+				keyspace,
+				tableName,
+				keys.asIdentityClause());
+			this.read = String.format("select %s, %s, %s, %s, ttl(%s) as %s from %s.%s where %s limit 1",
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				Columns.OBJECT,
+				Columns.OBJECT_TTL,
+				keyspace,
+				tableName,
+				keys.asIdentityClause());
+			this.readAll = String.format("select %s, %s, %s, %s from %s.%s where %s",
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				keyspace,
+				tableName,
+				keys.asPartitionIdentityClause());
+			this.update = String.format("update %s.%s using ttl ? set %s = ?, %s = ? where %s if exists",
+				keyspace,
+				tableName,
+				Columns.OBJECT,
+				Columns.UPDATED_AT,
+				keys.asIdentityClause());
+			this.unconditionalUpdate = String.format("update %s.%s using ttl ? set %s = ?, %s = ? where %s",
+				keyspace,
+				tableName,
+				Columns.OBJECT,
+				Columns.UPDATED_AT,
+				keys.asIdentityClause());
+			this.patch = String.format("update %s.%s using ttl ? set %s = ?, %s = ? where %s if %s = ?",
+				keyspace,
+				tableName,
+				Columns.OBJECT,
+				Columns.UPDATED_AT,
+				keys.asIdentityClause(),
+				Columns.UPDATED_AT);
+			this.upsert = String.format("insert into %s.%s (%s, %s, %s, %s) values (%s) using ttl ?",
+				keyspace,
+				tableName,
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				keys.asQuestionMarks(3));
+			this.readKeys = String.format("select %s from %s.%s",
+				keys.asSelectProperties(),
+				keyspace,
+				tableName);
+			this.readSample = String.format("select %s, %s from %s.%s limit ?",
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				keyspace,
+				tableName);
+			this.readRange = String.format("select %s, %s, %s, %s from %s.%s where ",
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				keyspace,
+				tableName);
+			this.scan = String.format("select %s, %s, %s, %s from %s.%s",
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				keyspace,
+				tableName);
+			this.aggregate = String.format("select %%s from %s.%s",
+				keyspace,
+				tableName);
+
+			String chunkTable = tableName + DocumentChunks.TABLE_SUFFIX;
+			this.writeChunk = String.format("insert into %s.%s (%s, %s, %s, %s) values (%s) using ttl ?",
+				keyspace,
+				chunkTable,
+				keys.asSelectProperties(),
+				Columns.VERSION,
+				Columns.CHUNK,
+				Columns.DATA,
+				keys.asQuestionMarks(3));
+			this.readChunks = String.format("select %s, %s from %s.%s where %s and %s = ?",
+				Columns.CHUNK,
+				Columns.DATA,
+				keyspace,
+				chunkTable,
+				keys.asIdentityClause(),
+				Columns.VERSION);
+			this.deleteChunks = String.format("delete from %s.%s where %s",
+				keyspace,
+				chunkTable,
+				keys.asIdentityClause());
+			this.deleteChunkVersion = String.format("delete from %s.%s where %s and %s = ?",
+				keyspace,
+				chunkTable,
+				keys.asIdentityClause(),
+				Columns.VERSION);
+			this.readStored = String.format("select %s, %s from %s.%s where %s limit 1",
+				Columns.OBJECT,
+				Columns.UPDATED_AT,
+				keyspace,
+				tableName,
+				keys.asIdentityClause());
+		}
+
+		/**
+		 * Prepare all of this table's statements asynchronously.
+		 * 
+		 * @return a future that completes when every statement is prepared.
+		 */
+		public ListenableFuture<List<PreparedStatement>> prepareAll()
+		{
+			return statements.warm(Arrays.asList(create, delete, exists, read, readAll, update, unconditionalUpdate, upsert));
+		}
+
+		/**
+		 * Prepare the chunk table's statements asynchronously. Fails if the table has no chunk table
+		 * (e.g. it was created before chunking was added).
+		 */
+		public ListenableFuture<List<PreparedStatement>> prepareChunks()
+		{
+			return statements.warm(Arrays.asList(writeChunk, readChunks, deleteChunks, deleteChunkVersion, readStored));
 		}
 
 		@Override
 		public PreparedStatement create()
 		{
-			PreparedStatement ps = statements.get(CREATE);
+			return statements.get(create);
+		}
 
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("insert into %s.%s (%s, %s, %s, %s) values (%s) if not exists",
-						keyspace,
-						tableName,
-						keys.asSelectProperties(),
-						Columns.OBJECT,
-						Columns.CREATED_AT,
-						Columns.UPDATED_AT,
-						keys.asQuestionMarks(3))).get();
-					statements.put(CREATE, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing create() statement", e);
-				}
-			}
+		@Override
+		public PreparedStatement delete()
+		{
+			return statements.get(delete);
+		}
 
-			return ps;
+		public PreparedStatement exists()
+		{
+			return statements.get(exists);
 		}
 
 		@Override
-		public PreparedStatement delete()
+		public PreparedStatement update()
 		{
-			PreparedStatement ps = statements.get(DELETE);
+			return statements.get(update);
+		}
 
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("delete from %s.%s where %s",
-						keyspace,
-						tableName,
-						keys.asIdentityClause())).get();
-					statements.put(DELETE, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing delete() statement", e);
-				}
-			}
+		/**
+		 * An update without the 'if exists' condition. Updating a missing document creates it.
+		 */
+		public PreparedStatement unconditionalUpdate()
+		{
+			return statements.get(unconditionalUpdate);
+		}
 
-			return ps;
+		/**
+		 * An update conditional on the document's updated_at being unchanged since it was read.
+		 */
+		public PreparedStatement patch()
+		{
+			return statements.get(patch);
 		}
 
-		public PreparedStatement exists()
+		public PreparedStatement upsert()
 		{
-			PreparedStatement ps = statements.get(EXISTS);
+			return statements.get(upsert);
+		}
 
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("select count(*) from %s.%s  where %s limit 1",
-						keyspace,
-						tableName,
-						keys.asIdentityClause())).get();
-					statements.put(EXISTS, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing exists() statement", e);
-				}
-			}
+		/**
+		 * Selects the identifying columns of every document in the table (a full scan).
+		 */
+		public PreparedStatement readKeys()
+		{
+			return statements.get(readKeys);
+		}
 
-			return ps;
+		/**
+		 * Selects the identifying columns and object of up to 'limit' documents, from wherever the scan starts.
+		 */
+		public PreparedStatement readSample()
+		{
+			return statements.get(readSample);
 		}
 
-		@Override
-		public PreparedStatement update()
+		/**
+		 * Prepares (or returns the already prepared) statement selecting the documents of a range query,
+		 * without blocking. There's one statement per shape of query.
+		 * 
+		 * @throws IllegalArgumentException if the query doesn't fit the table's key.
+		 */
+		public ListenableFuture<PreparedStatement> readRange(RangeQuery query)
 		{
-			PreparedStatement ps = statements.get(UPDATE);
+			return statements.prepareAsync(readRange + query.asClauses(keys));
+		}
 
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("update %s.%s set %s = ?, %s = ? where %s if exists",
-						keyspace,
-						tableName,
-						Columns.OBJECT,
-						Columns.UPDATED_AT,
-						keys.asIdentityClause())).get();
-					statements.put(UPDATE, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing update() statement", e);
-				}
-			}
+		/**
+		 * Selects every document in the table (a full scan), without blocking.
+		 */
+		public ListenableFuture<PreparedStatement> scan()
+		{
+			return statements.prepareAsync(scan);
+		}
+
+		/**
+		 * Prepares (or returns the already prepared) statement computing a pushed-down aggregation over a
+		 * range query, or the whole table, without blocking.
+		 * 
+		 * @param range the partition slice, or null for the whole table.
+		 * @throws IllegalArgumentException if the range doesn't fit the table's key.
+		 */
+		public ListenableFuture<PreparedStatement> aggregate(Aggregation aggregation, RangeQuery range)
+		{
+			StringBuilder cql = new StringBuilder(String.format(aggregate, aggregation.asSelectors()));
 
-			return ps;
+			if (range != null) cql.append(" where ").append(range.asClauses(keys));
+
+			String groupBy = aggregation.asGroupByClause();
+
+			if (!groupBy.isEmpty()) cql.append(" ").append(groupBy);
+
+			return statements.prepareAsync(cql.toString());
 		}
 
-		public PreparedStatement upsert()
+		public PreparedStatement writeChunk()
 		{
-			PreparedStatement ps = statements.get(UPSERT);
+			return statements.get(writeChunk);
+		}
 
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("insert into %s.%s (%s, %s, %s, %s) values (%s)",
-						keyspace,
-						tableName,
-						keys.asSelectProperties(),
-						Columns.OBJECT,
-						Columns.CREATED_AT,
-						Columns.UPDATED_AT,
-						keys.asQuestionMarks(3))).get();
-					statements.put(UPSERT, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing upsert() statement", e);
-				}
-			}
+		/**
+		 * Selects the chunks of one version of a document, in order.
+		 */
+		public PreparedStatement readChunks()
+		{
+			return statements.get(readChunks);
+		}
 
-			return ps;
+		/**
+		 * Deletes every version of a document's chunks.
+		 */
+		public PreparedStatement deleteChunks()
+		{
+			return statements.get(deleteChunks);
 		}
 
-		@Override
-		public PreparedStatement read()
+		public PreparedStatement deleteChunkVersion()
 		{
-			PreparedStatement ps = statements.get(READ);
+			return statements.get(deleteChunkVersion);
+		}
 
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("select %s from %s.%s where %s limit 1",
-						keys.asSelectProperties(),
-						keyspace,
-						tableName,
-						keys.asIdentityClause())).get();
-					statements.put(READ, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing read() statement", e);
-				}
-			}
+		/**
+		 * Selects a document's stored object (a chunk manifest, if it's chunked) and updated_at, without
+		 * reading its chunks.
+		 */
+		public PreparedStatement readStored()
+		{
+			return statements.get(readStored);
+		}
 
-			return ps;
+		@Override
+		public PreparedStatement read()
+		{
+			return statements.get(read);
 		}
 
 		@Override
 		public PreparedStatement readAll()
 		{
-			PreparedStatement ps = statements.get(READ_ALL);
-
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("select %s from %s.%s where %s",
-						keys.asSelectProperties(),
-						keyspace,
-						tableName,
-						keys.asPartitionIdentityClause())).get();
-					statements.put(READ_ALL, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing readAll() statement", e);
-				}
-			}
-
-			return ps;
+			return statements.get(readAll);
 		}
 	}
 
+	public static final int DEFAULT_BATCH_SIZE = 50;
+	public static final int MAX_PATCH_ATTEMPTS = 10;
+
+	// How many times a read of a chunked document is retried when its chunks are replaced while being read.
+	public static final int MAX_CHUNK_READ_ATTEMPTS = 3;
+	public static final int MAX_TTL = 630720000; // Cassandra's limit: 20 years, in seconds.
+
+	// Unconditional writes can be safely retried.
+	private static final ExecutionProfile IDEMPOTENT = ExecutionProfile.DEFAULT.withIdempotent(true);
+
+	// Chunks are read a few at a time, so the coordinator never holds a whole large document.
+	private static final int CHUNKS_PER_PAGE = 4;
+	private static final ExecutionProfile CHUNK_PAGES = ExecutionProfile.DEFAULT.withFetchSize(CHUNKS_PER_PAGE);
+
+	// The last write timestamp handed out (see nextTimestamp()).
+	private static final AtomicLong LAST_TIMESTAMP = new AtomicLong();
+
 	private String tableName;
 	private KeyDefinition keyDefinition;
+	private DocumentRowMapper rowMapper;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private WriteMode writeMode = WriteMode.CONDITIONAL;
+	private ExistenceFilter existenceFilter;
+	private DocumentCache cache;
+	private DocumentCompressor compressor = new DocumentCompressor(Compression.NONE);
+	private volatile DocumentChunks chunks = new DocumentChunks();
+	private int ttl = 0;
+	private AsyncFunction<Document, Document> chunkReader = new AsyncFunction<Document, Document>()
+	{
+		@Override
+		public ListenableFuture<Document> apply(Document document)
+		{
+			return Futures.transformAsync(readChunks(document), dictionaryReader, MoreExecutors.directExecutor());
+		}
+	};
+	private AsyncFunction<Document, Document> dictionaryReader = new AsyncFunction<Document, Document>()
+	{
+		@Override
+		public ListenableFuture<Document> apply(Document document)
+		{
+			return readDictionary(document);
+		}
+	};
 
 	public AbstractDocumentRepository(Session session, String keyspace, String tableName, String keys)
 	throws KeyDefinitionException
 	{
 		super(session, keyspace);
 		this.keyDefinition = new KeyDefinitionParser().parse(keys);
+		this.rowMapper = new DocumentRowMapper(keyDefinition);
 		this.tableName = tableName;
 		statementFactory(new DocumentStatements(session, keyspace, tableName, keyDefinition));
 	}
 
-	public ListenableFuture<Boolean> exists(Identifier id)
+	/**
+	 * Prepare all of this repository's statements without blocking. Once the returned future completes,
+	 * no repository operation waits on statement preparation, and the compressor's dictionaries are loaded.
+	 * A table without a chunk table (e.g. one created before chunking was added) is still prepared, with
+	 * chunking disabled: its documents are always stored whole.
+	 * 
+	 * @return a future containing this repository, once its statements are prepared.
+	 */
+	public ListenableFuture<AbstractDocumentRepository> prepareStatements()
 	{
-		ListenableFuture<ResultSet> future = submitExists(id);
-		return Futures.transform(future, new Function<ResultSet, Boolean>()
+		AbstractDocumentRepository repository = this;
+		ListenableFuture<?> chunkStatements = Futures.catching(statementFactory().prepareChunks(), Exception.class, new Function<Exception, List<PreparedStatement>>()
 		{
 			@Override
-			public Boolean apply(ResultSet result)
+			public List<PreparedStatement> apply(Exception e)
 			{
-				return result.one().getLong(0) > 0;
+				LOG.warn("Chunk statements not prepared for " + tableName + "; chunking disabled", e);
+				repository.chunks(DocumentChunks.DISABLED);
+				return Collections.emptyList();
 			}
 		}, MoreExecutors.directExecutor());
-	}
 
-	public ListenableFuture<Document> upsert(Document entity)
-	{
-		ListenableFuture<ResultSet> future = submitUpsert(entity);
-		return Futures.transformAsync(future, new AsyncFunction<ResultSet, Document>()
+		return Futures.whenAllSucceed(statementFactory().prepareAll(), chunkStatements, compressor.loaded()).call(new Callable<AbstractDocumentRepository>()
 		{
 			@Override
-			public ListenableFuture<Document> apply(ResultSet result)
-			throws Exception
+			public AbstractDocumentRepository call()
 			{
-				if (result.wasApplied())
-				{
-					return Futures.immediateFuture(entity);
-				}
-
-				//TODO: This doesn't provide any informational value... what should it be?
-				return Futures.immediateFailedFuture(new StorageException(String.format("Table %s failed to store document: %s", tableName, entity.toString())));
+				return repository;
 			}
 		}, MoreExecutors.directExecutor());
 	}
 
-	@Override
-	protected ResultSetFuture submitCreate(Document document)
+	/**
+	 * Create the document only if it doesn't already exist (a lightweight transaction), regardless of the
+	 * table's write mode.
+	 * 
+	 * @param entity the document to create.
+	 * @param profile a per-request ExecutionProfile, or null.
+	 * @return the document, or a failed future with DuplicateItemException.
+	 */
+	public ListenableFuture<Document> createIfNotExists(Document entity, ExecutionProfile profile)
 	{
-		BoundStatement create = new BoundStatement(statementFactory().create());
-		bindCreate(create, document);
-		return session().executeAsync(create);
+		return created(submitConditionalCreate(entity, profile), entity);
 	}
 
-	@Override
-	protected ResultSetFuture submitDelete(Identifier id)
+	/**
+	 * Update the document only if it already exists (a lightweight transaction), regardless of the
+	 * table's write mode.
+	 * 
+	 * @param entity the document to update.
+	 * @param profile a per-request ExecutionProfile, or null.
+	 * @return the document, or a failed future with ItemNotFoundException.
+	 */
+	public ListenableFuture<Document> updateIfExists(Document entity, ExecutionProfile profile)
 	{
-		BoundStatement delete = new BoundStatement(statementFactory().delete());
-		bindIdentity(delete, id);
-		return session().executeAsync(delete);
+		return updated(submitConditionalUpdate(entity, profile), entity);
 	}
 
-	protected ListenableFuture<ResultSet> submitExists(Identifier id)
+	/**
+	 * Set how create() and update() (and createAll()) write documents. CONDITIONAL checks for existence
+	 * with a lightweight transaction; UNCONDITIONAL writes without checking.
+	 * 
+	 * @param writeMode the write mode, or null for CONDITIONAL.
+	 */
+	public void writeMode(WriteMode writeMode)
 	{
-		BoundStatement bs = new BoundStatement(statementFactory().exists());
-		bindIdentity(bs, id);
-		return session().executeAsync(bs);
+		this.writeMode = (writeMode != null ? writeMode : WriteMode.CONDITIONAL);
 	}
 
-	@Override
-	protected ResultSetFuture submitUpdate(Document document)
+	public WriteMode writeMode()
 	{
-		BoundStatement update = new BoundStatement(statementFactory().update());
-		bindUpdate(update, document);
-		return session().executeAsync(update);
+		return writeMode;
 	}
 
-	protected ResultSetFuture submitUpsert(Document document)
+	public String tableName()
 	{
-		BoundStatement upsert = new BoundStatement(statementFactory().upsert());
-		bindCreate(upsert, document);
-		return session().executeAsync(upsert);
+		return tableName;
 	}
 
-	@Override
-	protected void bindCreate(BoundStatement bs, Document document)
+	/**
+	 * Set how documents are compressed in the object column. Compressed documents are read back
+	 * whatever the compressor's setting.
+	 * 
+	 * @param compressor a DocumentCompressor shared by all of this table's repositories.
+	 */
+	public void compressor(DocumentCompressor compressor)
 	{
-		Date now = new Date();
-		document.createdAt(now);
-		document.updatedAt(now);
-		Identifier id = document.identifier();
-		Object[] values = new Object[id.size() + 3]; // Identifier + object + createdAt + updatedAt.
+		this.compressor = compressor;
+		rowMapper.compressor(compressor);
+	}
+
+	public DocumentCompressor compressor()
+	{
+		return compressor;
+	}
+
+	/**
+	 * Set the TTL of documents written without one of their own (see Document.ttl()). Every write
+	 * restarts the document's TTL, except that created_at keeps the TTL it was created with.
+	 * 
+	 * @param seconds the table's (or view's) TTL in seconds, or zero for none.
+	 */
+	public void ttl(long seconds)
+	{
+		if (seconds < 0 || seconds > MAX_TTL) throw new IllegalArgumentException("Invalid TTL: " + seconds);
 
+		this.ttl = (int) seconds;
+	}
+
+	public int ttl()
+	{
+		return ttl;
+	}
+
+	private int ttlFor(Document document)
+	{
+		return (document.hasTtl() ? document.ttl() : ttl);
+	}
+
+	/**
+	 * Set when documents are split into chunks instead of being stored in a single cell. Chunked
+	 * documents already stored are read back whatever the setting.
+	 * 
+	 * @param chunks the chunking thresholds, or null (or DocumentChunks.DISABLED) to store every document whole.
+	 */
+	public void chunks(DocumentChunks chunks)
+	{
+		this.chunks = (chunks != null ? chunks : DocumentChunks.DISABLED);
+	}
+
+	public DocumentChunks chunks()
+	{
+		return chunks;
+	}
+
+	/**
+	 * Read up to 'limit' documents from an arbitrary part of the table, e.g. to train a compression
+	 * dictionary. Only the identifier and object are populated.
+	 * 
+	 * @param limit the maximum number of documents.
+	 * @return a future containing the documents.
+	 */
+	public ListenableFuture<List<Document>> readSample(int limit)
+	{
+		return readAll(statementFactory().readSample(), limit);
+	}
+
+	/**
+	 * Stream a slice of one partition by its clustering key, a page at a time.
+	 * 
+	 * @param query the partition, clustering key prefix and bounds, order and limit.
+	 * @param fetchSize the number of documents per page. Zero or less uses the READ_ALL profile fetch size, if set, otherwise fetchSize().
+	 * @param pagingState an opaque paging state from a prior ResultPage of the same query, or null to start at the beginning.
+	 * @return a ResultStream over the documents, or failed with IllegalArgumentException if the query doesn't fit the table's key.
+	 */
+	public ResultStream<Document> streamRange(RangeQuery query, int fetchSize, String pagingState)
+	{
+		return streamRange(query, null, fetchSize, pagingState);
+	}
+
+	public ResultStream<Document> streamRange(RangeQuery query, ExecutionProfile profile, int fetchSize, String pagingState)
+	{
 		try
 		{
-			fill(values, 0, id.components().toArray());
-			fill(values, id.size(),
-					(document.hasObject() ? ByteBuffer.wrap(BSON.encode(document.object())) : null),
-				    document.createdAt(),
-				    document.updatedAt());
-			bs.bind(values);
+			return streamAll(statementFactory().readRange(query), profile, fetchSize, pagingState, query.parameters());
 		}
-		catch (InvalidTypeException | CodecNotFoundException e)
+		catch (IllegalArgumentException e)
 		{
-			throw new InvalidIdentifierException(e);
+			return new ResultStream<Document>(Futures.<ResultSet>immediateFailedFuture(e), rowMarshaller(), completer());
 		}
 	}
 
-	@Override
-	protected void bindUpdate(BoundStatement bs, Document document)
+	/**
+	 * Stream the documents matching a query, a page at a time. Conditions on the key are pushed down
+	 * to a slice of one partition where possible, otherwise the table is scanned. The remaining
+	 * conditions filter each page as it's read, and reading stops once the query's limit is reached.
+	 * 
+	 * @param query the predicates, order and limit.
+	 * @param fetchSize the number of documents per underlying page. Zero or less uses the READ_ALL profile fetch size, if set, otherwise fetchSize().
+	 * @param pagingState an opaque paging state from a prior ResultPage of the same query, or null to start at the beginning.
+	 * @return a FilteredStream over the matching documents, or failed with IllegalArgumentException if the query can't be planned for the table's key.
+	 */
+	public FilteredStream<Document> streamQuery(DocumentQuery query, int fetchSize, String pagingState)
 	{
-		document.updatedAt(new Date());
-		Identifier id = document.identifier();
-		Object[] values = new Object[id.size() + 2];
+		return streamQuery(query, null, fetchSize, pagingState);
+	}
 
+	public FilteredStream<Document> streamQuery(DocumentQuery query, ExecutionProfile profile, int fetchSize, String pagingState)
+	{
 		try
 		{
-			if (document.hasObject())
-			{
-				fill(values, 0, ByteBuffer.wrap(BSON.encode(document.object())),
-					document.updatedAt());
-				fill(values, 2, id.components().toArray());
-			}
-			else
-			{
-				fill(values, 0, null, document.updatedAt());
-				fill(values, 2, id.components().toArray());
-			}
-
-			bs.bind(values);
+			return streamQuery(query.plan(keyDefinition), profile, fetchSize, pagingState);
 		}
-		catch (InvalidTypeException | CodecNotFoundException e)
+		catch (IllegalArgumentException e)
 		{
-			throw new InvalidIdentifierException(e);
+			return new FilteredStream<Document>(new ResultStream<Document>(Futures.<ResultSet>immediateFailedFuture(e), rowMarshaller(), completer()), null, 0);
 		}
 	}
 
-	private void fill(Object[] array, int offset, Object... values)
+	private FilteredStream<Document> streamQuery(DocumentQuery.Plan plan, ExecutionProfile profile, int fetchSize, String pagingState)
 	{
-		for (int i = offset; i < values.length + offset; i++)
-		{
-			array[i] = values[i - offset];
-		}
+		ResultStream<Document> results = (plan.range() != null
+			? streamRange(plan.range(), profile, fetchSize, pagingState)
+			: streamAll(statementFactory().scan(), profile, fetchSize, pagingState));
+		return new FilteredStream<Document>(results, plan.residual(), plan.limit());
 	}
 
-	@Override
-	protected Document marshalRow(Row row)
+	/**
+	 * Compute an aggregation over the documents matching its query. Cassandra computes it where it can
+	 * (see Aggregation), otherwise the matching documents are read a page at a time and aggregated as
+	 * they go, so memory use depends on the number of groups, not documents.
+	 * 
+	 * @return a future containing a result per group, or failed with IllegalArgumentException if the query can't be planned for the table's key.
+	 */
+	public ListenableFuture<List<BSONObject>> aggregate(Aggregation aggregation)
 	{
-		if (row == null)
+		return aggregate(aggregation, null);
+	}
+
+	public ListenableFuture<List<BSONObject>> aggregate(Aggregation aggregation, ExecutionProfile profile)
+	{
+		try
 		{
-			return null;
-		}
+			DocumentQuery.Plan plan = aggregation.query().plan(keyDefinition);
 
-		Document d = new Document();
-		d.identifier(marshalId(keyDefinition, row));
-		ByteBuffer b = row.getBytes(Columns.OBJECT);
+			if (aggregation.isPushedDown(keyDefinition, plan))
+			{
+				Object[] parms = (plan.range() != null ? plan.range().parameters() : null);
+				List<BSONObject> results = new ArrayList<>();
+				ListenableFuture<Long> done = streamAll(statementFactory().aggregate(aggregation, plan.range()), aggregation.rowMarshaller(), profile, 0, null, parms)
+					.forEach(new Consumer<BSONObject>()
+				{
+					@Override
+					public void accept(BSONObject result)
+					{
+						results.add(result);
+					}
+				});
+				return Futures.transform(done, Functions.constant(results), MoreExecutors.directExecutor());
+			}
 
-		if (b != null && b.hasArray())
+			Aggregation.Accumulator accumulator = aggregation.accumulator(keyDefinition);
+			return Futures.transform(streamQuery(plan, profile, 0, null).forEach(accumulator), new Function<Long, List<BSONObject>>()
+			{
+				@Override
+				public List<BSONObject> apply(Long count)
+				{
+					return accumulator.results();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+		catch (IllegalArgumentException e)
 		{
-			byte[] result = new byte[b.remaining()];
-			b.get(result);
-			d.object(BSON.decode(result));
+			return Futures.immediateFailedFuture(e);
 		}
-
-		d.createdAt(row.getTimestamp(Columns.CREATED_AT));
-		d.updatedAt(row.getTimestamp(Columns.UPDATED_AT));
-		return d;
 	}
 
-	private Identifier marshalId(KeyDefinition keyDefinition, Row row)
+	/**
+	 * Set a negative-lookup filter that answers exists() and read() for identifiers never written to
+	 * the table without a query. Only use one when all writes to the table go through this process.
+	 * The filter answers nothing until primed with primeExistenceFilter().
+	 * 
+	 * @param filter an ExistenceFilter shared by all of this table's repositories, or null for none.
+	 */
+	public void existenceFilter(ExistenceFilter filter)
 	{
-		Identifier id = new Identifier();
-		keyDefinition.components().forEach(new Consumer<KeyComponent>()
+		this.existenceFilter = filter;
+	}
+
+	public ExistenceFilter existenceFilter()
+	{
+		return existenceFilter;
+	}
+
+	/**
+	 * Set a cache that serves read() of recently read documents without a query. Writes through this
+	 * repository invalidate it, so only use one when all writes to the table go through this process.
+	 * Documents that expire (of a table with a TTL, or written with their own) aren't cached, since the
+	 * cache doesn't track their remaining lifetime.
+	 * 
+	 * @param cache a DocumentCache shared by all of this table's repositories, or null for none.
+	 */
+	public void cache(DocumentCache cache)
+	{
+		this.cache = cache;
+	}
+
+	public DocumentCache cache()
+	{
+		return cache;
+	}
+
+	/**
+	 * Scan the table's keys into the existence filter, after which it answers negative lookups. Writes
+	 * made during the scan are added as they happen. Only one scan runs per filter.
+	 * 
+	 * @return a future containing the number of keys scanned (zero if there's no filter, or it's already primed or priming).
+	 */
+	public ListenableFuture<Long> primeExistenceFilter()
+	{
+		ExistenceFilter filter = existenceFilter;
+
+		if (filter == null || !filter.beginPriming()) return Futures.immediateFuture(0L);
+
+		ListenableFuture<Long> scanned = streamAll(statementFactory().readKeys(), 0, null).forEach(new Consumer<Document>()
+		{
+			@Override
+			public void accept(Document document)
+			{
+				filter.put(document.identifier());
+			}
+		});
+
+		Futures.addCallback(scanned, new FutureCallback<Long>()
+		{
+			@Override
+			public void onSuccess(Long result)
+			{
+				filter.endPriming(true);
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				LOG.warn("Existence filter priming failed for " + tableName, t);
+				filter.endPriming(false);
+			}
+		}, MoreExecutors.directExecutor());
+
+		return scanned;
+	}
+
+	@Override
+	public ListenableFuture<Boolean> exists(Identifier id, ExecutionProfile profile)
+	{
+		if (isKnownMissing(id)) return Futures.immediateFuture(false);
+
+		return super.exists(id, profile);
+	}
+
+	@Override
+	public ListenableFuture<Document> read(Identifier id, ExecutionProfile profile)
+	{
+		if (isKnownMissing(id)) return Futures.immediateFailedFuture(new ItemNotFoundException(id.toString()));
+
+		DocumentCache c = cache;
+
+		if (c == null) return super.read(id, profile);
+
+		Document cached = c.get(id, Projection.ALL);
+
+		if (cached != null) return Futures.immediateFuture(cached);
+
+		// Taken before the read, so a write completing meanwhile keeps what was read out of the cache.
+		long stamp = c.stamp(id);
+		return Futures.transform(super.read(id, profile), new Function<Document, Document>()
+		{
+			@Override
+			public Document apply(Document document)
+			{
+				// Chunked documents aren't cached, so a patch of a cached document knows it replaces no chunks.
+				if (ttl == 0 && !document.hasTtl() && document.chunkVersion() == null) c.put(document, stamp);
+
+				return document;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read only the projected fields of the document. The fields are extracted from the stored document
+	 * without decoding the rest of it.
+	 * 
+	 * @param id the document identifier.
+	 * @param projection the fields to return, or null for all.
+	 * @param profile a per-request ExecutionProfile, or null.
+	 */
+	public ListenableFuture<Document> read(Identifier id, Projection projection, ExecutionProfile profile)
+	{
+		if (projection == null || projection.isAll()) return read(id, profile);
+
+		if (isKnownMissing(id)) return Futures.immediateFailedFuture(new ItemNotFoundException(id.toString()));
+
+		Document cached = (cache != null ? cache.get(id, projection) : null);
+
+		if (cached != null) return Futures.immediateFuture(cached);
+
+		return read(id, profile, new Function<Row, Document>()
 		{
 			@Override
-			public void accept(KeyComponent t)
+			public Document apply(Row row)
 			{
-				id.add(IdPropertyConverter.marshal(t.property(), t.type(), row));
+				return rowMapper.marshal(row, new Document(), projection);
 			}
 		});
-		return id;
+	}
+
+	private boolean isKnownMissing(Identifier id)
+	{
+		return (existenceFilter != null && !existenceFilter.mightContain(id));
+	}
+
+	/**
+	 * Invalidate the documents' cache entries once the write completes, whether or not it succeeds, and
+	 * before the returned future completes.
+	 */
+	private ListenableFuture<ResultSet> invalidating(ListenableFuture<ResultSet> write, Collection<Identifier> ids)
+	{
+		DocumentCache c = cache;
+
+		if (c == null) return write;
+
+		SettableFuture<ResultSet> invalidated = SettableFuture.create();
+		write.addListener(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (Identifier id : ids)
+				{
+					c.invalidate(id);
+				}
+
+				invalidated.setFuture(write);
+			}
+		}, MoreExecutors.directExecutor());
+		return invalidated;
+	}
+
+	/**
+	 * Returns a fully decoded copy of an encoded document. Unlike a LazyBSONDocument, it (and each of
+	 * its nested objects and arrays) is mutable from the start, as a patch needs.
+	 */
+	private static BSONObject decode(ByteBuffer bson)
+	{
+		byte[] bytes = new byte[bson.remaining()];
+		bson.duplicate().get(bytes);
+		return BSON.decode(bytes);
+	}
+
+	private static List<Identifier> identifiers(List<Document> documents)
+	{
+		List<Identifier> ids = new ArrayList<>(documents.size());
+
+		for (Document document : documents)
+		{
+			ids.add(document.identifier());
+		}
+
+		return ids;
+	}
+
+	private void remember(Identifier id)
+	{
+		if (existenceFilter != null)
+		{
+			existenceFilter.put(id);
+		}
+	}
+
+	private boolean isUnconditional()
+	{
+		return (writeMode == WriteMode.UNCONDITIONAL);
+	}
+
+	public ListenableFuture<Document> upsert(Document entity)
+	{
+		return upsert(entity, null);
+	}
+
+	public ListenableFuture<Document> upsert(Document entity, ExecutionProfile profile)
+	{
+		ListenableFuture<ResultSet> future = submitUpsert(entity, profile);
+		return Futures.transformAsync(future, new AsyncFunction<ResultSet, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(ResultSet result)
+			throws Exception
+			{
+				if (result.wasApplied())
+				{
+					return Futures.immediateFuture(entity);
+				}
+
+				//TODO: This doesn't provide any informational value... what should it be?
+				return Futures.immediateFailedFuture(new StorageException(String.format("Table %s failed to store document: %s", tableName, entity.toString())));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Apply a partial update to the stored document, without the client reading and rewriting it. The
+	 * document is read, patched and written back on the condition that it hasn't changed since it was
+	 * read (its updated_at); if it has, the patch is re-applied to the new version, up to
+	 * MAX_PATCH_ATTEMPTS times. So concurrent patches of the same document are never lost.
+	 * 
+	 * @param id the document identifier.
+	 * @param patch the change to apply.
+	 * @param profile a per-request ExecutionProfile, or null.
+	 * @return a future containing the document before and after the patch, or failed with ItemNotFoundException.
+	 */
+	public ListenableFuture<DocumentPatch.Result> patch(Identifier id, DocumentPatch patch, ExecutionProfile profile)
+	{
+		return patch(id, patch, profile, 1);
+	}
+
+	private ListenableFuture<DocumentPatch.Result> patch(Identifier id, DocumentPatch patch, ExecutionProfile profile, int attempt)
+	{
+		// A retry reads past the cache, in case the conflicting write was made elsewhere.
+		ListenableFuture<Document> current = (attempt > 1 ? super.read(id, profile) : read(id, profile));
+		return Futures.transformAsync(current, new AsyncFunction<Document, DocumentPatch.Result>()
+		{
+			@Override
+			public ListenableFuture<DocumentPatch.Result> apply(Document before)
+			{
+				// Patch a fully decoded (mutable) copy, leaving 'before' as read.
+				Document after = new Document(patch.apply(before.hasObject() ? decode(before.bson()) : null));
+				after.identifier(before.identifier());
+				after.createdAt(before.createdAt());
+				// Keep the document's expiry: the TTL it had left when read, if any.
+				after.ttl(before.ttl());
+				long previous = (before.updatedAt() != null ? before.updatedAt().getTime() : 0L);
+				// Always move updated_at forward, so a concurrent patch of the same version can't also apply.
+				after.updatedAt(new Date(Math.max(System.currentTimeMillis(), previous + 1)));
+
+				ListenableFuture<ResultSet> written = Futures.transformAsync(stored(after, profile, nextTimestamp()), new AsyncFunction<ByteBuffer, ResultSet>()
+				{
+					@Override
+					public ListenableFuture<ResultSet> apply(ByteBuffer object)
+					{
+						BoundStatement bs = new BoundStatement(statementFactory().patch());
+						bindPatch(bs, after, before.updatedAt(), object);
+						// Conditional on 'before', so if it's applied it replaced exactly before's chunks (if any).
+						return invalidating(cleanUpReplaced(execute(bs, Operation.UPDATE, profile), Collections.singletonList(after), Collections.singletonList(object), Collections.singletonList(before.chunkVersion())), Collections.singletonList(id));
+					}
+				}, MoreExecutors.directExecutor());
+
+				return Futures.transformAsync(written, new AsyncFunction<ResultSet, DocumentPatch.Result>()
+				{
+					@Override
+					public ListenableFuture<DocumentPatch.Result> apply(ResultSet result)
+					{
+						if (result.wasApplied())
+						{
+							return Futures.immediateFuture(new DocumentPatch.Result(before, after));
+						}
+
+						if (attempt >= MAX_PATCH_ATTEMPTS)
+						{
+							return Futures.immediateFailedFuture(new StorageException(String.format("Table %s document %s is being modified concurrently; patch not applied after %d attempts", tableName, id.toString(), attempt)));
+						}
+
+						return patch(id, patch, profile, attempt + 1);
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Create many documents at once. Documents are grouped by partition into unlogged batches of at most
+	 * batchSize() documents, and the batches are executed concurrently (subject to the request limiter).
+	 * 
+	 * With the CONDITIONAL write mode, each batch is conditional (if not exists) and is applied atomically
+	 * within its partition: if any document in a batch already exists, none of that batch is written and
+	 * the returned future fails with a DuplicateItemException naming the existing identifiers. Other
+	 * batches are unaffected. With the UNCONDITIONAL write mode, existing documents are overwritten.
+	 * 
+	 * @param documents the documents to create.
+	 * @return a future containing the created documents, in the given order.
+	 */
+	public ListenableFuture<List<Document>> createAll(Collection<Document> documents)
+	{
+		return submitAll(documents, true);
+	}
+
+	/**
+	 * Insert or replace many documents at once. Documents are grouped by partition into unlogged batches
+	 * of at most batchSize() documents, and the batches are executed concurrently (subject to the request
+	 * limiter).
+	 * 
+	 * @param documents the documents to upsert.
+	 * @return a future containing the upserted documents, in the given order.
+	 */
+	public ListenableFuture<List<Document>> upsertAll(Collection<Document> documents)
+	{
+		return submitAll(documents, false);
+	}
+
+	/**
+	 * Set the maximum number of documents in a single createAll() or upsertAll() batch.
+	 * 
+	 * @param batchSize documents per batch.
+	 */
+	public void batchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+
+	public int batchSize()
+	{
+		return batchSize;
+	}
+
+	private ListenableFuture<List<Document>> submitAll(Collection<Document> documents, boolean isCreate)
+	{
+		if (documents == null || documents.isEmpty())
+		{
+			return Futures.immediateFuture(Collections.<Document>emptyList());
+		}
+
+		List<Document> all = new ArrayList<>(documents);
+		List<ListenableFuture<ResultSet>> batches = new ArrayList<>();
+
+		try
+		{
+			for (List<Document> partition : byPartition(all))
+			{
+				int size = Math.max(1, batchSize);
+
+				for (int i = 0; i < partition.size(); i += size)
+				{
+					List<Document> chunk = partition.subList(i, Math.min(i + size, partition.size()));
+					batches.add(submitBatch(chunk, isCreate));
+				}
+			}
+		}
+		catch (InvalidIdentifierException e)
+		{
+			return Futures.immediateFailedFuture(e);
+		}
+
+		return Futures.transform(Futures.allAsList(batches), new Function<List<ResultSet>, List<Document>>()
+		{
+			@Override
+			public List<Document> apply(List<ResultSet> input)
+			{
+				return all;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private Collection<List<Document>> byPartition(List<Document> documents)
+	{
+		Map<Identifier, List<Document>> partitions = new LinkedHashMap<>();
+
+		for (Document document : documents)
+		{
+			if (document.identifier() == null)
+			{
+				throw new InvalidIdentifierException("Document has no identifier: " + document.toString());
+			}
+
+			Identifier partition = keyDefinition.partitionIdentifier(document.identifier());
+			List<Document> group = partitions.get(partition);
+
+			if (group == null)
+			{
+				group = new ArrayList<>();
+				partitions.put(partition, group);
+			}
+
+			group.add(document);
+		}
+
+		return partitions.values();
+	}
+
+	private ListenableFuture<ResultSet> submitBatch(List<Document> documents, boolean isCreate)
+	{
+		long timestamp = nextTimestamp();
+		List<ListenableFuture<ByteBuffer>> objects = new ArrayList<>(documents.size());
+
+		for (Document document : documents)
+		{
+			objects.add(stored(document, null, timestamp));
+		}
+
+		return Futures.transformAsync(Futures.allAsList(objects), new AsyncFunction<List<ByteBuffer>, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(List<ByteBuffer> stored)
+			{
+				return submitBatch(documents, stored, isCreate, timestamp);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<ResultSet> submitBatch(List<Document> documents, List<ByteBuffer> objects, boolean isCreate, long timestamp)
+	{
+		Statement statement;
+
+		if (documents.size() == 1)
+		{
+			statement = bindAll(documents.get(0), objects.get(0), isCreate);
+		}
+		else
+		{
+			BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+
+			for (int i = 0; i < documents.size(); i++)
+			{
+				batch.add(bindAll(documents.get(i), objects.get(i), isCreate));
+			}
+
+			statement = batch;
+		}
+
+		if (!isCreate || isUnconditional())
+		{
+			statement.setDefaultTimestamp(timestamp);
+			return invalidating(cleanUpSuperseded(execute(statement, (isCreate ? Operation.CREATE : Operation.UPSERT), (isCreate ? IDEMPOTENT : null)), documents, timestamp), identifiers(documents));
+		}
+
+		// Creates replace nothing.
+		ListenableFuture<ResultSet> future = invalidating(cleanUpReplaced(execute(statement, Operation.CREATE, null), documents, objects, null), identifiers(documents));
+
+		return Futures.transformAsync(future, new AsyncFunction<ResultSet, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ResultSet result)
+			{
+				if (result.wasApplied())
+				{
+					return Futures.immediateFuture(result);
+				}
+
+				List<String> existing = new ArrayList<>();
+
+				for (Row row : result)
+				{
+					existing.add(rowMapper.identifier(row).toString());
+				}
+
+				return Futures.immediateFailedFuture(new DuplicateItemException(String.format("Table %s batch of %d documents not applied. Existing: %s", tableName, documents.size(), String.join(", ", existing))));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private BoundStatement bindAll(Document document, ByteBuffer object, boolean isCreate)
+	{
+		BoundStatement bs = new BoundStatement(isCreate && !isUnconditional() ? statementFactory().create() : statementFactory().upsert());
+		bindCreate(bs, document, object);
+		return bs;
+	}
+
+	@Override
+	protected ListenableFuture<ResultSet> submitCreate(Document document, ExecutionProfile profile)
+	{
+		if (!isUnconditional()) return submitConditionalCreate(document, profile);
+
+		return submitUnconditional(statementFactory().upsert(), document, true, Operation.CREATE, IDEMPOTENT.overriddenBy(profile));
+	}
+
+	@Override
+	protected ListenableFuture<ResultSet> submitUpdate(Document document, ExecutionProfile profile)
+	{
+		if (!isUnconditional()) return submitConditionalUpdate(document, profile);
+
+		return submitUnconditional(statementFactory().unconditionalUpdate(), document, false, Operation.UPDATE, IDEMPOTENT.overriddenBy(profile));
+	}
+
+	@Override
+	protected ListenableFuture<ResultSet> submitDelete(Identifier id, ExecutionProfile profile)
+	{
+		ListenableFuture<ResultSet> deleted = invalidating(super.submitDelete(id, profile), Collections.singletonList(id));
+		return Futures.transformAsync(deleted, new AsyncFunction<ResultSet, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ResultSet result)
+			{
+				if (!chunks.isEnabled() || !result.wasApplied()) return Futures.immediateFuture(result);
+
+				return cleanUp(result, Collections.<Statement>singletonList(bindChunks(statementFactory().deleteChunks(), id)));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * A conditional create (if not exists), which replaces nothing.
+	 */
+	private ListenableFuture<ResultSet> submitConditionalCreate(Document document, ExecutionProfile profile)
+	{
+		return Futures.transformAsync(stored(document, profile, nextTimestamp()), new AsyncFunction<ByteBuffer, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ByteBuffer object)
+			{
+				BoundStatement bs = new BoundStatement(statementFactory().create());
+				bindCreate(bs, document, object);
+				return invalidating(cleanUpReplaced(execute(bs, Operation.CREATE, profile), Collections.singletonList(document), Collections.singletonList(object), null), Collections.singletonList(document.identifier()));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * An unconditional write: the row and its chunks (if any) are written with the same timestamp, so the
+	 * chunks it supersedes are exactly those written with an earlier timestamp (see cleanUpSuperseded()).
+	 */
+	private ListenableFuture<ResultSet> submitUnconditional(PreparedStatement statement, Document document, boolean isCreate, Operation operation, ExecutionProfile profile)
+	{
+		long timestamp = nextTimestamp();
+		return Futures.transformAsync(stored(document, profile, timestamp), new AsyncFunction<ByteBuffer, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ByteBuffer object)
+			{
+				BoundStatement bs = new BoundStatement(statement);
+
+				if (isCreate)
+				{
+					bindCreate(bs, document, object);
+				}
+				else
+				{
+					bindUpdate(bs, document, object);
+				}
+
+				bs.setDefaultTimestamp(timestamp);
+				return invalidating(cleanUpSuperseded(execute(bs, operation, profile), Collections.singletonList(document), timestamp), Collections.singletonList(document.identifier()));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * A conditional update (if exists). With chunking, the update is made conditional on the stored
+	 * document it replaces instead, so the manifest in the row it reads tells it which chunks it replaced
+	 * (see replace()).
+	 */
+	private ListenableFuture<ResultSet> submitConditionalUpdate(Document document, ExecutionProfile profile)
+	{
+		return Futures.transformAsync(stored(document, profile, nextTimestamp()), new AsyncFunction<ByteBuffer, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ByteBuffer object)
+			{
+				if (!chunks.isEnabled()) return update(document, object, profile);
+
+				return replace(document, object, profile, 1);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<ResultSet> update(Document document, ByteBuffer object, ExecutionProfile profile)
+	{
+		BoundStatement bs = new BoundStatement(statementFactory().update());
+		bindUpdate(bs, document, object);
+		return invalidating(execute(bs, Operation.UPDATE, profile), Collections.singletonList(document.identifier()));
+	}
+
+	/**
+	 * Replace the stored document, conditional on its updated_at being unchanged since it was read, then
+	 * delete the chunks of the version it replaced. Retried, like a patch, if the document is written
+	 * concurrently.
+	 */
+	private ListenableFuture<ResultSet> replace(Document document, ByteBuffer object, ExecutionProfile profile, int attempt)
+	{
+		List<Document> documents = Collections.singletonList(document);
+		List<ByteBuffer> objects = Collections.singletonList(object);
+		BoundStatement read = bindChunks(statementFactory().readStored(), document.identifier());
+		return Futures.transformAsync(execute(read, Operation.READ, null), new AsyncFunction<ResultSet, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ResultSet rs)
+			{
+				Row row = rs.one();
+
+				if (row == null)
+				{
+					return failed(cleanUpReplaced(Futures.immediateFuture(rs), documents, objects, null), new ItemNotFoundException(document.toString()));
+				}
+
+				ByteBuffer replaced = row.getBytes(0);
+				Date previous = row.getTimestamp(1);
+				UUID version = (DocumentChunks.isManifest(replaced) ? DocumentChunks.Manifest.parse(replaced).version() : null);
+				// Always move updated_at forward, so a concurrent replace of the same version can't also apply.
+				document.updatedAt(new Date(Math.max(System.currentTimeMillis(), (previous != null ? previous.getTime() + 1 : 0L))));
+				remember(document.identifier());
+				BoundStatement bs = new BoundStatement(statementFactory().patch());
+				bindPatch(bs, document, previous, object);
+				ListenableFuture<ResultSet> written = execute(bs, Operation.UPDATE, profile);
+				return Futures.transformAsync(written, new AsyncFunction<ResultSet, ResultSet>()
+				{
+					@Override
+					public ListenableFuture<ResultSet> apply(ResultSet result)
+					{
+						if (result.wasApplied())
+						{
+							return invalidating(cleanUpReplaced(Futures.immediateFuture(result), documents, objects, Collections.singletonList(version)), Collections.singletonList(document.identifier()));
+						}
+
+						if (attempt >= MAX_PATCH_ATTEMPTS)
+						{
+							return failed(cleanUpReplaced(Futures.immediateFuture(result), documents, objects, null), new StorageException(String.format("Table %s document %s is being modified concurrently; update not applied after %d attempts", tableName, document.identifier().toString(), attempt)));
+						}
+
+						return replace(document, object, profile, attempt + 1);
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Once the future completes, fail with the given exception.
+	 */
+	private static <V> ListenableFuture<V> failed(ListenableFuture<?> future, Exception e)
+	{
+		return Futures.transformAsync(future, new AsyncFunction<Object, V>()
+		{
+			@Override
+			public ListenableFuture<V> apply(Object input)
+			{
+				return Futures.immediateFailedFuture(e);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	protected ListenableFuture<ResultSet> submitUpsert(Document document, ExecutionProfile profile)
+	{
+		return submitUnconditional(statementFactory().upsert(), document, true, Operation.UPSERT, profile);
+	}
+
+	/**
+	 * Returns the value to store in the document's object column: the compressed document or, if that's
+	 * larger than the chunk threshold, the manifest of its chunks once they're written. Chunks are
+	 * written in parallel, with the given timestamp, before the row that refers to them.
+	 */
+	private ListenableFuture<ByteBuffer> stored(Document document, ExecutionProfile profile, long timestamp)
+	{
+		ByteBuffer object = (document.hasObject() ? compressor.compress(document.bson()) : null);
+
+		if (!chunks.shouldChunk(object)) return Futures.immediateFuture(object);
+
+		DocumentChunks.Manifest manifest = chunks.manifest(object);
+		List<ListenableFuture<ResultSet>> written = new ArrayList<>(manifest.chunks());
+
+		try
+		{
+			for (int i = 0; i < manifest.chunks(); i++)
+			{
+				BoundStatement bs = bindChunks(statementFactory().writeChunk(), document.identifier(), manifest.version(), i, manifest.chunk(object, i), ttlFor(document));
+				bs.setDefaultTimestamp(timestamp);
+				written.add(execute(bs, Operation.UPSERT, IDEMPOTENT.overriddenBy(profile)));
+			}
+		}
+		catch (RuntimeException e)
+		{
+			return Futures.immediateFailedFuture(e);
+		}
+
+		return Futures.transform(Futures.allAsList(written), new Function<List<ResultSet>, ByteBuffer>()
+		{
+			@Override
+			public ByteBuffer apply(List<ResultSet> input)
+			{
+				return manifest.encode();
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns a write timestamp, in microseconds, greater than any returned before by this JVM.
+	 */
+	private static long nextTimestamp()
+	{
+		while (true)
+		{
+			long last = LAST_TIMESTAMP.get();
+			long next = Math.max(System.currentTimeMillis() * 1000, last + 1);
+
+			if (LAST_TIMESTAMP.compareAndSet(last, next)) return next;
+		}
+	}
+
+	/**
+	 * Once unconditional writes complete, delete the chunks they superseded: every version of each document's
+	 * chunks written with an earlier timestamp. Those belong to rows that lost to this write, so they can't
+	 * be read again, even if they were written concurrently with it. This write's own chunks (and those of
+	 * a concurrent write with a later timestamp, which wins) are kept. Like Cassandra's last-write-wins, it
+	 * relies on writers' clocks; and the same document shouldn't be written both conditionally and not.
+	 */
+	private ListenableFuture<ResultSet> cleanUpSuperseded(ListenableFuture<ResultSet> future, List<Document> documents, long timestamp)
+	{
+		if (!chunks.isEnabled()) return future;
+
+		return Futures.transformAsync(future, new AsyncFunction<ResultSet, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ResultSet result)
+			{
+				List<Statement> deletes = new ArrayList<>();
+
+				try
+				{
+					for (Document document : documents)
+					{
+						Statement delete = bindChunks(statementFactory().deleteChunks(), document.identifier());
+						delete.setDefaultTimestamp(timestamp - 1);
+						deletes.add(delete);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					LOG.warn("Document chunks not cleaned up for " + tableName, e);
+					return Futures.immediateFuture(result);
+				}
+
+				return cleanUp(result, deletes);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Once conditional writes complete, delete the chunks they no longer refer to: the chunk versions they
+	 * replaced if they were applied, or their own chunks if they weren't.
+	 *
+	 * @param replaced the chunk version of the stored document each replaced (null if it wasn't chunked), or
+	 * null if they replaced nothing (they're creates).
+	 */
+	private ListenableFuture<ResultSet> cleanUpReplaced(ListenableFuture<ResultSet> future, List<Document> documents, List<ByteBuffer> objects, List<UUID> replaced)
+	{
+		if (!hasManifest(objects) && !hasVersion(replaced)) return future;
+
+		return Futures.transformAsync(future, new AsyncFunction<ResultSet, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(ResultSet result)
+			{
+				List<Statement> deletes = new ArrayList<>();
+
+				try
+				{
+					for (int i = 0; i < documents.size(); i++)
+					{
+						UUID version = null;
+
+						if (result.wasApplied())
+						{
+							version = (replaced != null ? replaced.get(i) : null);
+						}
+						else if (DocumentChunks.isManifest(objects.get(i)))
+						{
+							version = DocumentChunks.Manifest.parse(objects.get(i)).version();
+						}
+
+						if (version != null)
+						{
+							deletes.add(bindChunks(statementFactory().deleteChunkVersion(), documents.get(i).identifier(), version));
+						}
+					}
+				}
+				catch (RuntimeException e)
+				{
+					LOG.warn("Document chunks not cleaned up for " + tableName, e);
+					return Futures.immediateFuture(result);
+				}
+
+				return cleanUp(result, deletes);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private static boolean hasVersion(List<UUID> versions)
+	{
+		if (versions == null) return false;
+
+		for (UUID version : versions)
+		{
+			if (version != null) return true;
+		}
+
+		return false;
+	}
+
+	private boolean hasManifest(List<ByteBuffer> objects)
+	{
+		for (ByteBuffer object : objects)
+		{
+			if (DocumentChunks.isManifest(object)) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Execute the chunk deletes, then return the write's result. A failed delete only leaves unreferenced
+	 * chunks behind, so it's logged rather than failing the write.
+	 */
+	private ListenableFuture<ResultSet> cleanUp(ResultSet result, List<Statement> deletes)
+	{
+		List<ListenableFuture<ResultSet>> deleted = new ArrayList<>(deletes.size());
+
+		for (Statement delete : deletes)
+		{
+			deleted.add(execute(delete, Operation.DELETE, IDEMPOTENT));
+		}
+
+		return Futures.transform(Futures.successfulAsList(deleted), new Function<List<ResultSet>, ResultSet>()
+		{
+			@Override
+			public ResultSet apply(List<ResultSet> input)
+			{
+				if (input.contains(null))
+				{
+					LOG.warn("Document chunks not cleaned up for " + tableName);
+				}
+
+				return result;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read a chunked document's chunks, a page at a time, into its object.
+	 */
+	private ListenableFuture<Document> readChunks(Document document)
+	{
+		DocumentChunks.Pending pending = document.pendingChunks();
+
+		if (pending == null) return Futures.immediateFuture(document);
+
+		return readChunks(document, pending.manifest(), pending.projection(), 1);
+	}
+
+	private ListenableFuture<Document> readChunks(Document document, DocumentChunks.Manifest manifest, Projection projection, int attempt)
+	{
+		byte[] stored = new byte[manifest.length()];
+		BoundStatement bs = bindChunks(statementFactory().readChunks(), document.identifier(), manifest.version());
+		ListenableFuture<Document> read = Futures.transform(assemble(execute(bs, Operation.READ_ALL, CHUNK_PAGES), manifest, stored, 0), new Function<Integer, Document>()
+		{
+			@Override
+			public Document apply(Integer input)
+			{
+				document.pendingChunks(null);
+				rowMapper.object(document, ByteBuffer.wrap(stored), projection);
+				return document;
+			}
+		}, MoreExecutors.directExecutor());
+
+		if (attempt >= MAX_CHUNK_READ_ATTEMPTS) return read;
+
+		return Futures.catchingAsync(read, StorageException.class, new AsyncFunction<StorageException, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(StorageException e)
+			{
+				return rereadChunks(document, manifest, projection, attempt, e);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * The chunks named by the manifest read are incomplete, most likely because a write replaced the document
+	 * (and deleted them) while they were being read. Re-read the stored document and, if it has changed,
+	 * read that instead.
+	 */
+	private ListenableFuture<Document> rereadChunks(Document document, DocumentChunks.Manifest manifest, Projection projection, int attempt, StorageException cause)
+	{
+		BoundStatement read = bindChunks(statementFactory().readStored(), document.identifier());
+		return Futures.transformAsync(execute(read, Operation.READ, null), new AsyncFunction<ResultSet, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(ResultSet rs)
+			{
+				Row row = rs.one();
+
+				if (row == null) return Futures.immediateFailedFuture(new ItemNotFoundException(document.identifier().toString()));
+
+				ByteBuffer stored = row.getBytes(0);
+
+				if (!DocumentChunks.isManifest(stored))
+				{
+					document.pendingChunks(null);
+					document.chunkVersion(null);
+					document.updatedAt(row.getTimestamp(1));
+					rowMapper.object(document, stored, projection);
+					return Futures.immediateFuture(document);
+				}
+
+				DocumentChunks.Manifest current = DocumentChunks.Manifest.parse(stored);
+
+				// Unchanged, so the chunks really are incomplete.
+				if (current.version().equals(manifest.version())) return Futures.immediateFailedFuture(cause);
+
+				document.chunkVersion(current.version());
+				document.updatedAt(row.getTimestamp(1));
+				return readChunks(document, current, projection, attempt + 1);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Load the compression dictionary version a document was written with, if it wasn't loaded when the
+	 * document was read, then decompress its object.
+	 */
+	private ListenableFuture<Document> readDictionary(Document document)
+	{
+		DocumentRowMapper.PendingDictionary pending = document.pendingDictionary();
+
+		if (pending == null) return Futures.immediateFuture(document);
+
+		return Futures.transform(compressor.load(pending.version()), new Function<Object, Document>()
+		{
+			@Override
+			public Document apply(Object input)
+			{
+				document.pendingDictionary(null);
+				rowMapper.object(document, pending.stored(), pending.projection());
+				return document;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<Integer> assemble(ListenableFuture<ResultSet> page, DocumentChunks.Manifest manifest, byte[] stored, int count)
+	{
+		return Futures.transformAsync(page, new AsyncFunction<ResultSet, Integer>()
+		{
+			@Override
+			public ListenableFuture<Integer> apply(ResultSet rs)
+			{
+				int received = count;
+
+				for (int i = rs.getAvailableWithoutFetching(); i > 0; i--)
+				{
+					Row row = rs.one();
+					manifest.copy(row.getInt(0), row.getBytes(1), stored);
+					received++;
+				}
+
+				if (!rs.isFullyFetched())
+				{
+					return assemble(rs.fetchMoreResults(), manifest, stored, received);
+				}
+
+				if (received != manifest.chunks())
+				{
+					return Futures.immediateFailedFuture(new StorageException(String.format("Table %s document chunks version %s incomplete: %d of %d", tableName, manifest.version(), received, manifest.chunks())));
+				}
+
+				return Futures.immediateFuture(received);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private BoundStatement bindChunks(PreparedStatement statement, Identifier id, Object... values)
+	{
+		Object[] all = new Object[id.size() + values.length];
+
+		try
+		{
+			fill(all, 0, id.components().toArray());
+			fill(all, id.size(), values);
+			return new BoundStatement(statement).bind(all);
+		}
+		catch (InvalidTypeException | CodecNotFoundException e)
+		{
+			throw new InvalidIdentifierException(e);
+		}
+	}
+
+	@Override
+	protected AsyncFunction<Document, Document> completer()
+	{
+		return chunkReader;
+	}
+
+	@Override
+	protected void bindCreate(BoundStatement bs, Document document)
+	{
+		bindCreate(bs, document, compressor.compress(document.bson()));
+	}
+
+	private void bindCreate(BoundStatement bs, Document document, ByteBuffer object)
+	{
+		Date now = new Date();
+		document.createdAt(now);
+		document.updatedAt(now);
+		Identifier id = document.identifier();
+		remember(id);
+		Object[] values = new Object[id.size() + 4]; // Identifier + object + createdAt + updatedAt + TTL.
+
+		try
+		{
+			fill(values, 0, id.components().toArray());
+			fill(values, id.size(),
+					object,
+				    document.createdAt(),
+				    document.updatedAt(),
+				    ttlFor(document));
+			bs.bind(values);
+		}
+		catch (InvalidTypeException | CodecNotFoundException e)
+		{
+			throw new InvalidIdentifierException(e);
+		}
+	}
+
+	@Override
+	protected void bindUpdate(BoundStatement bs, Document document)
+	{
+		bindUpdate(bs, document, (document.hasObject() ? compressor.compress(document.bson()) : null));
+	}
+
+	private void bindUpdate(BoundStatement bs, Document document, ByteBuffer object)
+	{
+		document.updatedAt(new Date());
+		Identifier id = document.identifier();
+		remember(id);
+		Object[] values = new Object[id.size() + 3];
+
+		try
+		{
+			fill(values, 0, ttlFor(document), object, document.updatedAt());
+			fill(values, 3, id.components().toArray());
+			bs.bind(values);
+		}
+		catch (InvalidTypeException | CodecNotFoundException e)
+		{
+			throw new InvalidIdentifierException(e);
+		}
+	}
+
+	private void bindPatch(BoundStatement bs, Document document, Date previousUpdatedAt, ByteBuffer object)
+	{
+		Identifier id = document.identifier();
+		Object[] values = new Object[id.size() + 4];
+
+		try
+		{
+			fill(values, 0, ttlFor(document), object, document.updatedAt());
+			fill(values, 3, id.components().toArray());
+			values[id.size() + 3] = previousUpdatedAt;
+			bs.bind(values);
+		}
+		catch (InvalidTypeException | CodecNotFoundException e)
+		{
+			throw new InvalidIdentifierException(e);
+		}
+	}
+
+	private void fill(Object[] array, int offset, Object... values)
+	{
+		for (int i = offset; i < values.length + offset; i++)
+		{
+			array[i] = values[i - offset];
+		}
+	}
+
+	@Override
+	protected Document marshalRow(Row row)
+	{
+		if (row == null)
+		{
+			return null;
+		}
+
+		return rowMapper.marshal(row, new Document());
 	}
 }
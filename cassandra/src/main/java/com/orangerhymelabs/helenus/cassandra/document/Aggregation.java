@@ -0,0 +1,388 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+import com.datastax.driver.core.Row;
+import com.google.common.base.Function;
+import com.orangerhymelabs.helenus.cassandra.DataTypes;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyComponent;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
+
+/**
+ * Aggregates over the documents matching a DocumentQuery: count, min, max and sum, optionally grouped
+ * by one or more fields. For example, orders per status and the largest total, for a customer:
+ *
+ * 	new Aggregation(DocumentQuery.parse(...customer...)).groupBy("status").count("orders").max("largest", "total")
+ *
+ * Each result is a document of the group-by fields and the named aggregates. Without a group-by there's
+ * exactly one result; count and sum are zero and min and max null if no document matches.
+ *
+ * If the query leaves nothing to filter, every aggregated field is a key column and the group-by is a
+ * leading part of the primary key (including the whole partition key), Cassandra computes the aggregates
+ * (SELECT ... GROUP BY). Otherwise they're computed as the matching documents are read, a page at a time,
+ * keeping only a running value per group. Min and max skip values not comparable with the current one
+ * (and arrays and documents); sum skips non-numbers. Sum pushdown is limited to bigint, double and
+ * decimal columns, since Cassandra sums an int column as an int.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class Aggregation
+{
+	private enum Kind
+	{
+		COUNT,
+		MIN,
+		MAX,
+		SUM
+	}
+
+	private DocumentQuery query;
+	private List<String> groupBy = new ArrayList<>();
+	private List<Aggregate> aggregates = new ArrayList<>();
+
+	/**
+	 * @param query the documents to aggregate, or null for all of them.
+	 */
+	public Aggregation(DocumentQuery query)
+	{
+		super();
+		this.query = (query != null ? query : DocumentQuery.parse(null));
+	}
+
+	/**
+	 * Group by these fields (dotted paths), in order.
+	 */
+	public Aggregation groupBy(String... fields)
+	{
+		for (String field : fields)
+		{
+			assertUnique(field);
+			groupBy.add(field);
+		}
+
+		return this;
+	}
+
+	/**
+	 * The number of matching documents.
+	 */
+	public Aggregation count(String name)
+	{
+		return add(name, Kind.COUNT, null);
+	}
+
+	public Aggregation min(String name, String field)
+	{
+		return add(name, Kind.MIN, field);
+	}
+
+	public Aggregation max(String name, String field)
+	{
+		return add(name, Kind.MAX, field);
+	}
+
+	public Aggregation sum(String name, String field)
+	{
+		return add(name, Kind.SUM, field);
+	}
+
+	public DocumentQuery query()
+	{
+		return query;
+	}
+
+	private Aggregation add(String name, Kind kind, String field)
+	{
+		if (kind != Kind.COUNT && field == null) throw new IllegalArgumentException(kind + " requires a field: " + name);
+
+		assertUnique(name);
+		aggregates.add(new Aggregate(name, kind, field));
+		return this;
+	}
+
+	private void assertUnique(String name)
+	{
+		if (name == null || groupBy.contains(name)) throw new IllegalArgumentException("Duplicate or missing aggregation name: " + name);
+
+		for (Aggregate aggregate : aggregates)
+		{
+			if (aggregate.name.equals(name)) throw new IllegalArgumentException("Duplicate aggregation name: " + name);
+		}
+	}
+
+	/**
+	 * Returns true if Cassandra can compute the aggregation for the planned query.
+	 */
+	boolean isPushedDown(KeyDefinition keys, DocumentQuery.Plan plan)
+	{
+		if (aggregates.isEmpty() || plan.residual() != null || plan.limit() > 0) return false;
+
+		List<KeyComponent> columns = keys.components();
+
+		if (!groupBy.isEmpty())
+		{
+			if (groupBy.size() < keys.partitionKeySize() || groupBy.size() > columns.size()) return false;
+
+			for (int i = 0; i < groupBy.size(); i++)
+			{
+				if (!columns.get(i).property().equals(groupBy.get(i))) return false;
+			}
+		}
+
+		for (Aggregate aggregate : aggregates)
+		{
+			if (aggregate.kind == Kind.COUNT) continue;
+
+			int i = DocumentQuery.keyIndex(columns, aggregate.field);
+
+			if (i < 0) return false;
+
+			DataTypes type = columns.get(i).type();
+
+			if (aggregate.kind == Kind.SUM && type != DataTypes.BIGINT && type != DataTypes.DOUBLE && type != DataTypes.DECIMAL) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the CQL selectors of a pushed-down aggregation: the group-by columns, then the aggregates.
+	 */
+	String asSelectors()
+	{
+		List<String> selectors = new ArrayList<>(groupBy);
+
+		for (Aggregate aggregate : aggregates)
+		{
+			switch(aggregate.kind)
+			{
+				case COUNT: selectors.add("count(*)");
+				break;
+				default: selectors.add(aggregate.kind.name().toLowerCase() + "(" + aggregate.field + ")");
+			}
+		}
+
+		return String.join(", ", selectors);
+	}
+
+	/**
+	 * Returns the CQL group by clause of a pushed-down aggregation, or an empty string.
+	 */
+	String asGroupByClause()
+	{
+		return (groupBy.isEmpty() ? "" : "group by " + String.join(", ", groupBy));
+	}
+
+	/**
+	 * Marshals a row selected by asSelectors() into a result.
+	 */
+	Function<Row, BSONObject> rowMarshaller()
+	{
+		return new Function<Row, BSONObject>()
+		{
+			@Override
+			public BSONObject apply(Row row)
+			{
+				BSONObject result = new BasicBSONObject();
+				int i = 0;
+
+				for (String field : groupBy)
+				{
+					result.put(field, row.getObject(i++));
+				}
+
+				for (Aggregate aggregate : aggregates)
+				{
+					result.put(aggregate.name, row.getObject(i++));
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Returns a consumer that aggregates the documents it's given, for a table with these keys.
+	 */
+	Accumulator accumulator(KeyDefinition keys)
+	{
+		return new Accumulator(keys.components());
+	}
+
+	/**
+	 * Computes the aggregates a document at a time, keeping one running value per aggregate per group.
+	 * Not thread safe: documents are given to it in sequence.
+	 */
+	class Accumulator
+	implements Consumer<Document>
+	{
+		private int[] groupKeys;
+		private int[] aggregateKeys;
+		private Map<List<Object>, Object[]> groups = new LinkedHashMap<>();
+
+		private Accumulator(List<KeyComponent> columns)
+		{
+			super();
+			this.groupKeys = new int[groupBy.size()];
+			this.aggregateKeys = new int[aggregates.size()];
+
+			for (int i = 0; i < groupKeys.length; i++)
+			{
+				groupKeys[i] = DocumentQuery.keyIndex(columns, groupBy.get(i));
+			}
+
+			for (int i = 0; i < aggregateKeys.length; i++)
+			{
+				String field = aggregates.get(i).field;
+				aggregateKeys[i] = (field != null ? DocumentQuery.keyIndex(columns, field) : -1);
+			}
+		}
+
+		@Override
+		public void accept(Document document)
+		{
+			Object[] group = new Object[groupKeys.length];
+
+			for (int i = 0; i < group.length; i++)
+			{
+				group[i] = DocumentQuery.valueOf(document, groupBy.get(i), groupKeys[i]);
+			}
+
+			List<Object> key = Arrays.asList(group);
+			Object[] values = groups.get(key);
+
+			if (values == null)
+			{
+				values = initialValues();
+				groups.put(key, values);
+			}
+
+			for (int i = 0; i < values.length; i++)
+			{
+				Aggregate aggregate = aggregates.get(i);
+				Object value = (aggregate.field != null ? DocumentQuery.valueOf(document, aggregate.field, aggregateKeys[i]) : null);
+				values[i] = aggregate.accumulate(values[i], value);
+			}
+		}
+
+		/**
+		 * Returns a result per group, in the order each group was first seen.
+		 */
+		public List<BSONObject> results()
+		{
+			if (groupBy.isEmpty() && groups.isEmpty())
+			{
+				groups.put(Arrays.asList(), initialValues());
+			}
+
+			List<BSONObject> results = new ArrayList<>(groups.size());
+
+			for (Map.Entry<List<Object>, Object[]> group : groups.entrySet())
+			{
+				BSONObject result = new BasicBSONObject();
+
+				for (int i = 0; i < groupBy.size(); i++)
+				{
+					result.put(groupBy.get(i), group.getKey().get(i));
+				}
+
+				for (int i = 0; i < aggregates.size(); i++)
+				{
+					result.put(aggregates.get(i).name, group.getValue()[i]);
+				}
+
+				results.add(result);
+			}
+
+			return results;
+		}
+
+		private Object[] initialValues()
+		{
+			Object[] values = new Object[aggregates.size()];
+
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = aggregates.get(i).initialValue();
+			}
+
+			return values;
+		}
+	}
+
+	private static class Aggregate
+	{
+		private String name;
+		private Kind kind;
+		private String field;
+
+		public Aggregate(String name, Kind kind, String field)
+		{
+			super();
+			this.name = name;
+			this.kind = kind;
+			this.field = field;
+		}
+
+		public Object initialValue()
+		{
+			switch(kind)
+			{
+				case COUNT:
+				case SUM: return 0L;
+				default: return null;
+			}
+		}
+
+		/**
+		 * Returns the running value, given the prior one and a document's value for the field.
+		 */
+		public Object accumulate(Object current, Object value)
+		{
+			switch(kind)
+			{
+				case COUNT: return ((Long) current) + 1L;
+				case SUM:
+					if (!(value instanceof Number)) return current;
+
+					if (current instanceof Long && DocumentQuery.isIntegral(value)) return ((Long) current) + ((Number) value).longValue();
+
+					return ((Number) current).doubleValue() + ((Number) value).doubleValue();
+				default:
+					if (value == null || value instanceof List || value instanceof BSONObject) return current;
+
+					if (current == null) return value;
+
+					Integer c = DocumentQuery.compare(value, current);
+
+					if (c == null) return current;
+
+					return ((kind == Kind.MIN ? c < 0 : c > 0) ? value : current);
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.io.BasicOutputBuffer;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.mongodb.util.JSON;
+
+/**
+ * Maps a CQL blob to a BSONObject. Register it on the Cluster's CodecRegistry (CassandraConfig does) to
+ * bind and get BSONObjects directly.
+ *
+ * Encoding reuses a per-thread output buffer, which grows through power-of-two size classes to fit the
+ * largest document the thread has written (up to MAX_RETAINED_BYTES). Each encode then allocates only
+ * the exact-sized result, instead of BSON.encode()'s series of doubling buffers plus the final copy.
+ * The result itself can't be pooled: the driver holds it until the request is written (and any retries).
+ *
+ * An unmodified LazyBSONDocument isn't re-encoded; its stored bytes are used as-is. Decoding returns
+ * a LazyBSONDocument.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class BSONCodec
+extends TypeCodec<BSONObject>
+{
+	public static final BSONCodec INSTANCE = new BSONCodec();
+
+	/**
+	 * Per-thread buffers that grow beyond this are released after use, so one huge document doesn't
+	 * pin its buffer to the thread.
+	 */
+	public static final int MAX_RETAINED_BYTES = 1024 * 1024;
+
+	private static final int INITIAL_BYTES = 4 * 1024;
+
+	private static final ThreadLocal<Encoder> ENCODERS = new ThreadLocal<Encoder>()
+	{
+		@Override
+		protected Encoder initialValue()
+		{
+			return new Encoder();
+		}
+	};
+
+	private BSONCodec()
+	{
+		super(DataType.blob(), BSONObject.class);
+	}
+
+	/**
+	 * Encode the BSON object using the calling thread's pooled buffer.
+	 *
+	 * @param bson a BSON object, possibly null.
+	 * @return an exact-sized buffer containing the encoded object, or null.
+	 */
+	public static ByteBuffer encode(BSONObject bson)
+	{
+		if (bson == null) return null;
+
+		if (bson instanceof LazyBSONDocument && ((LazyBSONDocument) bson).isUnmodified())
+		{
+			return ((LazyBSONDocument) bson).bson();
+		}
+
+		return ENCODERS.get().encode(bson);
+	}
+
+	@Override
+	public ByteBuffer serialize(BSONObject value, ProtocolVersion protocolVersion)
+	throws InvalidTypeException
+	{
+		try
+		{
+			return encode(value);
+		}
+		catch (RuntimeException e)
+		{
+			throw new InvalidTypeException("Cannot encode BSON object", e);
+		}
+	}
+
+	@Override
+	public BSONObject deserialize(ByteBuffer bytes, ProtocolVersion protocolVersion)
+	throws InvalidTypeException
+	{
+		if (bytes == null || bytes.remaining() == 0) return null;
+
+		return new LazyBSONDocument(bytes);
+	}
+
+	@Override
+	public BSONObject parse(String value)
+	throws InvalidTypeException
+	{
+		if (value == null || value.isEmpty() || value.equalsIgnoreCase("NULL")) return null;
+
+		try
+		{
+			return (BSONObject) JSON.parse(value);
+		}
+		catch (RuntimeException e)
+		{
+			throw new InvalidTypeException("Cannot parse BSON object from: " + value, e);
+		}
+	}
+
+	@Override
+	public String format(BSONObject value)
+	throws InvalidTypeException
+	{
+		if (value == null) return "NULL";
+
+		return JSON.serialize(value);
+	}
+
+	private static class Encoder
+	{
+		private BasicBSONEncoder encoder = new BasicBSONEncoder();
+		private BasicOutputBuffer buffer = new BasicOutputBuffer(INITIAL_BYTES);
+
+		public ByteBuffer encode(BSONObject bson)
+		{
+			encoder.set(buffer);
+
+			try
+			{
+				encoder.putObject(bson);
+				int size = buffer.getSize();
+				ByteBuffer result = ByteBuffer.allocate(size);
+				result.put(buffer.getInternalBuffer(), 0, size);
+				result.flip();
+				return result;
+			}
+			finally
+			{
+				encoder.done();
+				release();
+			}
+		}
+
+		private void release()
+		{
+			if (buffer.getInternalBuffer().length > MAX_RETAINED_BYTES)
+			{
+				buffer = new BasicOutputBuffer(INITIAL_BYTES);
+			}
+			else
+			{
+				buffer.truncateToPosition(0);
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.datastax.driver.core.Session;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.orangerhymelabs.helenus.cassandra.meta.KeyValuePair;
+import com.orangerhymelabs.helenus.cassandra.meta.MetadataRepository;
+import com.orangerhymelabs.helenus.exception.ItemNotFoundException;
+import com.orangerhymelabs.helenus.exception.StorageException;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * Trains Zstd compression dictionaries from a sample of a table's documents, and stores and loads them
+ * (versioned, in sys_meta) for the table's DocumentCompressor.
+ *
+ * Each trained dictionary gets the next version number for its table and is never overwritten, so
+ * documents compressed with an older version remain readable. Dictionaries trained by another process
+ * are read by the compressor's loader() when a document written with one is first read.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class CompressionDictionaries
+{
+	public static final int DEFAULT_SAMPLES = 1000;
+	public static final int DEFAULT_DICTIONARY_BYTES = 16 * 1024;
+
+	private static final String KEY_PREFIX = "compression.";
+
+	private MetadataRepository metadata;
+
+	public CompressionDictionaries(Session session, String keyspace)
+	{
+		super();
+		this.metadata = new MetadataRepository(session, keyspace);
+	}
+
+	/**
+	 * Add every stored dictionary version for the table to the compressor. The newest becomes the
+	 * compressor's current dictionary.
+	 *
+	 * @param dbTable the table (or view) name, as from toDbTable().
+	 * @param compressor the table's compressor.
+	 * @return a future containing the newest version, or zero if the table has no dictionaries.
+	 */
+	public ListenableFuture<Integer> load(String dbTable, DocumentCompressor compressor)
+	{
+		return Futures.transform(versions(dbTable), new Function<SortedMap<Integer, byte[]>, Integer>()
+		{
+			@Override
+			public Integer apply(SortedMap<Integer, byte[]> versions)
+			{
+				for (Map.Entry<Integer, byte[]> entry : versions.entrySet())
+				{
+					compressor.dictionary(entry.getKey(), entry.getValue());
+				}
+
+				return (versions.isEmpty() ? 0 : versions.lastKey());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns a DictionaryLoader that reads the table's stored dictionary versions, for
+	 * DocumentCompressor.loader().
+	 *
+	 * @param dbTable the table (or view) name, as from toDbTable().
+	 */
+	public DocumentCompressor.DictionaryLoader loader(String dbTable)
+	{
+		return new DocumentCompressor.DictionaryLoader()
+		{
+			@Override
+			public ListenableFuture<byte[]> load(int version)
+			{
+				return read(dbTable, version);
+			}
+		};
+	}
+
+	/**
+	 * Read one stored dictionary version.
+	 *
+	 * @param dbTable the table (or view) name, as from toDbTable().
+	 * @param version the dictionary version.
+	 * @return a future containing the dictionary, or null if the table has no such version.
+	 */
+	public ListenableFuture<byte[]> read(String dbTable, int version)
+	{
+		ListenableFuture<byte[]> read = Futures.transform(metadata.read(new Identifier(key(dbTable, version))), new Function<KeyValuePair, byte[]>()
+		{
+			@Override
+			public byte[] apply(KeyValuePair entry)
+			{
+				return Base64.getDecoder().decode(entry.value());
+			}
+		}, MoreExecutors.directExecutor());
+
+		return Futures.catching(read, ItemNotFoundException.class, new Function<ItemNotFoundException, byte[]>()
+		{
+			@Override
+			public byte[] apply(ItemNotFoundException e)
+			{
+				return null;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Train a new dictionary from a sample of the repository's documents, store it as the table's next
+	 * version and make it the current dictionary of the repository's compressor.
+	 *
+	 * @param repository the table's repository.
+	 * @param samples the maximum number of documents to sample.
+	 * @param dictionaryBytes the maximum dictionary size.
+	 * @return a future containing the new dictionary version.
+	 */
+	public ListenableFuture<Integer> train(AbstractDocumentRepository repository, int samples, int dictionaryBytes)
+	{
+		String dbTable = repository.tableName();
+		DocumentCompressor compressor = repository.compressor();
+
+		return Futures.transformAsync(repository.readSample(samples), new AsyncFunction<List<Document>, Integer>()
+		{
+			@Override
+			public ListenableFuture<Integer> apply(List<Document> documents)
+			throws Exception
+			{
+				byte[] dictionary = train(documents, dictionaryBytes);
+				return Futures.transformAsync(versions(dbTable), new AsyncFunction<SortedMap<Integer, byte[]>, Integer>()
+				{
+					@Override
+					public ListenableFuture<Integer> apply(SortedMap<Integer, byte[]> versions)
+					{
+						int version = (versions.isEmpty() ? 1 : versions.lastKey() + 1);
+						KeyValuePair entry = new KeyValuePair(key(dbTable, version), Base64.getEncoder().encodeToString(dictionary));
+						return Futures.transform(metadata.create(entry), new Function<KeyValuePair, Integer>()
+						{
+							@Override
+							public Integer apply(KeyValuePair input)
+							{
+								compressor.dictionary(version, dictionary);
+								return version;
+							}
+						}, MoreExecutors.directExecutor());
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private byte[] train(List<Document> documents, int dictionaryBytes)
+	{
+		int total = 0;
+
+		for (Document document : documents)
+		{
+			total += (document.hasObject() ? document.bson().remaining() : 0);
+		}
+
+		if (total == 0) throw new StorageException("No documents to train a compression dictionary from");
+
+		ZstdDictTrainer trainer = new ZstdDictTrainer(total, dictionaryBytes);
+
+		for (Document document : documents)
+		{
+			if (!document.hasObject()) continue;
+
+			ByteBuffer bson = document.bson();
+			byte[] sample = new byte[bson.remaining()];
+			bson.duplicate().get(sample);
+			trainer.addSample(sample);
+		}
+
+		return trainer.trainSamples();
+	}
+
+	private ListenableFuture<SortedMap<Integer, byte[]>> versions(String dbTable)
+	{
+		String prefix = KEY_PREFIX + dbTable + ".";
+		return Futures.transform(metadata.readAll(), new Function<List<KeyValuePair>, SortedMap<Integer, byte[]>>()
+		{
+			@Override
+			public SortedMap<Integer, byte[]> apply(List<KeyValuePair> entries)
+			{
+				SortedMap<Integer, byte[]> versions = new TreeMap<>();
+
+				for (KeyValuePair entry : entries)
+				{
+					if (entry.key().startsWith(prefix))
+					{
+						versions.put(Integer.valueOf(entry.key().substring(prefix.length())), Base64.getDecoder().decode(entry.value()));
+					}
+				}
+
+				return versions;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private static String key(String dbTable, int version)
+	{
+		return KEY_PREFIX + dbTable + "." + version;
+	}
+}
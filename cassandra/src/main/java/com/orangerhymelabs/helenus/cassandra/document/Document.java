@@ -15,6 +15,9 @@
  */
 package com.orangerhymelabs.helenus.cassandra.document;
 
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
 import org.bson.BSONObject;
 
 import com.orangerhymelabs.helenus.persistence.AbstractEntity;
@@ -34,6 +37,19 @@ extends AbstractEntity
 	// The BSON document.
 	private BSONObject bson;
 
+	// Seconds until the written document expires, or zero for the table's TTL. When read, the seconds it
+	// has left, or zero if it doesn't expire.
+	private int ttl;
+
+	// Set while the object is still to be read from its chunks (see DocumentChunks).
+	private transient DocumentChunks.Pending pendingChunks;
+
+	// Set while the object waits on its compression dictionary to be loaded (see DocumentRowMapper.object()).
+	private transient DocumentRowMapper.PendingDictionary pendingDictionary;
+
+	// The version of the chunks the object was read from, if it was stored as chunks.
+	private transient UUID chunkVersion;
+
 	public Document()
 	{
 		super();
@@ -71,6 +87,68 @@ extends AbstractEntity
 		this.bson = bson;
 	}
 
+	/**
+	 * Returns the encoded BSON document, or null if there isn't one. A stored document that hasn't been
+	 * modified (a LazyBSONDocument) returns its bytes as read, without re-encoding. Otherwise the document
+	 * is encoded via the BSONCodec's pooled buffers.
+	 */
+	public ByteBuffer bson()
+	{
+		return BSONCodec.encode(bson);
+	}
+
+	public int ttl()
+	{
+		return ttl;
+	}
+
+	/**
+	 * Set how long the document lives after it's written, overriding the table's (or view's) TTL.
+	 * 
+	 * @param seconds the TTL in seconds, or zero for the table's TTL.
+	 */
+	public void ttl(int seconds)
+	{
+		if (seconds < 0) throw new IllegalArgumentException("TTL must not be negative: " + seconds);
+
+		this.ttl = seconds;
+	}
+
+	public boolean hasTtl()
+	{
+		return (ttl > 0);
+	}
+
+	DocumentChunks.Pending pendingChunks()
+	{
+		return pendingChunks;
+	}
+
+	void pendingChunks(DocumentChunks.Pending pending)
+	{
+		this.pendingChunks = pending;
+	}
+
+	DocumentRowMapper.PendingDictionary pendingDictionary()
+	{
+		return pendingDictionary;
+	}
+
+	void pendingDictionary(DocumentRowMapper.PendingDictionary pending)
+	{
+		this.pendingDictionary = pending;
+	}
+
+	UUID chunkVersion()
+	{
+		return chunkVersion;
+	}
+
+	void chunkVersion(UUID version)
+	{
+		this.chunkVersion = version;
+	}
+
 	@Override
 	public String toString()
 	{
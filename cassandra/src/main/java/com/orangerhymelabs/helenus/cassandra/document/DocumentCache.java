@@ -0,0 +1,715 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * A per-table read-through cache of encoded (BSON) documents, held off-heap so a large cache adds
+ * nothing for the garbage collector to trace. Create one per table and share it between that table's
+ * repositories (AbstractDocumentRepository.cache()).
+ *
+ * Documents are stored in fixed-size blocks carved from 1MB direct-memory slabs, allocated as they're
+ * needed up to maxBytes and never freed. A document occupies as many blocks as it needs, so any
+ * evicted document's blocks can be reused by any other, and at most one partial block per document is
+ * wasted. Only the index (identifier, block numbers and timestamps) is on-heap.
+ *
+ * Admission and eviction follow W-TinyLFU: new documents enter a small LRU window; a document leaving
+ * the window only displaces the main (segmented LRU) region's victim if it has been requested more
+ * often, as estimated by a count-min sketch of recent requests, which is periodically halved so old
+ * popularity fades. So a scan of one-off reads can't flush the hot documents.
+ *
+ * The cache is split into up to 16 independently locked segments by identifier. Reads copy the
+ * document out of its blocks under the segment's lock.
+ *
+ * The cache is only correct if every write to the table goes through repositories sharing this
+ * instance, in this process: writes invalidate it here, and nowhere else. Documents that expire aren't
+ * cached (see AbstractDocumentRepository.cache()).
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class DocumentCache
+{
+	public static final int DEFAULT_MAX_ENTRY_BYTES = 256 * 1024;
+	public static final int DEFAULT_BLOCK_BYTES = 512;
+
+	private static final int SLAB_BYTES = 1024 * 1024;
+	private static final int MAX_SEGMENTS = 16;
+	private static final int STAMPS = 256;
+
+	private Segment[] segments;
+	private int blockBytes;
+	private int maxEntryBytes;
+	private long maxAgeMillis;
+
+	private Counter hits = new Counter();
+	private Counter misses = new Counter();
+	private Counter evictions = new Counter();
+	private Counter rejections = new Counter();
+	private Counter invalidations = new Counter();
+
+	public DocumentCache(long maxBytes)
+	{
+		this(maxBytes, DEFAULT_MAX_ENTRY_BYTES, 0L);
+	}
+
+	/**
+	 * @param maxBytes the off-heap memory to use, at least 1MB.
+	 * @param maxEntryBytes documents larger than this (encoded) are never cached.
+	 * @param maxAgeMillis if greater than zero, documents are dropped this long after they're cached.
+	 */
+	public DocumentCache(long maxBytes, int maxEntryBytes, long maxAgeMillis)
+	{
+		this(maxBytes, maxEntryBytes, maxAgeMillis, DEFAULT_BLOCK_BYTES);
+	}
+
+	/**
+	 * @param maxBytes the off-heap memory to use, at least 1MB.
+	 * @param maxEntryBytes documents larger than this (encoded) are never cached.
+	 * @param maxAgeMillis if greater than zero, documents are dropped this long after they're cached.
+	 * @param blockBytes the storage block size, a divisor of 1MB.
+	 */
+	public DocumentCache(long maxBytes, int maxEntryBytes, long maxAgeMillis, int blockBytes)
+	{
+		super();
+
+		if (maxBytes < SLAB_BYTES) throw new IllegalArgumentException("Cache size must be at least " + SLAB_BYTES + " bytes: " + maxBytes);
+
+		if (blockBytes <= 0 || SLAB_BYTES % blockBytes != 0) throw new IllegalArgumentException("Block size must divide " + SLAB_BYTES + ": " + blockBytes);
+
+		int count = (int) Math.min(MAX_SEGMENTS, maxBytes / SLAB_BYTES);
+		int blocks = (int) Math.min(Integer.MAX_VALUE, maxBytes / count / blockBytes);
+		this.segments = new Segment[count];
+		this.blockBytes = blockBytes;
+		this.maxAgeMillis = maxAgeMillis;
+
+		for (int i = 0; i < count; i++)
+		{
+			segments[i] = new Segment(blocks);
+		}
+
+		// A document must fit in a segment's main region.
+		this.maxEntryBytes = (int) Math.min(maxEntryBytes, (long) segments[0].mainMax * blockBytes);
+	}
+
+	/**
+	 * Returns a copy of the cached document, with only the projected fields of its object, or null if
+	 * it isn't cached.
+	 *
+	 * @param id the document identifier.
+	 * @param projection the fields to return, or null for all.
+	 */
+	public Document get(Identifier id, Projection projection)
+	{
+		int hash = hash(id);
+		Document document = segmentFor(hash).get(id, hash);
+
+		if (document != null && projection != null && !projection.isAll())
+		{
+			document.object(projection.apply(document.bson()));
+		}
+
+		return document;
+	}
+
+	/**
+	 * Returns the identifier's invalidation stamp. Take it before reading the document from the table,
+	 * and pass it to put(), which ignores the document if it may have been written since.
+	 */
+	public long stamp(Identifier id)
+	{
+		int hash = hash(id);
+		return segmentFor(hash).stamp(hash);
+	}
+
+	/**
+	 * Cache a document just read from the table. It's only admitted if it's not too large, hasn't been
+	 * invalidated since the stamp was taken, and is requested more often than what it would displace.
+	 *
+	 * @param document a complete document (not projected).
+	 * @param stamp from stamp(), taken before the document was read.
+	 * @return true if the document was cached.
+	 */
+	public boolean put(Document document, long stamp)
+	{
+		if (document == null || !document.hasObject() || document.identifier() == null) return false;
+
+		ByteBuffer bson = document.bson();
+
+		if (bson.remaining() > maxEntryBytes)
+		{
+			rejections.inc();
+			return false;
+		}
+
+		Identifier id = document.identifier();
+		int hash = hash(id);
+		return segmentFor(hash).put(id, hash, bson, document.createdAt(), document.updatedAt(), stamp);
+	}
+
+	/**
+	 * Drop the document, and ignore any put() of it whose stamp was taken before now. Call once a write
+	 * of the document has completed (or failed).
+	 */
+	public void invalidate(Identifier id)
+	{
+		if (id == null) return;
+
+		int hash = hash(id);
+		segmentFor(hash).invalidate(id, hash);
+	}
+
+	public long hits()
+	{
+		return hits.getCount();
+	}
+
+	public long misses()
+	{
+		return misses.getCount();
+	}
+
+	/**
+	 * Returns the number of documents evicted to make room for others.
+	 */
+	public long evictions()
+	{
+		return evictions.getCount();
+	}
+
+	/**
+	 * Returns the number of documents not admitted: too large, stale or less popular than what they'd displace.
+	 */
+	public long rejections()
+	{
+		return rejections.getCount();
+	}
+
+	public long invalidations()
+	{
+		return invalidations.getCount();
+	}
+
+	public long entries()
+	{
+		long entries = 0;
+
+		for (Segment segment : segments)
+		{
+			entries += segment.entries();
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Returns the off-heap bytes occupied by cached documents (in whole blocks).
+	 */
+	public long bytes()
+	{
+		long blocks = 0;
+
+		for (Segment segment : segments)
+		{
+			blocks += segment.usedBlocks();
+		}
+
+		return blocks * blockBytes;
+	}
+
+	/**
+	 * Returns the off-heap bytes allocated so far.
+	 */
+	public long allocatedBytes()
+	{
+		long bytes = 0;
+
+		for (Segment segment : segments)
+		{
+			bytes += segment.allocatedBytes();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Register the hits, misses, evictions, rejections and invalidations counters and entries and bytes
+	 * gauges with the given registry (e.g. Cluster.getMetrics().getRegistry()).
+	 *
+	 * @param registry the metric registry.
+	 * @param prefix a name prefix, typically including the table name.
+	 */
+	public void registerMetrics(MetricRegistry registry, String prefix)
+	{
+		registry.register(MetricRegistry.name(prefix, "hits"), hits);
+		registry.register(MetricRegistry.name(prefix, "misses"), misses);
+		registry.register(MetricRegistry.name(prefix, "evictions"), evictions);
+		registry.register(MetricRegistry.name(prefix, "rejections"), rejections);
+		registry.register(MetricRegistry.name(prefix, "invalidations"), invalidations);
+		registry.register(MetricRegistry.name(prefix, "entries"), new Gauge<Long>()
+		{
+			@Override
+			public Long getValue()
+			{
+				return entries();
+			}
+		});
+		registry.register(MetricRegistry.name(prefix, "bytes"), new Gauge<Long>()
+		{
+			@Override
+			public Long getValue()
+			{
+				return bytes();
+			}
+		});
+		registry.register(MetricRegistry.name(prefix, "allocated-bytes"), new Gauge<Long>()
+		{
+			@Override
+			public Long getValue()
+			{
+				return allocatedBytes();
+			}
+		});
+	}
+
+	private Segment segmentFor(int hash)
+	{
+		return segments[(hash & Integer.MAX_VALUE) % segments.length];
+	}
+
+	private static int hash(Identifier id)
+	{
+		int h = id.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x45d9f3b;
+		h ^= (h >>> 16);
+		return h;
+	}
+
+	/**
+	 * One independently locked part of the cache: its own blocks, index and W-TinyLFU policy.
+	 */
+	private class Segment
+	{
+		private Map<Identifier, Node> nodes = new HashMap<>();
+		private Queue window = new Queue();
+		private Queue probation = new Queue();
+		private Queue protect = new Queue();
+		private int windowMax;
+		private int mainMax;
+		private int protectMax;
+		private FrequencySketch sketch;
+		private long[] stamps = new long[STAMPS];
+
+		private int maxBlocks;
+		private int blocksPerSlab;
+		private ByteBuffer[] slabs;
+		private int[] free;
+		private int freeCount = 0;
+		private int unallocated = 0;
+
+		public Segment(int maxBlocks)
+		{
+			super();
+			this.maxBlocks = maxBlocks;
+			this.windowMax = Math.max(1, maxBlocks / 100);
+			this.mainMax = maxBlocks - windowMax;
+			this.protectMax = (int) (mainMax * 0.8);
+			this.sketch = new FrequencySketch(maxBlocks);
+			this.blocksPerSlab = SLAB_BYTES / blockBytes;
+			this.slabs = new ByteBuffer[(maxBlocks + blocksPerSlab - 1) / blocksPerSlab];
+			this.free = new int[maxBlocks];
+		}
+
+		public synchronized Document get(Identifier id, int hash)
+		{
+			sketch.increment(hash);
+			Node node = nodes.get(id);
+
+			if (node != null && node.expiresAt < System.currentTimeMillis())
+			{
+				remove(node);
+				node = null;
+			}
+
+			if (node == null)
+			{
+				misses.inc();
+				return null;
+			}
+
+			touch(node);
+			hits.inc();
+
+			Document document = new Document(new LazyBSONDocument(ByteBuffer.wrap(read(node))));
+			document.identifier(node.id);
+			document.createdAt(node.createdAt != Long.MIN_VALUE ? new Date(node.createdAt) : null);
+			document.updatedAt(node.updatedAt != Long.MIN_VALUE ? new Date(node.updatedAt) : null);
+			return document;
+		}
+
+		public synchronized long stamp(int hash)
+		{
+			return stamps[(hash >>> 8) & (STAMPS - 1)];
+		}
+
+		public synchronized boolean put(Identifier id, int hash, ByteBuffer bson, Date createdAt, Date updatedAt, long stamp)
+		{
+			if (stamps[(hash >>> 8) & (STAMPS - 1)] != stamp)
+			{
+				rejections.inc();
+				return false;
+			}
+
+			Node existing = nodes.get(id);
+
+			if (existing != null) remove(existing);
+
+			Node node = new Node(id, hash, bson.remaining());
+			node.createdAt = (createdAt != null ? createdAt.getTime() : Long.MIN_VALUE);
+			node.updatedAt = (updatedAt != null ? updatedAt.getTime() : Long.MIN_VALUE);
+			node.expiresAt = (maxAgeMillis > 0 ? System.currentTimeMillis() + maxAgeMillis : Long.MAX_VALUE);
+			nodes.put(id, node);
+			window.addFirst(node);
+
+			while (window.blocks > windowMax)
+			{
+				Node candidate = window.last();
+				window.remove(candidate);
+
+				if (!admit(candidate))
+				{
+					nodes.remove(candidate.id);
+					release(candidate);
+
+					if (candidate == node)
+					{
+						rejections.inc();
+						return false;
+					}
+
+					evictions.inc();
+				}
+			}
+
+			// Everything else fits in maxBlocks, so there are blocks for it.
+			write(node, bson);
+			return true;
+		}
+
+		public synchronized void invalidate(Identifier id, int hash)
+		{
+			stamps[(hash >>> 8) & (STAMPS - 1)]++;
+			Node node = nodes.get(id);
+
+			if (node != null)
+			{
+				remove(node);
+				invalidations.inc();
+			}
+		}
+
+		public synchronized int entries()
+		{
+			return nodes.size();
+		}
+
+		public synchronized long usedBlocks()
+		{
+			return unallocated - freeCount;
+		}
+
+		public synchronized long allocatedBytes()
+		{
+			long bytes = 0;
+
+			for (ByteBuffer slab : slabs)
+			{
+				if (slab != null) bytes += slab.capacity();
+			}
+
+			return bytes;
+		}
+
+		/**
+		 * Move the candidate leaving the window into the main region's probation queue, if it's more
+		 * popular than each victim it displaces.
+		 */
+		private boolean admit(Node candidate)
+		{
+			while (probation.blocks + protect.blocks + candidate.blockCount > mainMax)
+			{
+				Node victim = (probation.isEmpty() ? protect.last() : probation.last());
+
+				if (sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) return false;
+
+				remove(victim);
+				evictions.inc();
+			}
+
+			probation.addFirst(candidate);
+			return true;
+		}
+
+		private void touch(Node node)
+		{
+			if (node.queue == probation)
+			{
+				probation.remove(node);
+				protect.addFirst(node);
+
+				while (protect.blocks > protectMax)
+				{
+					Node demoted = protect.last();
+					protect.remove(demoted);
+					probation.addFirst(demoted);
+				}
+			}
+			else
+			{
+				Queue queue = node.queue;
+				queue.remove(node);
+				queue.addFirst(node);
+			}
+		}
+
+		private void remove(Node node)
+		{
+			node.queue.remove(node);
+			nodes.remove(node.id);
+			release(node);
+		}
+
+		private void release(Node node)
+		{
+			if (node.blocks == null) return;
+
+			for (int block : node.blocks)
+			{
+				free[freeCount++] = block;
+			}
+
+			node.blocks = null;
+		}
+
+		private void write(Node node, ByteBuffer bson)
+		{
+			node.blocks = new int[node.blockCount];
+			ByteBuffer source = bson.duplicate();
+			int start = source.position();
+
+			for (int i = 0; i < node.blockCount; i++)
+			{
+				node.blocks[i] = (freeCount > 0 ? free[--freeCount] : allocate());
+				source.limit(Math.min(start + node.length, source.position() + blockBytes));
+				slabAt(node.blocks[i]).put(source);
+			}
+		}
+
+		private byte[] read(Node node)
+		{
+			byte[] bytes = new byte[node.length];
+
+			for (int i = 0; i < node.blockCount; i++)
+			{
+				int offset = i * blockBytes;
+				slabAt(node.blocks[i]).get(bytes, offset, Math.min(blockBytes, node.length - offset));
+			}
+
+			return bytes;
+		}
+
+		/**
+		 * Returns the block's slab, positioned at the block.
+		 */
+		private ByteBuffer slabAt(int block)
+		{
+			ByteBuffer slab = slabs[block / blocksPerSlab];
+			slab.clear();
+			slab.position((block % blocksPerSlab) * blockBytes);
+			return slab;
+		}
+
+		private int allocate()
+		{
+			int block = unallocated++;
+			int slab = block / blocksPerSlab;
+
+			if (slabs[slab] == null)
+			{
+				slabs[slab] = ByteBuffer.allocateDirect(Math.min(blocksPerSlab, maxBlocks - slab * blocksPerSlab) * blockBytes);
+			}
+
+			return block;
+		}
+	}
+
+	private class Node
+	{
+		private Identifier id;
+		private int hash;
+		private int length;
+		private int blockCount;
+		private int[] blocks;
+		private long createdAt;
+		private long updatedAt;
+		private long expiresAt;
+		private Queue queue;
+		private Node previous;
+		private Node next;
+
+		public Node(Identifier id, int hash, int length)
+		{
+			super();
+			this.id = id;
+			this.hash = hash;
+			this.length = length;
+			this.blockCount = Math.max(1, (length + blockBytes - 1) / blockBytes);
+		}
+	}
+
+	/**
+	 * A doubly-linked LRU queue, most recent first, that totals its nodes' blocks.
+	 */
+	private class Queue
+	{
+		private Node head = new Node(null, 0, 0);
+		private int blocks = 0;
+
+		public Queue()
+		{
+			super();
+			head.previous = head;
+			head.next = head;
+		}
+
+		public boolean isEmpty()
+		{
+			return (head.next == head);
+		}
+
+		public Node last()
+		{
+			return (isEmpty() ? null : head.previous);
+		}
+
+		public void addFirst(Node node)
+		{
+			node.previous = head;
+			node.next = head.next;
+			head.next.previous = node;
+			head.next = node;
+			node.queue = this;
+			blocks += node.blockCount;
+		}
+
+		public void remove(Node node)
+		{
+			node.previous.next = node.next;
+			node.next.previous = node.previous;
+			node.previous = null;
+			node.next = null;
+			node.queue = null;
+			blocks -= node.blockCount;
+		}
+	}
+
+	/**
+	 * A count-min sketch of 4-bit counters estimating how often each identifier was requested recently.
+	 * Every counter is halved once the number of increments reaches ten times the capacity.
+	 */
+	private static class FrequencySketch
+	{
+		private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private long[] table;
+		private int mask;
+		private int additions = 0;
+		private int sampleSize;
+
+		public FrequencySketch(int capacity)
+		{
+			super();
+			int size = Integer.highestOneBit(Math.max(16, capacity / 4) - 1) << 1;
+			this.table = new long[size];
+			this.mask = size - 1;
+			this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(16, capacity));
+		}
+
+		public void increment(int hash)
+		{
+			boolean isAdded = false;
+
+			for (int i = 0; i < SEEDS.length; i++)
+			{
+				long h = spread(hash, i);
+				int index = (int) h & mask;
+				int shift = (int) ((h >>> 40) & 15) << 2;
+
+				if (((table[index] >>> shift) & 15L) < 15L)
+				{
+					table[index] += (1L << shift);
+					isAdded = true;
+				}
+			}
+
+			if (isAdded && ++additions >= sampleSize)
+			{
+				reset();
+			}
+		}
+
+		public int frequency(int hash)
+		{
+			int frequency = Integer.MAX_VALUE;
+
+			for (int i = 0; i < SEEDS.length; i++)
+			{
+				long h = spread(hash, i);
+				int shift = (int) ((h >>> 40) & 15) << 2;
+				frequency = Math.min(frequency, (int) ((table[(int) h & mask] >>> shift) & 15L));
+			}
+
+			return frequency;
+		}
+
+		private void reset()
+		{
+			for (int i = 0; i < table.length; i++)
+			{
+				table[i] = (table[i] >>> 1) & RESET_MASK;
+			}
+
+			additions /= 2;
+		}
+
+		private static long spread(int hash, int i)
+		{
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			return h ^ (h >>> 29);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import com.datastax.driver.core.utils.UUIDs;
+import com.orangerhymelabs.helenus.exception.StorageException;
+
+/**
+ * Decides when a stored document is too large for a single cell, and describes how it's split.
+ *
+ * A document whose stored (compressed) size exceeds the threshold is written as chunks of at most
+ * chunkBytes to the table's chunk table ({table}__chunks), one clustering row per chunk, and its object
+ * column holds only a small manifest: 'H', 'K', a reserved byte, a format byte, the chunk version (a
+ * time UUID), the stored length and the chunk size. Like a compression frame, a manifest reads as a
+ * negative BSON length, so it's never mistaken for a document.
+ *
+ * Every write of a chunked document uses a new version, and readers only read the version named by
+ * the manifest they read, so a reader never sees a mix of two writes. A write deletes only the versions
+ * it replaced: for a conditional write, the version of the document it was conditional on; for an
+ * unconditional one, the versions written with an earlier timestamp, which its row supersedes. A reader
+ * whose version is deleted while it's being read re-reads the manifest. AbstractDocumentRepository does
+ * the reading and writing.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class DocumentChunks
+{
+	public static final int DEFAULT_THRESHOLD_BYTES = 1024 * 1024;
+	public static final int DEFAULT_CHUNK_BYTES = 256 * 1024;
+	public static final String TABLE_SUFFIX = "__chunks";
+
+	/**
+	 * Never chunks new writes. Chunked documents already stored are still read.
+	 */
+	public static final DocumentChunks DISABLED = new DocumentChunks(0, DEFAULT_CHUNK_BYTES);
+
+	private static final byte MAGIC_0 = 'H';
+	private static final byte MAGIC_1 = 'K';
+	private static final byte FORMAT = (byte) 0x81;
+	private static final int MANIFEST_BYTES = 28;
+
+	private int thresholdBytes;
+	private int chunkBytes;
+
+	public DocumentChunks()
+	{
+		this(DEFAULT_THRESHOLD_BYTES, DEFAULT_CHUNK_BYTES);
+	}
+
+	/**
+	 * @param thresholdBytes documents stored larger than this are chunked. Zero or less disables chunking.
+	 * @param chunkBytes the maximum size of a chunk.
+	 */
+	public DocumentChunks(int thresholdBytes, int chunkBytes)
+	{
+		super();
+
+		if (chunkBytes <= 0) throw new IllegalArgumentException("Chunk size must be greater than zero: " + chunkBytes);
+
+		this.thresholdBytes = thresholdBytes;
+		this.chunkBytes = chunkBytes;
+	}
+
+	public boolean isEnabled()
+	{
+		return (thresholdBytes > 0);
+	}
+
+	public int thresholdBytes()
+	{
+		return thresholdBytes;
+	}
+
+	public int chunkBytes()
+	{
+		return chunkBytes;
+	}
+
+	/**
+	 * Returns true if the stored value should be written as chunks.
+	 *
+	 * @param stored the (compressed) value for the object column, possibly null.
+	 */
+	public boolean shouldChunk(ByteBuffer stored)
+	{
+		return (isEnabled() && stored != null && stored.remaining() > thresholdBytes);
+	}
+
+	/**
+	 * Returns a new manifest (with a new version) for writing the stored value as chunks.
+	 */
+	public Manifest manifest(ByteBuffer stored)
+	{
+		return new Manifest(UUIDs.timeBased(), stored.remaining(), chunkBytes);
+	}
+
+	/**
+	 * Returns true if the object column's value is a chunk manifest.
+	 */
+	public static boolean isManifest(ByteBuffer stored)
+	{
+		if (stored == null || stored.remaining() != MANIFEST_BYTES) return false;
+
+		int p = stored.position();
+		return (stored.get(p) == MAGIC_0 && stored.get(p + 1) == MAGIC_1 && stored.get(p + 3) == FORMAT);
+	}
+
+	/**
+	 * Where a chunked document's chunks are, and how to put them back together.
+	 */
+	public static class Manifest
+	{
+		private UUID version;
+		private int length;
+		private int chunkBytes;
+
+		private Manifest(UUID version, int length, int chunkBytes)
+		{
+			super();
+			this.version = version;
+			this.length = length;
+			this.chunkBytes = chunkBytes;
+		}
+
+		/**
+		 * Parse a manifest from the object column.
+		 *
+		 * @param stored a value for which isManifest() is true.
+		 */
+		public static Manifest parse(ByteBuffer stored)
+		{
+			if (!isManifest(stored)) throw new StorageException("Not a document chunk manifest");
+
+			ByteBuffer b = stored.duplicate();
+			b.position(b.position() + 4);
+			UUID version = new UUID(b.getLong(), b.getLong());
+			return new Manifest(version, b.getInt(), b.getInt());
+		}
+
+		/**
+		 * Returns the manifest as stored in the object column.
+		 */
+		public ByteBuffer encode()
+		{
+			ByteBuffer b = ByteBuffer.allocate(MANIFEST_BYTES);
+			b.put(MAGIC_0);
+			b.put(MAGIC_1);
+			b.put((byte) 0);
+			b.put(FORMAT);
+			b.putLong(version.getMostSignificantBits());
+			b.putLong(version.getLeastSignificantBits());
+			b.putInt(length);
+			b.putInt(chunkBytes);
+			b.flip();
+			return b;
+		}
+
+		public UUID version()
+		{
+			return version;
+		}
+
+		public int length()
+		{
+			return length;
+		}
+
+		public int chunks()
+		{
+			return (length + chunkBytes - 1) / chunkBytes;
+		}
+
+		/**
+		 * Returns a view (not a copy) of the index'th chunk of the stored value.
+		 */
+		public ByteBuffer chunk(ByteBuffer stored, int index)
+		{
+			ByteBuffer chunk = stored.duplicate();
+			int start = stored.position() + index * chunkBytes;
+			chunk.position(start);
+			chunk.limit(Math.min(start + chunkBytes, stored.position() + length));
+			return chunk;
+		}
+
+		/**
+		 * Copy a chunk read back into its place in the reassembled value.
+		 *
+		 * @param index the chunk number.
+		 * @param data the chunk.
+		 * @param target the reassembled value, length() bytes.
+		 */
+		public void copy(int index, ByteBuffer data, byte[] target)
+		{
+			int start = index * chunkBytes;
+			int expected = Math.min(chunkBytes, length - start);
+
+			if (index < 0 || index >= chunks() || data == null || data.remaining() != expected)
+			{
+				throw new StorageException("Invalid document chunk " + index + " of version " + version);
+			}
+
+			data.duplicate().get(target, start, expected);
+		}
+	}
+
+	/**
+	 * A marshalled document whose object is still in its chunks: the manifest, and the projection to
+	 * apply once they're read.
+	 */
+	static class Pending
+	{
+		private Manifest manifest;
+		private Projection projection;
+
+		Pending(Manifest manifest, Projection projection)
+		{
+			super();
+			this.manifest = manifest;
+			this.projection = projection;
+		}
+
+		Manifest manifest()
+		{
+			return manifest;
+		}
+
+		Projection projection()
+		{
+			return projection;
+		}
+	}
+}
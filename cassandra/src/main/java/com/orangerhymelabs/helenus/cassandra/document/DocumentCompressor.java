@@ -0,0 +1,413 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
+import com.orangerhymelabs.helenus.exception.StorageException;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Compresses encoded (BSON) documents on their way to the object column, and decompresses them on the
+ * way back. Create one per table and share it between that table's repositories.
+ *
+ * A compressed value is framed with a 12-byte header: 'H', 'Z', the codec, a format byte, the
+ * dictionary version (zero for none) and the uncompressed length. The first four bytes read as a
+ * negative BSON length, so a frame is never mistaken for a plain BSON document. Plain documents pass
+ * through decompress() unchanged, so rows written before compression was enabled (or with a different
+ * codec) still read back. A document that doesn't get smaller is stored plain.
+ *
+ * Zstd dictionaries are versioned: new writes use the current dictionary, and reads use whichever
+ * version the value was written with. The stored versions are added with dictionary() when the table's
+ * repositories are created (CompressionDictionaries.load() does this). A version added since, e.g. trained
+ * by another process, is fetched by the DictionaryLoader the first time a document written with it is
+ * read (see missingDictionary() and load(int)).
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class DocumentCompressor
+{
+	public static final int DEFAULT_ZSTD_LEVEL = 3;
+
+	private static final byte MAGIC_0 = 'H';
+	private static final byte MAGIC_1 = 'Z';
+	private static final byte FORMAT = (byte) 0x81;
+	private static final int HEADER_BYTES = 12;
+
+	private static final byte LZ4_CODEC = 1;
+	private static final byte ZSTD_CODEC = 2;
+
+	private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+	private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+	private Compression compression;
+	private int level;
+	private ConcurrentMap<Integer, Dictionary> dictionaries = new ConcurrentHashMap<>();
+	private volatile Dictionary current;
+	private volatile ListenableFuture<?> loaded = Futures.immediateFuture(null);
+	private volatile DictionaryLoader loader;
+	private ConcurrentMap<Integer, SettableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+	public DocumentCompressor(Compression compression)
+	{
+		this(compression, DEFAULT_ZSTD_LEVEL);
+	}
+
+	/**
+	 * @param compression the codec for new writes. NONE still decompresses values written compressed.
+	 * @param level the Zstd compression level.
+	 */
+	public DocumentCompressor(Compression compression, int level)
+	{
+		super();
+		this.compression = (compression != null ? compression : Compression.NONE);
+		this.level = level;
+	}
+
+	public Compression compression()
+	{
+		return compression;
+	}
+
+	/**
+	 * Add a Zstd dictionary. It's used for reads of values written with this version, and for new writes
+	 * if it's the newest version added.
+	 *
+	 * @param version the dictionary version (greater than zero).
+	 * @param dictionary the trained dictionary.
+	 */
+	public void dictionary(int version, byte[] dictionary)
+	{
+		if (version <= 0) throw new IllegalArgumentException("Dictionary version must be greater than zero: " + version);
+
+		Dictionary d = new Dictionary(version, dictionary, level);
+		dictionaries.put(version, d);
+
+		synchronized (this)
+		{
+			if (current == null || current.version < version)
+			{
+				current = d;
+			}
+		}
+	}
+
+	/**
+	 * Set a future that completes once this compressor's stored dictionaries have been added, e.g. from
+	 * CompressionDictionaries.load().
+	 */
+	public void loaded(ListenableFuture<?> loaded)
+	{
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Returns a future that completes once the stored dictionaries have been added. Repositories wait
+	 * for it in prepareStatements().
+	 */
+	public ListenableFuture<?> loaded()
+	{
+		return loaded;
+	}
+
+	/**
+	 * Set how dictionary versions that aren't loaded are fetched, e.g. CompressionDictionaries.loader().
+	 */
+	public void loader(DictionaryLoader loader)
+	{
+		this.loader = loader;
+	}
+
+	/**
+	 * Fetch a dictionary version via the DictionaryLoader and add it. Concurrent loads of the same version
+	 * share one fetch.
+	 *
+	 * @param version the dictionary version.
+	 * @return a future that completes once the version has been added, or fails with a StorageException if there's no loader.
+	 */
+	public ListenableFuture<?> load(int version)
+	{
+		if (dictionaries.containsKey(version)) return Futures.immediateFuture(null);
+
+		DictionaryLoader l = loader;
+
+		if (l == null) return Futures.immediateFailedFuture(notLoaded(version));
+
+		SettableFuture<Object> created = SettableFuture.create();
+		SettableFuture<Object> existing = loading.putIfAbsent(version, created);
+
+		if (existing != null) return existing;
+
+		ListenableFuture<byte[]> fetched;
+
+		try
+		{
+			fetched = l.load(version);
+		}
+		catch (RuntimeException e)
+		{
+			fetched = Futures.immediateFailedFuture(e);
+		}
+
+		Futures.addCallback(fetched, new FutureCallback<byte[]>()
+		{
+			@Override
+			public void onSuccess(byte[] bytes)
+			{
+				loading.remove(version, created);
+
+				if (bytes == null)
+				{
+					created.setException(notLoaded(version));
+					return;
+				}
+
+				dictionary(version, bytes);
+				created.set(null);
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				loading.remove(version, created);
+				created.setException(t);
+			}
+		}, MoreExecutors.directExecutor());
+
+		return created;
+	}
+
+	/**
+	 * Returns the dictionary version a stored value was compressed with if that version isn't loaded,
+	 * otherwise zero. Such a value can't be decompressed until the version is added (see load(int)).
+	 *
+	 * @param stored the object column's value, possibly null.
+	 */
+	public int missingDictionary(ByteBuffer stored)
+	{
+		if (!isFrame(stored)) return 0;
+
+		int p = stored.position();
+
+		if (stored.get(p + 2) != ZSTD_CODEC) return 0;
+
+		int version = stored.getInt(p + 4);
+		return (version > 0 && !dictionaries.containsKey(version) ? version : 0);
+	}
+
+	/**
+	 * Returns the dictionary version used for new writes, or zero if there isn't one.
+	 */
+	public int dictionaryVersion()
+	{
+		Dictionary d = current;
+		return (d != null ? d.version : 0);
+	}
+
+	/**
+	 * Compress an encoded document for storage.
+	 *
+	 * @param bson an encoded BSON document, possibly null.
+	 * @return the value to store: a compressed frame, or the document itself if compression is off or doesn't help.
+	 */
+	public ByteBuffer compress(ByteBuffer bson)
+	{
+		if (bson == null || compression == Compression.NONE) return bson;
+
+		int length = bson.remaining();
+		byte[] src = bytes(bson);
+		byte[] frame;
+		int size;
+
+		switch(compression)
+		{
+			case LZ4:
+				frame = new byte[HEADER_BYTES + LZ4_COMPRESSOR.maxCompressedLength(length)];
+				size = LZ4_COMPRESSOR.compress(src, 0, length, frame, HEADER_BYTES, frame.length - HEADER_BYTES);
+				header(frame, LZ4_CODEC, 0, length);
+				break;
+			case ZSTD:
+				Dictionary d = current;
+				byte[] compressed = (d != null ? Zstd.compress(src, d.compressor()) : Zstd.compress(src, level));
+				size = compressed.length;
+				frame = new byte[HEADER_BYTES + size];
+				System.arraycopy(compressed, 0, frame, HEADER_BYTES, size);
+				header(frame, ZSTD_CODEC, (d != null ? d.version : 0), length);
+				break;
+			default:
+				return bson;
+		}
+
+		if (HEADER_BYTES + size >= length) return bson;
+
+		return ByteBuffer.wrap(frame, 0, HEADER_BYTES + size);
+	}
+
+	/**
+	 * Decompress a stored value.
+	 *
+	 * @param stored the object column's value, possibly null.
+	 * @return the encoded BSON document.
+	 */
+	public ByteBuffer decompress(ByteBuffer stored)
+	{
+		if (!isFrame(stored)) return stored;
+
+		ByteBuffer header = stored.duplicate();
+		header.position(header.position() + 2);
+		byte codec = header.get();
+		header.get();
+		int version = header.getInt();
+		int length = header.getInt();
+		byte[] payload = bytes(header);
+
+		switch(codec)
+		{
+			case LZ4_CODEC:
+				byte[] out = new byte[length];
+				LZ4_DECOMPRESSOR.decompress(payload, 0, out, 0, length);
+				return ByteBuffer.wrap(out);
+			case ZSTD_CODEC:
+				if (version == 0) return ByteBuffer.wrap(Zstd.decompress(payload, length));
+
+				return ByteBuffer.wrap(Zstd.decompress(payload, dictionaryFor(version).decompressor(), length));
+			default:
+				throw new StorageException("Unknown document compression codec: " + codec);
+		}
+	}
+
+	private Dictionary dictionaryFor(int version)
+	{
+		Dictionary d = dictionaries.get(version);
+
+		if (d == null)
+		{
+			throw notLoaded(version);
+		}
+
+		return d;
+	}
+
+	private static StorageException notLoaded(int version)
+	{
+		return new StorageException("Compression dictionary version " + version + " is not loaded");
+	}
+
+	private static boolean isFrame(ByteBuffer b)
+	{
+		if (b == null || b.remaining() < HEADER_BYTES) return false;
+
+		int p = b.position();
+		return (b.get(p) == MAGIC_0 && b.get(p + 1) == MAGIC_1 && b.get(p + 3) == FORMAT);
+	}
+
+	private static void header(byte[] frame, byte codec, int version, int length)
+	{
+		ByteBuffer header = ByteBuffer.wrap(frame, 0, HEADER_BYTES);
+		header.put(MAGIC_0);
+		header.put(MAGIC_1);
+		header.put(codec);
+		header.put(FORMAT);
+		header.putInt(version);
+		header.putInt(length);
+	}
+
+	/**
+	 * Returns the buffer's remaining bytes, without copying when it wraps an entire array.
+	 */
+	private static byte[] bytes(ByteBuffer b)
+	{
+		if (b.hasArray() && b.arrayOffset() == 0 && b.position() == 0 && b.remaining() == b.array().length)
+		{
+			return b.array();
+		}
+
+		if (b.hasArray())
+		{
+			int start = b.arrayOffset() + b.position();
+			return Arrays.copyOfRange(b.array(), start, start + b.remaining());
+		}
+
+		byte[] bytes = new byte[b.remaining()];
+		b.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Fetches a stored dictionary version.
+	 */
+	public interface DictionaryLoader
+	{
+		/**
+		 * @param version the dictionary version.
+		 * @return a future containing the dictionary, or null (or failing) if there's no such version.
+		 */
+		ListenableFuture<byte[]> load(int version);
+	}
+
+	private static class Dictionary
+	{
+		private final int version;
+		private final byte[] bytes;
+		private final int level;
+		private ZstdDictCompress compressor;
+		private ZstdDictDecompress decompressor;
+
+		public Dictionary(int version, byte[] bytes, int level)
+		{
+			super();
+			this.version = version;
+			this.bytes = bytes;
+			this.level = level;
+		}
+
+		public synchronized ZstdDictCompress compressor()
+		{
+			if (compressor == null)
+			{
+				compressor = new ZstdDictCompress(bytes, level);
+			}
+
+			return compressor;
+		}
+
+		public synchronized ZstdDictDecompress decompressor()
+		{
+			if (decompressor == null)
+			{
+				decompressor = new ZstdDictDecompress(bytes);
+			}
+
+			return decompressor;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.util.List;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+/**
+ * A partial update of a document, applied server-side (see AbstractDocumentRepository.patch()). Either
+ * operator-style:
+ *
+ * 	{"$set": {"status": "active", "address.city": "Denver"}, "$unset": {"nickname": ""}, "$inc": {"visits": 1}}
+ *
+ * where fields are dotted paths and intermediate documents are created as needed, or a JSON Merge Patch
+ * (RFC 7386), when no top-level key is an operator:
+ *
+ * 	{"status": "active", "address": {"city": "Denver"}, "nickname": null}
+ *
+ * where documents are merged recursively, null removes a field, and anything else replaces it.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class DocumentPatch
+{
+	private static final String SET = "$set";
+	private static final String UNSET = "$unset";
+	private static final String INC = "$inc";
+
+	private BSONObject set;
+	private BSONObject unset;
+	private BSONObject inc;
+	private BSONObject merge;
+
+	private DocumentPatch()
+	{
+		super();
+	}
+
+	/**
+	 * Create a patch from its BSON (or parsed JSON) form.
+	 *
+	 * @param patch an operator-style patch or a JSON Merge Patch.
+	 * @return a DocumentPatch
+	 * @throws IllegalArgumentException if the patch is empty, mixes operators and fields, or has an unknown operator.
+	 */
+	public static DocumentPatch from(BSONObject patch)
+	{
+		if (patch == null || patch.keySet().isEmpty())
+		{
+			throw new IllegalArgumentException("Empty patch");
+		}
+
+		DocumentPatch result = new DocumentPatch();
+		int operators = 0;
+
+		for (String key : patch.keySet())
+		{
+			if (key.startsWith("$")) operators++;
+		}
+
+		if (operators == 0)
+		{
+			result.merge = patch;
+			return result;
+		}
+
+		if (operators < patch.keySet().size())
+		{
+			throw new IllegalArgumentException("Cannot mix patch operators and fields");
+		}
+
+		for (String key : patch.keySet())
+		{
+			switch(key)
+			{
+				case SET: result.set = operand(patch, key); break;
+				case UNSET: result.unset = operand(patch, key); break;
+				case INC: result.inc = operand(patch, key); break;
+				default:
+					throw new IllegalArgumentException("Unknown patch operator: " + key);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Apply the patch to the document, in place.
+	 *
+	 * @param document the document's object.
+	 * @return the patched document.
+	 */
+	public BSONObject apply(BSONObject document)
+	{
+		BSONObject target = (document != null ? document : new BasicBSONObject());
+
+		if (merge != null)
+		{
+			merge(target, merge);
+			return target;
+		}
+
+		if (set != null)
+		{
+			for (String path : set.keySet())
+			{
+				DocumentPath.parentOf(target, path, true).put(DocumentPath.leaf(path), set.get(path));
+			}
+		}
+
+		if (unset != null)
+		{
+			for (String path : unset.keySet())
+			{
+				BSONObject parent = DocumentPath.parentOf(target, path, false);
+
+				if (parent != null) parent.removeField(DocumentPath.leaf(path));
+			}
+		}
+
+		if (inc != null)
+		{
+			for (String path : inc.keySet())
+			{
+				BSONObject parent = DocumentPath.parentOf(target, path, true);
+				parent.put(DocumentPath.leaf(path), add(parent.get(DocumentPath.leaf(path)), inc.get(path), path));
+			}
+		}
+
+		return target;
+	}
+
+	private static void merge(BSONObject target, BSONObject patch)
+	{
+		for (String key : patch.keySet())
+		{
+			Object value = patch.get(key);
+
+			if (value == null)
+			{
+				target.removeField(key);
+			}
+			else if (value instanceof BSONObject && !(value instanceof List))
+			{
+				Object existing = target.get(key);
+
+				if (!(existing instanceof BSONObject) || existing instanceof List)
+				{
+					existing = new BasicBSONObject();
+					target.put(key, existing);
+				}
+
+				merge((BSONObject) existing, (BSONObject) value);
+			}
+			else
+			{
+				target.put(key, value);
+			}
+		}
+	}
+
+	private static BSONObject operand(BSONObject patch, String operator)
+	{
+		Object operand = patch.get(operator);
+
+		if (!(operand instanceof BSONObject) || operand instanceof List)
+		{
+			throw new IllegalArgumentException(operator + " requires a document of fields");
+		}
+
+		return (BSONObject) operand;
+	}
+
+	private static Number add(Object current, Object increment, String path)
+	{
+		if (!(increment instanceof Number))
+		{
+			throw new IllegalArgumentException("$inc of " + path + " requires a number");
+		}
+
+		if (current == null) return (Number) increment;
+
+		if (!(current instanceof Number))
+		{
+			throw new IllegalArgumentException("Cannot $inc " + path + ": it is not a number");
+		}
+
+		Number a = (Number) current;
+		Number b = (Number) increment;
+
+		if (a instanceof Double || b instanceof Double || a instanceof Float || b instanceof Float)
+		{
+			return a.doubleValue() + b.doubleValue();
+		}
+
+		if (a instanceof Long || b instanceof Long)
+		{
+			return a.longValue() + b.longValue();
+		}
+
+		long sum = a.longValue() + b.longValue();
+		return (sum == (int) sum ? (Number) Integer.valueOf((int) sum) : (Number) Long.valueOf(sum));
+	}
+
+	/**
+	 * The document before and after a patch.
+	 */
+	public static class Result
+	{
+		private Document before;
+		private Document after;
+
+		public Result(Document before, Document after)
+		{
+			super();
+			this.before = before;
+			this.after = after;
+		}
+
+		public Document before()
+		{
+			return before;
+		}
+
+		public Document after()
+		{
+			return after;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.util.List;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+/**
+ * Dotted paths (e.g. 'address.city') into a document's nested documents, as used by queries,
+ * projections, patches and search and geospatial views. A path doesn't descend into arrays.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public final class DocumentPath
+{
+	private DocumentPath()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * Returns the path's segments, one per level of nesting.
+	 */
+	public static String[] segments(String path)
+	{
+		return path.split("\\.");
+	}
+
+	/**
+	 * Returns the value at the path, or null if it (or a document along it) doesn't exist.
+	 */
+	public static Object valueOf(BSONObject object, String path)
+	{
+		Object current = object;
+
+		for (String segment : segments(path))
+		{
+			if (!(current instanceof BSONObject) || current instanceof List) return null;
+
+			current = ((BSONObject) current).get(segment);
+		}
+
+		return current;
+	}
+
+	/**
+	 * Returns the document containing the path's last segment, or null if it doesn't exist and create is false.
+	 * If create is true, the missing documents along the path are added.
+	 *
+	 * @throws IllegalArgumentException if create is true and a segment before the last isn't a document.
+	 */
+	public static BSONObject parentOf(BSONObject document, String path, boolean create)
+	{
+		String[] segments = segments(path);
+		BSONObject parent = document;
+
+		for (int i = 0; i < segments.length - 1; i++)
+		{
+			Object child = parent.get(segments[i]);
+
+			if (!(child instanceof BSONObject))
+			{
+				if (!create) return null;
+
+				if (child != null)
+				{
+					throw new IllegalArgumentException("Cannot patch " + path + ": " + segments[i] + " is not a document");
+				}
+
+				child = new BasicBSONObject();
+				parent.put(segments[i], child);
+			}
+
+			parent = (BSONObject) child;
+		}
+
+		return parent;
+	}
+
+	/**
+	 * Returns the path's last segment.
+	 */
+	public static String leaf(String path)
+	{
+		int dot = path.lastIndexOf('.');
+		return (dot < 0 ? path : path.substring(dot + 1));
+	}
+}
@@ -0,0 +1,611 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.bson.BSONObject;
+
+import com.orangerhymelabs.helenus.cassandra.table.key.ClusteringKeyComponent.Ordering;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyComponent;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * A query over the documents of a table or view, as MongoDB-style predicates:
+ *
+ * 	{"customer": "5f0c...", "at": {"$gte": "2026-10-01T00:00:00Z"}, "status": {"$in": ["open", "held"]}}
+ *
+ * Fields are dotted paths. A field's value is either a value to equal, or a document of operators: $eq,
+ * $ne, $gt, $gte, $lt, $lte, $in, $nin and $exists. Conditions are ANDed; $and and $or take arrays of
+ * queries. As in MongoDB, a condition on an array field matches if any element matches.
+ *
+ * Conditions on key columns are pushed down to Cassandra where the key allows: if every partition key
+ * column is equal to a value, only that partition is read, with equal leading clustering columns and
+ * bounds on the following one as in a RangeQuery. The remaining (residual) conditions are evaluated
+ * against each document as its page is read. Without the whole partition key, the table is scanned.
+ * Key column values are converted to the column's type, so a UUID or timestamp may be given as a string;
+ * other fields are compared as parsed (use extended JSON, e.g. {"$date": ...}, for dates).
+ *
+ * The limit is pushed down too if there are no residual conditions, otherwise reading stops as soon as
+ * it's reached. An order is only possible within a partition, by its clustering key.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class DocumentQuery
+{
+	private static final String AND = "$and";
+	private static final String OR = "$or";
+	private static final String EQ = "$eq";
+	private static final String NE = "$ne";
+	private static final String GT = "$gt";
+	private static final String GTE = "$gte";
+	private static final String LT = "$lt";
+	private static final String LTE = "$lte";
+	private static final String IN = "$in";
+	private static final String NIN = "$nin";
+	private static final String EXISTS = "$exists";
+
+	private List<Term> terms;
+	private Ordering order;
+	private int limit;
+
+	private DocumentQuery(List<Term> terms)
+	{
+		super();
+		this.terms = terms;
+	}
+
+	/**
+	 * Parse a query from its BSON (or parsed JSON) form.
+	 *
+	 * @param query the predicates. Null or empty matches every document.
+	 * @return a DocumentQuery
+	 * @throws IllegalArgumentException if the query has an unknown or malformed operator.
+	 */
+	public static DocumentQuery parse(BSONObject query)
+	{
+		List<Term> terms = new ArrayList<>();
+
+		if (query != null)
+		{
+			parse(query, terms);
+		}
+
+		return new DocumentQuery(terms);
+	}
+
+	/**
+	 * Read in the given order of the first clustering column. By default, the table's clustering order.
+	 */
+	public DocumentQuery order(Ordering order)
+	{
+		this.order = order;
+		return this;
+	}
+
+	/**
+	 * Return at most this many documents. Zero or less for no limit.
+	 */
+	public DocumentQuery limit(int limit)
+	{
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * Plan the query for a key definition: what's read from Cassandra, and what's left to filter.
+	 *
+	 * @throws IllegalArgumentException if a key value can't be converted to its column's type, or an order is given without the whole partition key.
+	 */
+	Plan plan(KeyDefinition keys)
+	{
+		List<KeyComponent> columns = keys.components();
+		List<Term> residual = new ArrayList<>(terms.size());
+
+		for (Term term : terms)
+		{
+			residual.add(term.bind(columns));
+		}
+
+		RangeQuery range = null;
+		Object[] partition = new Object[keys.partitionKeySize()];
+		boolean hasPartition = true;
+
+		for (int i = 0; i < partition.length && hasPartition; i++)
+		{
+			Comparison eq = find(residual, i, EQ);
+			hasPartition = (eq != null && eq.operand != null);
+
+			if (hasPartition) partition[i] = eq.operand;
+		}
+
+		if (hasPartition)
+		{
+			for (int i = 0; i < partition.length; i++)
+			{
+				residual.remove(find(residual, i, EQ));
+			}
+
+			range = new RangeQuery(new Identifier(partition)).order(order);
+
+			for (int i = partition.length; i < columns.size(); i++)
+			{
+				Comparison eq = find(residual, i, EQ);
+
+				if (eq != null && eq.operand != null)
+				{
+					residual.remove(eq);
+					range.prefix(eq.operand);
+					continue;
+				}
+
+				Comparison lower = find(residual, i, GT, GTE);
+				Comparison upper = find(residual, i, LT, LTE);
+
+				if (lower != null)
+				{
+					residual.remove(lower);
+					range.from(lower.operand, GTE.equals(lower.operator));
+				}
+
+				if (upper != null)
+				{
+					residual.remove(upper);
+					range.to(upper.operand, LTE.equals(upper.operator));
+				}
+
+				break;
+			}
+
+			if (residual.isEmpty() && limit > 0) range.limit(limit);
+		}
+		else if (order != null)
+		{
+			throw new IllegalArgumentException("An order requires the whole partition key");
+		}
+
+		return new Plan(range, (residual.isEmpty() ? null : new And(residual)), limit);
+	}
+
+	/**
+	 * Returns the first comparison of the key column with one of the operators, or null.
+	 */
+	private static Comparison find(List<Term> terms, int keyIndex, String... operators)
+	{
+		for (Term term : terms)
+		{
+			if (!(term instanceof Comparison)) continue;
+
+			Comparison c = (Comparison) term;
+
+			if (c.keyIndex != keyIndex || c.operand == null) continue;
+
+			for (String operator : operators)
+			{
+				if (operator.equals(c.operator)) return c;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the index of the key column for a field, or -1 if it's not a key column.
+	 */
+	static int keyIndex(List<KeyComponent> columns, String path)
+	{
+		for (int i = 0; i < columns.size(); i++)
+		{
+			if (columns.get(i).property().equals(path)) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns a field's value by dotted path. For a key column, that's the document's identifier component,
+	 * typed as the column is (and as a key operand is converted), rather than the object's field, which may
+	 * hold it as a string; the object's field only if the identifier doesn't have it. Null if it has none.
+	 *
+	 * @param keyIndex the field's key column index, or -1.
+	 */
+	static Object valueOf(Document document, String path, int keyIndex)
+	{
+		if (keyIndex >= 0 && document.identifier() != null && keyIndex < document.identifier().size())
+		{
+			return document.identifier().components().get(keyIndex);
+		}
+
+		return (document.hasObject() ? DocumentPath.valueOf(document.object(), path) : null);
+	}
+
+	/**
+	 * Compare values of like types, or return null if they're not comparable.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Integer compare(Object a, Object b)
+	{
+		if (a == null || b == null) return null;
+
+		if (a instanceof Number && b instanceof Number)
+		{
+			if (isIntegral(a) && isIntegral(b)) return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+
+			return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+		}
+
+		if (a instanceof Date && b instanceof Date) return ((Date) a).compareTo((Date) b);
+
+		if (a.getClass().equals(b.getClass()) && a instanceof Comparable) return ((Comparable) a).compareTo(b);
+
+		return null;
+	}
+
+	static boolean isIntegral(Object n)
+	{
+		return (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte);
+	}
+
+	private static void parse(BSONObject query, List<Term> terms)
+	{
+		for (String key : query.keySet())
+		{
+			Object value = query.get(key);
+
+			switch(key)
+			{
+				case AND:
+					for (BSONObject q : queries(key, value))
+					{
+						parse(q, terms);
+					}
+					break;
+				case OR:
+					List<Term> branches = new ArrayList<>();
+
+					for (BSONObject q : queries(key, value))
+					{
+						List<Term> branch = new ArrayList<>();
+						parse(q, branch);
+						branches.add(new And(branch));
+					}
+
+					terms.add(new Or(branches));
+					break;
+				default:
+					if (key.startsWith("$")) throw new IllegalArgumentException("Unknown query operator: " + key);
+
+					parseField(key, value, terms);
+			}
+		}
+	}
+
+	private static void parseField(String path, Object value, List<Term> terms)
+	{
+		if (!isOperators(value))
+		{
+			terms.add(new Comparison(path, EQ, value));
+			return;
+		}
+
+		BSONObject operators = (BSONObject) value;
+
+		for (String operator : operators.keySet())
+		{
+			Object operand = operators.get(operator);
+
+			switch(operator)
+			{
+				case IN:
+				case NIN:
+					if (!(operand instanceof List)) throw new IllegalArgumentException(operator + " requires an array: " + path);
+					break;
+				case EXISTS:
+					if (!(operand instanceof Boolean)) throw new IllegalArgumentException(operator + " requires true or false: " + path);
+					break;
+				case EQ:
+				case NE:
+				case GT:
+				case GTE:
+				case LT:
+				case LTE:
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown query operator: " + operator);
+			}
+
+			terms.add(new Comparison(path, operator, operand));
+		}
+	}
+
+	/**
+	 * Returns true if the value is a document of operators, rather than a value to equal.
+	 */
+	private static boolean isOperators(Object value)
+	{
+		if (!(value instanceof BSONObject) || value instanceof List) return false;
+
+		BSONObject document = (BSONObject) value;
+
+		if (document.keySet().isEmpty()) return false;
+
+		for (String key : document.keySet())
+		{
+			if (!key.startsWith("$")) return false;
+		}
+
+		return true;
+	}
+
+	private static List<BSONObject> queries(String operator, Object value)
+	{
+		if (!(value instanceof List)) throw new IllegalArgumentException(operator + " requires an array of queries");
+
+		List<BSONObject> queries = new ArrayList<>();
+
+		for (Object q : (List<?>) value)
+		{
+			if (!(q instanceof BSONObject) || q instanceof List) throw new IllegalArgumentException(operator + " requires an array of queries");
+
+			queries.add((BSONObject) q);
+		}
+
+		return queries;
+	}
+
+	/**
+	 * What's read from Cassandra (a partition slice, or a scan if range is null), and what's filtered.
+	 */
+	static class Plan
+	{
+		private RangeQuery range;
+		private Predicate<Document> residual;
+		private int limit;
+
+		Plan(RangeQuery range, Predicate<Document> residual, int limit)
+		{
+			super();
+			this.range = range;
+			this.residual = residual;
+			this.limit = limit;
+		}
+
+		RangeQuery range()
+		{
+			return range;
+		}
+
+		Predicate<Document> residual()
+		{
+			return residual;
+		}
+
+		int limit()
+		{
+			return limit;
+		}
+	}
+
+	private abstract static class Term
+	implements Predicate<Document>
+	{
+		/**
+		 * Returns this term for a table's key columns.
+		 */
+		abstract Term bind(List<KeyComponent> columns);
+	}
+
+	private static class And
+	extends Term
+	{
+		private List<Term> terms;
+
+		public And(List<Term> terms)
+		{
+			super();
+			this.terms = terms;
+		}
+
+		@Override
+		public boolean test(Document document)
+		{
+			for (Term term : terms)
+			{
+				if (!term.test(document)) return false;
+			}
+
+			return true;
+		}
+
+		@Override
+		Term bind(List<KeyComponent> columns)
+		{
+			List<Term> bound = new ArrayList<>(terms.size());
+
+			for (Term term : terms)
+			{
+				bound.add(term.bind(columns));
+			}
+
+			return new And(bound);
+		}
+	}
+
+	private static class Or
+	extends Term
+	{
+		private List<Term> branches;
+
+		public Or(List<Term> branches)
+		{
+			super();
+			this.branches = branches;
+		}
+
+		@Override
+		public boolean test(Document document)
+		{
+			for (Term branch : branches)
+			{
+				if (branch.test(document)) return true;
+			}
+
+			return false;
+		}
+
+		@Override
+		Term bind(List<KeyComponent> columns)
+		{
+			List<Term> bound = new ArrayList<>(branches.size());
+
+			for (Term branch : branches)
+			{
+				bound.add(branch.bind(columns));
+			}
+
+			return new Or(bound);
+		}
+	}
+
+	private static class Comparison
+	extends Term
+	{
+		private String path;
+		private String operator;
+		private Object operand;
+		private int keyIndex = -1;
+
+		public Comparison(String path, String operator, Object operand)
+		{
+			super();
+			this.path = path;
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		Term bind(List<KeyComponent> columns)
+		{
+			int i = keyIndex(columns, path);
+
+			if (i < 0) return this;
+
+			Comparison bound = new Comparison(path, operator, convert(columns.get(i), operand));
+			bound.keyIndex = i;
+			return bound;
+		}
+
+		private static Object convert(KeyComponent column, Object operand)
+		{
+			if (operand instanceof List)
+			{
+				List<Object> converted = new ArrayList<>();
+
+				for (Object o : (List<?>) operand)
+				{
+					converted.add(column.type().convert(o));
+				}
+
+				return converted;
+			}
+
+			return (operand instanceof Boolean ? operand : column.type().convert(operand));
+		}
+
+		@Override
+		public boolean test(Document document)
+		{
+			Object value = value(document);
+
+			switch(operator)
+			{
+				case EXISTS: return ((value != null) == (Boolean) operand);
+				case NE: return !matchesAny(value, EQ, operand);
+				case NIN: return !matchesAny(value, IN, operand);
+				default:
+					return matchesAny(value, operator, operand);
+			}
+		}
+
+		private Object value(Document document)
+		{
+			return valueOf(document, path, keyIndex);
+		}
+
+		private static boolean matchesAny(Object value, String operator, Object operand)
+		{
+			if (value instanceof List)
+			{
+				for (Object element : (List<?>) value)
+				{
+					if (matches(element, operator, operand)) return true;
+				}
+
+				// An array also equals an equal array.
+				return ((EQ.equals(operator) && isEqual(value, operand)));
+			}
+
+			return matches(value, operator, operand);
+		}
+
+		private static boolean matches(Object value, String operator, Object operand)
+		{
+			switch(operator)
+			{
+				case EQ: return isEqual(value, operand);
+				case IN:
+					for (Object o : (List<?>) operand)
+					{
+						if (isEqual(value, o)) return true;
+					}
+
+					return false;
+				default:
+					Integer c = compare(value, operand);
+
+					if (c == null) return false;
+
+					switch(operator)
+					{
+						case GT: return (c > 0);
+						case GTE: return (c >= 0);
+						case LT: return (c < 0);
+						default: return (c <= 0);
+					}
+			}
+		}
+
+		private static boolean isEqual(Object value, Object operand)
+		{
+			Integer c = compare(value, operand);
+
+			if (c != null) return (c == 0);
+
+			if (value instanceof BSONObject && operand instanceof BSONObject)
+			{
+				return ((BSONObject) value).toMap().equals(((BSONObject) operand).toMap());
+			}
+
+			return Objects.equals(value, operand);
+		}
+	}
+}
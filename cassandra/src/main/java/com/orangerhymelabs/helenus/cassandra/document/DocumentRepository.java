@@ -32,5 +32,8 @@ extends AbstractDocumentRepository
 	throws KeyDefinitionException
 	{
 		super(session, keyspace, table.toDbTable(), table.keys());
+		writeMode(table.writeMode());
+		ttl(table.ttl());
+		compressor(new DocumentCompressor(table.compression()));
 	}
 }
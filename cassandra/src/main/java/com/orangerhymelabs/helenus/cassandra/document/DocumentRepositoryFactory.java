@@ -1,5 +1,6 @@
 package com.orangerhymelabs.helenus.cassandra.document;
 
+import com.orangerhymelabs.helenus.cassandra.search.SearchIndex;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
 import com.strategicgains.noschema.document.View;
@@ -11,4 +12,7 @@ public interface DocumentRepositoryFactory
 
 	AbstractDocumentRepository newInstance(View v)
 	throws KeyDefinitionException;
+
+	SearchIndex newSearchIndex(View v)
+	throws KeyDefinitionException;
 }
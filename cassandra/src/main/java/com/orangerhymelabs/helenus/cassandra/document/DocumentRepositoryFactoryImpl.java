@@ -15,7 +15,20 @@
  */
 package com.orangerhymelabs.helenus.cassandra.document;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.datastax.driver.core.Session;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.orangerhymelabs.helenus.cassandra.CassandraConfig;
+import com.orangerhymelabs.helenus.cassandra.RequestLimiter;
+import com.orangerhymelabs.helenus.cassandra.search.SearchIndex;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
 import com.orangerhymelabs.helenus.cassandra.view.View;
@@ -27,27 +40,114 @@ import com.orangerhymelabs.helenus.cassandra.view.View;
 public class DocumentRepositoryFactoryImpl
 implements DocumentRepositoryFactory
 {
+	private static final Logger LOG = LoggerFactory.getLogger(DocumentRepositoryFactoryImpl.class);
+
 	private Session session;
 	private String keyspace;
+	private RequestLimiter requestLimiter;
+	private CassandraConfig config;
+	private CompressionDictionaries dictionaries;
+	private ConcurrentMap<String, DocumentCompressor> compressors = new ConcurrentHashMap<>();
 
 	public DocumentRepositoryFactoryImpl(Session session, String keyspace)
+	{
+		this(session, keyspace, RequestLimiter.of(session));
+	}
+
+	public DocumentRepositoryFactoryImpl(Session session, String keyspace, RequestLimiter requestLimiter)
 	{
 		super();
 		this.session = session;
 		this.keyspace = keyspace;
+		this.requestLimiter = requestLimiter;
+		this.dictionaries = new CompressionDictionaries(session, keyspace);
+	}
+
+	/**
+	 * Create repositories configured from the CassandraConfig: its keyspace, request limiter, fetch size,
+	 * readIn limit, and per-table execution profiles, hedged reads, existence filters, document
+	 * chunking and document caches. A table's existence filter starts priming (in the background) when its first repository
+	 * is created.
+	 */
+	public DocumentRepositoryFactoryImpl(Session session, CassandraConfig config)
+	{
+		this(session, config.getKeyspace(), config.getRequestLimiter());
+		this.config = config;
 	}
 
 	@Override
 	public AbstractDocumentRepository newInstance(Table table)
 	throws KeyDefinitionException
 	{
-		return new DocumentRepository(session, keyspace, table);
+		DocumentRepository repository = new DocumentRepository(session, keyspace, table);
+		configure(repository, table.toDbTable(), table.compression());
+		return repository;
 	}
 
 	@Override
 	public AbstractDocumentRepository newInstance(View view)
 	throws KeyDefinitionException
 	{
-		return new ViewDocumentRepository(session, keyspace, view);
+		ViewDocumentRepository repository = new ViewDocumentRepository(session, keyspace, view);
+		configure(repository, view.toDbTable(), view.compression());
+		return repository;
+	}
+
+	@Override
+	public SearchIndex newSearchIndex(View view)
+	throws KeyDefinitionException
+	{
+		return new SearchIndex(session, keyspace, view);
+	}
+
+	/**
+	 * Returns the dictionaries used by this factory's compressors, e.g. to train a new one.
+	 */
+	public CompressionDictionaries compressionDictionaries()
+	{
+		return dictionaries;
+	}
+
+	private void configure(AbstractDocumentRepository repository, String dbTable, Compression compression)
+	{
+		repository.requestLimiter(requestLimiter);
+		repository.compressor(compressorFor(dbTable, compression));
+
+		if (config == null) return;
+
+		repository.fetchSize(config.getFetchSize());
+		repository.readInLimit(config.getReadInMaxInFlight());
+		repository.executionProfiles(config.getExecutionProfiles(dbTable));
+		repository.hedgedReads(config.getHedgedReads(dbTable));
+		repository.existenceFilter(config.getExistenceFilter(dbTable));
+		repository.chunks(config.getDocumentChunks(dbTable));
+		repository.cache(config.getDocumentCache(dbTable));
+		repository.primeExistenceFilter();
+	}
+
+	/**
+	 * Returns the table's shared compressor, loading its stored dictionaries (in the background) when
+	 * it's first created or the table's compression changes. Versions stored later are loaded as they're
+	 * read.
+	 */
+	private DocumentCompressor compressorFor(String dbTable, Compression compression)
+	{
+		DocumentCompressor compressor = compressors.get(dbTable);
+
+		if (compressor != null && compressor.compression() == compression) return compressor;
+
+		DocumentCompressor created = new DocumentCompressor(compression);
+		created.loader(dictionaries.loader(dbTable));
+		created.loaded(Futures.catching(dictionaries.load(dbTable, created), Exception.class, new Function<Exception, Integer>()
+		{
+			@Override
+			public Integer apply(Exception e)
+			{
+				LOG.warn("Compression dictionaries not loaded for " + dbTable, e);
+				return 0;
+			}
+		}, MoreExecutors.directExecutor()));
+		compressors.put(dbTable, created);
+		return created;
 	}
 }
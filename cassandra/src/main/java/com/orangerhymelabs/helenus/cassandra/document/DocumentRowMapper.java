@@ -0,0 +1,247 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Row;
+import com.orangerhymelabs.helenus.cassandra.DataTypes;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyComponent;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * Marshals document rows by column index instead of by name. The key component types are resolved
+ * once from the KeyDefinition, and the column indexes once per result set shape (ColumnDefinitions),
+ * so marshalling a row is a series of typed, indexed getters.
+ *
+ * Rows from the same prepared statement share their ColumnDefinitions, so the indexes are normally
+ * resolved once per statement. A row with a different shape (e.g. a failed conditional write) just
+ * resolves its own.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class DocumentRowMapper
+{
+	private static final String OBJECT = "object";
+	private static final String CREATED_AT = "created_at";
+	private static final String UPDATED_AT = "updated_at";
+	private static final String OBJECT_TTL = "object_ttl";
+
+	private String[] properties;
+	private DataTypes[] types;
+	private volatile Indexes indexes;
+	private DocumentCompressor compressor = new DocumentCompressor(Compression.NONE);
+
+	public DocumentRowMapper(KeyDefinition keys)
+	{
+		super();
+		List<KeyComponent> components = keys.components();
+		this.properties = new String[components.size()];
+		this.types = new DataTypes[components.size()];
+
+		for (int i = 0; i < components.size(); i++)
+		{
+			properties[i] = components.get(i).property();
+			types[i] = components.get(i).type();
+		}
+	}
+
+	/**
+	 * Set the compressor that decompresses the object column.
+	 */
+	public void compressor(DocumentCompressor compressor)
+	{
+		this.compressor = compressor;
+	}
+
+	/**
+	 * Populate the document's identifier, object, createdAt and updatedAt from the row. Columns not in
+	 * the row are left unset.
+	 *
+	 * @param row a document row.
+	 * @param document the document to populate.
+	 * @return the document.
+	 */
+	public <D extends Document> D marshal(Row row, D document)
+	{
+		return marshal(row, document, Projection.ALL);
+	}
+
+	/**
+	 * Populate the document from the row, with only the projected fields of its object.
+	 *
+	 * @param row a document row.
+	 * @param document the document to populate.
+	 * @param projection the fields of the object to populate.
+	 * @return the document.
+	 */
+	public <D extends Document> D marshal(Row row, D document, Projection projection)
+	{
+		Indexes columns = indexesFor(row);
+		document.identifier(identifier(row, columns));
+
+		if (columns.object >= 0)
+		{
+			ByteBuffer stored = row.getBytes(columns.object);
+
+			if (DocumentChunks.isManifest(stored))
+			{
+				// The repository reads the chunks and calls object() once they're in.
+				DocumentChunks.Manifest manifest = DocumentChunks.Manifest.parse(stored);
+				document.pendingChunks(new DocumentChunks.Pending(manifest, projection));
+				document.chunkVersion(manifest.version());
+			}
+			else
+			{
+				object(document, stored, projection);
+			}
+		}
+
+		if (columns.createdAt >= 0) document.createdAt(row.getTimestamp(columns.createdAt));
+		if (columns.updatedAt >= 0) document.updatedAt(row.getTimestamp(columns.updatedAt));
+		if (columns.objectTtl >= 0 && !row.isNull(columns.objectTtl)) document.ttl(row.getInt(columns.objectTtl));
+		return document;
+	}
+
+	/**
+	 * Set the document's object from a stored value: decompress it and apply the projection. If the value
+	 * was compressed with a dictionary version that isn't loaded, the document is left pending instead
+	 * (see Document.pendingDictionary()) and the repository loads the version and calls this again.
+	 *
+	 * @param document the document to populate.
+	 * @param stored the object column's value (or a chunked document's reassembled value), possibly null.
+	 * @param projection the fields of the object to populate.
+	 */
+	public void object(Document document, ByteBuffer stored, Projection projection)
+	{
+		int version = compressor.missingDictionary(stored);
+
+		if (version > 0)
+		{
+			document.pendingDictionary(new PendingDictionary(version, stored, projection));
+			return;
+		}
+
+		ByteBuffer b = compressor.decompress(stored);
+
+		if (b != null)
+		{
+			document.object(projection.apply(b));
+		}
+	}
+
+	/**
+	 * Marshal only the identifier (key columns) from the row.
+	 */
+	public Identifier identifier(Row row)
+	{
+		return identifier(row, indexesFor(row));
+	}
+
+	private Identifier identifier(Row row, Indexes columns)
+	{
+		Identifier id = new Identifier();
+
+		for (int i = 0; i < types.length; i++)
+		{
+			id.add(IdPropertyConverter.marshal(columns.keys[i], types[i], row));
+		}
+
+		return id;
+	}
+
+	private Indexes indexesFor(Row row)
+	{
+		ColumnDefinitions definitions = row.getColumnDefinitions();
+		Indexes current = indexes;
+
+		if (current != null && current.definitions == definitions) return current;
+
+		current = new Indexes(definitions);
+		indexes = current;
+		return current;
+	}
+
+	private class Indexes
+	{
+		private final ColumnDefinitions definitions;
+		private final int[] keys;
+		private final int object;
+		private final int createdAt;
+		private final int updatedAt;
+		private final int objectTtl;
+
+		public Indexes(ColumnDefinitions definitions)
+		{
+			super();
+			this.definitions = definitions;
+			this.keys = new int[properties.length];
+
+			for (int i = 0; i < properties.length; i++)
+			{
+				keys[i] = definitions.getIndexOf(properties[i]);
+
+				if (keys[i] < 0)
+				{
+					throw new IllegalArgumentException(properties[i] + " is not a column defined in this metadata");
+				}
+			}
+
+			this.object = definitions.getIndexOf(OBJECT);
+			this.createdAt = definitions.getIndexOf(CREATED_AT);
+			this.updatedAt = definitions.getIndexOf(UPDATED_AT);
+			this.objectTtl = definitions.getIndexOf(OBJECT_TTL);
+		}
+	}
+
+	/**
+	 * A stored value waiting on its compression dictionary version to be loaded.
+	 */
+	static class PendingDictionary
+	{
+		private int version;
+		private ByteBuffer stored;
+		private Projection projection;
+
+		PendingDictionary(int version, ByteBuffer stored, Projection projection)
+		{
+			super();
+			this.version = version;
+			this.stored = stored;
+			this.projection = projection;
+		}
+
+		int version()
+		{
+			return version;
+		}
+
+		ByteBuffer stored()
+		{
+			return stored;
+		}
+
+		Projection projection()
+		{
+			return projection;
+		}
+	}
+}
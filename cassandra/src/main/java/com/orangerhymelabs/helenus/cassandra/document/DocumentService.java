@@ -16,23 +16,44 @@
 package com.orangerhymelabs.helenus.cassandra.document;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+import org.bson.BSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.AsyncCallable;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.orangerhymelabs.helenus.cassandra.FilteredStream;
+import com.orangerhymelabs.helenus.cassandra.ResultPage;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoKeys;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoPoint;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoQuery;
+import com.orangerhymelabs.helenus.cassandra.search.SearchIndex;
+import com.orangerhymelabs.helenus.cassandra.search.SearchQuery;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.TableService;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
+import com.orangerhymelabs.helenus.cassandra.view.View;
 import com.orangerhymelabs.helenus.cassandra.view.ViewService;
+import com.orangerhymelabs.helenus.exception.ItemNotFoundException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
-import com.strategicgains.noschema.document.View;
 import com.strategicgains.syntaxe.ValidationEngine;
 import com.strategicgains.syntaxe.ValidationException;
 
@@ -44,15 +65,20 @@ import com.strategicgains.syntaxe.ValidationException;
  */
 public class DocumentService
 {
+	private static final Logger LOG = LoggerFactory.getLogger(DocumentService.class);
+
 	//TODO: this should be a distributed cache, perhaps?
 	//TODO: Must be invalidatable via events.
 	//TODO: Use EhCache (or some other coherent cache implementation)
-	private Map<Identifier, AbstractDocumentRepository> repoCache = new HashMap<>();
-	private Map<Identifier, List<View>> viewsByTable = new HashMap<>();
+	private ConcurrentMap<Identifier, ListenableFuture<AbstractDocumentRepository>> repoCache = new ConcurrentHashMap<>();
+	private Map<Identifier, List<View>> viewsByTable = new ConcurrentHashMap<>();
+	private ConcurrentMap<Identifier, ListenableFuture<SearchIndex>> indexCache = new ConcurrentHashMap<>();
 
 	private TableService tables;
 	private ViewService views;
 	private DocumentRepositoryFactory factory;
+	private ViewAck viewAck = ViewAck.VIEWS;
+	private ViewMetrics viewMetrics = new ViewMetrics();
 
 	public DocumentService(TableService tableService, ViewService viewService, DocumentRepositoryFactory repositoryFactory)
 	{
@@ -62,141 +88,785 @@ public class DocumentService
 		this.factory = repositoryFactory;
 	}
 
-	public ListenableFuture<Document> create(String database, String table, Document document)
+	/**
+	 * Set whether writes are acknowledged once their view writes complete (the default) or as soon as the
+	 * table is written. See ViewAck and CassandraConfig.getViewAck().
+	 */
+	public void viewAck(ViewAck viewAck)
+	{
+		this.viewAck = (viewAck != null ? viewAck : ViewAck.VIEWS);
+	}
+
+	public ViewAck viewAck()
+	{
+		return viewAck;
+	}
+
+	/**
+	 * Set where view writes' latency and failures are recorded, e.g. the ViewMetrics registered by
+	 * CassandraConfig.getViewMetrics().
+	 */
+	public void viewMetrics(ViewMetrics viewMetrics)
+	{
+		this.viewMetrics = (viewMetrics != null ? viewMetrics : new ViewMetrics());
+	}
+
+	/**
+	 * Returns the latency and failures of view writes, per view.
+	 */
+	public ViewMetrics viewMetrics()
+	{
+		return viewMetrics;
+	}
+
+	/**
+	 * Create a document in a table. Its view documents (and search index entries) are then written to
+	 * every view of the table concurrently; whether the returned future waits for them is set by the
+	 * ViewAck (see viewAck(ViewAck)).
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param document the document to create.
+	 * @return a future containing the created document.
+	 */
+	public ListenableFuture<Document> create(String database, String table, Document document)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(AbstractDocumentRepository docRepo)
+			{
+				try
+				{
+					ValidationEngine.validateAndThrow(document);
+				}
+				catch(ValidationException e)
+				{
+					return Futures.immediateFailedFuture(e);
+				}
+
+				return Futures.transformAsync(docRepo.create(document), new AsyncFunction<Document, Document>()
+				{
+					@Override
+					public ListenableFuture<Document> apply(Document newDoc)
+					{
+						return acknowledge(newDoc, createAllViewDocuments(database, table, Collections.singletonList(newDoc)));
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void create(String database, String table, Document document, FutureCallback<Document> callback)
+	{
+		Futures.addCallback(create(database, table, document), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Create many documents in a table, batched by partition. View documents are created for each
+	 * table view once the table documents have been written.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param documents the documents to create.
+	 * @return a future containing the created documents.
+	 */
+	public ListenableFuture<List<Document>> createAll(String database, String table, Collection<Document> documents)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(AbstractDocumentRepository docRepo)
+			throws Exception
+			{
+				try
+				{
+					validateAll(documents);
+				}
+				catch(ValidationException e)
+				{
+					return Futures.immediateFailedFuture(e);
+				}
+
+				return Futures.transformAsync(docRepo.createAll(documents), new AsyncFunction<List<Document>, List<Document>>()
+				{
+					@Override
+					public ListenableFuture<List<Document>> apply(List<Document> newDocs)
+					{
+						return acknowledge(newDocs, createAllViewDocuments(database, table, newDocs));
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void createAll(String database, String table, Collection<Document> documents, FutureCallback<List<Document>> callback)
+	{
+		Futures.addCallback(createAll(database, table, documents), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Write the view documents (and search index entries) of newly-created documents to every view of
+	 * the table, concurrently.
+	 */
+	private ListenableFuture<List<Object>> createAllViewDocuments(String database, String table, List<Document> documents)
+	{
+		return Futures.transformAsync(getTableViews(database, table), new AsyncFunction<List<View>, List<Object>>()
+		{
+			@Override
+			public ListenableFuture<List<Object>> apply(List<View> tableViews)
+			{
+				List<ListenableFuture<?>> created = new ArrayList<>(tableViews.size());
+
+				for (View v : tableViews)
+				{
+					long start = System.nanoTime();
+
+					if (v.isSearchIndex())
+					{
+						created.add(writeView(v, start, Futures.transformAsync(acquireIndexFor(v), new AsyncFunction<SearchIndex, List<Document>>()
+						{
+							@Override
+							public ListenableFuture<List<Document>> apply(SearchIndex index)
+							{
+								return index.indexAll(documents);
+							}
+						}, MoreExecutors.directExecutor())));
+						continue;
+					}
+
+					List<Document> viewDocs;
+
+					try
+					{
+						viewDocs = viewDocuments(v, documents);
+					}
+					catch (KeyDefinitionException e)
+					{
+						created.add(writeView(v, start, Futures.immediateFailedFuture(e)));
+						continue;
+					}
+
+					if (!viewDocs.isEmpty())
+					{
+						created.add(writeView(v, start, Futures.transformAsync(acquireRepositoryFor(v), new AsyncFunction<AbstractDocumentRepository, List<Document>>()
+						{
+							@Override
+							public ListenableFuture<List<Document>> apply(AbstractDocumentRepository viewRepo)
+							{
+								return viewRepo.createAll(viewDocs);
+							}
+						}, MoreExecutors.directExecutor())));
+					}
+				}
+
+				return allViewWrites(created);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Index replaced documents in every search view of the table, concurrently. Only their new terms
+	 * are written: postings of terms they no longer have are left for the search to filter out (see
+	 * SearchIndex). Other views aren't maintained by replacing writes.
+	 */
+	private ListenableFuture<List<Object>> indexViewDocuments(String database, String table, List<Document> documents)
+	{
+		return Futures.transformAsync(getTableViews(database, table), new AsyncFunction<List<View>, List<Object>>()
+		{
+			@Override
+			public ListenableFuture<List<Object>> apply(List<View> tableViews)
+			{
+				List<ListenableFuture<?>> indexed = new ArrayList<>();
+
+				for (View v : tableViews)
+				{
+					if (!v.isSearchIndex()) continue;
+
+					indexed.add(writeView(v, System.nanoTime(), Futures.transformAsync(acquireIndexFor(v), new AsyncFunction<SearchIndex, List<Document>>()
+					{
+						@Override
+						public ListenableFuture<List<Document>> apply(SearchIndex index)
+						{
+							return index.indexAll(documents);
+						}
+					}, MoreExecutors.directExecutor())));
+				}
+
+				return allViewWrites(indexed);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns the view's documents for those that have its key properties, each a copy keyed for the view.
+	 */
+	private List<Document> viewDocuments(View view, List<Document> documents)
+	throws KeyDefinitionException
+	{
+		List<Document> viewDocs = new ArrayList<>(documents.size());
+
+		for (Document document : documents)
+		{
+			Identifier id = view.identifierFrom(document);
+
+			if (id != null)
+			{
+				Document viewDoc = new Document(document.object());
+				viewDoc.identifier(id);
+				viewDoc.ttl(document.ttl());
+				viewDocs.add(viewDoc);
+			}
+		}
+
+		return viewDocs;
+	}
+
+	/**
+	 * Record the latency and outcome of a view write issued at startNanos, logging its failure.
+	 */
+	private <T> ListenableFuture<T> writeView(View view, long startNanos, ListenableFuture<T> write)
+	{
+		viewMetrics.record(view, startNanos, write);
+		Futures.addCallback(write, new FutureCallback<T>()
+		{
+			@Override
+			public void onSuccess(T result)
+			{
+				// recorded by viewMetrics.
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				LOG.warn("View write failed: " + view.identifier(), t);
+			}
+		}, MoreExecutors.directExecutor());
+		return write;
+	}
+
+	/**
+	 * Returns a future of the written value that, per the ViewAck, waits for the view writes (failing with
+	 * a ViewWriteException if any fail) or not.
+	 */
+	private <T> ListenableFuture<T> acknowledge(T written, ListenableFuture<?> viewWrites)
+	{
+		if (viewAck == ViewAck.TABLE)
+		{
+			return Futures.immediateFuture(written);
+		}
+
+		ListenableFuture<T> acknowledged = Futures.transform(viewWrites, Functions.constant(written), MoreExecutors.directExecutor());
+		return Futures.catchingAsync(acknowledged, Exception.class, new AsyncFunction<Exception, T>()
+		{
+			@Override
+			public ListenableFuture<T> apply(Exception e)
+			{
+				return Futures.immediateFailedFuture(new ViewWriteException(written, e));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns a future that completes once every view write has, failing with the first failure (in view
+	 * order) if any fail. Unlike allAsList(), a failure doesn't complete it while other writes are still
+	 * in flight.
+	 */
+	private static ListenableFuture<List<Object>> allViewWrites(List<ListenableFuture<?>> writes)
+	{
+		return Futures.whenAllComplete(writes).callAsync(new AsyncCallable<List<Object>>()
+		{
+			@Override
+			public ListenableFuture<List<Object>> call()
+			{
+				return Futures.allAsList(writes);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public ListenableFuture<Document> read(String database, String table, Identifier id)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.read(new Identifier(id));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void read(String database, String table, Identifier id, FutureCallback<Document> callback)
+	{
+		Futures.addCallback(read(database, table, id), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read only the projected fields of a document.
+	 * 
+	 * @param projection the fields to return (e.g. Projection.parse(fields)), or null for all.
+	 */
+	public ListenableFuture<Document> read(String database, String table, Identifier id, Projection projection)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.read(new Identifier(id), projection, null);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void read(String database, String table, Identifier id, Projection projection, FutureCallback<Document> callback)
+	{
+		Futures.addCallback(read(database, table, id, projection), callback, MoreExecutors.directExecutor());
+	}
+
+	public ListenableFuture<Document> read(String database, String table, String view, Identifier id)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table, view);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.read(new Identifier(id));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void read(String database, String table, String view, Identifier id, FutureCallback<Document> callback)
+	{
+		Futures.addCallback(read(database, table, view, id), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read only the projected fields of a document, via a view.
+	 * 
+	 * @param projection the fields to return (e.g. Projection.parse(fields)), or null for all.
+	 */
+	public ListenableFuture<Document> read(String database, String table, String view, Identifier id, Projection projection)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table, view);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		{
+			@Override
+			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.read(new Identifier(id), projection, null);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public ListenableFuture<List<Document>> readIn(String database, String table, Identifier... ids)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.readIn(ids);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void readIn(FutureCallback<List<Document>> callback, String database, String table, Identifier... ids)
+	{
+		Futures.addCallback(readIn(database, table, ids), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read a single page of the documents in a table partition.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param partition the partition key components of the table.
+	 * @param fetchSize the maximum number of documents in the page. Zero or less uses the repository default.
+	 * @param pagingState the paging state from a prior page, or null to read the first page.
+	 * @return a future containing the page of documents and the paging state for the next page.
+	 */
+	public ListenableFuture<ResultPage<Document>> readAll(String database, String table, Identifier partition, int fetchSize, String pagingState)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, ResultPage<Document>>()
+		{
+			@Override
+			public ListenableFuture<ResultPage<Document>> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.streamAll(fetchSize, pagingState, partition.components().toArray()).next();
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void readAll(String database, String table, Identifier partition, int fetchSize, String pagingState, FutureCallback<ResultPage<Document>> callback)
+	{
+		Futures.addCallback(readAll(database, table, partition, fetchSize, pagingState), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read a single page of a slice of a table partition, by clustering key.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param query the partition, clustering key prefix and bounds, order and limit.
+	 * @param fetchSize the maximum number of documents in the page. Zero or less uses the repository default.
+	 * @param pagingState the paging state from a prior page of the same query, or null to read the first page.
+	 * @return a future containing the page of documents and the paging state for the next page.
+	 */
+	public ListenableFuture<ResultPage<Document>> readRange(String database, String table, RangeQuery query, int fetchSize, String pagingState)
+	{
+		return readRange(acquireRepositoryFor(database, table), query, fetchSize, pagingState);
+	}
+
+	public void readRange(String database, String table, RangeQuery query, int fetchSize, String pagingState, FutureCallback<ResultPage<Document>> callback)
+	{
+		Futures.addCallback(readRange(database, table, query, fetchSize, pagingState), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read a single page of a slice of a view partition, by clustering key. E.g. the latest documents,
+	 * or those between two times, of a time-ordered view.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param view the view name.
+	 * @param query the partition, clustering key prefix and bounds, order and limit.
+	 * @param fetchSize the maximum number of documents in the page. Zero or less uses the repository default.
+	 * @param pagingState the paging state from a prior page of the same query, or null to read the first page.
+	 * @return a future containing the page of documents and the paging state for the next page.
+	 */
+	public ListenableFuture<ResultPage<Document>> readRange(String database, String table, String view, RangeQuery query, int fetchSize, String pagingState)
+	{
+		return readRange(acquireRepositoryFor(database, table, view), query, fetchSize, pagingState);
+	}
+
+	public void readRange(String database, String table, String view, RangeQuery query, int fetchSize, String pagingState, FutureCallback<ResultPage<Document>> callback)
+	{
+		Futures.addCallback(readRange(database, table, view, query, fetchSize, pagingState), callback, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<ResultPage<Document>> readRange(ListenableFuture<AbstractDocumentRepository> docs, RangeQuery query, int fetchSize, String pagingState)
+	{
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, ResultPage<Document>>()
+		{
+			@Override
+			public ListenableFuture<ResultPage<Document>> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.streamRange(query, fetchSize, pagingState).next();
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read a single page of the documents of a table that match a query. Conditions on the table's key
+	 * are pushed down to Cassandra where possible; the rest filter the documents as they're read.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param query the predicates, order and limit.
+	 * @param fetchSize the number of documents read per underlying page. Zero or less uses the repository default.
+	 * @param pagingState the paging state from a prior page of the same query, or null to read the first page.
+	 * @return a future containing the page of matching documents and the paging state for the next page.
+	 */
+	public ListenableFuture<ResultPage<Document>> query(String database, String table, DocumentQuery query, int fetchSize, String pagingState)
+	{
+		return query(acquireRepositoryFor(database, table), query, fetchSize, pagingState);
+	}
+
+	public void query(String database, String table, DocumentQuery query, int fetchSize, String pagingState, FutureCallback<ResultPage<Document>> callback)
+	{
+		Futures.addCallback(query(database, table, query, fetchSize, pagingState), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read a single page of the documents of a view that match a query, with the view's key pushed down.
+	 */
+	public ListenableFuture<ResultPage<Document>> query(String database, String table, String view, DocumentQuery query, int fetchSize, String pagingState)
+	{
+		return query(acquireRepositoryFor(database, table, view), query, fetchSize, pagingState);
+	}
+
+	public void query(String database, String table, String view, DocumentQuery query, int fetchSize, String pagingState, FutureCallback<ResultPage<Document>> callback)
+	{
+		Futures.addCallback(query(database, table, view, query, fetchSize, pagingState), callback, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<ResultPage<Document>> query(ListenableFuture<AbstractDocumentRepository> docs, DocumentQuery query, int fetchSize, String pagingState)
+	{
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, ResultPage<Document>>()
+		{
+			@Override
+			public ListenableFuture<ResultPage<Document>> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.streamQuery(query, fetchSize, pagingState).next();
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Compute counts, minimums, maximums and sums, optionally grouped, over the documents of a table
+	 * that match the aggregation's query. Pushed down to Cassandra where possible; otherwise computed
+	 * over the matching documents as they're read, without holding them.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param aggregation the query, group-by fields and aggregates.
+	 * @return a future containing a result document per group.
+	 */
+	public ListenableFuture<List<BSONObject>> aggregate(String database, String table, Aggregation aggregation)
+	{
+		return aggregate(acquireRepositoryFor(database, table), aggregation);
+	}
+
+	public void aggregate(String database, String table, Aggregation aggregation, FutureCallback<List<BSONObject>> callback)
+	{
+		Futures.addCallback(aggregate(database, table, aggregation), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Compute an aggregation over the documents of a view, with the view's key pushed down.
+	 */
+	public ListenableFuture<List<BSONObject>> aggregate(String database, String table, String view, Aggregation aggregation)
+	{
+		return aggregate(acquireRepositoryFor(database, table, view), aggregation);
+	}
+
+	public void aggregate(String database, String table, String view, Aggregation aggregation, FutureCallback<List<BSONObject>> callback)
+	{
+		Futures.addCallback(aggregate(database, table, view, aggregation), callback, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<List<BSONObject>> aggregate(ListenableFuture<AbstractDocumentRepository> docs, Aggregation aggregation)
+	{
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, List<BSONObject>>()
+		{
+			@Override
+			public ListenableFuture<List<BSONObject>> apply(AbstractDocumentRepository input)
+			throws Exception
+			{
+				return input.aggregate(aggregation);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Find the documents of a table whose indexed text matches a query, via a SEARCH view. The index's
+	 * candidates are read from the table and checked against the query, so documents replaced or
+	 * deleted since they were indexed aren't returned.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param view the search view name.
+	 * @param query the terms, and the maximum number of documents to return.
+	 * @return a future containing the matching documents, in identifier order.
+	 */
+	public ListenableFuture<List<Document>> search(String database, String table, String view, SearchQuery query)
+	{
+		return Futures.transformAsync(getTableView(database, table, view), new AsyncFunction<View, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(View v)
+			{
+				if (!v.isSearchIndex())
+				{
+					return Futures.immediateFailedFuture(new ItemNotFoundException("Search view not found: " + view));
+				}
+
+				return search(database, table, v, query);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<List<Document>> search(String database, String table, View v, SearchQuery query)
+	{
+		return Futures.transformAsync(acquireIndexFor(v), new AsyncFunction<SearchIndex, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(SearchIndex index)
+			{
+				return Futures.transformAsync(Futures.allAsList(index.search(query), acquireRepositoryFor(database, table)), new AsyncFunction<List<Object>, List<Document>>()
+				{
+					@SuppressWarnings("unchecked")
+					@Override
+					public ListenableFuture<List<Document>> apply(List<Object> input)
+					{
+						return readMatches((AbstractDocumentRepository) input.get(1), index, query, (List<Identifier>) input.get(0), 0, new ArrayList<Document>());
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public void search(String database, String table, String view, SearchQuery query, FutureCallback<List<Document>> callback)
+	{
+		Futures.addCallback(search(database, table, view, query), callback, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Read the candidates from 'offset' on, keeping those that still match, until the query's limit is reached.
+	 */
+	private ListenableFuture<List<Document>> readMatches(AbstractDocumentRepository docs, SearchIndex index, SearchQuery query, List<Identifier> ids, int offset, List<Document> matches)
+	{
+		int limit = query.limit();
+
+		if (offset >= ids.size() || (limit > 0 && matches.size() >= limit))
+		{
+			return Futures.immediateFuture(matches);
+		}
+
+		int end = (limit > 0 ? Math.min(ids.size(), offset + limit - matches.size()) : ids.size());
+		return Futures.transformAsync(docs.readInOrder(ids.subList(offset, end).toArray(new Identifier[0])), new AsyncFunction<List<Optional<Document>>, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(List<Optional<Document>> found)
+			{
+				for (Optional<Document> document : found)
+				{
+					if (document.isPresent() && query.matches(index.terms(document.get())))
+					{
+						matches.add(document.get());
+					}
+				}
+
+				return readMatches(docs, index, query, ids, end, matches);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Find the documents of a table within a radius or bounding box, via a GEO view. The geohash cells
+	 * covering the area (see GeoQuery.cells()) are read in parallel, each as a range of a view partition,
+	 * and the documents read filtered by their exact location.
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param view the geospatial view name.
+	 * @param query the area, and the maximum number of documents to return.
+	 * @return a future containing the view documents within the area: nearest first for a radius, otherwise cell by cell.
+	 */
+	public ListenableFuture<List<Document>> locate(String database, String table, String view, GeoQuery query)
+	{
+		return Futures.transformAsync(getTableView(database, table, view), new AsyncFunction<View, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(View v)
+			{
+				if (!v.isGeospatial())
+				{
+					return Futures.immediateFailedFuture(new ItemNotFoundException("Geospatial view not found: " + view));
+				}
+
+				return locate(v, query);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<List<Document>> locate(View v, GeoQuery query)
 	{
-		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
-		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		List<String> cells;
+
+		try
+		{
+			cells = query.cells();
+		}
+		catch (IllegalArgumentException e)
+		{
+			return Futures.immediateFailedFuture(e);
+		}
+
+		List<String> fields = v.fieldList();
+		Predicate<Document> isWithin = new Predicate<Document>()
 		{
 			@Override
-			public ListenableFuture<Document> apply(AbstractDocumentRepository docRepo)
-			throws Exception
+			public boolean test(Document document)
 			{
-				try
-				{
-					ValidationEngine.validateAndThrow(document);
-					Document newDoc = docRepo.create(document).get();
-					updateViews(newDoc);
-					return Futures.immediateFuture(newDoc);
-				}
-				catch(Exception e)
-				{
-					return Futures.immediateFailedFuture(e);
-				}
+				return query.matches(GeoPoint.from(document.object(), fields.get(0), fields.get(1)));
 			}
+		};
 
-			private void updateViews(Document document)
-			throws InterruptedException, ExecutionException
+		return Futures.transformAsync(acquireRepositoryFor(v), new AsyncFunction<AbstractDocumentRepository, List<Document>>()
+		{
+			@Override
+			public ListenableFuture<List<Document>> apply(AbstractDocumentRepository docs)
 			{
-				List<View> tableViews = getTableViews(database, table).get();
-				tableViews.forEach(new Consumer<View>()
+				List<ListenableFuture<List<Document>>> found = new ArrayList<>(cells.size());
+
+				for (String cell : cells)
 				{
-					@Override
-					public void accept(View v)
+					List<Document> inCell = new ArrayList<>();
+					FilteredStream<Document> stream = new FilteredStream<>(docs.streamRange(GeoKeys.range(cell), 0, null), isWithin, (query.isRadius() ? 0 : query.limit()));
+					found.add(Futures.transform(stream.forEach(new Consumer<Document>()
 					{
-						try
+						@Override
+						public void accept(Document document)
 						{
-							Identifier id = v.identifierFrom(document);
+							inCell.add(document);
+						}
+					}), Functions.constant(inCell), MoreExecutors.directExecutor()));
+				}
 
-							if (id != null)
+				return Futures.transform(Futures.allAsList(found), new Function<List<List<Document>>, List<Document>>()
+				{
+					@Override
+					public List<Document> apply(List<List<Document>> input)
+					{
+						List<Document> located = new ArrayList<>();
+						input.forEach(new Consumer<List<Document>>()
+						{
+							@Override
+							public void accept(List<Document> inCell)
 							{
-								Document viewDoc = new Document(document.object());
-								viewDoc.identifier(id);
-								Document newView = createViewDocument(v, viewDoc).get();
-								System.out.println(newView.createdAt());
+								located.addAll(inCell);
 							}
-						}
-						catch (KeyDefinitionException e)
-						{
-							e.printStackTrace();
-						}
-						catch (InterruptedException e)
-						{
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-						catch (ExecutionException e)
+						});
+
+						if (query.isRadius())
 						{
-							// TODO Auto-generated catch block
-							e.printStackTrace();
+							Collections.sort(located, new Comparator<Document>()
+							{
+								@Override
+								public int compare(Document a, Document b)
+								{
+									return Double.compare(distanceTo(a), distanceTo(b));
+								}
+
+								private double distanceTo(Document document)
+								{
+									return query.distanceTo(GeoPoint.from(document.object(), fields.get(0), fields.get(1)));
+								}
+							});
 						}
+
+						return (query.limit() > 0 && located.size() > query.limit() ? new ArrayList<>(located.subList(0, query.limit())) : located);
 					}
-				});
-			}
-
-//			private ListenableFuture<List<Document>> updateViews(Document document)
-//			{
-//				ListenableFuture<List<View>> tableViews = getTableViews(database, table);
-//				return Futures.transformAsync(tableViews, new AsyncFunction<List<View>, List<Document>>()
-//				{
-//					@Override
-//					public ListenableFuture<List<Document>> apply(List<View> input)
-//					throws Exception
-//					{
-//						List<ListenableFuture<Document>> newDocs = new ArrayList<>(input.size());
-//						input.parallelStream().forEach(new Consumer<View>()
-//						{
-//							@Override
-//							public void accept(View v)
-//							{
-//								try
-//								{
-//									 Identifier id = v.identifierFrom(document);
-//
-//									if (id != null)
-//									{
-//										Document viewDoc = new Document(document.object());
-//										viewDoc.identifier(id);
-//										newDocs.add(createViewDocument(v, document));
-//									}
-//								}
-//								catch (KeyDefinitionException e)
-//								{
-//									e.printStackTrace();
-//								}
-//							}
-//						});
-//
-//						return null;
-//					}
-//				});
-//			}
-
-		}, MoreExecutors.directExecutor());
-	}
-
-	private ListenableFuture<Document> createViewDocument(View view, Document document)
-	{
-		try
-		{
-			AbstractDocumentRepository docs = acquireRepositoryFor(view).get();
-			return docs.create(document);
-		}
-		catch (InterruptedException e)
-		{
-			return Futures.immediateFailedFuture(e);
-		}
-		catch (ExecutionException e)
-		{
-			return Futures.immediateFailedFuture(e);
-		}
-//		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(view);
-//		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
-//		{
-//			@Override
-//			public ListenableFuture<Document> apply(AbstractDocumentRepository docRepo)
-//			throws Exception
-//			{
-//				return docRepo.create(document);
-//			}
-//		});
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
 	}
 
-	public void create(String database, String table, Document document, FutureCallback<Document> callback)
+	public void locate(String database, String table, String view, GeoQuery query, FutureCallback<List<Document>> callback)
 	{
-		Futures.addCallback(create(database, table, document), callback, MoreExecutors.directExecutor());
+		Futures.addCallback(locate(database, table, view, query), callback, MoreExecutors.directExecutor());
 	}
 
-	public ListenableFuture<Document> read(String database, String table, Identifier id)
+	/**
+	 * Replace a document in a table, then index it in the table's search views (see indexViewDocuments()).
+	 */
+	public ListenableFuture<Document> update(String database, String table, Document document)
 	{
 		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
 		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
@@ -205,55 +875,155 @@ public class DocumentService
 			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
 			throws Exception
 			{
-				return input.read(new Identifier(id));
+				try
+				{
+					ValidationEngine.validateAndThrow(document);
+					return Futures.transformAsync(input.update(document), new AsyncFunction<Document, Document>()
+					{
+						@Override
+						public ListenableFuture<Document> apply(Document updated)
+						{
+							return acknowledge(updated, indexViewDocuments(database, table, Collections.singletonList(updated)));
+						}
+					}, MoreExecutors.directExecutor());
+				}
+				catch(ValidationException e)
+				{
+					return Futures.immediateFailedFuture(e);
+				}
 			}
 		}, MoreExecutors.directExecutor());
 	}
 
-	public void read(String database, String table, Identifier id, FutureCallback<Document> callback)
-	{
-		Futures.addCallback(read(database, table, id), callback, MoreExecutors.directExecutor());
-	}
+	public void update(String database, String table, Document document, FutureCallback<Document> callback)
+    {
+		Futures.addCallback(update(database, table, document), callback, MoreExecutors.directExecutor());
+    }
 
-	public ListenableFuture<Document> read(String database, String table, String view, Identifier id)
+	/**
+	 * Apply a partial update to a document server-side (see AbstractDocumentRepository.patch()), then
+	 * bring the table's views up to date: the patched document is written to each view it belongs in,
+	 * and removed from any view whose key it no longer has (or has changed).
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param id the document identifier.
+	 * @param patch the change to apply.
+	 * @return a future containing the patched document.
+	 */
+	public ListenableFuture<Document> patch(String database, String table, Identifier id, DocumentPatch patch)
 	{
-		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(getTableView(database, table, view));
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
 		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
 		{
 			@Override
 			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
 			throws Exception
 			{
-				return input.read(new Identifier(id));
+				return Futures.transformAsync(input.patch(new Identifier(id), patch, null), new AsyncFunction<DocumentPatch.Result, Document>()
+				{
+					@Override
+					public ListenableFuture<Document> apply(DocumentPatch.Result patched)
+					{
+						return acknowledge(patched.after(), patchViewDocuments(database, table, patched));
+					}
+				}, MoreExecutors.directExecutor());
 			}
 		}, MoreExecutors.directExecutor());
 	}
 
-	public void read(String database, String table, String view, Identifier id, FutureCallback<Document> callback)
+	public void patch(String database, String table, Identifier id, DocumentPatch patch, FutureCallback<Document> callback)
 	{
-		Futures.addCallback(read(database, table, view, id), callback, MoreExecutors.directExecutor());
+		Futures.addCallback(patch(database, table, id, patch), callback, MoreExecutors.directExecutor());
 	}
 
-	public ListenableFuture<List<Document>> readIn(String database, String table, Identifier... ids)
+	/**
+	 * Bring every view of the table up to date with a patched document, concurrently: re-index it, or
+	 * replace its view document (deleting the old one if its view identifier changed).
+	 */
+	private ListenableFuture<List<Object>> patchViewDocuments(String database, String table, DocumentPatch.Result patched)
 	{
-		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
-		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, List<Document>>()
+		return Futures.transformAsync(getTableViews(database, table), new AsyncFunction<List<View>, List<Object>>()
 		{
 			@Override
-			public ListenableFuture<List<Document>> apply(AbstractDocumentRepository input)
-			throws Exception
+			public ListenableFuture<List<Object>> apply(List<View> tableViews)
 			{
-				return input.readIn(ids);
+				List<ListenableFuture<?>> changes = new ArrayList<>(tableViews.size());
+
+				for (View v : tableViews)
+				{
+					long start = System.nanoTime();
+
+					if (v.isSearchIndex())
+					{
+						changes.add(writeView(v, start, Futures.transformAsync(acquireIndexFor(v), new AsyncFunction<SearchIndex, Document>()
+						{
+							@Override
+							public ListenableFuture<Document> apply(SearchIndex index)
+							{
+								return index.reindex(patched.before(), patched.after());
+							}
+						}, MoreExecutors.directExecutor())));
+						continue;
+					}
+
+					Identifier before = viewIdentifier(v, patched.before());
+					Identifier after = viewIdentifier(v, patched.after());
+
+					if (before == null && after == null) continue;
+
+					changes.add(writeView(v, start, Futures.transformAsync(acquireRepositoryFor(v), new AsyncFunction<AbstractDocumentRepository, List<Object>>()
+					{
+						@Override
+						public ListenableFuture<List<Object>> apply(AbstractDocumentRepository viewDocs)
+						{
+							List<ListenableFuture<?>> writes = new ArrayList<>(2);
+
+							if (before != null && !before.equals(after))
+							{
+								writes.add(viewDocs.delete(before));
+							}
+
+							if (after != null)
+							{
+								Document viewDoc = new Document(patched.after().object());
+								viewDoc.identifier(after);
+								viewDoc.ttl(patched.after().ttl());
+								writes.add(viewDocs.upsert(viewDoc));
+							}
+
+							return Futures.allAsList(writes);
+						}
+					}, MoreExecutors.directExecutor())));
+				}
+
+				return allViewWrites(changes);
 			}
 		}, MoreExecutors.directExecutor());
 	}
 
-	public void readIn(FutureCallback<List<Document>> callback, String database, String table, Identifier... ids)
+	/**
+	 * Returns the document's identifier in the view, or null if it doesn't have the view's key properties.
+	 */
+	private Identifier viewIdentifier(View view, Document document)
 	{
-		Futures.addCallback(readIn(database, table, ids), callback, MoreExecutors.directExecutor());
+		if (!document.hasObject()) return null;
+
+		try
+		{
+			return view.identifierFrom(document);
+		}
+		catch (KeyDefinitionException e)
+		{
+			return null;
+		}
 	}
 
-	public ListenableFuture<Document> update(String database, String table, Document document)
+	/**
+	 * Insert or replace a document in a table, then index it in the table's search views (see
+	 * indexViewDocuments()).
+	 */
+	public ListenableFuture<Document> upsert(String database, String table, Document document)
 	{
 		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
 		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
@@ -265,7 +1035,14 @@ public class DocumentService
 				try
 				{
 					ValidationEngine.validateAndThrow(document);
-					return input.update(document);
+					return Futures.transformAsync(input.upsert(document), new AsyncFunction<Document, Document>()
+					{
+						@Override
+						public ListenableFuture<Document> apply(Document upserted)
+						{
+							return acknowledge(upserted, indexViewDocuments(database, table, Collections.singletonList(upserted)));
+						}
+					}, MoreExecutors.directExecutor());
 				}
 				catch(ValidationException e)
 				{
@@ -275,24 +1052,40 @@ public class DocumentService
 		}, MoreExecutors.directExecutor());
 	}
 
-	public void update(String database, String table, Document document, FutureCallback<Document> callback)
+	public void upsert(String database, String table, Document document, FutureCallback<Document> callback)
     {
-		Futures.addCallback(update(database, table, document), callback, MoreExecutors.directExecutor());
+		Futures.addCallback(upsert(database, table, document), callback, MoreExecutors.directExecutor());
     }
 
-	public ListenableFuture<Document> upsert(String database, String table, Document document)
+	/**
+	 * Insert or replace many documents in a table, batched by partition, then index them in the table's
+	 * search views (see indexViewDocuments()).
+	 * 
+	 * @param database the database name.
+	 * @param table the table name.
+	 * @param documents the documents to upsert.
+	 * @return a future containing the upserted documents.
+	 */
+	public ListenableFuture<List<Document>> upsertAll(String database, String table, Collection<Document> documents)
 	{
 		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
-		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Document>()
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, List<Document>>()
 		{
 			@Override
-			public ListenableFuture<Document> apply(AbstractDocumentRepository input)
+			public ListenableFuture<List<Document>> apply(AbstractDocumentRepository input)
 			throws Exception
 			{
 				try
 				{
-					ValidationEngine.validateAndThrow(document);
-					return input.upsert(document);
+					validateAll(documents);
+					return Futures.transformAsync(input.upsertAll(documents), new AsyncFunction<List<Document>, List<Document>>()
+					{
+						@Override
+						public ListenableFuture<List<Document>> apply(List<Document> upserted)
+						{
+							return acknowledge(upserted, indexViewDocuments(database, table, upserted));
+						}
+					}, MoreExecutors.directExecutor());
 				}
 				catch(ValidationException e)
 				{
@@ -302,10 +1095,10 @@ public class DocumentService
 		}, MoreExecutors.directExecutor());
 	}
 
-	public void upsert(String database, String table, Document document, FutureCallback<Document> callback)
-    {
-		Futures.addCallback(upsert(database, table, document), callback, MoreExecutors.directExecutor());
-    }
+	public void upsertAll(String database, String table, Collection<Document> documents, FutureCallback<List<Document>> callback)
+	{
+		Futures.addCallback(upsertAll(database, table, documents), callback, MoreExecutors.directExecutor());
+	}
 
 	public ListenableFuture<Boolean> delete(String database, String table, Identifier id)
 	{
@@ -345,51 +1138,200 @@ public class DocumentService
 		Futures.addCallback(exists(database, table, id), callback, MoreExecutors.directExecutor());
 	}
 
-	private ListenableFuture<AbstractDocumentRepository> acquireRepositoryFor(String database, String table)
-    {
-		Identifier cacheKey = new Identifier(database, table);
-		AbstractDocumentRepository repo = repoCache.get(cacheKey);
+	/**
+	 * Create the repositories for every table (and table view) in a database and prepare their statements,
+	 * so the first request against each table doesn't wait on statement preparation. Intended for startup.
+	 * 
+	 * @param database the database name.
+	 * @return a future containing the number of repositories prepared.
+	 */
+	public ListenableFuture<Integer> warmUp(String database)
+	{
+		return Futures.transformAsync(tables.readAll(database), new AsyncFunction<List<Table>, Integer>()
+		{
+			@Override
+			public ListenableFuture<Integer> apply(List<Table> input)
+			{
+				List<ListenableFuture<Integer>> prepared = new ArrayList<>(input.size());
+
+				for (Table t : input)
+				{
+					prepared.add(warmUp(database, t.name()));
+				}
+
+				return Futures.transform(Futures.allAsList(prepared), new Function<List<Integer>, Integer>()
+				{
+					@Override
+					public Integer apply(List<Integer> counts)
+					{
+						int total = 0;
+
+						for (Integer count : counts)
+						{
+							total += count;
+						}
+
+						return total;
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<Integer> warmUp(String database, String table)
+	{
+		ListenableFuture<AbstractDocumentRepository> docs = acquireRepositoryFor(database, table);
+		return Futures.transformAsync(docs, new AsyncFunction<AbstractDocumentRepository, Integer>()
+		{
+			@Override
+			public ListenableFuture<Integer> apply(AbstractDocumentRepository input)
+			{
+				return Futures.transformAsync(getTableViews(database, table), new AsyncFunction<List<View>, Integer>()
+				{
+					@Override
+					public ListenableFuture<Integer> apply(List<View> tableViews)
+					{
+						List<ListenableFuture<?>> viewDocs = new ArrayList<>(tableViews.size());
+
+						for (View v : tableViews)
+						{
+							viewDocs.add(v.isSearchIndex() ? acquireIndexFor(v) : acquireRepositoryFor(v));
+						}
+
+						return Futures.transform(Futures.allAsList(viewDocs), new Function<List<Object>, Integer>()
+						{
+							@Override
+							public Integer apply(List<Object> repos)
+							{
+								return repos.size() + 1;
+							}
+						}, MoreExecutors.directExecutor());
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private void validateAll(Collection<Document> documents)
+	throws ValidationException
+	{
+		if (documents == null) return;
 
-		if (repo != null)
+		for (Document document : documents)
 		{
-			return Futures.immediateFuture(repo);
+			ValidationEngine.validateAndThrow(document);
 		}
+	}
 
-		ListenableFuture<Table> futureTable = tables.read(database, table);
-		return Futures.transformAsync(futureTable, new AsyncFunction<Table, AbstractDocumentRepository>()
+	private ListenableFuture<AbstractDocumentRepository> acquireRepositoryFor(String database, String table)
+    {
+		return cached(repoCache, new Identifier(database, table), new AsyncCallable<AbstractDocumentRepository>()
 		{
 			@Override
-			public ListenableFuture<AbstractDocumentRepository> apply(Table input)
-			throws Exception
+			public ListenableFuture<AbstractDocumentRepository> call()
+			{
+				return Futures.transformAsync(tables.read(database, table), new AsyncFunction<Table, AbstractDocumentRepository>()
+				{
+					@Override
+					public ListenableFuture<AbstractDocumentRepository> apply(Table input)
+					throws Exception
+					{
+						return factory.newInstance(input).prepareStatements();
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		});
+    }
+
+	private ListenableFuture<AbstractDocumentRepository> acquireRepositoryFor(String database, String table, String view)
+	{
+		return Futures.transformAsync(getTableView(database, table, view), new AsyncFunction<View, AbstractDocumentRepository>()
+		{
+			@Override
+			public ListenableFuture<AbstractDocumentRepository> apply(View v)
 			{
-				AbstractDocumentRepository repo = factory.newInstance(input);
-				repoCache.put(cacheKey, repo);
-				return Futures.immediateFuture(repo);
+				return acquireRepositoryFor(v);
 			}
 		}, MoreExecutors.directExecutor());
-    }
+	}
 
 	private ListenableFuture<AbstractDocumentRepository> acquireRepositoryFor(View view)
     {
-		Identifier cacheKey = view.identifier();
-		AbstractDocumentRepository repo = repoCache.get(cacheKey);
-
-		if (repo != null)
+		if (view.isSearchIndex())
 		{
-			return Futures.immediateFuture(repo);
+			return Futures.immediateFailedFuture(new IllegalArgumentException("Search views can only be searched: " + view.name()));
 		}
 
-		try
+		return cached(repoCache, view.identifier(), new AsyncCallable<AbstractDocumentRepository>()
 		{
-			repo = factory.newInstance(view);
-			repoCache.put(cacheKey, repo);
-			return Futures.immediateFuture(repo);
-		}
-		catch (KeyDefinitionException e)
+			@Override
+			public ListenableFuture<AbstractDocumentRepository> call()
+			throws KeyDefinitionException
+			{
+				return factory.newInstance(view).prepareStatements();
+			}
+		});
+    }
+
+	private ListenableFuture<SearchIndex> acquireIndexFor(View view)
+	{
+		return cached(indexCache, view.identifier(), new AsyncCallable<SearchIndex>()
 		{
-			return Futures.immediateFailedFuture(e);
+			@Override
+			public ListenableFuture<SearchIndex> call()
+			throws KeyDefinitionException
+			{
+				return factory.newSearchIndex(view).prepareStatements();
+			}
+		});
+	}
+
+	/**
+	 * Returns the cached repository (or index) for the key, once it's prepared, creating and caching it
+	 * if there isn't one. Concurrent callers share one entry, so the statements are prepared once. If
+	 * creating or preparing it fails, the entry is evicted, so a later call tries again.
+	 */
+	private static <T> ListenableFuture<T> cached(ConcurrentMap<Identifier, ListenableFuture<T>> cache, Identifier key, AsyncCallable<T> creator)
+	{
+		ListenableFuture<T> cached = cache.get(key);
+
+		if (cached == null)
+		{
+			SettableFuture<T> created = SettableFuture.create();
+			cached = cache.putIfAbsent(key, created);
+
+			if (cached == null)
+			{
+				cached = created;
+				Futures.addCallback(created, new FutureCallback<T>()
+				{
+					@Override
+					public void onSuccess(T result)
+					{
+						// stays cached.
+					}
+
+					@Override
+					public void onFailure(Throwable t)
+					{
+						cache.remove(key, created);
+					}
+				}, MoreExecutors.directExecutor());
+
+				try
+				{
+					created.setFuture(creator.call());
+				}
+				catch (Exception e)
+				{
+					created.setException(e);
+				}
+			}
 		}
-    }
+
+		// One caller cancelling mustn't cancel the shared entry.
+		return Futures.nonCancellationPropagating(cached);
+	}
 
 	private ListenableFuture<List<View>> getTableViews(String database, String table)
 	{
@@ -415,24 +1357,26 @@ public class DocumentService
 		}, MoreExecutors.directExecutor());
 	}
 
-	private View getTableView(String database, String table, String view)
+	/**
+	 * Returns a future containing the table's view, failing with an ItemNotFoundException if the table has no such view.
+	 */
+	private ListenableFuture<View> getTableView(String database, String table, String view)
 	{
-		try {
-			for (View v : getTableViews(database, table).get())
+		return Futures.transformAsync(getTableViews(database, table), new AsyncFunction<List<View>, View>()
+		{
+			@Override
+			public ListenableFuture<View> apply(List<View> tableViews)
 			{
-				if (v.name().equals(view))
+				for (View v : tableViews)
 				{
-					return v;
+					if (v.name().equals(view))
+					{
+						return Futures.immediateFuture(v);
+					}
 				}
-			}
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
 
-		return null;
+				return Futures.immediateFailedFuture(new ItemNotFoundException("View not found: " + view));
+			}
+		}, MoreExecutors.directExecutor());
 	}
 }
@@ -40,4 +40,25 @@ public class IdPropertyConverter
 			default: throw new UnsupportedOperationException("Conversion of property type: " + type.toString());
 		}
     }
+
+	/**
+	 * Same as marshal(String, DataTypes, Row) but reads the column by its index in the row, avoiding
+	 * the by-name column lookup.
+	 */
+	public static final Object marshal(int index, DataTypes type, Row row)
+    {
+		switch(type)
+		{
+			case BIGINT: return row.getLong(index);
+			case DECIMAL: return row.getDecimal(index);
+			case DOUBLE: return row.getDouble(index);
+			case FLOAT: return row.getFloat(index);
+			case INTEGER: return row.getInt(index);
+			case TEXT: return row.getString(index);
+			case TIMESTAMP: return row.getTimestamp(index);
+			case TIMEUUID:
+			case UUID:  return row.getUUID(index);
+			default: throw new UnsupportedOperationException("Conversion of property type: " + type.toString());
+		}
+    }
 }
@@ -0,0 +1,223 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.LazyBSONCallback;
+import org.bson.LazyBSONObject;
+
+/**
+ * A stored BSON document that is decoded lazily. It wraps the encoded bytes read from the database
+ * (without copying them when the driver's buffer is array-backed), and each field is decoded only when
+ * it is accessed. The encoded bytes can be written straight back out, via bson(), without re-encoding.
+ *
+ * Only top-level values that aren't documents or arrays are read from the stored bytes. Reading a nested
+ * document or array, like the first modification, decodes the whole document into a BasicBSONObject (so
+ * every level is mutable), after which this behaves like one. Since a nested value handed out may then be
+ * modified by its caller, the document is no longer considered unmodified and bson() encodes it again.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class LazyBSONDocument
+implements BSONObject
+{
+	private static final LazyBSONCallback CALLBACK = new LazyBSONCallback();
+
+	private byte[] bytes;
+	private int offset;
+	private int length;
+	private LazyBSONObject lazy;
+	private BSONObject decoded;
+
+	/**
+	 * @param buffer a buffer containing exactly one encoded BSON document, from its position to its limit.
+	 */
+	public LazyBSONDocument(ByteBuffer buffer)
+	{
+		super();
+		this.length = buffer.remaining();
+
+		if (buffer.hasArray())
+		{
+			this.bytes = buffer.array();
+			this.offset = buffer.arrayOffset() + buffer.position();
+		}
+		else
+		{
+			// Direct buffers have no backing array, so copy once.
+			this.bytes = new byte[length];
+			buffer.duplicate().get(bytes);
+			this.offset = 0;
+		}
+
+		this.lazy = new LazyBSONObject(bytes, offset, CALLBACK);
+	}
+
+	/**
+	 * Returns true if the document hasn't been modified, so bson() returns the bytes as stored.
+	 */
+	public boolean isUnmodified()
+	{
+		return (decoded == null);
+	}
+
+	/**
+	 * Returns the encoded document. If it hasn't been modified, this is a read-only view of the stored
+	 * bytes, with no copying or encoding.
+	 */
+	public ByteBuffer bson()
+	{
+		if (decoded != null) return BSONCodec.encode(decoded);
+
+		return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the size of the stored (encoded) document in bytes.
+	 */
+	public int size()
+	{
+		return length;
+	}
+
+	@Override
+	public Object get(String key)
+	{
+		if (decoded != null) return decoded.get(key);
+
+		Object value = lazy.get(key);
+
+		// Nested documents and arrays are read-only when read lazily, so hand out mutable ones instead.
+		if (value instanceof LazyBSONObject) return decoded().get(key);
+
+		return value;
+	}
+
+	@Override
+	public boolean containsField(String s)
+	{
+		return current().containsField(s);
+	}
+
+	@Override
+	@Deprecated
+	public boolean containsKey(String s)
+	{
+		return current().containsField(s);
+	}
+
+	@Override
+	public Set<String> keySet()
+	{
+		return current().keySet();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Map toMap()
+	{
+		return decode().toMap();
+	}
+
+	@Override
+	public Object put(String key, Object v)
+	{
+		return decoded().put(key, v);
+	}
+
+	@Override
+	public void putAll(BSONObject o)
+	{
+		decoded().putAll(o);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void putAll(Map m)
+	{
+		decoded().putAll(m);
+	}
+
+	@Override
+	public Object removeField(String key)
+	{
+		return decoded().removeField(key);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj) return true;
+
+		if (obj instanceof LazyBSONDocument)
+		{
+			LazyBSONDocument that = (LazyBSONDocument) obj;
+
+			if (this.isUnmodified() && that.isUnmodified())
+			{
+				return this.bson().equals(that.bson());
+			}
+		}
+
+		return decode().equals(obj);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return decode().hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return decode().toString();
+	}
+
+	private BSONObject current()
+	{
+		return (decoded != null ? decoded : lazy);
+	}
+
+	private synchronized BSONObject decoded()
+	{
+		if (decoded == null)
+		{
+			decoded = decode();
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Returns a fully-decoded, mutable copy of the stored document (or the modified document).
+	 */
+	private BSONObject decode()
+	{
+		if (decoded != null) return decoded;
+
+		if (offset == 0 && length == bytes.length) return BSON.decode(bytes);
+
+		return BSON.decode(Arrays.copyOfRange(bytes, offset, offset + length));
+	}
+}
@@ -0,0 +1,348 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.BSONObject;
+
+/**
+ * Selects the fields of a document to return: either only the included field paths, or all but the
+ * excluded ones. Paths are dotted (e.g. 'address.city'), and descend into embedded documents and into
+ * the documents within arrays.
+ *
+ * A projection is applied to the encoded document. The selected elements are copied, still encoded,
+ * into a new (smaller) document and the rest are skipped over without being decoded, so a few fields of
+ * a large document cost a scan of its element headers and a copy of those fields.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class Projection
+{
+	/**
+	 * Returns every field.
+	 */
+	public static final Projection ALL = new Projection(true, new Node());
+
+	private static final byte DOCUMENT = 0x03;
+	private static final byte ARRAY = 0x04;
+
+	private boolean isExclusion;
+	private Node fields;
+
+	private Projection(boolean isExclusion, Node fields)
+	{
+		super();
+		this.isExclusion = isExclusion;
+		this.fields = fields;
+	}
+
+	/**
+	 * Returns a projection of only the given field paths.
+	 */
+	public static Projection include(String... paths)
+	{
+		return new Projection(false, tree(Arrays.asList(paths)));
+	}
+
+	/**
+	 * Returns a projection of all but the given field paths.
+	 */
+	public static Projection exclude(String... paths)
+	{
+		return new Projection(true, tree(Arrays.asList(paths)));
+	}
+
+	/**
+	 * Parse a comma-separated list of field paths (e.g. from a 'fields' query-string parameter). Paths
+	 * prefixed with '-' are excluded, otherwise they're included. Includes and excludes can't be mixed.
+	 *
+	 * @param fields the field list. Null or empty returns ALL.
+	 * @return a Projection
+	 * @throws IllegalArgumentException if includes and excludes are mixed.
+	 */
+	public static Projection parse(String fields)
+	{
+		if (fields == null || fields.trim().isEmpty()) return ALL;
+
+		String[] paths = fields.split(",");
+		int excludes = 0;
+
+		for (int i = 0; i < paths.length; i++)
+		{
+			paths[i] = paths[i].trim();
+
+			if (paths[i].startsWith("-"))
+			{
+				paths[i] = paths[i].substring(1).trim();
+				excludes++;
+			}
+		}
+
+		if (excludes > 0 && excludes < paths.length)
+		{
+			throw new IllegalArgumentException("Cannot mix included and excluded fields: " + fields);
+		}
+
+		return (excludes > 0 ? exclude(paths) : include(paths));
+	}
+
+	public boolean isAll()
+	{
+		return (isExclusion && fields.children.isEmpty());
+	}
+
+	/**
+	 * Project an encoded document.
+	 *
+	 * @param bson an encoded BSON document, possibly null.
+	 * @return the projected document (decoded lazily), or null.
+	 */
+	public BSONObject apply(ByteBuffer bson)
+	{
+		if (bson == null) return null;
+
+		if (isAll()) return new LazyBSONDocument(bson);
+
+		byte[] bytes;
+		int offset;
+
+		if (bson.hasArray())
+		{
+			bytes = bson.array();
+			offset = bson.arrayOffset() + bson.position();
+		}
+		else
+		{
+			bytes = new byte[bson.remaining()];
+			bson.duplicate().get(bytes);
+			offset = 0;
+		}
+
+		Output out = new Output(Math.min(bson.remaining(), 1024));
+		project(bytes, offset, fields, false, out);
+		return new LazyBSONDocument(ByteBuffer.wrap(out.bytes, 0, out.size));
+	}
+
+	/**
+	 * Write the projection of the document at 'offset' to out.
+	 */
+	private void project(byte[] bytes, int offset, Node node, boolean isArray, Output out)
+	{
+		int start = out.beginDocument();
+		int end = offset + int32(bytes, offset) - 1;
+		int position = offset + 4;
+		int index = 0;
+
+		while (position < end)
+		{
+			byte type = bytes[position++];
+			int nameStart = position;
+
+			while (bytes[position] != 0) position++;
+
+			String name = new String(bytes, nameStart, position - nameStart, StandardCharsets.UTF_8);
+			int value = ++position;
+			position = value + valueSize(bytes, value, type);
+
+			// Array elements get the array's paths, and are renumbered in case some are dropped.
+			Node child = (isArray ? node : node.children.get(name));
+			String key = (isArray ? String.valueOf(index) : name);
+
+			if (child == null)
+			{
+				if (isExclusion) out.element(type, key, bytes, value, position);
+			}
+			else if (child.isLeaf())
+			{
+				if (!isExclusion) out.element(type, key, bytes, value, position);
+			}
+			else if (type == DOCUMENT || type == ARRAY)
+			{
+				out.header(type, key);
+				project(bytes, value, child, (type == ARRAY), out);
+			}
+			else if (isExclusion)
+			{
+				// A path below a scalar excludes nothing.
+				out.element(type, key, bytes, value, position);
+			}
+			else
+			{
+				continue;
+			}
+
+			index++;
+		}
+
+		out.endDocument(start);
+	}
+
+	private static Node tree(Collection<String> paths)
+	{
+		Node root = new Node();
+
+		for (String path : paths)
+		{
+			if (path == null || path.isEmpty()) continue;
+
+			Node node = root;
+			String[] segments = DocumentPath.segments(path);
+
+			for (int i = 0; i < segments.length && !(node != root && node.isLeaf()); i++)
+			{
+				Node child = node.children.get(segments[i]);
+
+				if (child == null)
+				{
+					child = new Node();
+					node.children.put(segments[i], child);
+				}
+
+				if (i == segments.length - 1)
+				{
+					// The whole field wins over any of its sub-paths.
+					child.children.clear();
+					child.isLeaf = true;
+				}
+
+				node = child;
+			}
+		}
+
+		return root;
+	}
+
+	private static int valueSize(byte[] bytes, int position, byte type)
+	{
+		switch(type)
+		{
+			case 0x01: return 8;						// double
+			case 0x02:									// string
+			case 0x0D:									// JavaScript
+			case 0x0E: return 4 + int32(bytes, position);	// symbol
+			case 0x03:									// document
+			case 0x04:									// array
+			case 0x0F: return int32(bytes, position);		// JavaScript with scope
+			case 0x05: return 5 + int32(bytes, position);	// binary
+			case 0x06:									// undefined
+			case 0x0A:									// null
+			case (byte) 0xFF:							// min key
+			case 0x7F: return 0;						// max key
+			case 0x07: return 12;						// ObjectId
+			case 0x08: return 1;						// boolean
+			case 0x09:									// UTC datetime
+			case 0x11:									// timestamp
+			case 0x12: return 8;						// int64
+			case 0x0B:									// regex: two cstrings
+				int p = position;
+				while (bytes[p] != 0) p++;
+				p++;
+				while (bytes[p] != 0) p++;
+				return p + 1 - position;
+			case 0x0C: return 4 + int32(bytes, position) + 12;	// DBPointer
+			case 0x10: return 4;						// int32
+			case 0x13: return 16;						// decimal128
+			default:
+				throw new IllegalArgumentException("Unknown BSON type: " + type);
+		}
+	}
+
+	private static int int32(byte[] bytes, int position)
+	{
+		return (bytes[position] & 0xff)
+			| ((bytes[position + 1] & 0xff) << 8)
+			| ((bytes[position + 2] & 0xff) << 16)
+			| ((bytes[position + 3] & 0xff) << 24);
+	}
+
+	private static class Node
+	{
+		private Map<String, Node> children = new HashMap<>();
+		private boolean isLeaf = false;
+
+		public boolean isLeaf()
+		{
+			return isLeaf;
+		}
+	}
+
+	/**
+	 * A growable little-endian output buffer for the projected document.
+	 */
+	private static class Output
+	{
+		private byte[] bytes;
+		private int size = 0;
+
+		public Output(int capacity)
+		{
+			super();
+			this.bytes = new byte[Math.max(capacity, 16)];
+		}
+
+		public int beginDocument()
+		{
+			int start = size;
+			ensure(4);
+			size += 4;
+			return start;
+		}
+
+		public void endDocument(int start)
+		{
+			ensure(1);
+			bytes[size++] = 0;
+			int length = size - start;
+			bytes[start] = (byte) length;
+			bytes[start + 1] = (byte) (length >>> 8);
+			bytes[start + 2] = (byte) (length >>> 16);
+			bytes[start + 3] = (byte) (length >>> 24);
+		}
+
+		public void header(byte type, String name)
+		{
+			byte[] n = name.getBytes(StandardCharsets.UTF_8);
+			ensure(n.length + 2);
+			bytes[size++] = type;
+			System.arraycopy(n, 0, bytes, size, n.length);
+			size += n.length;
+			bytes[size++] = 0;
+		}
+
+		public void element(byte type, String name, byte[] source, int from, int to)
+		{
+			header(type, name);
+			ensure(to - from);
+			System.arraycopy(source, from, bytes, size, to - from);
+			size += (to - from);
+		}
+
+		private void ensure(int more)
+		{
+			if (size + more > bytes.length)
+			{
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+			}
+		}
+	}
+}
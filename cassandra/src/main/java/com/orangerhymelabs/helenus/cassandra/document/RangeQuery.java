@@ -0,0 +1,169 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.orangerhymelabs.helenus.cassandra.table.key.ClusteringKeyComponent.Ordering;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * A slice of one partition of a table or view, by its clustering key: the documents whose leading
+ * clustering columns equal a prefix, optionally bounded on the following clustering column, in either
+ * order and up to a limit. For example, with a view keyed by 'customerId, -createdAt':
+ *
+ * 	new RangeQuery(new Identifier(customerId)).limit(10)							// the latest ten
+ * 	new RangeQuery(new Identifier(customerId)).from(t1, true).to(t2, false)		// t1 <= createdAt < t2
+ * 	new RangeQuery(new Identifier(customerId)).order(Ordering.ASC).limit(10)		// the earliest ten
+ *
+ * The slice is read in a single query, so only the documents within it are read from disk.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class RangeQuery
+{
+	private Identifier partition;
+	private List<Object> prefix = new ArrayList<>();
+	private Object lower;
+	private boolean isLowerInclusive;
+	private Object upper;
+	private boolean isUpperInclusive;
+	private Ordering order;
+	private int limit;
+
+	/**
+	 * @param partition the partition key components.
+	 */
+	public RangeQuery(Identifier partition)
+	{
+		super();
+		this.partition = partition;
+	}
+
+	/**
+	 * Match only documents whose leading clustering columns equal these values.
+	 */
+	public RangeQuery prefix(Object... values)
+	{
+		prefix.addAll(Arrays.asList(values));
+		return this;
+	}
+
+	/**
+	 * Bound the clustering column following the prefix from below.
+	 *
+	 * @param value the lower bound.
+	 * @param isInclusive true to include documents equal to the bound.
+	 */
+	public RangeQuery from(Object value, boolean isInclusive)
+	{
+		this.lower = value;
+		this.isLowerInclusive = isInclusive;
+		return this;
+	}
+
+	/**
+	 * Bound the clustering column following the prefix from above.
+	 *
+	 * @param value the upper bound.
+	 * @param isInclusive true to include documents equal to the bound.
+	 */
+	public RangeQuery to(Object value, boolean isInclusive)
+	{
+		this.upper = value;
+		this.isUpperInclusive = isInclusive;
+		return this;
+	}
+
+	/**
+	 * Read in the given order of the first clustering column. By default, the table's clustering order.
+	 */
+	public RangeQuery order(Ordering order)
+	{
+		this.order = order;
+		return this;
+	}
+
+	/**
+	 * Read at most this many documents, across all pages. Zero or less for no limit.
+	 */
+	public RangeQuery limit(int limit)
+	{
+		this.limit = limit;
+		return this;
+	}
+
+	public Identifier partition()
+	{
+		return partition;
+	}
+
+	public int limit()
+	{
+		return limit;
+	}
+
+	/**
+	 * Returns the CQL where, order by and limit phrases of the query for the key definition.
+	 *
+	 * @throws IllegalArgumentException if the query doesn't fit the key definition.
+	 */
+	public String asClauses(KeyDefinition keys)
+	{
+		if (partition == null || partition.size() != keys.partitionKeySize())
+		{
+			throw new IllegalArgumentException("Partition requires " + keys.partitionKeySize() + " key components: " + partition);
+		}
+
+		StringBuilder sb = new StringBuilder(keys.asRangeClause(prefix.size(),
+			(lower != null ? (isLowerInclusive ? ">=" : ">") : null),
+			(upper != null ? (isUpperInclusive ? "<=" : "<") : null)));
+		String orderBy = keys.asOrderByClause(order);
+
+		if (!orderBy.isEmpty()) sb.append(" ").append(orderBy);
+
+		if (limit > 0) sb.append(" limit ?");
+
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the bind values for asClauses(), in order.
+	 */
+	public Object[] parameters()
+	{
+		List<Object> parms = new ArrayList<>(partition.components());
+		parms.addAll(prefix);
+
+		if (lower != null) parms.add(lower);
+
+		if (upper != null) parms.add(upper);
+
+		if (limit > 0) parms.add(limit);
+
+		return parms.toArray();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RangeQuery{" + "partition=" + partition + ", prefix=" + prefix + ", lower=" + lower + ", upper=" + upper + ", order=" + order + ", limit=" + limit + "}";
+	}
+}
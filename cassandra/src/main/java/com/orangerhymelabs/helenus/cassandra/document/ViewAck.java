@@ -0,0 +1,49 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+/**
+ * When DocumentService acknowledges a write (create, createAll or patch) of a table with views:
+ *
+ * VIEWS (default) - once the table and every view have been written. If a view write fails, the write
+ * 	fails with a ViewWriteException once the other view writes complete. The table (and other views) are
+ * 	still written, so don't retry a create: it would fail with a DuplicateItemException.
+ * TABLE - once the table has been written. The view writes continue in the background and their
+ * 	failures are logged and counted (see ViewMetrics), not returned.
+ *
+ * Either way, the view writes are issued concurrently.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public enum ViewAck
+{
+	VIEWS,
+	TABLE;
+
+	public static ViewAck from(String name)
+	{
+		if (name == null) return VIEWS;
+
+		switch(name.toLowerCase())
+		{
+			case "views": return VIEWS;
+			case "table": return TABLE;
+			default:
+				throw new IllegalStateException("Invalid view ack: " + name);
+		}
+	}
+}
@@ -17,7 +17,7 @@ package com.orangerhymelabs.helenus.cassandra.document;
 
 import com.datastax.driver.core.Session;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
-import com.strategicgains.noschema.document.View;
+import com.orangerhymelabs.helenus.cassandra.view.View;
 
 /**
  * Document repositories are unique per document/table and therefore must be cached by table.
@@ -32,5 +32,7 @@ extends AbstractDocumentRepository
 	throws KeyDefinitionException
 	{
 		super(session, keyspace, view.toDbTable(), view.keys());
+		compressor(new DocumentCompressor(view.compression()));
+		ttl(view.ttl());
 	}
 }
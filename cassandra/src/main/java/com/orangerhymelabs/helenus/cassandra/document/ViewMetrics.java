@@ -0,0 +1,150 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.orangerhymelabs.helenus.cassandra.view.View;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * The view writes of a DocumentService, per view: their latency (from being issued until complete, for
+ * successful writes), and the number of writes and failures. A view write is all of a view's documents
+ * (or index entries) for one table write, so a createAll() is one write per view.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class ViewMetrics
+{
+	private ConcurrentMap<Identifier, Metrics> byView = new ConcurrentHashMap<>();
+	private MetricRegistry registry;
+	private String prefix;
+
+	/**
+	 * Record a view write, when it completes.
+	 *
+	 * @param view the view written.
+	 * @param startNanos the System.nanoTime() when the write was issued.
+	 * @param write the write's future.
+	 */
+	public void record(View view, long startNanos, ListenableFuture<?> write)
+	{
+		Metrics metrics = metricsFor(view);
+		Futures.addCallback(write, new FutureCallback<Object>()
+		{
+			@Override
+			public void onSuccess(Object result)
+			{
+				metrics.writes.inc();
+				metrics.latencies.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				metrics.writes.inc();
+				metrics.failures.inc();
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns the latencies of the view's successful writes, in microseconds.
+	 */
+	public Histogram latencies(View view)
+	{
+		return metricsFor(view).latencies;
+	}
+
+	public long writes(View view)
+	{
+		return metricsFor(view).writes.getCount();
+	}
+
+	public long failures(View view)
+	{
+		return metricsFor(view).failures.getCount();
+	}
+
+	/**
+	 * Register each view's latency histogram and writes and failures counters with the given registry
+	 * (e.g. Cluster.getMetrics().getRegistry()), as {prefix}.{database}.{table}.{view}.{metric}. Views
+	 * first written later are registered then.
+	 *
+	 * @param registry the metric registry.
+	 * @param prefix a name prefix.
+	 */
+	public synchronized void registerMetrics(MetricRegistry registry, String prefix)
+	{
+		this.registry = registry;
+		this.prefix = prefix;
+
+		for (Map.Entry<Identifier, Metrics> entry : byView.entrySet())
+		{
+			register(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private Metrics metricsFor(View view)
+	{
+		Identifier id = view.identifier();
+		Metrics metrics = byView.get(id);
+
+		if (metrics != null) return metrics;
+
+		synchronized(this)
+		{
+			metrics = byView.get(id);
+
+			if (metrics == null)
+			{
+				metrics = new Metrics();
+				byView.put(id, metrics);
+
+				if (registry != null) register(id, metrics);
+			}
+
+			return metrics;
+		}
+	}
+
+	private void register(Identifier view, Metrics metrics)
+	{
+		String name = MetricRegistry.name(prefix, view.components().toArray(new String[0]));
+		registry.register(MetricRegistry.name(name, "latency-micros"), metrics.latencies);
+		registry.register(MetricRegistry.name(name, "writes"), metrics.writes);
+		registry.register(MetricRegistry.name(name, "failures"), metrics.failures);
+	}
+
+	private static class Metrics
+	{
+		private Histogram latencies = new Histogram(new ExponentiallyDecayingReservoir());
+		private Counter writes = new Counter();
+		private Counter failures = new Counter();
+	}
+}
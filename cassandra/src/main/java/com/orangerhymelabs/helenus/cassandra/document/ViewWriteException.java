@@ -0,0 +1,51 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.document;
+
+import com.orangerhymelabs.helenus.exception.StorageException;
+
+/**
+ * A DocumentService write (with ViewAck.VIEWS) whose table write was committed, but at least one of
+ * whose view writes failed. It's returned once every view write has completed. The cause is the first
+ * view write failure (see ViewMetrics for the rest).
+ *
+ * The write is only partly failed: retrying a create would fail with a DuplicateItemException. Use
+ * written() to see what the table holds.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class ViewWriteException
+extends StorageException
+{
+	private static final long serialVersionUID = -4476259062114802361L;
+
+	private transient Object written;
+
+	public ViewWriteException(Object written, Throwable cause)
+	{
+		super("Table written, but a view write failed", cause);
+		this.written = written;
+	}
+
+	/**
+	 * Returns the value written to the table: a Document, or a List of them for a createAll().
+	 */
+	public Object written()
+	{
+		return written;
+	}
+}
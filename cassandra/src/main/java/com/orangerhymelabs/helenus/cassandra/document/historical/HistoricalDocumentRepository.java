@@ -15,14 +15,11 @@
  */
 package com.orangerhymelabs.helenus.cassandra.document.historical;
 
-import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.function.Consumer;
 
-import org.bson.BSON;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,16 +37,19 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.orangerhymelabs.helenus.cassandra.AbstractCassandraRepository;
-import com.orangerhymelabs.helenus.cassandra.document.IdPropertyConverter;
+import com.orangerhymelabs.helenus.cassandra.ExecutionProfile;
+import com.orangerhymelabs.helenus.cassandra.Operation;
+import com.orangerhymelabs.helenus.cassandra.document.DocumentCompressor;
+import com.orangerhymelabs.helenus.cassandra.document.DocumentRowMapper;
 import com.orangerhymelabs.helenus.cassandra.document.historical.HistoricalDocumentRepository.HistoricalDocumentStatements;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
-import com.orangerhymelabs.helenus.cassandra.table.key.KeyComponent;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionParser;
 import com.orangerhymelabs.helenus.exception.InvalidIdentifierException;
 import com.orangerhymelabs.helenus.exception.StorageException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
+import com.orangerhymelabs.helenus.persistence.PreparedStatementCache;
 import com.orangerhymelabs.helenus.persistence.StatementFactory;
 
 /**
@@ -81,7 +81,7 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 			"%s," +									// identifying properties
 		    Columns.OBJECT + " blob," +
 		    // TODO: Add Location details to Document.
-		    Columns.IS_DELETED + " boolean" +
+		    Columns.IS_DELETED + " boolean," +
 			Columns.CREATED_AT + " timestamp," +
 		    Columns.UPDATED_AT + " timestamp," +
 		    Columns.DELETED_AT + " timestamp," +
@@ -123,148 +123,83 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 	public static class HistoricalDocumentStatements
 	implements StatementFactory
 	{
-		private static final String DELETE = "delete";
-		private static final String EXISTS = "exists";
-		private static final String READ = "read";
-		private static final String READ_HISTORY = "readHistory";
-		private static final String UPSERT = "upsert";
-
-		private KeyDefinition keys;
-		private Session session;
-		private String keyspace;
-		private String tableName;
-		private Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+		private PreparedStatementCache statements;
+		private String delete;
+		private String exists;
+		private String read;
+		private String readHistory;
+		private String upsert;
 
 		public HistoricalDocumentStatements(Session session, String keyspace, String tableName, KeyDefinition keys)
 		throws KeyDefinitionException
 		{
 			super();
-			this.session = session;
-			this.keyspace = keyspace;
-			this.tableName = tableName;
-			this.keys = keys;
+			this.statements = PreparedStatementCache.of(session);
+			this.delete = String.format("update %s.%s set %s = true, %s = toTimestamp(now()) where %s",
+				keyspace,
+				tableName,
+				Columns.IS_DELETED,
+				Columns.DELETED_AT,
+				keys.asIdentityClause());
+			this.exists = String.format("select %s from %s.%s where %s limit 1",
+				keys.components().get(0).property(),
+				keyspace,
+				tableName,
+				keys.asIdentityClause());
+			this.read = String.format("select * from %s.%s where %s limit 1",
+				keyspace,
+				tableName,
+				keys.asIdentityClause());
+			this.readHistory = String.format("select * from %s.%s where %s",
+				keyspace,
+				tableName,
+				keys.asPartitionIdentityClause());
+			this.upsert = String.format("insert into %s.%s (%s, %s, %s, %s) values (%s)",
+				keyspace,
+				tableName,
+				keys.asSelectProperties(),
+				Columns.OBJECT,
+				Columns.CREATED_AT,
+				Columns.UPDATED_AT,
+				keys.asQuestionMarks(3));
+		}
+
+		/**
+		 * Prepare all of this table's statements asynchronously.
+		 * 
+		 * @return a future that completes when every statement is prepared.
+		 */
+		public ListenableFuture<List<PreparedStatement>> prepareAll()
+		{
+			return statements.warm(Arrays.asList(delete, exists, read, readHistory, upsert));
 		}
 
 		@Override
 		public PreparedStatement delete()
 		{
-			PreparedStatement ps = statements.get(DELETE);
-
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("update %s.%s where %s",
-						keyspace,
-						tableName,
-						keys.asIdentityClause())).get();
-					statements.put(DELETE, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing delete() statement", e);
-				}
-			}
-
-			return ps;
+			return statements.get(delete);
 		}
 
 		public PreparedStatement exists()
 		{
-			PreparedStatement ps = statements.get(EXISTS);
-
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("select count(*) from %s.%s where %s limit 1",
-						keyspace,
-						tableName,
-						keys.asIdentityClause())).get();
-					statements.put(EXISTS, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing exists() statement", e);
-				}
-			}
-
-			return ps;
+			return statements.get(exists);
 		}
 
 		public PreparedStatement upsert()
 		{
-			PreparedStatement ps = statements.get(UPSERT);
-
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("insert into %s.%s (%s, %s, %s, %s) values (%s)",
-						keyspace,
-						tableName,
-						keys.asSelectProperties(),
-						Columns.OBJECT,
-						Columns.CREATED_AT,
-						Columns.UPDATED_AT,
-						keys.asQuestionMarks(3))).get();
-					statements.put(UPSERT, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing upsert() statement", e);
-				}
-			}
-
-			return ps;
+			return statements.get(upsert);
 		}
 
 		@Override
 		public PreparedStatement read()
 		{
-			PreparedStatement ps = statements.get(READ);
-
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("select * from %s.%s where %s limit 1",
-						keyspace,
-						tableName,
-						keys.asIdentityClause())).get();
-					statements.put(READ, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing read() statement", e);
-				}
-			}
-
-			return ps;
+			return statements.get(read);
 		}
 
 		@Override
 		public PreparedStatement readAll()
 		{
-			PreparedStatement ps = statements.get(READ_HISTORY);
-
-			if (ps == null)
-			{
-				try
-				{
-					ps = session.prepareAsync(String.format("select * from %s.%s where %s",
-						keyspace,
-						tableName,
-						keys.asPartitionIdentityClause())).get();
-					statements.put(READ_HISTORY, ps);
-				}
-				catch (InterruptedException | ExecutionException e)
-				{
-					LOG.error("Error preparing readHistory() statement", e);
-				}
-			}
-
-			return ps;
+			return statements.get(readHistory);
 		}
 
 		@Override
@@ -282,6 +217,8 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 
 	private Table table;
 	private KeyDefinition keys;
+	private DocumentRowMapper rowMapper;
+	private DocumentCompressor compressor;
 
 	public HistoricalDocumentRepository(Session session, String keyspace, Table table)
 	throws KeyDefinitionException
@@ -289,8 +226,9 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 		super(session, keyspace);
 		this.table = table;
 		this.keys = new KeyDefinitionParser().parse(table.keys());
+		this.rowMapper = new DocumentRowMapper(keys);
+		compressor(new DocumentCompressor(table.compression()));
 		statementFactory(new HistoricalDocumentStatements(session, keyspace, tableName(), keys));
-
 	}
 
 	public String tableName()
@@ -298,22 +236,30 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 		return table.toDbTable();
 	}
 
-	public ListenableFuture<Boolean> exists(Identifier id)
+	/**
+	 * Set how documents are compressed in the object column.
+	 * 
+	 * @param compressor a DocumentCompressor shared by all of this table's repositories.
+	 */
+	public void compressor(DocumentCompressor compressor)
 	{
-		ListenableFuture<ResultSet> future = submitExists(id);
-		return Futures.transform(future, new Function<ResultSet, Boolean>()
-		{
-			@Override
-			public Boolean apply(ResultSet result)
-			{
-				return result.one().getLong(0) > 0;
-			}
-		}, MoreExecutors.directExecutor());
+		this.compressor = compressor;
+		rowMapper.compressor(compressor);
+	}
+
+	public DocumentCompressor compressor()
+	{
+		return compressor;
 	}
 
 	public ListenableFuture<HistoricalDocument> upsert(HistoricalDocument entity)
 	{
-		ListenableFuture<ResultSet> future = submitUpsert(entity);
+		return upsert(entity, null);
+	}
+
+	public ListenableFuture<HistoricalDocument> upsert(HistoricalDocument entity, ExecutionProfile profile)
+	{
+		ListenableFuture<ResultSet> future = submitUpsert(entity, profile);
 		return Futures.transformAsync(future, new AsyncFunction<ResultSet, HistoricalDocument>()
 		{
 			@Override
@@ -331,26 +277,11 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 		}, MoreExecutors.directExecutor());
 	}
 
-	@Override
-	protected ResultSetFuture submitDelete(Identifier id)
-	{
-		BoundStatement delete = new BoundStatement(statementFactory().delete());
-		bindIdentity(delete, id);
-		return session().executeAsync(delete);
-	}
-
-	protected ListenableFuture<ResultSet> submitExists(Identifier id)
-	{
-		BoundStatement bs = new BoundStatement(statementFactory().exists());
-		bindIdentity(bs, id);
-		return session().executeAsync(bs);
-	}
-
-	protected ResultSetFuture submitUpsert(HistoricalDocument document)
+	protected ListenableFuture<ResultSet> submitUpsert(HistoricalDocument document, ExecutionProfile profile)
 	{
 		BoundStatement upsert = new BoundStatement(statementFactory().upsert());
 		bindUpsert(upsert, document);
-		return session().executeAsync(upsert);
+		return execute(upsert, Operation.UPSERT, profile);
 	}
 
 	protected void bindUpsert(BoundStatement bs, HistoricalDocument document)
@@ -367,7 +298,7 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 			{
 				bind(values, 0, id.components().toArray());
 				bind(values, id.size(),
-						ByteBuffer.wrap(BSON.encode(document.object())),
+						compressor.compress(document.bson()),
 					    document.createdAt(),
 					    document.updatedAt());
 			}
@@ -404,34 +335,7 @@ extends AbstractCassandraRepository<HistoricalDocument, HistoricalDocumentStatem
 			return null;
 		}
 
-		HistoricalDocument d = new HistoricalDocument();
-		d.identifier(marshalId(keys, row));
-		ByteBuffer b = row.getBytes(Columns.OBJECT);
-
-		if (b != null && b.hasArray())
-		{
-			byte[] result = new byte[b.remaining()];
-			b.get(result);
-			d.object(BSON.decode(result));
-		}
-
-		d.createdAt(row.getTimestamp(Columns.CREATED_AT));
-		d.updatedAt(row.getTimestamp(Columns.UPDATED_AT));
-		return d;
-	}
-
-	private Identifier marshalId(KeyDefinition keyDefinition, Row row)
-	{
-		Identifier id = new Identifier();
-		keyDefinition.components().forEach(new Consumer<KeyComponent>()
-		{
-			@Override
-			public void accept(KeyComponent t)
-			{
-				id.add(IdPropertyConverter.marshal(t.property(), t.type(), row));
-			}
-		});
-		return id;
+		return rowMapper.marshal(row, new HistoricalDocument());
 	}
 
 	@Override
@@ -0,0 +1,163 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.geo;
+
+/**
+ * Geohashes: each character of a geohash narrows a cell of the latitude/longitude grid by five bits,
+ * alternating longitude and latitude bits, so a hash's prefixes are the cells containing it and nearby
+ * points usually share a long prefix. At a given precision (length) the cells form a regular grid of
+ * rows (latitude) and columns (longitude), which is how cells are enumerated here.
+ *
+ * 	precision 4: ~39km x 19.5km, precision 6: ~1.2km x 0.6km, precision 12: a few centimeters.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public final class GeoHash
+{
+	public static final int MAX_PRECISION = 12;
+	private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+	private GeoHash()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * Returns the geohash, of the given length, of the cell containing the point.
+	 */
+	public static String encode(double latitude, double longitude, int precision)
+	{
+		return cell(row(latitude, precision), column(longitude, precision), precision);
+	}
+
+	/**
+	 * Returns the geohash of the cell at the given row and column of the grid at this precision.
+	 */
+	public static String cell(long row, long column, int precision)
+	{
+		assertPrecision(precision);
+		int latitudeBits = latitudeBits(precision);
+		int longitudeBits = longitudeBits(precision);
+		char[] hash = new char[precision];
+		int value = 0;
+
+		for (int i = 0; i < precision * 5; i++)
+		{
+			// Even bits are longitude, odd bits latitude, most significant first.
+			long bit = (i % 2 == 0
+				? (column >>> (--longitudeBits)) & 1L
+				: (row >>> (--latitudeBits)) & 1L);
+			value = (value << 1) | (int) bit;
+
+			if (i % 5 == 4)
+			{
+				hash[i / 5] = BASE32.charAt(value);
+				value = 0;
+			}
+		}
+
+		return new String(hash);
+	}
+
+	/**
+	 * Returns the bounds of a geohash's cell: { south, west, north, east }.
+	 *
+	 * @throws IllegalArgumentException if it isn't a geohash.
+	 */
+	public static double[] bounds(String hash)
+	{
+		assertPrecision(hash.length());
+		long row = 0L;
+		long column = 0L;
+
+		for (int i = 0; i < hash.length() * 5; i++)
+		{
+			int value = BASE32.indexOf(hash.charAt(i / 5));
+
+			if (value < 0) throw new IllegalArgumentException("Invalid geohash: " + hash);
+
+			long bit = (value >>> (4 - i % 5)) & 1L;
+
+			if (i % 2 == 0) column = (column << 1) | bit;
+			else row = (row << 1) | bit;
+		}
+
+		double height = cellHeight(hash.length());
+		double width = cellWidth(hash.length());
+		return new double[] {row * height - 90.0, column * width - 180.0, (row + 1) * height - 90.0, (column + 1) * width - 180.0};
+	}
+
+	/**
+	 * Returns the height, in degrees of latitude, of a cell at this precision.
+	 */
+	public static double cellHeight(int precision)
+	{
+		return 180.0 / rows(precision);
+	}
+
+	/**
+	 * Returns the width, in degrees of longitude, of a cell at this precision.
+	 */
+	public static double cellWidth(int precision)
+	{
+		return 360.0 / columns(precision);
+	}
+
+	public static long rows(int precision)
+	{
+		return 1L << latitudeBits(precision);
+	}
+
+	public static long columns(int precision)
+	{
+		return 1L << longitudeBits(precision);
+	}
+
+	/**
+	 * Returns the grid row, at this precision, of a latitude.
+	 */
+	public static long row(double latitude, int precision)
+	{
+		return Math.min(rows(precision) - 1, (long) Math.floor((latitude + 90.0) / cellHeight(precision)));
+	}
+
+	/**
+	 * Returns the grid column, at this precision, of a longitude.
+	 */
+	public static long column(double longitude, int precision)
+	{
+		return Math.min(columns(precision) - 1, (long) Math.floor((longitude + 180.0) / cellWidth(precision)));
+	}
+
+	private static int latitudeBits(int precision)
+	{
+		return (precision * 5) / 2;
+	}
+
+	private static int longitudeBits(int precision)
+	{
+		return (precision * 5 + 1) / 2;
+	}
+
+	private static void assertPrecision(int precision)
+	{
+		if (precision < 1 || precision > MAX_PRECISION)
+		{
+			throw new IllegalArgumentException("Geohash precision must be between 1 and " + MAX_PRECISION + ": " + precision);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.orangerhymelabs.helenus.cassandra.document.RangeQuery;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyComponent;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+
+/**
+ * The keys of a GEO view (see ViewType.GEO). Its documents are partitioned by the geohash cell of
+ * PARTITION_PRECISION characters containing their location, clustered by their full geohash and then
+ * by the table's key, so a view of a table keyed by 'id:uuid' is keyed by:
+ *
+ * 	(geo_cell:text), geohash:text, id:uuid
+ *
+ * A cell of a partition, or finer, is then a single range of geohashes in one partition.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public final class GeoKeys
+{
+	public static final String CELL = "geo_cell";
+	public static final String HASH = "geohash";
+	public static final int PARTITION_PRECISION = 4;
+
+	// Sorts after every geohash character, so [cell, cell + PREFIX_END) holds the geohashes within a cell.
+	private static final String PREFIX_END = "{";
+
+	private GeoKeys()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * Returns the key string of a GEO view of a table with these keys.
+	 *
+	 * @throws KeyDefinitionException if a table key column is named geo_cell or geohash.
+	 */
+	public static String viewKeys(KeyDefinition tableKeys)
+	throws KeyDefinitionException
+	{
+		List<String> keys = new ArrayList<>();
+		keys.add("(" + CELL + ":text)");
+		keys.add(HASH + ":text");
+
+		for (KeyComponent component : tableKeys.components())
+		{
+			if (CELL.equals(component.property()) || HASH.equals(component.property()))
+			{
+				throw new KeyDefinitionException("Table key column conflicts with geospatial view keys: " + component.property());
+			}
+
+			keys.add(component.property() + ":" + component.type().cassandraType());
+		}
+
+		return String.join(", ", keys);
+	}
+
+	/**
+	 * Returns the view identifier of the document at this point with the given table identifier.
+	 */
+	public static Identifier identifier(GeoPoint point, Identifier tableId)
+	{
+		String hash = GeoHash.encode(point.latitude(), point.longitude(), GeoHash.MAX_PRECISION);
+		return new Identifier(hash.substring(0, PARTITION_PRECISION), hash).add(tableId.components().toArray());
+	}
+
+	/**
+	 * Returns the range of a view holding the documents within a cell of at least PARTITION_PRECISION characters.
+	 */
+	public static RangeQuery range(String cell)
+	{
+		if (cell.length() < PARTITION_PRECISION)
+		{
+			throw new IllegalArgumentException("Cell must have at least " + PARTITION_PRECISION + " characters: " + cell);
+		}
+
+		RangeQuery range = new RangeQuery(new Identifier(cell.substring(0, PARTITION_PRECISION)));
+
+		if (cell.length() > PARTITION_PRECISION)
+		{
+			range.from(cell, true).to(cell + PREFIX_END, false);
+		}
+
+		return range;
+	}
+}
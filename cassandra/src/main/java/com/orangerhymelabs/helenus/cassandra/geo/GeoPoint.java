@@ -0,0 +1,105 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.geo;
+
+import org.bson.BSONObject;
+
+import com.orangerhymelabs.helenus.cassandra.document.DocumentPath;
+
+/**
+ * A latitude and longitude, in degrees.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class GeoPoint
+{
+	// The mean radius of the Earth, in meters.
+	public static final double EARTH_RADIUS = 6371008.8;
+
+	private double latitude;
+	private double longitude;
+
+	/**
+	 * @throws IllegalArgumentException if the latitude isn't within [-90, 90] or the longitude [-180, 180].
+	 */
+	public GeoPoint(double latitude, double longitude)
+	{
+		super();
+
+		if (!isValid(latitude, longitude))
+		{
+			throw new IllegalArgumentException("Invalid latitude, longitude: " + latitude + ", " + longitude);
+		}
+
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	/**
+	 * Returns the point at the given fields (dotted paths) of a document, or null if either is missing,
+	 * isn't a number or is out of range.
+	 */
+	public static GeoPoint from(BSONObject object, String latitudeField, String longitudeField)
+	{
+		Object latitude = DocumentPath.valueOf(object, latitudeField);
+		Object longitude = DocumentPath.valueOf(object, longitudeField);
+
+		if (!(latitude instanceof Number) || !(longitude instanceof Number)) return null;
+
+		double lat = ((Number) latitude).doubleValue();
+		double lon = ((Number) longitude).doubleValue();
+		return (isValid(lat, lon) ? new GeoPoint(lat, lon) : null);
+	}
+
+	public double latitude()
+	{
+		return latitude;
+	}
+
+	public double longitude()
+	{
+		return longitude;
+	}
+
+	/**
+	 * Returns the great-circle (haversine) distance to another point, in meters.
+	 */
+	public double distanceTo(GeoPoint that)
+	{
+		return distance(latitude, longitude, that.latitude, that.longitude);
+	}
+
+	static double distance(double lat1, double lon1, double lat2, double lon2)
+	{
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+			+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+	}
+
+	@Override
+	public String toString()
+	{
+		return "(" + latitude + ", " + longitude + ")";
+	}
+
+	static boolean isValid(double latitude, double longitude)
+	{
+		return (latitude >= -90.0 && latitude <= 90.0 && longitude >= -180.0 && longitude <= 180.0);
+	}
+}
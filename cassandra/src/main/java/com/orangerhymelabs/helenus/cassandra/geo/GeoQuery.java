@@ -0,0 +1,258 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A geospatial query against a GEO view: the documents within a radius of a point, nearest first, or
+ * within a bounding box, cell by cell.
+ *
+ * 	GeoQuery.radius(39.74, -104.99, 5000).limit(10)		// the ten nearest within 5km
+ * 	GeoQuery.box(-20, 170, -10, -170)					// a box crossing the antimeridian (west > east)
+ *
+ * The area is covered by geohash cells (see cells()), each read as one range of a view partition, and
+ * the documents read are then filtered by their exact location.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class GeoQuery
+{
+	// The most cells to read for a query, when there's a finer precision than a partition.
+	public static final int MAX_CELLS = 16;
+
+	// The most partitions a query may read.
+	public static final int MAX_PARTITIONS = 1024;
+
+	private GeoPoint center;
+	private double radius;
+	private double south;
+	private double west;
+	private double north;
+	private double east;
+	private int limit;
+
+	private GeoQuery()
+	{
+		super();
+	}
+
+	/**
+	 * The documents within 'meters' of the point, nearest first.
+	 *
+	 * @throws IllegalArgumentException if the point is invalid or the radius negative.
+	 */
+	public static GeoQuery radius(double latitude, double longitude, double meters)
+	{
+		if (meters < 0) throw new IllegalArgumentException("Radius must not be negative: " + meters);
+
+		GeoQuery query = new GeoQuery();
+		query.center = new GeoPoint(latitude, longitude);
+		query.radius = meters;
+
+		double dLat = Math.toDegrees(meters / GeoPoint.EARTH_RADIUS);
+		query.south = Math.max(-90.0, latitude - dLat);
+		query.north = Math.min(90.0, latitude + dLat);
+		double cos = Math.min(Math.cos(Math.toRadians(query.south)), Math.cos(Math.toRadians(query.north)));
+
+		// Near a pole, or a very large radius, every longitude may be within reach.
+		if (query.south == -90.0 || query.north == 90.0 || dLat / cos >= 180.0)
+		{
+			query.west = -180.0;
+			query.east = 180.0;
+		}
+		else
+		{
+			query.west = wrap(longitude - dLat / cos);
+			query.east = wrap(longitude + dLat / cos);
+		}
+
+		return query;
+	}
+
+	/**
+	 * The documents within a bounding box, which crosses the antimeridian if west is greater than east.
+	 *
+	 * @throws IllegalArgumentException if a bound is out of range or south is greater than north.
+	 */
+	public static GeoQuery box(double south, double west, double north, double east)
+	{
+		if (!GeoPoint.isValid(south, west) || !GeoPoint.isValid(north, east) || south > north)
+		{
+			throw new IllegalArgumentException("Invalid bounding box: " + south + ", " + west + ", " + north + ", " + east);
+		}
+
+		GeoQuery query = new GeoQuery();
+		query.south = south;
+		query.west = west;
+		query.north = north;
+		query.east = east;
+		return query;
+	}
+
+	/**
+	 * Return at most this many documents. Zero or less for no limit.
+	 */
+	public GeoQuery limit(int limit)
+	{
+		this.limit = limit;
+		return this;
+	}
+
+	public int limit()
+	{
+		return limit;
+	}
+
+	public boolean isRadius()
+	{
+		return (center != null);
+	}
+
+	/**
+	 * Returns the distance, in meters, of a point from the center of a radius query, or zero for a box.
+	 */
+	public double distanceTo(GeoPoint point)
+	{
+		return (isRadius() ? center.distanceTo(point) : 0.0);
+	}
+
+	/**
+	 * Returns true if the point is within the query's area.
+	 */
+	public boolean matches(GeoPoint point)
+	{
+		if (point == null) return false;
+
+		if (isRadius()) return (center.distanceTo(point) <= radius);
+
+		return (point.latitude() >= south && point.latitude() <= north && isWithinLongitudes(point.longitude(), west, east));
+	}
+
+	/**
+	 * Returns the geohash cells covering the query's area: those of the finest precision (no coarser than a
+	 * partition) at which at most MAX_CELLS cells cover its bounding box, less any a radius can't reach.
+	 *
+	 * @throws IllegalArgumentException if covering the area takes more than MAX_PARTITIONS partitions.
+	 */
+	public List<String> cells()
+	{
+		int precision = GeoKeys.PARTITION_PRECISION;
+
+		for (int p = GeoHash.MAX_PRECISION; p > GeoKeys.PARTITION_PRECISION; p--)
+		{
+			if (count(p) <= MAX_CELLS)
+			{
+				precision = p;
+				break;
+			}
+		}
+
+		if (count(precision) > MAX_PARTITIONS)
+		{
+			throw new IllegalArgumentException("Geospatial query area too large: more than " + MAX_PARTITIONS + " partitions");
+		}
+
+		long columns = GeoHash.columns(precision);
+		long firstRow = GeoHash.row(south, precision);
+		long lastRow = GeoHash.row(north, precision);
+		long firstColumn = GeoHash.column(west, precision);
+		long lastColumn = lastColumn(precision);
+		List<String> cells = new ArrayList<>();
+
+		for (long row = firstRow; row <= lastRow; row++)
+		{
+			for (long column = firstColumn; column <= lastColumn; column++)
+			{
+				String cell = GeoHash.cell(row, column % columns, precision);
+
+				if (!isRadius() || isWithinReach(GeoHash.bounds(cell)))
+				{
+					cells.add(cell);
+				}
+			}
+		}
+
+		return cells;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "GeoQuery{" + (isRadius() ? "center=" + center + ", radius=" + radius : "box=" + south + ", " + west + ", " + north + ", " + east) + ", limit=" + limit + "}";
+	}
+
+	private long count(int precision)
+	{
+		long rows = GeoHash.row(north, precision) - GeoHash.row(south, precision) + 1;
+		return rows * (lastColumn(precision) - GeoHash.column(west, precision) + 1);
+	}
+
+	/**
+	 * Returns the last column of the box, past the end of the grid if it crosses the antimeridian.
+	 */
+	private long lastColumn(int precision)
+	{
+		long first = GeoHash.column(west, precision);
+		long last = GeoHash.column(east, precision);
+		return (west > east ? last + GeoHash.columns(precision) : Math.max(first, last));
+	}
+
+	/**
+	 * Returns true if the closest point of a cell { south, west, north, east } is within the radius: on the
+	 * center's meridian if the cell spans it, otherwise on the nearer of the cell's west and east edges.
+	 */
+	private boolean isWithinReach(double[] bounds)
+	{
+		if (isWithinLongitudes(center.longitude(), bounds[1], bounds[3]))
+		{
+			double latitude = Math.max(bounds[0], Math.min(bounds[2], center.latitude()));
+			return (GeoPoint.distance(center.latitude(), center.longitude(), latitude, center.longitude()) <= radius);
+		}
+
+		return (Math.min(distanceToMeridian(bounds[1], bounds[0], bounds[2]), distanceToMeridian(bounds[3], bounds[0], bounds[2])) <= radius);
+	}
+
+	/**
+	 * Returns the distance from the center to the closest point of a meridian between two latitudes. On
+	 * a sphere that's not at the center's latitude, but poleward of it, at atan(tan(lat) / cos(dLon)).
+	 */
+	private double distanceToMeridian(double longitude, double south, double north)
+	{
+		double dLon = Math.toRadians(longitude - center.longitude());
+		double closest = Math.toDegrees(Math.atan2(Math.tan(Math.toRadians(center.latitude())), Math.cos(dLon)));
+		double latitude = Math.max(south, Math.min(north, closest));
+		return GeoPoint.distance(center.latitude(), center.longitude(), latitude, longitude);
+	}
+
+	private static boolean isWithinLongitudes(double longitude, double west, double east)
+	{
+		return (west <= east
+			? longitude >= west && longitude <= east
+			: longitude >= west || longitude <= east);
+	}
+
+	private static double wrap(double longitude)
+	{
+		if (longitude < -180.0) return longitude + 360.0;
+
+		if (longitude > 180.0) return longitude - 360.0;
+
+		return longitude;
+	}
+}
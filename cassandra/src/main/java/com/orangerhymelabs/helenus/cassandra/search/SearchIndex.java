@@ -0,0 +1,640 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.orangerhymelabs.helenus.cassandra.RequestLimiter;
+import com.orangerhymelabs.helenus.cassandra.SchemaColumns;
+import com.orangerhymelabs.helenus.cassandra.document.Document;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionParser;
+import com.orangerhymelabs.helenus.cassandra.view.View;
+import com.orangerhymelabs.helenus.persistence.Identifier;
+import com.orangerhymelabs.helenus.persistence.PreparedStatementCache;
+
+/**
+ * An inverted index over the text fields of a table's documents, stored in Cassandra: a search view
+ * (see ViewType.SEARCH). Like a view, it's kept up to date by DocumentService as documents are written.
+ *
+ * The index is two tables. The postings table ({view}) has a row per term per document: its partition
+ * is the term and a bucket (the document identifier's hash, modulo BUCKETS, so a common term is spread
+ * over several partitions) and its clustering columns are the table's key. The term dictionary
+ * ({view}__terms) has a row per term, partitioned by the term's first MIN_PREFIX_LENGTH characters, so a
+ * prefix expands to its terms with one slice.
+ *
+ * A query fetches the posting list of every term (each bucket, and each term of a prefix) in parallel,
+ * then intersects (AND) and unites (OR) them in memory. So a query holds every posting it reads: one
+ * that would read more than MAX_POSTINGS fails instead, as does a prefix of more than MAX_PREFIX_TERMS
+ * terms. Narrow such a query with a rarer term or a longer prefix.
+ *
+ * The index only grows, other than through patches:
+ * - Postings are removed when a document's terms change through a patch. A document replaced by an
+ *   update or upsert is indexed with its new terms, but keeps the postings of its old ones, and a
+ *   deleted document keeps all of its postings. So the identifiers returned are candidates:
+ *   DocumentService reads the documents and drops those that no longer match.
+ * - Terms are never removed from the dictionary, even once no document has them, so they still count
+ *   towards a prefix's MAX_PREFIX_TERMS.
+ * Both expire with the view's (or document's) TTL. Otherwise, recreate the view to compact the index.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class SearchIndex
+{
+	private static final Logger LOG = LoggerFactory.getLogger(SearchIndex.class);
+	private static final KeyDefinitionParser KEY_PARSER = new KeyDefinitionParser();
+
+	public static final int BUCKETS = 4;
+	public static final int MAX_PREFIX_TERMS = 256;
+	public static final int MAX_POSTINGS = 100000;
+	public static final String TERMS_SUFFIX = "__terms";
+
+	private class Columns
+	{
+		static final String TERM = "term";
+		static final String BUCKET = "bucket";
+		static final String PREFIX = "prefix";
+	}
+
+	public static class Schema
+	{
+		private static final String DROP_TABLE = "drop table if exists %s.%s;";
+		private static final String CREATE_POSTINGS = "create table if not exists %s.%s" +
+		"(" +
+			Columns.TERM + " text," +
+			Columns.BUCKET + " int," +
+			"%s," +									// the table's identifying properties
+			"primary key ((" + Columns.TERM + ", " + Columns.BUCKET + "), %s)" +
+		")" +
+		" %s";										// expiry (optional)
+		private static final String CREATE_TERMS = "create table if not exists %s.%s" +
+		"(" +
+			Columns.PREFIX + " text," +
+			Columns.TERM + " text," +
+			"primary key ((" + Columns.PREFIX + "), " + Columns.TERM + ")" +
+		")" +
+		" %s";										// expiry (optional)
+		private static final String ALTER_TABLE = "alter table %s.%s with default_time_to_live = %d;";
+
+		public boolean drop(Session session, String keyspace, String table)
+		{
+			ResultSetFuture rs = session.executeAsync(String.format(DROP_TABLE, keyspace, table));
+			ResultSetFuture terms = session.executeAsync(String.format(DROP_TABLE, keyspace, table + TERMS_SUFFIX));
+			try
+			{
+				return rs.get().wasApplied() && terms.get().wasApplied();
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				LOG.error("Search index schema drop failed", e);
+			}
+
+			return false;
+		}
+
+		/**
+		 * Create the postings table and term dictionary of a search index.
+		 *
+		 * @param key the indexed table's key definition.
+		 * @param ttl the default TTL of the index entries in seconds, or zero for none.
+		 */
+		public boolean create(Session session, String keyspace, String table, KeyDefinition key, long ttl)
+		{
+			String options = (ttl > 0 ? "with default_time_to_live = " + ttl : "");
+			ResultSetFuture rs = session.executeAsync(String.format(CREATE_POSTINGS, keyspace, table, key.asColumns(), key.asSelectProperties(), options));
+			ResultSetFuture terms = session.executeAsync(String.format(CREATE_TERMS, keyspace, table + TERMS_SUFFIX, options));
+			try
+			{
+				return rs.get().wasApplied() && terms.get().wasApplied();
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				LOG.error("Search index schema create failed", e);
+			}
+
+			return false;
+		}
+
+		/**
+		 * Change the default TTL of a search index's postings table and term dictionary. A table whose TTL
+		 * is already the given one isn't altered.
+		 *
+		 * @param ttl the default TTL of the index entries in seconds, or zero for none.
+		 * @return a future containing true if both tables have the TTL.
+		 */
+		public ListenableFuture<Boolean> ttl(Session session, String keyspace, String table, long ttl)
+		{
+			List<ListenableFuture<ResultSet>> alters = new ArrayList<>();
+			alterTtl(session, keyspace, table, ttl, alters);
+			alterTtl(session, keyspace, table + TERMS_SUFFIX, ttl, alters);
+
+			if (alters.isEmpty()) return Futures.immediateFuture(true);
+
+			ListenableFuture<Boolean> altered = Futures.transform(Futures.allAsList(alters), new Function<List<ResultSet>, Boolean>()
+			{
+				@Override
+				public Boolean apply(List<ResultSet> results)
+				{
+					for (ResultSet rs : results)
+					{
+						if (!rs.wasApplied()) return false;
+					}
+
+					return true;
+				}
+			}, MoreExecutors.directExecutor());
+
+			return Futures.catching(altered, Exception.class, new Function<Exception, Boolean>()
+			{
+				@Override
+				public Boolean apply(Exception e)
+				{
+					LOG.error("Search index schema TTL change failed", e);
+					return false;
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		private static void alterTtl(Session session, String keyspace, String table, long ttl, List<ListenableFuture<ResultSet>> alters)
+		{
+			TableMetadata metadata = SchemaColumns.table(session, keyspace, table);
+
+			if (metadata != null && metadata.getOptions().getDefaultTimeToLive() == ttl) return;
+
+			alters.add(session.executeAsync(String.format(ALTER_TABLE, keyspace, table, ttl)));
+		}
+	}
+
+	private Session session;
+	private RequestLimiter limiter;
+	private PreparedStatementCache statements;
+	private KeyDefinition keys;
+	private List<String> fields;
+	private long ttl;
+	private Tokenizer tokenizer = new Tokenizer();
+	private String insertPosting;
+	private String deletePosting;
+	private String readPostings;
+	private String insertTerm;
+	private String readTerms;
+
+	public SearchIndex(Session session, String keyspace, View view)
+	throws KeyDefinitionException
+	{
+		super();
+		this.session = session;
+		this.limiter = RequestLimiter.of(session);
+		this.statements = PreparedStatementCache.of(session);
+		this.keys = KEY_PARSER.parse(view.keys());
+		this.fields = view.fieldList();
+		this.ttl = view.ttl();
+
+		String table = view.toDbTable();
+		this.insertPosting = String.format("insert into %s.%s (%s, %s, %s) values (%s) using ttl ?",
+			keyspace,
+			table,
+			Columns.TERM,
+			Columns.BUCKET,
+			keys.asSelectProperties(),
+			keys.asQuestionMarks(2));
+		this.deletePosting = String.format("delete from %s.%s where %s = ? and %s = ? and %s",
+			keyspace,
+			table,
+			Columns.TERM,
+			Columns.BUCKET,
+			keys.asIdentityClause());
+		this.readPostings = String.format("select %s from %s.%s where %s = ? and %s = ? limit ?",
+			keys.asSelectProperties(),
+			keyspace,
+			table,
+			Columns.TERM,
+			Columns.BUCKET);
+		this.insertTerm = String.format("insert into %s.%s (%s, %s) values (?, ?) using ttl ?",
+			keyspace,
+			table + TERMS_SUFFIX,
+			Columns.PREFIX,
+			Columns.TERM);
+		this.readTerms = String.format("select %s from %s.%s where %s = ? and %s >= ? and %s < ? limit ?",
+			Columns.TERM,
+			keyspace,
+			table + TERMS_SUFFIX,
+			Columns.PREFIX,
+			Columns.TERM,
+			Columns.TERM);
+	}
+
+	/**
+	 * Prepare the index's statements asynchronously.
+	 *
+	 * @return a future that completes with this index when every statement is prepared.
+	 */
+	public ListenableFuture<SearchIndex> prepareStatements()
+	{
+		SearchIndex index = this;
+		return Futures.transform(statements.warm(Arrays.asList(insertPosting, deletePosting, readPostings, insertTerm, readTerms)), new Function<List<PreparedStatement>, SearchIndex>()
+		{
+			@Override
+			public SearchIndex apply(List<PreparedStatement> input)
+			{
+				return index;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns the names of the indexed fields.
+	 */
+	public List<String> fields()
+	{
+		return Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * Returns the terms of the document's indexed fields.
+	 */
+	public Set<String> terms(Document document)
+	{
+		return (document.hasObject() ? tokenizer.tokenize(document.object(), fields) : Collections.<String>emptySet());
+	}
+
+	/**
+	 * Add the document's terms to the index.
+	 *
+	 * @return a future containing the document, once its postings are written.
+	 */
+	public ListenableFuture<Document> index(Document document)
+	{
+		return done(writeAll(document, terms(document), Collections.<String>emptySet()), document);
+	}
+
+	public ListenableFuture<List<Document>> indexAll(List<Document> documents)
+	{
+		List<ListenableFuture<?>> writes = new ArrayList<>();
+
+		for (Document document : documents)
+		{
+			writes.add(index(document));
+		}
+
+		return done(writes, documents);
+	}
+
+	/**
+	 * Bring the index up to date with a change to a document: postings are written for its new terms and
+	 * deleted for the terms it no longer has.
+	 *
+	 * @param before the document before the change, or null if it's new.
+	 * @param after the document after the change, or null if it's been deleted.
+	 */
+	public ListenableFuture<Document> reindex(Document before, Document after)
+	{
+		Set<String> old = (before != null ? terms(before) : Collections.<String>emptySet());
+		Set<String> current = (after != null ? terms(after) : Collections.<String>emptySet());
+		List<ListenableFuture<?>> writes = new ArrayList<>();
+
+		if (after != null)
+		{
+			Set<String> added = new HashSet<>(current);
+			added.removeAll(old);
+			writes.addAll(writeAll(after, added, Collections.<String>emptySet()));
+		}
+
+		if (before != null)
+		{
+			Set<String> removed = new HashSet<>(old);
+
+			if (after != null && before.identifier().equals(after.identifier())) removed.removeAll(current);
+
+			writes.addAll(writeAll(before, Collections.<String>emptySet(), removed));
+		}
+
+		return done(writes, after);
+	}
+
+	/**
+	 * Find the identifiers of the documents indexed with the query's terms.
+	 *
+	 * @return a future containing the identifiers, in order. Failed with IllegalArgumentException if a prefix has more than MAX_PREFIX_TERMS terms, or the posting lists have more than MAX_POSTINGS entries.
+	 */
+	public ListenableFuture<List<Identifier>> search(SearchQuery query)
+	{
+		List<ListenableFuture<Set<Identifier>>> clauses = new ArrayList<>();
+		AtomicInteger read = new AtomicInteger();
+
+		for (List<SearchQuery.Term> clause : query.clauses())
+		{
+			clauses.add(intersect(clause, read));
+		}
+
+		return Futures.transform(Futures.allAsList(clauses), new Function<List<Set<Identifier>>, List<Identifier>>()
+		{
+			@Override
+			public List<Identifier> apply(List<Set<Identifier>> input)
+			{
+				Set<Identifier> union = new TreeSet<>();
+
+				for (Set<Identifier> ids : input)
+				{
+					union.addAll(ids);
+				}
+
+				return new ArrayList<>(union);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ListenableFuture<Set<Identifier>> intersect(List<SearchQuery.Term> clause, AtomicInteger read)
+	{
+		List<ListenableFuture<Set<Identifier>>> postings = new ArrayList<>(clause.size());
+
+		for (SearchQuery.Term term : clause)
+		{
+			postings.add(term.isPrefix() ? prefixPostings(term.text(), read) : postings(term.text(), read));
+		}
+
+		return Futures.transform(Futures.allAsList(postings), new Function<List<Set<Identifier>>, Set<Identifier>>()
+		{
+			@Override
+			public Set<Identifier> apply(List<Set<Identifier>> input)
+			{
+				List<Set<Identifier>> lists = new ArrayList<>(input);
+
+				// Smallest first, so the intersection shrinks as quickly as possible.
+				lists.sort(new Comparator<Set<Identifier>>()
+				{
+					@Override
+					public int compare(Set<Identifier> a, Set<Identifier> b)
+					{
+						return Integer.compare(a.size(), b.size());
+					}
+				});
+
+				Set<Identifier> result = new HashSet<>(lists.get(0));
+
+				for (int i = 1; i < lists.size() && !result.isEmpty(); i++)
+				{
+					result.retainAll(lists.get(i));
+				}
+
+				return result;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns the union of the posting lists of every term with the prefix.
+	 */
+	private ListenableFuture<Set<Identifier>> prefixPostings(String prefix, AtomicInteger read)
+	{
+		BoundStatement bs = new BoundStatement(statements.get(readTerms));
+		bs.bind(dictionaryPartition(prefix), prefix, successor(prefix), MAX_PREFIX_TERMS + 1);
+		Set<String> terms = new HashSet<>();
+		ListenableFuture<Set<String>> expanded = Futures.transform(readAll(execute(bs), new RowHandler()
+		{
+			@Override
+			public void handle(Row row)
+			{
+				terms.add(row.getString(0));
+			}
+		}), new Function<Object, Set<String>>()
+		{
+			@Override
+			public Set<String> apply(Object input)
+			{
+				if (terms.size() > MAX_PREFIX_TERMS)
+				{
+					throw new IllegalArgumentException("Search prefix matches more than " + MAX_PREFIX_TERMS + " terms: " + prefix);
+				}
+
+				return terms;
+			}
+		}, MoreExecutors.directExecutor());
+
+		return Futures.transformAsync(expanded, new AsyncFunction<Set<String>, Set<Identifier>>()
+		{
+			@Override
+			public ListenableFuture<Set<Identifier>> apply(Set<String> input)
+			{
+				List<ListenableFuture<Set<Identifier>>> postings = new ArrayList<>(input.size());
+
+				for (String term : input)
+				{
+					postings.add(postings(term, read));
+				}
+
+				return union(postings);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Returns the posting list of a term: its identifiers, from every bucket. Fails once the search has
+	 * read more than MAX_POSTINGS postings, counted by 'read'.
+	 */
+	private ListenableFuture<Set<Identifier>> postings(String term, AtomicInteger read)
+	{
+		List<ListenableFuture<Set<Identifier>>> buckets = new ArrayList<>(BUCKETS);
+
+		for (int bucket = 0; bucket < BUCKETS; bucket++)
+		{
+			BoundStatement bs = new BoundStatement(statements.get(readPostings));
+			bs.bind(term, bucket, MAX_POSTINGS + 1);
+			Set<Identifier> ids = new HashSet<>();
+			buckets.add(Futures.transform(readAll(execute(bs), new RowHandler()
+			{
+				@Override
+				public void handle(Row row)
+				{
+					if (read.incrementAndGet() > MAX_POSTINGS)
+					{
+						throw new IllegalArgumentException("Search reads more than " + MAX_POSTINGS + " postings: " + term);
+					}
+
+					Identifier id = new Identifier();
+
+					for (int i = 0; i < keys.size(); i++)
+					{
+						id.add(row.getObject(i));
+					}
+
+					ids.add(id);
+				}
+			}), new Function<Object, Set<Identifier>>()
+			{
+				@Override
+				public Set<Identifier> apply(Object input)
+				{
+					return ids;
+				}
+			}, MoreExecutors.directExecutor()));
+		}
+
+		return union(buckets);
+	}
+
+	private ListenableFuture<Set<Identifier>> union(List<ListenableFuture<Set<Identifier>>> sets)
+	{
+		return Futures.transform(Futures.allAsList(sets), new Function<List<Set<Identifier>>, Set<Identifier>>()
+		{
+			@Override
+			public Set<Identifier> apply(List<Set<Identifier>> input)
+			{
+				Set<Identifier> union = new HashSet<>();
+
+				for (Set<Identifier> ids : input)
+				{
+					union.addAll(ids);
+				}
+
+				return union;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Handle every row of a result, fetching its pages asynchronously.
+	 */
+	private ListenableFuture<Object> readAll(ListenableFuture<ResultSet> future, RowHandler handler)
+	{
+		return Futures.transformAsync(future, new AsyncFunction<ResultSet, Object>()
+		{
+			@Override
+			public ListenableFuture<Object> apply(ResultSet rs)
+			{
+				for (int remaining = rs.getAvailableWithoutFetching(); remaining > 0; remaining--)
+				{
+					handler.handle(rs.one());
+				}
+
+				if (rs.isFullyFetched()) return Futures.immediateFuture(null);
+
+				return readAll(rs.fetchMoreResults(), handler);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Execute the statement through the session's RequestLimiter.
+	 */
+	private ListenableFuture<ResultSet> execute(Statement statement)
+	{
+		return limiter.execute(session, statement);
+	}
+
+	private interface RowHandler
+	{
+		void handle(Row row);
+	}
+
+	/**
+	 * Write postings (and dictionary entries) for the added terms and delete the postings of the removed ones.
+	 */
+	private List<ListenableFuture<?>> writeAll(Document document, Collection<String> added, Collection<String> removed)
+	{
+		List<ListenableFuture<?>> writes = new ArrayList<>(added.size() * 2 + removed.size());
+		Identifier id = document.identifier();
+		int bucket = bucket(id);
+		int entryTtl = (int) (document.ttl() > 0 ? document.ttl() : ttl);
+
+		for (String term : added)
+		{
+			BoundStatement posting = new BoundStatement(statements.get(insertPosting));
+			List<Object> values = new ArrayList<>(id.size() + 3);
+			values.add(term);
+			values.add(bucket);
+			values.addAll(id.components());
+			values.add(entryTtl);
+			posting.bind(values.toArray());
+			writes.add(execute(posting));
+
+			BoundStatement entry = new BoundStatement(statements.get(insertTerm));
+			entry.bind(dictionaryPartition(term), term, entryTtl);
+			writes.add(execute(entry));
+		}
+
+		for (String term : removed)
+		{
+			BoundStatement posting = new BoundStatement(statements.get(deletePosting));
+			List<Object> values = new ArrayList<>(id.size() + 2);
+			values.add(term);
+			values.add(bucket);
+			values.addAll(id.components());
+			posting.bind(values.toArray());
+			writes.add(execute(posting));
+		}
+
+		return writes;
+	}
+
+	private <T> ListenableFuture<T> done(List<ListenableFuture<?>> writes, T result)
+	{
+		return Futures.transform(Futures.allAsList(writes), new Function<List<Object>, T>()
+		{
+			@Override
+			public T apply(List<Object> input)
+			{
+				return result;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private static int bucket(Identifier id)
+	{
+		return Math.floorMod(id.hashCode(), BUCKETS);
+	}
+
+	private static String dictionaryPartition(String term)
+	{
+		return (term.length() > SearchQuery.MIN_PREFIX_LENGTH ? term.substring(0, SearchQuery.MIN_PREFIX_LENGTH) : term);
+	}
+
+	/**
+	 * Returns the least string greater than every string with the prefix.
+	 */
+	private static String successor(String prefix)
+	{
+		int last = prefix.length() - 1;
+		return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+	}
+}
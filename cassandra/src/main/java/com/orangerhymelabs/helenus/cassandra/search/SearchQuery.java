@@ -0,0 +1,198 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A full-text query against a search index: terms, ANDed by default, with OR between alternatives and a
+ * trailing '*' for a prefix. AND binds tighter than OR, and there are no parentheses:
+ *
+ * 	cassandra index			documents with both terms
+ * 	cassandra OR scylla		documents with either
+ * 	fast AND cass* OR lucene	(fast and a term starting 'cass') or lucene
+ *
+ * Words are tokenized as the indexed text is (see Tokenizer), so 'E-Mail' is the terms 'e' AND 'mail'.
+ * A prefix must have at least MIN_PREFIX_LENGTH letters or digits.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class SearchQuery
+{
+	public static final int MIN_PREFIX_LENGTH = 2;
+	private static final Tokenizer TOKENIZER = new Tokenizer();
+
+	private List<List<Term>> clauses;
+	private int limit;
+
+	private SearchQuery(List<List<Term>> clauses)
+	{
+		super();
+		this.clauses = clauses;
+	}
+
+	/**
+	 * @param query the query text.
+	 * @throws IllegalArgumentException if the query has no terms, an operator without terms on both sides, or a too-short prefix.
+	 */
+	public static SearchQuery parse(String query)
+	{
+		List<List<Term>> clauses = new ArrayList<>();
+		List<Term> clause = new ArrayList<>();
+		boolean expectsTerm = true;
+
+		for (String word : (query != null ? query.trim().split("\\s+") : new String[0]))
+		{
+			if (word.isEmpty()) continue;
+
+			if ("OR".equals(word) || "AND".equals(word))
+			{
+				if (expectsTerm) throw new IllegalArgumentException("Missing search term before " + word + ": " + query);
+
+				if ("OR".equals(word))
+				{
+					clauses.add(clause);
+					clause = new ArrayList<>();
+				}
+
+				expectsTerm = true;
+				continue;
+			}
+
+			boolean isPrefix = word.endsWith("*");
+			List<String> terms = new ArrayList<>(TOKENIZER.tokenize(isPrefix ? word.substring(0, word.length() - 1) : word));
+
+			if (terms.isEmpty()) continue;
+
+			for (int i = 0; i < terms.size(); i++)
+			{
+				String term = terms.get(i);
+				boolean isLastPrefix = (isPrefix && i == terms.size() - 1);
+
+				if (isLastPrefix && term.length() < MIN_PREFIX_LENGTH)
+				{
+					throw new IllegalArgumentException("Search prefix must have at least " + MIN_PREFIX_LENGTH + " characters: " + word);
+				}
+
+				clause.add(new Term(term, isLastPrefix));
+			}
+
+			expectsTerm = false;
+		}
+
+		if (expectsTerm) throw new IllegalArgumentException("Missing search term: " + query);
+
+		clauses.add(clause);
+		return new SearchQuery(clauses);
+	}
+
+	/**
+	 * Return at most this many documents. Zero or less for no limit.
+	 */
+	public SearchQuery limit(int limit)
+	{
+		this.limit = limit;
+		return this;
+	}
+
+	public int limit()
+	{
+		return limit;
+	}
+
+	/**
+	 * Returns the alternatives (ORed), each a list of terms (ANDed).
+	 */
+	public List<List<Term>> clauses()
+	{
+		return Collections.unmodifiableList(clauses);
+	}
+
+	/**
+	 * Returns true if a document with these terms matches the query.
+	 */
+	public boolean matches(Set<String> terms)
+	{
+		for (List<Term> clause : clauses)
+		{
+			boolean isMatch = true;
+
+			for (Term term : clause)
+			{
+				if (!term.matches(terms))
+				{
+					isMatch = false;
+					break;
+				}
+			}
+
+			if (isMatch) return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SearchQuery{" + "clauses=" + clauses + ", limit=" + limit + "}";
+	}
+
+	public static class Term
+	{
+		private String text;
+		private boolean isPrefix;
+
+		public Term(String text, boolean isPrefix)
+		{
+			super();
+			this.text = text;
+			this.isPrefix = isPrefix;
+		}
+
+		public String text()
+		{
+			return text;
+		}
+
+		public boolean isPrefix()
+		{
+			return isPrefix;
+		}
+
+		public boolean matches(Set<String> terms)
+		{
+			if (!isPrefix) return terms.contains(text);
+
+			for (String term : terms)
+			{
+				if (term.startsWith(text)) return true;
+			}
+
+			return false;
+		}
+
+		@Override
+		public String toString()
+		{
+			return (isPrefix ? text + "*" : text);
+		}
+	}
+}
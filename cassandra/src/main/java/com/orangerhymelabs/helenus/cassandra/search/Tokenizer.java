@@ -0,0 +1,118 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.search;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.bson.BSONObject;
+
+import com.orangerhymelabs.helenus.cassandra.document.DocumentPath;
+
+/**
+ * Splits text into search terms: runs of letters and digits, lower-cased and with accents removed, so
+ * 'Café-Crème' gives 'cafe' and 'creme'. Terms longer than MAX_TERM_LENGTH are truncated.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class Tokenizer
+{
+	public static final int MAX_TERM_LENGTH = 64;
+
+	/**
+	 * Returns the distinct terms of the text, in order of first appearance.
+	 */
+	public Set<String> tokenize(String text)
+	{
+		Set<String> terms = new LinkedHashSet<>();
+		tokenize(text, terms);
+		return terms;
+	}
+
+	/**
+	 * Returns the distinct terms of the string values of the given fields (dotted paths) of a document.
+	 * Arrays of strings are tokenized element by element; other values are ignored.
+	 */
+	public Set<String> tokenize(BSONObject object, Collection<String> fields)
+	{
+		Set<String> terms = new LinkedHashSet<>();
+
+		if (object == null) return terms;
+
+		for (String field : fields)
+		{
+			collect(DocumentPath.valueOf(object, field), terms);
+		}
+
+		return terms;
+	}
+
+	/**
+	 * Returns a single term normalized as tokenize() would, or null if it has no letters or digits.
+	 */
+	public String normalize(String term)
+	{
+		Set<String> terms = tokenize(term);
+		return (terms.isEmpty() ? null : terms.iterator().next());
+	}
+
+	private void collect(Object value, Set<String> terms)
+	{
+		if (value instanceof String)
+		{
+			tokenize((String) value, terms);
+		}
+		else if (value instanceof List)
+		{
+			for (Object element : (List<?>) value)
+			{
+				if (element instanceof String) tokenize((String) element, terms);
+			}
+		}
+	}
+
+	private void tokenize(String text, Set<String> terms)
+	{
+		if (text == null) return;
+
+		String folded = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+		StringBuilder term = new StringBuilder();
+
+		for (int i = 0; i < folded.length(); i++)
+		{
+			char c = folded.charAt(i);
+
+			if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+
+			if (Character.isLetterOrDigit(c))
+			{
+				if (term.length() < MAX_TERM_LENGTH) term.append(c);
+			}
+			else if (term.length() > 0)
+			{
+				terms.add(term.toString());
+				term.setLength(0);
+			}
+		}
+
+		if (term.length() > 0) terms.add(term.toString());
+	}
+}
@@ -0,0 +1,50 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra.table;
+
+/**
+ * How a table's (or view's) documents are compressed before they're written to the object column:
+ * NONE (default) - stored as plain BSON.
+ * LZ4 - fast, modest compression. A good default for larger documents.
+ * ZSTD - better compression at more CPU. With a trained dictionary (see CompressionDictionaries), also
+ * 	compresses small, repetitive documents well.
+ *
+ * Documents are read back regardless of the current setting, so it can be changed at any time;
+ * existing documents are re-compressed as they're rewritten.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public enum Compression
+{
+	NONE,
+	LZ4,
+	ZSTD;
+
+	public static Compression from(String name)
+    {
+		if (name == null) return NONE;
+
+		switch(name.toLowerCase())
+		{
+			case "none": return NONE;
+			case "lz4": return LZ4;
+			case "zstd": return ZSTD;
+			default:
+				throw new IllegalStateException("Invalid compression: " + name);
+		}
+    }
+}
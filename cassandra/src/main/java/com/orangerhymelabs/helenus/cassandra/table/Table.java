@@ -50,6 +50,12 @@ extends AbstractEntity
 	// How long should the table's data live? (0 implies forever)
 	private long ttl;
 
+	// Whether create/update check for existence (lightweight transactions) or write unconditionally.
+	private WriteMode writeMode = WriteMode.CONDITIONAL;
+
+	// How documents are compressed in storage.
+	private Compression compression = Compression.NONE;
+
 	public Table()
 	{
 		super();
@@ -140,6 +146,26 @@ extends AbstractEntity
 		this.ttl = ttl;
 	}
 
+	public WriteMode writeMode()
+	{
+		return writeMode;
+	}
+
+	public void writeMode(WriteMode writeMode)
+	{
+		this.writeMode = (writeMode != null ? writeMode : WriteMode.CONDITIONAL);
+	}
+
+	public Compression compression()
+	{
+		return compression;
+	}
+
+	public void compression(Compression compression)
+	{
+		this.compression = (compression != null ? compression : Compression.NONE);
+	}
+
 	@Override
     public Identifier identifier()
     {
@@ -166,6 +192,10 @@ extends AbstractEntity
 			sb.append(keys());
 			sb.append(", TTL=");
 			sb.append(ttl());
+			sb.append(", WriteMode=");
+			sb.append(writeMode());
+			sb.append(", Compression=");
+			sb.append(compression());
 			sb.append(")");
 		}
 		return sb.toString();
@@ -26,9 +26,13 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.orangerhymelabs.helenus.cassandra.AbstractCassandraRepository;
+import com.orangerhymelabs.helenus.cassandra.ExecutionProfile;
+import com.orangerhymelabs.helenus.cassandra.SchemaColumns;
 import com.orangerhymelabs.helenus.cassandra.SchemaProvider;
 import com.orangerhymelabs.helenus.cassandra.document.DocumentRepository;
 import com.orangerhymelabs.helenus.cassandra.table.TableRepository.TableStatements;
@@ -62,6 +66,8 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		static final String TYPE = "tbl_type";
 		static final String KEYS = "keys";
 		static final String TTL = "tbl_ttl";
+		static final String WRITE_MODE = "write_mode";
+		static final String COMPRESSION = "compression";
 		static final String VIEWS = "views";
 		static final String CREATED_AT = "created_at";
 		static final String UPDATED_AT = "updated_at";
@@ -70,8 +76,14 @@ extends AbstractCassandraRepository<Table, TableStatements>
 	public static class Schema
 	implements SchemaProvider
 	{
+		// Columns added since the table was first released, which create() adds to an existing table.
+		private static final String[] ADDED_COLUMNS = {
+			Columns.WRITE_MODE + " text",
+			Columns.COMPRESSION + " text"
+		};
+
 		private static final String DROP_TABLE = "drop table if exists %s." + Tables.BY_ID;
-		private static final String CREATE_TABLE = "create table %s." + Tables.BY_ID +
+		private static final String CREATE_TABLE = "create table if not exists %s." + Tables.BY_ID +
 			"(" +
 				Columns.DATABASE + " text," +
 				Columns.NAME + " text," +
@@ -79,6 +91,8 @@ extends AbstractCassandraRepository<Table, TableStatements>
 				Columns.TYPE + " text," +
 				Columns.KEYS + " text," +
 				Columns.TTL + " bigint," +
+				Columns.WRITE_MODE + " text," +
+				Columns.COMPRESSION + " text," +
 				Columns.VIEWS + " list<text>," +
 				Columns.CREATED_AT + " timestamp," +
 				Columns.UPDATED_AT + " timestamp," +
@@ -107,7 +121,7 @@ extends AbstractCassandraRepository<Table, TableStatements>
 			ResultSetFuture rs = session.executeAsync(String.format(CREATE_TABLE, keyspace));
 		    try
 		    {
-				return rs.get().wasApplied();
+				return rs.get().wasApplied() && SchemaColumns.add(session, keyspace, Tables.BY_ID, ADDED_COLUMNS);
 			}
 		    catch (InterruptedException | ExecutionException e)
 		    {
@@ -131,9 +145,11 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		+ Columns.TYPE + ", "
 		+ Columns.KEYS + ", "
 		+ Columns.TTL + ", "
+		+ Columns.WRITE_MODE + ", "
+		+ Columns.COMPRESSION + ", "
 		+ Columns.CREATED_AT + ", "
 		+ Columns.UPDATED_AT
-		+") values (?, ?, ?, ?, ?, ?, ?, ?) if not exists")
+		+") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) if not exists")
 		PreparedStatement create();
 
 		@Override
@@ -141,7 +157,7 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		PreparedStatement delete();
 
 		@Override
-		@Query("update %s." + Tables.BY_ID + " set " + Columns.DESCRIPTION + " = ?, " + Columns.TTL + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL + " if exists")
+		@Query("update %s." + Tables.BY_ID + " set " + Columns.DESCRIPTION + " = ?, " + Columns.TTL + " = ?, " + Columns.WRITE_MODE + " = ?, " + Columns.COMPRESSION + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL + " if exists")
 		PreparedStatement update();
 
 		@Override
@@ -149,7 +165,7 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		PreparedStatement read();
 
 		@Override
-		@Query("select count(*) from %s." + Tables.BY_ID + IDENTITY_CQL + " limit 1")
+		@Query("select " + Columns.NAME + " from %s." + Tables.BY_ID + IDENTITY_CQL + " limit 1")
 		PreparedStatement exists();
 
 		@Override
@@ -178,6 +194,29 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		}
 	}
 
+	/**
+	 * Update the table, first changing its document table's default TTL (and compaction) to match if
+	 * it's changed.
+	 */
+	@Override
+	public ListenableFuture<Table> update(Table table, ExecutionProfile profile)
+	{
+		return Futures.transformAsync(DOCUMENT_SCHEMA.ttl(session(), keyspace(), table.toDbTable(), table.ttl()), new AsyncFunction<Boolean, Table>()
+		{
+			@Override
+			public ListenableFuture<Table> apply(Boolean isAltered)
+			{
+				if (isAltered)
+				{
+					// TODO: what about rollback?
+					return TableRepository.super.update(table, profile);
+				}
+
+				return Futures.immediateFailedFuture(new StorageException("Failed to change document schema TTL for: " + table.toDbTable()));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
 	@Override
 	public ListenableFuture<Boolean> delete(Identifier id)
 	{
@@ -204,6 +243,8 @@ extends AbstractCassandraRepository<Table, TableStatements>
 			table.type().name(),
 			table.keys(),
 			table.ttl(),
+			table.writeMode().name(),
+			table.compression().name(),
 		    table.createdAt(),
 		    table.updatedAt());
 	}
@@ -214,6 +255,8 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		table.updatedAt(new Date());
 		bs.bind(table.description(),
 			table.ttl(),
+			table.writeMode().name(),
+			table.compression().name(),
 			table.updatedAt(),
 			table.database().name(),
 			table.name());
@@ -230,6 +273,8 @@ extends AbstractCassandraRepository<Table, TableStatements>
 		table.ttl(row.getLong(Columns.TTL));
 		table.type(TableType.from(row.getString(Columns.TYPE)));
 		table.keys(row.getString(Columns.KEYS));
+		table.writeMode(WriteMode.from(SchemaColumns.getString(row, Columns.WRITE_MODE)));
+		table.compression(Compression.from(SchemaColumns.getString(row, Columns.COMPRESSION)));
 		table.createdAt(row.getTimestamp(Columns.CREATED_AT));
 		table.updatedAt(row.getTimestamp(Columns.UPDATED_AT));
 		return table;
@@ -239,7 +284,7 @@ extends AbstractCassandraRepository<Table, TableStatements>
     {
 		try
 		{
-			return DOCUMENT_SCHEMA.create(session(), keyspace(), table.toDbTable(), KEY_PARSER.parse(table.keys()));
+			return DOCUMENT_SCHEMA.create(session(), keyspace(), table.toDbTable(), KEY_PARSER.parse(table.keys()), table.ttl());
 		}
 		catch (KeyDefinitionException e)
 		{
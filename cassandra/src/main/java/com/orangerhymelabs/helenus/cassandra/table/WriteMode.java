@@ -0,0 +1,46 @@
+/*
+    Copyright 2015, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.cassandra.table;
+
+/**
+ * How a table's documents are written by create() and update():
+ * CONDITIONAL (default) - create is 'insert ... if not exists' and update is 'update ... if exists'.
+ * 	Existence is checked with a lightweight transaction (Paxos), at several times the cost of a plain write.
+ * UNCONDITIONAL - plain inserts and updates. Use when keys are already unique (e.g. client-generated
+ * 	TimeUUIDs) and an update of a missing document may simply create it. Callers can still ask for the
+ * 	existence check explicitly with createIfNotExists() and updateIfExists().
+ * 
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public enum WriteMode
+{
+	CONDITIONAL,
+	UNCONDITIONAL;
+
+	public static WriteMode from(String name)
+    {
+		if (name == null) return CONDITIONAL;
+
+		switch(name.toLowerCase())
+		{
+			case "conditional": return CONDITIONAL;
+			case "unconditional": return UNCONDITIONAL;
+			default:
+				throw new IllegalStateException("Invalid write mode: " + name);
+		}
+    }
+}
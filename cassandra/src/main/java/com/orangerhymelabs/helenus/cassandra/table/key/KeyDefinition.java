@@ -89,6 +89,20 @@ public class KeyDefinition
 		return identifier;
 	}
 
+	/**
+	 * Returns the leading components of the given identifier that make up its partition key.
+	 * Identifiers with the same partition identifier are stored in the same partition.
+	 * 
+	 * @param id a complete identifier for this KeyDefinition.
+	 * @return a new Identifier containing only the partition key components.
+	 */
+	public Identifier partitionIdentifier(Identifier id)
+	{
+		int size = (hasPartitionKey() ? partitionKey.size() : 0);
+		List<Object> components = id.components();
+		return new Identifier(components.subList(0, Math.min(size, components.size())).toArray());
+	}
+
 	public boolean isValid()
 	{
 		if (hasPartitionKey()) return true;
@@ -182,6 +196,93 @@ public class KeyDefinition
 		return sb.toString();
 	}
 
+	public int partitionKeySize()
+	{
+		return (hasPartitionKey() ? partitionKey.size() : 0);
+	}
+
+	public int clusteringKeySize()
+	{
+		return (hasClusteringKey() ? clusteringKey.size() : 0);
+	}
+
+	/**
+	 * Returns the where clause of a slice of one partition: the partition key and the first 'prefix'
+	 * clustering columns equal to bind variables, then optional bounds on the following clustering column.
+	 * 
+	 * @param prefix the number of leading clustering columns to match exactly.
+	 * @param lowerOperator '>' or '>=', or null for no lower bound.
+	 * @param upperOperator '<' or '<=', or null for no upper bound.
+	 * @throws IllegalArgumentException if there are more prefix columns than clustering columns, or no column left to bound.
+	 */
+	public String asRangeClause(int prefix, String lowerOperator, String upperOperator)
+	{
+		if (prefix < 0 || prefix > clusteringKeySize())
+		{
+			throw new IllegalArgumentException("Clustering key prefix of " + prefix + " columns, but the key has " + clusteringKeySize());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		appendAsAssignments(partitionKey, sb, " and ");
+
+		if (prefix > 0)
+		{
+			sb.append(" and ");
+			appendAsAssignments(clusteringKey.subList(0, prefix), sb, " and ");
+		}
+
+		if (lowerOperator == null && upperOperator == null) return sb.toString();
+
+		if (prefix == clusteringKeySize())
+		{
+			throw new IllegalArgumentException("No clustering column to bound after a prefix of " + prefix + " columns");
+		}
+
+		String bounded = clusteringKey.get(prefix).property();
+
+		if (lowerOperator != null)
+		{
+			sb.append(" and ").append(bounded).append(" ").append(lowerOperator).append(" ?");
+		}
+
+		if (upperOperator != null)
+		{
+			sb.append(" and ").append(bounded).append(" ").append(upperOperator).append(" ?");
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the order by phrase that reads a partition with its first clustering column in the given
+	 * order, or an empty string if that's the clustering order already (or order is null).
+	 * 
+	 * @throws IllegalArgumentException if an order is given and there's no clustering key.
+	 */
+	public String asOrderByClause(ClusteringKeyComponent.Ordering order)
+	{
+		if (order == null) return "";
+
+		if (!hasClusteringKey()) throw new IllegalArgumentException("Cannot order a table without a clustering key");
+
+		if (clusteringKey.get(0).order() == order) return "";
+
+		StringBuilder sb = new StringBuilder("order by ");
+		Iterator<ClusteringKeyComponent> iterator = clusteringKey.iterator();
+
+		while(iterator.hasNext())
+		{
+			ClusteringKeyComponent component = iterator.next();
+			sb.append(component.property())
+				.append(" ")
+				.append(component.order().isDescending() ? ClusteringKeyComponent.Ordering.ASC : ClusteringKeyComponent.Ordering.DESC);
+
+			if (iterator.hasNext()) sb.append(",");
+		}
+
+		return sb.toString();
+	}
+
 	private void appendToIdentifierFromBson(List<? extends KeyComponent> components, BSONObject bson, Identifier identifier, List<String> missingProperties)
 	{
 		components.forEach(new Consumer<KeyComponent>()
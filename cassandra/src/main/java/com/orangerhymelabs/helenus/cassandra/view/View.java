@@ -15,8 +15,14 @@
  */
 package com.orangerhymelabs.helenus.cassandra.view;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.orangerhymelabs.helenus.cassandra.Constants;
 import com.orangerhymelabs.helenus.cassandra.document.Document;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoKeys;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoPoint;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.TableReference;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinition;
@@ -53,6 +59,14 @@ extends AbstractEntity
 	// How long should the view's data live? (0 implies forever)
 	private long ttl;
 
+	// How documents are compressed in storage.
+	private Compression compression = Compression.NONE;
+
+	private ViewType type = ViewType.DOCUMENT;
+
+	// The comma-separated document fields a SEARCH view indexes, or the latitude and longitude fields of a GEO view.
+	private String fields;
+
 	public View()
 	{
 		super();
@@ -133,6 +147,64 @@ extends AbstractEntity
 		this.ttl = ttl;
 	}
 
+	public Compression compression()
+	{
+		return compression;
+	}
+
+	public void compression(Compression compression)
+	{
+		this.compression = (compression != null ? compression : Compression.NONE);
+	}
+
+	public ViewType type()
+	{
+		return type;
+	}
+
+	public void type(ViewType type)
+	{
+		this.type = (type != null ? type : ViewType.DOCUMENT);
+	}
+
+	public boolean isSearchIndex()
+	{
+		return (type == ViewType.SEARCH);
+	}
+
+	public boolean isGeospatial()
+	{
+		return (type == ViewType.GEO);
+	}
+
+	public String fields()
+	{
+		return fields;
+	}
+
+	public void fields(String fields)
+	{
+		this.fields = fields;
+	}
+
+	/**
+	 * Returns the indexed fields of a SEARCH view, e.g. 'title, body, author.name', or the latitude and
+	 * longitude fields of a GEO view, e.g. 'location.lat, location.lon'.
+	 */
+	public List<String> fieldList()
+	{
+		List<String> list = new ArrayList<>();
+
+		if (fields == null) return list;
+
+		for (String field : fields.split(","))
+		{
+			if (!field.trim().isEmpty()) list.add(field.trim());
+		}
+
+		return list;
+	}
+
 	@Override
     public Identifier identifier()
     {
@@ -159,14 +231,36 @@ extends AbstractEntity
 			sb.append(keys());
 			sb.append(", TTL=");
 			sb.append(ttl());
+			sb.append(", Compression=");
+			sb.append(compression());
+			sb.append(", Type=");
+			sb.append(type());
+
+			if (isSearchIndex() || isGeospatial())
+			{
+				sb.append(", Fields=");
+				sb.append(fields());
+			}
+
 			sb.append(")");
 		}
 		return sb.toString();
 	}
 
+	/**
+	 * Returns the document's identifier in this view. For a GEO view, that's derived from its location
+	 * and table identifier (see GeoKeys), or null if it doesn't have a valid location.
+	 */
 	public Identifier identifierFrom(Document document)
 	throws KeyDefinitionException
 	{
+		if (isGeospatial())
+		{
+			List<String> fields = fieldList();
+			GeoPoint location = (fields.size() == 2 ? GeoPoint.from(document.object(), fields.get(0), fields.get(1)) : null);
+			return (location != null && document.identifier() != null ? GeoKeys.identifier(location, document.identifier()) : null);
+		}
+
 		return keyDefinition().identifier(document.object());
 	}
 
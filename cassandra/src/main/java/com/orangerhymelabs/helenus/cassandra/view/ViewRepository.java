@@ -27,11 +27,18 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.orangerhymelabs.helenus.cassandra.AbstractCassandraRepository;
+import com.orangerhymelabs.helenus.cassandra.ExecutionProfile;
+import com.orangerhymelabs.helenus.cassandra.ResultStream;
+import com.orangerhymelabs.helenus.cassandra.SchemaColumns;
 import com.orangerhymelabs.helenus.cassandra.SchemaProvider;
 import com.orangerhymelabs.helenus.cassandra.document.DocumentRepository;
+import com.orangerhymelabs.helenus.cassandra.search.SearchIndex;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionParser;
@@ -40,7 +47,6 @@ import com.orangerhymelabs.helenus.exception.StorageException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
 import com.orangerhymelabs.helenus.persistence.Query;
 import com.orangerhymelabs.helenus.persistence.StatementFactory;
-import com.strategicgains.noschema.document.View;
 
 /**
  * @author tfredrich
@@ -65,6 +71,9 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		static final String DESCRIPTION = "description";
 		static final String KEYS = "keys";
 		static final String TTL = "view_ttl";
+		static final String COMPRESSION = "compression";
+		static final String TYPE = "view_type";
+		static final String FIELDS = "fields";
 		static final String CREATED_AT = "created_at";
 		static final String UPDATED_AT = "updated_at";
 	}
@@ -72,8 +81,15 @@ extends AbstractCassandraRepository<View, ViewStatements>
 	public static class Schema
 	implements SchemaProvider
 	{
+		// Columns added since the table was first released, which create() adds to an existing table.
+		private static final String[] ADDED_COLUMNS = {
+			Columns.COMPRESSION + " text",
+			Columns.TYPE + " text",
+			Columns.FIELDS + " text"
+		};
+
 		private static final String DROP_TABLE = "drop table if exists %s." + Tables.BY_ID;
-		private static final String CREATE_TABLE = "create table %s." + Tables.BY_ID +
+		private static final String CREATE_TABLE = "create table if not exists %s." + Tables.BY_ID +
 			"(" +
 				Columns.DATABASE + " text," +
 				Columns.TABLE + " text," +
@@ -81,6 +97,9 @@ extends AbstractCassandraRepository<View, ViewStatements>
 				Columns.DESCRIPTION + " text," +
 				Columns.KEYS + " text," +
 				Columns.TTL + " bigint," +
+				Columns.COMPRESSION + " text," +
+				Columns.TYPE + " text," +
+				Columns.FIELDS + " text," +
 				Columns.CREATED_AT + " timestamp," +
 				Columns.UPDATED_AT + " timestamp," +
 				"primary key ((" + Columns.DATABASE + "), " + Columns.TABLE + "," + Columns.NAME + ")" +
@@ -108,7 +127,7 @@ extends AbstractCassandraRepository<View, ViewStatements>
 			ResultSetFuture rs = session.executeAsync(String.format(CREATE_TABLE, keyspace));
 		    try
 		    {
-				return rs.get().wasApplied();
+				return rs.get().wasApplied() && SchemaColumns.add(session, keyspace, Tables.BY_ID, ADDED_COLUMNS);
 			}
 		    catch (InterruptedException | ExecutionException e)
 		    {
@@ -132,9 +151,12 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		+ Columns.DESCRIPTION + ", "
 		+ Columns.KEYS + ", "
 		+ Columns.TTL + ", "
+		+ Columns.COMPRESSION + ", "
+		+ Columns.TYPE + ", "
+		+ Columns.FIELDS + ", "
 		+ Columns.CREATED_AT + ", "
 		+ Columns.UPDATED_AT
-		+") values (?, ?, ?, ?, ?, ?, ?, ?) if not exists")
+		+") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) if not exists")
 		PreparedStatement create();
 
 		@Override
@@ -142,13 +164,17 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		PreparedStatement delete();
 
 		@Override
-		@Query("update %s." + Tables.BY_ID + " set " + Columns.DESCRIPTION + " = ?, " + Columns.TTL + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL + " if exists")
+		@Query("update %s." + Tables.BY_ID + " set " + Columns.DESCRIPTION + " = ?, " + Columns.TTL + " = ?, " + Columns.COMPRESSION + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL + " if exists")
 		PreparedStatement update();
 
 		@Override
 		@Query("select * from %s." + Tables.BY_ID + IDENTITY_CQL)
 		PreparedStatement read();
 
+		@Override
+		@Query("select " + Columns.NAME + " from %s." + Tables.BY_ID + IDENTITY_CQL + " limit 1")
+		PreparedStatement exists();
+
 		@Override
 		@Query("select * from %s." + Tables.BY_ID + " where " + Columns.DATABASE + " = ?")
 		PreparedStatement readAll();
@@ -158,6 +184,7 @@ extends AbstractCassandraRepository<View, ViewStatements>
 	}
 
 	private static final DocumentRepository.Schema DOCUMENT_SCHEMA = new DocumentRepository.Schema();
+	private static final SearchIndex.Schema SEARCH_SCHEMA = new SearchIndex.Schema();
 
 	public ViewRepository(Session session, String keyspace)
 	{
@@ -178,6 +205,33 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		}
 	}
 
+	/**
+	 * Update the view, first changing its document table's default TTL (and compaction) to match if
+	 * it's changed.
+	 */
+	@Override
+	public ListenableFuture<View> update(View view, ExecutionProfile profile)
+	{
+		ListenableFuture<Boolean> altered = (view.isSearchIndex()
+			? SEARCH_SCHEMA.ttl(session(), keyspace(), view.toDbTable(), view.ttl())
+			: DOCUMENT_SCHEMA.ttl(session(), keyspace(), view.toDbTable(), view.ttl()));
+
+		return Futures.transformAsync(altered, new AsyncFunction<Boolean, View>()
+		{
+			@Override
+			public ListenableFuture<View> apply(Boolean isAltered)
+			{
+				if (isAltered)
+				{
+					// TODO: what about rollback?
+					return ViewRepository.super.update(view, profile);
+				}
+
+				return Futures.immediateFailedFuture(new StorageException("Failed to change document schema TTL for view: " + view.name()));
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
 	@Override
 	public ListenableFuture<Boolean> delete(Identifier id)
 	{
@@ -197,6 +251,11 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		return super.readAll(statementFactory().readAllForTable(), database, table);
 	}
 
+	public ResultStream<View> streamForTable(String database, String table, int fetchSize, String pagingState)
+	{
+		return super.streamAll(statementFactory().readAllForTable(), fetchSize, pagingState, database, table);
+	}
+
 	@Override
 	protected void bindCreate(BoundStatement bs, View view)
 	{
@@ -209,6 +268,9 @@ extends AbstractCassandraRepository<View, ViewStatements>
 			view.description(),
 			view.keys(),
 			view.ttl(),
+			view.compression().name(),
+			view.type().name(),
+			view.fields(),
 		    view.createdAt(),
 		    view.updatedAt());
 	}
@@ -219,6 +281,7 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		view.updatedAt(new Date());
 		bs.bind(view.description(),
 			view.ttl(),
+			view.compression().name(),
 			view.updatedAt(),
 			view.databaseName(),
 			view.tableName(),
@@ -239,6 +302,9 @@ extends AbstractCassandraRepository<View, ViewStatements>
 
 		view.description(row.getString(Columns.DESCRIPTION));
 		view.ttl(row.getLong(Columns.TTL));
+		view.compression(Compression.from(SchemaColumns.getString(row, Columns.COMPRESSION)));
+		view.type(ViewType.from(SchemaColumns.getString(row, Columns.TYPE)));
+		view.fields(SchemaColumns.getString(row, Columns.FIELDS));
 		view.keys(row.getString(Columns.KEYS));
 		view.createdAt(row.getTimestamp(Columns.CREATED_AT));
 		view.updatedAt(row.getTimestamp(Columns.UPDATED_AT));
@@ -249,7 +315,12 @@ extends AbstractCassandraRepository<View, ViewStatements>
     {
 		try
 		{
-			return DOCUMENT_SCHEMA.create(session(), keyspace(), view.toDbTable(), KEY_PARSER.parse(view.keys()));
+			if (view.isSearchIndex())
+			{
+				return SEARCH_SCHEMA.create(session(), keyspace(), view.toDbTable(), KEY_PARSER.parse(view.keys()), view.ttl());
+			}
+
+			return DOCUMENT_SCHEMA.create(session(), keyspace(), view.toDbTable(), KEY_PARSER.parse(view.keys()), view.ttl());
 		}
 		catch (KeyDefinitionException e)
 		{
@@ -257,8 +328,11 @@ extends AbstractCassandraRepository<View, ViewStatements>
 		}
     }
 
+	/**
+	 * Drop the view's tables, whichever its type: dropping tables that don't exist succeeds.
+	 */
 	private boolean dropDocumentSchema(Identifier id)
     {
-		return DOCUMENT_SCHEMA.drop(session(), keyspace(), id.toDbName());
+		return DOCUMENT_SCHEMA.drop(session(), keyspace(), id.toDbName()) && SEARCH_SCHEMA.drop(session(), keyspace(), id.toDbName());
     }
 }
@@ -22,7 +22,11 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoKeys;
+import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.TableService;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
+import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionParser;
 import com.orangerhymelabs.helenus.exception.ItemNotFoundException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
 import com.strategicgains.noschema.document.View;
@@ -35,6 +39,8 @@ import com.strategicgains.syntaxe.ValidationException;
  */
 public class ViewService
 {
+	private static final KeyDefinitionParser KEY_PARSER = new KeyDefinitionParser();
+
 	private ViewRepository views;
 	private TableService tables;
 
@@ -50,8 +56,17 @@ public class ViewService
 		Futures.addCallback(create(view), callback, MoreExecutors.directExecutor());
 	}
 
+	/**
+	 * Create a view of a table. A SEARCH view is keyed by its table's key, and a GEO view by the geohash of
+	 * its location then its table's key, so their keys are taken from the table.
+	 */
 	public ListenableFuture<View> create(View view)
 	{
+		if (view.isSearchIndex() || view.isGeospatial())
+		{
+			return createKeyedByTable(view);
+		}
+
 		ListenableFuture<Boolean> tableFuture = tables.exists(view.databaseName(), view.tableName());
 		return Futures.transformAsync(tableFuture, new AsyncFunction<Boolean, View>()
 		{
@@ -79,6 +94,48 @@ public class ViewService
 		}, MoreExecutors.directExecutor());
 	}
 
+	private ListenableFuture<View> createKeyedByTable(View view)
+	{
+		ListenableFuture<Table> tableFuture = tables.read(view.databaseName(), view.tableName());
+		return Futures.transformAsync(tableFuture, new AsyncFunction<Table, View>()
+		{
+			@Override
+			public ListenableFuture<View> apply(Table table)
+			throws Exception
+			{
+				try
+				{
+					if (view.isGeospatial())
+					{
+						if (view.fieldList().size() != 2)
+						{
+							throw new ValidationException("Geospatial view requires latitude and longitude fields: " + view.name());
+						}
+
+						view.keys(GeoKeys.viewKeys(KEY_PARSER.parse(table.keys())));
+					}
+					else
+					{
+						view.keys(table.keys());
+					}
+
+					ValidationEngine.validateAndThrow(view);
+
+					if (view.fieldList().isEmpty())
+					{
+						throw new ValidationException("Search view requires fields to index: " + view.name());
+					}
+
+					return views.create(view);
+				}
+				catch(ValidationException | KeyDefinitionException e)
+				{
+					return Futures.immediateFailedFuture(e);
+				}
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
 	public void read(String database, String table, String view, FutureCallback<View> callback)
 	{
 		Futures.addCallback(read(database, table, view), callback, MoreExecutors.directExecutor());
@@ -0,0 +1,46 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.cassandra.view;
+
+/**
+ * HelenusDB supports three view types:
+ * DOCUMENT (default, if not specified) - a copy of the table's documents, keyed differently.
+ * SEARCH - a full-text (inverted) index of the text fields of the table's documents (see SearchIndex).
+ * GEO - a copy of the table's documents, keyed by the geohash of their latitude and longitude fields (see GeoKeys).
+ * 
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public enum ViewType
+{
+	DOCUMENT,
+	SEARCH,
+	GEO;
+
+	public static ViewType from(String name)
+	{
+		if (name == null) return DOCUMENT;
+
+		switch(name.toLowerCase())
+		{
+			case "document": return DOCUMENT;
+			case "search": return SEARCH;
+			case "geo": return GEO;
+			default:
+				throw new IllegalStateException("Invalid view type: " + name);
+		}
+	}
+}
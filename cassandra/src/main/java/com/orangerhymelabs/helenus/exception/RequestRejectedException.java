@@ -0,0 +1,69 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.orangerhymelabs.helenus.exception;
+
+/**
+ * Thrown when a request is not admitted by the RequestLimiter, either because its wait queue is
+ * full or because the request waited longer than the queue timeout for a permit.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class RequestRejectedException
+extends StorageException
+{
+	private static final long serialVersionUID = 6280749337163421571L;
+
+	public RequestRejectedException()
+	{
+	}
+
+	/**
+	 * @param message
+	 */
+	public RequestRejectedException(String message)
+	{
+		super(message);
+	}
+
+	/**
+	 * @param cause
+	 */
+	public RequestRejectedException(Throwable cause)
+	{
+		super(cause);
+	}
+
+	/**
+	 * @param message
+	 * @param cause
+	 */
+	public RequestRejectedException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+
+	/**
+	 * @param message
+	 * @param cause
+	 * @param enableSuppression
+	 * @param writableStackTrace
+	 */
+	public RequestRejectedException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace)
+	{
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
@@ -0,0 +1,228 @@
+/*
+    Copyright 2026, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package com.orangerhymelabs.helenus.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.orangerhymelabs.helenus.exception.StorageException;
+
+/**
+ * A process-wide cache of prepared statements, keyed by CQL text. There is one cache per Cluster,
+ * shared by every session (and therefore every repository) connected to it. Statement CQL in this
+ * project is always keyspace-qualified, so sharing across sessions is safe.
+ *
+ * Preparation is single-flight: concurrent requests for the same CQL share one prepareAsync() call.
+ * A failed preparation is evicted so a later request can retry it.
+ *
+ * Callers that can't block (e.g. code running on a driver I/O thread) should wait on prepareAsync()
+ * or warm() before calling get().
+ *
+ * A cache (via its session and prepared statements) holds its Cluster strongly, so it's removed when
+ * the Cluster is closed, not when the Cluster is otherwise unreachable.
+ *
+ * @author tfredrich
+ * @since 17 Oct 2026
+ */
+public class PreparedStatementCache
+{
+	private static final ConcurrentMap<Cluster, PreparedStatementCache> CACHES = new MapMaker().weakKeys().makeMap();
+
+	private Session session;
+	private ConcurrentMap<String, ListenableFuture<PreparedStatement>> statements = new MapMaker().makeMap();
+
+	private PreparedStatementCache(Session session)
+	{
+		super();
+		this.session = session;
+	}
+
+	/**
+	 * Returns the shared cache for the session's Cluster.
+	 */
+	public static PreparedStatementCache of(Session session)
+	{
+		Cluster cluster = session.getCluster();
+		PreparedStatementCache cache = CACHES.get(cluster);
+
+		if (cache != null) return cache;
+
+		cache = new PreparedStatementCache(session);
+		PreparedStatementCache existing = CACHES.putIfAbsent(cluster, cache);
+
+		if (existing != null) return existing;
+
+		cluster.register(new Evictor(cache));
+
+		// Closed meanwhile, so the evictor may never run.
+		if (cluster.isClosed()) CACHES.remove(cluster, cache);
+
+		return cache;
+	}
+
+	/**
+	 * Prepare the CQL, or join the preparation already in progress, without blocking.
+	 *
+	 * @param cql a keyspace-qualified CQL statement.
+	 * @return a future PreparedStatement.
+	 */
+	public ListenableFuture<PreparedStatement> prepareAsync(String cql)
+	{
+		ListenableFuture<PreparedStatement> future = statements.get(cql);
+
+		if (future != null) return future;
+
+		SettableFuture<PreparedStatement> preparing = SettableFuture.create();
+		future = statements.putIfAbsent(cql, preparing);
+
+		if (future != null) return future;
+
+		Futures.addCallback(session.prepareAsync(cql), new FutureCallback<PreparedStatement>()
+		{
+			@Override
+			public void onSuccess(PreparedStatement result)
+			{
+				preparing.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t)
+			{
+				statements.remove(cql, preparing);
+				preparing.setException(t);
+			}
+		}, MoreExecutors.directExecutor());
+
+		return preparing;
+	}
+
+	/**
+	 * Returns the prepared statement for the CQL, waiting for its preparation if it isn't ready yet.
+	 *
+	 * @param cql a keyspace-qualified CQL statement.
+	 * @return a PreparedStatement.
+	 * @throws StorageException if the statement could not be prepared.
+	 */
+	public PreparedStatement get(String cql)
+	{
+		try
+		{
+			return Uninterruptibles.getUninterruptibly(prepareAsync(cql));
+		}
+		catch (ExecutionException e)
+		{
+			throw new StorageException("Error preparing statement: " + cql, e.getCause());
+		}
+	}
+
+	/**
+	 * Begin preparing all the given statements at once.
+	 *
+	 * @param cqls keyspace-qualified CQL statements.
+	 * @return a future that completes when all the statements are prepared.
+	 */
+	public ListenableFuture<List<PreparedStatement>> warm(Collection<String> cqls)
+	{
+		List<ListenableFuture<PreparedStatement>> futures = new ArrayList<>(cqls.size());
+
+		for (String cql : cqls)
+		{
+			futures.add(prepareAsync(cql));
+		}
+
+		return Futures.allAsList(futures);
+	}
+
+	/**
+	 * Returns true if the CQL has been successfully prepared.
+	 */
+	public boolean isPrepared(String cql)
+	{
+		// Failed preparations are evicted before they complete, so a completed entry succeeded.
+		ListenableFuture<PreparedStatement> future = statements.get(cql);
+		return (future != null && future.isDone());
+	}
+
+	public int size()
+	{
+		return statements.size();
+	}
+
+	/**
+	 * Removes a cache when its Cluster is closed (which unregisters the Cluster's listeners).
+	 */
+	private static class Evictor
+	implements Host.StateListener
+	{
+		private PreparedStatementCache cache;
+
+		public Evictor(PreparedStatementCache cache)
+		{
+			super();
+			this.cache = cache;
+		}
+
+		@Override
+		public void onUnregister(Cluster cluster)
+		{
+			CACHES.remove(cluster, cache);
+		}
+
+		@Override
+		public void onRegister(Cluster cluster)
+		{
+			// nothing to do.
+		}
+
+		@Override
+		public void onAdd(Host host)
+		{
+			// nothing to do.
+		}
+
+		@Override
+		public void onUp(Host host)
+		{
+			// nothing to do.
+		}
+
+		@Override
+		public void onDown(Host host)
+		{
+			// nothing to do.
+		}
+
+		@Override
+		public void onRemove(Host host)
+		{
+			// nothing to do.
+		}
+	}
+}
@@ -17,24 +17,34 @@ package com.orangerhymelabs.helenus.persistence;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.orangerhymelabs.helenus.exception.StorageException;
 
 /**
+ * Implements a @Query-annotated statement factory interface. Each interface method is bound, once,
+ * to a slot holding its formatted CQL and, after the first call, its PreparedStatement. A call is
+ * then a lock-free map lookup and a volatile read. There is no annotation lookup, formatting or
+ * locking on the hot path, and concurrent first calls share a single preparation via the
+ * PreparedStatementCache.
+ *
  * @author tfredrich
  * @since 18 Aug 2016
  */
 public class StatementFactoryHandler
 implements InvocationHandler
 {
-	private Session session;
+	private PreparedStatementCache statements;
 	private String keyspace;
 	private String table;
-	private Map<Method, PreparedStatement> statements = new HashMap<>();
+	private ConcurrentMap<Method, Slot> slots = new ConcurrentHashMap<>();
 
 	public StatementFactoryHandler(Session session, String keyspace)
 	{
@@ -44,11 +54,29 @@ implements InvocationHandler
 	public StatementFactoryHandler(Session session, String keyspace, String table)
 	{
 		super();
-		this.session = session;
+		this.statements = PreparedStatementCache.of(session);
 		this.keyspace = keyspace;
 		table(table);
 	}
 
+	/**
+	 * Create a statement factory for the given @Query interface, binding all its methods and beginning
+	 * to prepare their statements (without blocking).
+	 *
+	 * @param factoryClass a StatementFactory interface whose methods are annotated with @Query.
+	 * @param session a session.
+	 * @param keyspace the keyspace name, substituted for the first %s in each query.
+	 * @param table an optional table name, substituted for the second %s in each query. May be null.
+	 * @return a new statement factory.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <F> F newFactory(Class<F> factoryClass, Session session, String keyspace, String table)
+	{
+		StatementFactoryHandler handler = new StatementFactoryHandler(session, keyspace, table);
+		handler.prepareAll(factoryClass);
+		return (F) Proxy.newProxyInstance(factoryClass.getClassLoader(), new Class<?>[] {factoryClass}, handler);
+	}
+
 	public boolean hasTable()
 	{
 		return table != null;
@@ -57,30 +85,91 @@ implements InvocationHandler
 	public void table(String table)
 	{
 		this.table = table;
+		slots.clear();
+	}
+
+	/**
+	 * Bind every @Query method of the factory interface and begin preparing its statement, without blocking.
+	 *
+	 * @param factoryClass a StatementFactory interface whose methods are annotated with @Query.
+	 * @return a future that completes when all the statements are prepared.
+	 */
+	public ListenableFuture<List<PreparedStatement>> prepareAll(Class<?> factoryClass)
+	{
+		List<String> cqls = new ArrayList<>();
+
+		for (Method method : factoryClass.getMethods())
+		{
+			if (method.isAnnotationPresent(Query.class))
+			{
+				cqls.add(slotFor(method).cql);
+			}
+		}
+
+		return statements.warm(cqls);
 	}
 
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args)
 	throws Throwable
 	{
-		PreparedStatement ps = statements.get(method);
+		Slot slot = slots.get(method);
 
-		if (ps != null) return ps;
+		if (slot == null)
+		{
+			if (method.getDeclaringClass() == Object.class)
+			{
+				return invokeObjectMethod(proxy, method, args);
+			}
 
-		Query cql = method.getAnnotation(Query.class);
+			slot = slotFor(method);
+		}
 
-		if (cql == null) throw new StorageException("No @Query annotation for '" + method.getName() + "'");
+		PreparedStatement ps = slot.statement;
 
-		if (hasTable())
+		if (ps == null)
 		{
-			ps = session.prepareAsync(String.format(cql.value(), keyspace, table)).get();
+			ps = statements.get(slot.cql);
+			slot.statement = ps;
 		}
-		else
+
+		return ps;
+	}
+
+	private Slot slotFor(Method method)
+	{
+		Slot slot = slots.get(method);
+
+		if (slot != null) return slot;
+
+		Query query = method.getAnnotation(Query.class);
+
+		if (query == null) throw new StorageException("No @Query annotation for '" + method.getName() + "'");
+
+		String cql = (hasTable() ? String.format(query.value(), keyspace, table) : String.format(query.value(), keyspace));
+		Slot existing = slots.putIfAbsent(method, (slot = new Slot(cql)));
+		return (existing != null ? existing : slot);
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+	{
+		switch (method.getName())
 		{
-			ps = session.prepareAsync(String.format(cql.value(), keyspace)).get();
+			case "equals": return (proxy == args[0]);
+			case "hashCode": return System.identityHashCode(proxy);
+			default: return "StatementFactory{keyspace=" + keyspace + ", table=" + table + "}";
 		}
+	}
 
-		statements.put(method, ps);
-		return ps;
+	private static class Slot
+	{
+		private final String cql;
+		private volatile PreparedStatement statement;
+
+		public Slot(String cql)
+		{
+			super();
+			this.cql = cql;
+		}
 	}
 }
@@ -67,12 +67,33 @@ public class SchemaRegistryTest
 		assertTrue("Table not created: sys_tbl", tableExists("sys_tbl"));
 	}
 
+	@Test
+	public void createShouldAddNewColumnsToExistingTables()
+	{
+		// As if sys_tbl and sys_view were created before these columns were added.
+		CassandraManager.session().execute(String.format("alter table %s.sys_tbl drop write_mode", CassandraManager.keyspace()));
+		CassandraManager.session().execute(String.format("alter table %s.sys_view drop fields", CassandraManager.keyspace()));
+		SchemaRegistry.instance().createAll(CassandraManager.session(), CassandraManager.keyspace());
+		assertTrue("Column not added: sys_tbl.write_mode", columnExists("sys_tbl", "write_mode"));
+		assertTrue("Column not added: sys_view.fields", columnExists("sys_view", "fields"));
+
+		// And again, with nothing to add.
+		SchemaRegistry.instance().createAll(CassandraManager.session(), CassandraManager.keyspace());
+		assertTrue("Column missing: sys_tbl.write_mode", columnExists("sys_tbl", "write_mode"));
+	}
+
 //	@Test
 //	public void indexTableShouldExist()
 //	{
 //		assertTrue("Table not created: sys_idx", tableExists("sys_idx"));
 //	}
 
+	private boolean columnExists(String tableName, String columnName)
+	{
+		ResultSet rs = CassandraManager.session().execute(String.format("select count(*) from system_schema.columns where keyspace_name='%s' and table_name='%s' and column_name='%s'", CassandraManager.keyspace(), tableName, columnName));
+		return (rs.one().getLong(0) > 0);
+	}
+
 	private boolean tableExists(String tableName)
     {
 	    ResultSet rs = CassandraManager.session().execute(String.format("select count(*) from system_schema.tables where keyspace_name='%s' and table_name='%s'", CassandraManager.keyspace(), tableName));
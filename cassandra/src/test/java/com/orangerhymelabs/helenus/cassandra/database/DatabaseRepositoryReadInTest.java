@@ -18,12 +18,15 @@ package com.orangerhymelabs.helenus.cassandra.database;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 
 import org.apache.cassandra.exceptions.ConfigurationException;
@@ -35,6 +38,8 @@ import org.junit.Test;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.orangerhymelabs.helenus.cassandra.CassandraManager;
 import com.orangerhymelabs.helenus.cassandra.KeyspaceSchema;
+import com.orangerhymelabs.helenus.cassandra.RequestLimiter;
+import com.orangerhymelabs.helenus.exception.RequestRejectedException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
 
 /**
@@ -79,6 +84,76 @@ public class DatabaseRepositoryReadInTest
 		shouldReturnListAsynchronously();
 	}
 
+	@Test
+	public void shouldReadInInputOrder()
+	throws Exception
+	{
+		populateDatabase("dbo", 5);
+		List<Optional<Database>> dbs = databases.readInOrder(
+			new Identifier("dbo4"),
+			new Identifier("dbo42"), // doesn't exist.
+			new Identifier("dbo1"),
+			new Identifier("dbo4"),  // duplicate.
+			new Identifier("dbo2")).get();
+
+		assertEquals(5, dbs.size());
+		assertEquals("dbo4", dbs.get(0).get().name());
+		assertFalse(dbs.get(1).isPresent());
+		assertEquals("dbo1", dbs.get(2).get().name());
+		assertEquals("dbo4", dbs.get(3).get().name());
+		assertEquals("dbo2", dbs.get(4).get().name());
+	}
+
+	@Test
+	public void shouldReadInThroughLimiter()
+	throws Exception
+	{
+		populateDatabase("dbl", 10);
+		RequestLimiter limiter = new RequestLimiter(2, 1, 100, 5000L);
+		DatabaseRepository limited = new DatabaseRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
+		limited.requestLimiter(limiter);
+		Identifier[] ids = new Identifier[10];
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = new Identifier("dbl" + (i + 1));
+		}
+
+		List<Database> dbs = limited.readIn(ids).get();
+		assertEquals(10, dbs.size());
+		assertEquals("dbl1", dbs.get(0).name());
+		assertEquals("dbl10", dbs.get(9).name());
+		assertEquals(0, limiter.inFlight());
+		assertEquals(0, limiter.queued());
+		assertEquals(0L, limiter.rejected());
+		limiter.shutdown();
+	}
+
+	@Test
+	public void shouldRejectWhenQueueFull()
+	throws Exception
+	{
+		RequestLimiter limiter = new RequestLimiter(1, 0, 0, 0L);
+		DatabaseRepository limited = new DatabaseRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
+		limited.requestLimiter(limiter);
+		ListenableFuture<Boolean> first = limited.exists(new Identifier("dba1"));
+		ListenableFuture<Boolean> second = limited.exists(new Identifier("dba2"));
+		first.get();
+
+		try
+		{
+			second.get();
+			fail("Expected RequestRejectedException");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof RequestRejectedException);
+		}
+
+		assertEquals(1L, limiter.rejected());
+		assertEquals(0, limiter.inFlight());
+	}
+
 	private void populateDatabase(String prefix, int count)
 	throws InterruptedException, ExecutionException
     {
@@ -24,9 +24,15 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.thrift.transport.TTransportException;
@@ -35,19 +41,39 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.mongodb.BasicDBObject;
 import com.orangerhymelabs.helenus.cassandra.CassandraManager;
+import com.orangerhymelabs.helenus.cassandra.ExecutionProfile;
+import com.orangerhymelabs.helenus.cassandra.ExecutionProfiles;
+import com.orangerhymelabs.helenus.cassandra.ExistenceFilter;
+import com.orangerhymelabs.helenus.cassandra.FilteredStream;
+import com.orangerhymelabs.helenus.cassandra.HedgedReads;
 import com.orangerhymelabs.helenus.cassandra.KeyspaceSchema;
+import com.orangerhymelabs.helenus.cassandra.Operation;
+import com.orangerhymelabs.helenus.cassandra.ResultPage;
 import com.orangerhymelabs.helenus.cassandra.TestCallback;
+import com.orangerhymelabs.helenus.cassandra.meta.MetadataRepository;
+import com.orangerhymelabs.helenus.cassandra.table.Compression;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.TableRepository;
+import com.orangerhymelabs.helenus.cassandra.table.WriteMode;
+import com.orangerhymelabs.helenus.cassandra.table.key.ClusteringKeyComponent.Ordering;
 import com.orangerhymelabs.helenus.cassandra.table.key.KeyDefinitionException;
 import com.orangerhymelabs.helenus.exception.DuplicateItemException;
 import com.orangerhymelabs.helenus.exception.InvalidIdentifierException;
 import com.orangerhymelabs.helenus.exception.ItemNotFoundException;
 import com.orangerhymelabs.helenus.persistence.Identifier;
+import com.orangerhymelabs.helenus.persistence.PreparedStatementCache;
 
 /**
  * @author tfredrich
@@ -61,6 +87,8 @@ public class DocumentRepositoryTest
 	private static KeyspaceSchema keyspace;
 	private static AbstractDocumentRepository uuidDocs;
 	private static AbstractDocumentRepository dateDocs;
+	private static AbstractDocumentRepository unconditionalDocs;
+	private static Table uuidTable;
 
 	@BeforeClass
 	public static void beforeClass()
@@ -79,7 +107,7 @@ public class DocumentRepositoryTest
 		uuids.name("uuids");
 		uuids.database("db1");
 		uuids.description("a test UUID-keyed table");
-		Table uuidTable = tables.create(uuids).get();
+		uuidTable = tables.create(uuids).get();
 		uuidDocs = factory.newInstance(uuidTable);
 
 		Table dates = new Table();
@@ -89,6 +117,15 @@ public class DocumentRepositoryTest
 		dates.description("a test date-keyed table");
 		Table dateTable = tables.create(dates).get();
 		dateDocs = factory.newInstance(dateTable);
+
+		Table unconditional = new Table();
+		unconditional.name("unconditional");
+		unconditional.database("db1");
+		unconditional.writeMode(WriteMode.UNCONDITIONAL);
+		unconditional.description("a test table without lightweight transactions");
+		Table unconditionalTable = tables.create(unconditional).get();
+		assertEquals(WriteMode.UNCONDITIONAL, tables.read(unconditionalTable.identifier()).get().writeMode());
+		unconditionalDocs = factory.newInstance(unconditionalTable);
 	}
 
 	@AfterClass
@@ -97,6 +134,795 @@ public class DocumentRepositoryTest
 		keyspace.drop(CassandraManager.session(), CassandraManager.keyspace());		
 	}
 
+	@Test
+	public void shouldSharePreparedStatements()
+	throws Exception
+	{
+		uuidDocs.prepareStatements().get();
+		PreparedStatementCache cache = PreparedStatementCache.of(CassandraManager.session());
+		int size = cache.size();
+
+		// A second repository for the same table reuses the already-prepared statements.
+		AbstractDocumentRepository another = new DocumentRepositoryFactoryImpl(CassandraManager.session(), CassandraManager.keyspace()).newInstance(uuidTable);
+		assertEquals(another, another.prepareStatements().get());
+		assertEquals(size, cache.size());
+	}
+
+	@Test
+	public void shouldApplyExecutionProfiles()
+	throws Exception
+	{
+		AbstractDocumentRepository profiled = new DocumentRepositoryFactoryImpl(CassandraManager.session(), CassandraManager.keyspace()).newInstance(uuidTable);
+		profiled.executionProfiles(ExecutionProfiles.defaults(ConsistencyLevel.LOCAL_QUORUM, ConsistencyLevel.LOCAL_QUORUM));
+
+		ExecutionProfile read = profiled.executionProfiles().profile(Operation.READ, ExecutionProfile.consistency(ConsistencyLevel.ONE));
+		assertEquals(ConsistencyLevel.ONE, read.consistencyLevel());
+		assertTrue(read.isIdempotent());
+		assertFalse(profiled.executionProfiles().profile(Operation.CREATE).isIdempotent());
+		assertTrue(profiled.executionProfiles().profile(Operation.UPSERT).isIdempotent());
+
+		Document doc = new Document(BSON);
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		profiled.create(doc).get();
+		assertEquals(doc, profiled.read(doc.identifier(), ExecutionProfile.consistency(ConsistencyLevel.ONE)).get());
+		assertTrue(profiled.exists(doc.identifier(), ExecutionProfile.DEFAULT.withTimeoutMillis(5000)).get());
+	}
+
+	@Test
+	public void shouldHedgeReads()
+	throws Exception
+	{
+		AbstractDocumentRepository hedged = new DocumentRepositoryFactoryImpl(CassandraManager.session(), CassandraManager.keyspace()).newInstance(uuidTable);
+		HedgedReads hedgedReads = new HedgedReads(HedgedReads.DEFAULT_PERCENTILE, 0L, 0L, 0, 1L);
+		hedged.hedgedReads(hedgedReads);
+
+		Document doc = new Document(BSON);
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		hedged.create(doc).get();
+
+		for (int i = 0; i < 20; i++)
+		{
+			assertEquals(doc, hedged.read(doc.identifier()).get());
+		}
+
+		List<Document> docs = hedged.readIn(doc.identifier(), doc.identifier()).get();
+		assertEquals(2, docs.size());
+		assertEquals(doc, docs.get(1));
+		assertTrue(hedgedReads.hedgesWon() <= hedgedReads.hedgesFired());
+
+		// A stalled primary (e.g. a replica in GC) is hedged after the delay, and the hedge wins.
+		Statement statement = new SimpleStatement("select release_version from system.local");
+		HedgedReads stalledReads = new HedgedReads(HedgedReads.DEFAULT_PERCENTILE, 0L, 0L, 0, 5L);
+		SettableFuture<ResultSet> stalled = SettableFuture.create();
+		ListenableFuture<ResultSet> read = stalledReads.execute(statement, new AsyncFunction<Statement, ResultSet>()
+		{
+			private int executions = 0;
+
+			@Override
+			public ListenableFuture<ResultSet> apply(Statement input)
+			{
+				return (executions++ == 0 ? stalled : CassandraManager.session().executeAsync(input));
+			}
+		});
+		assertNotNull(read.get(10, TimeUnit.SECONDS).one());
+		assertEquals(1L, stalledReads.hedgesFired());
+		assertEquals(1L, stalledReads.hedgesWon());
+		assertEquals(0L, stalledReads.latencies().getCount());
+		stalled.cancel(false);
+
+		// A primary that completes within the delay isn't hedged, and its latency is recorded.
+		HedgedReads patientReads = new HedgedReads(HedgedReads.DEFAULT_PERCENTILE, 0L, 0L, 0, 60000L);
+		assertNotNull(patientReads.execute(statement, new AsyncFunction<Statement, ResultSet>()
+		{
+			@Override
+			public ListenableFuture<ResultSet> apply(Statement input)
+			{
+				return CassandraManager.session().executeAsync(input);
+			}
+		}).get().one());
+		assertEquals(0L, patientReads.hedgesFired());
+		assertEquals(1L, patientReads.latencies().getCount());
+	}
+
+	@Test
+	public void shouldWriteUnconditionally()
+	throws Exception
+	{
+		assertEquals(WriteMode.UNCONDITIONAL, unconditionalDocs.writeMode());
+		Document doc = new Document(BSON);
+		doc.identifier(new Identifier(UUID.randomUUID()));
+
+		// Update of a missing document creates it; a second create overwrites it.
+		assertEquals(doc, unconditionalDocs.update(doc).get());
+		assertTrue(unconditionalDocs.exists(doc.identifier()).get());
+		assertEquals(doc, unconditionalDocs.create(doc).get());
+
+		// Existence checks are still available explicitly.
+		try
+		{
+			unconditionalDocs.createIfNotExists(doc, null).get();
+			fail("Expected DuplicateItemException");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof DuplicateItemException);
+		}
+
+		Document missing = new Document(BSON);
+		missing.identifier(new Identifier(UUID.randomUUID()));
+
+		try
+		{
+			unconditionalDocs.updateIfExists(missing, null).get();
+			fail("Expected ItemNotFoundException");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+
+		assertFalse(unconditionalDocs.exists(missing.identifier()).get());
+	}
+
+	@Test
+	public void shouldAnswerMissingFromExistenceFilter()
+	throws Exception
+	{
+		Document existing = new Document(BSON);
+		existing.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(existing).get();
+
+		AbstractDocumentRepository filtered = new DocumentRepositoryFactoryImpl(CassandraManager.session(), CassandraManager.keyspace()).newInstance(uuidTable);
+		ExistenceFilter filter = new ExistenceFilter(1000L);
+		filtered.existenceFilter(filter);
+		assertTrue(filtered.primeExistenceFilter().get() > 0L);
+		assertTrue(filter.isPrimed());
+
+		// Written before priming (found by the scan) and after (added on write).
+		assertTrue(filtered.exists(existing.identifier()).get());
+		Document doc = new Document(BSON);
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		filtered.create(doc).get();
+		assertTrue(filtered.exists(doc.identifier()).get());
+
+		Identifier missing = new Identifier(UUID.randomUUID());
+		assertFalse(filtered.exists(missing).get());
+
+		try
+		{
+			filtered.read(missing).get();
+			fail("Expected ItemNotFoundException");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+	}
+
+	@Test
+	public void shouldDecodeStoredDocumentsLazily()
+	throws Exception
+	{
+		Document doc = new Document(BSON);
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(doc).get();
+
+		Document read = uuidDocs.read(doc.identifier()).get();
+		assertTrue(read.object() instanceof LazyBSONDocument);
+		assertEquals("some", read.object().get("a"));
+		assertEquals(BSON, read.object());
+
+		// Unmodified, the stored bytes are written back as-is.
+		LazyBSONDocument lazy = (LazyBSONDocument) read.object();
+		assertTrue(lazy.isUnmodified());
+		assertEquals(ByteBuffer.wrap(org.bson.BSON.encode(BSON)), read.bson());
+		uuidDocs.upsert(read).get();
+		assertEquals(BSON, uuidDocs.read(doc.identifier()).get().object());
+
+		// Modification decodes the document.
+		lazy.put("d", "more");
+		assertFalse(lazy.isUnmodified());
+		uuidDocs.update(read).get();
+		assertEquals("more", uuidDocs.read(doc.identifier()).get().object().get("d"));
+
+		// Nested documents are handed out mutable, and changing one is written back.
+		Document nested = new Document((BSONObject) BasicDBObject.parse("{'address':{'city':'Boulder'}, 'tags':['a']}"));
+		nested.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(nested).get();
+		read = uuidDocs.read(nested.identifier()).get();
+		((BSONObject) read.object().get("address")).put("city", "Denver");
+		assertFalse(((LazyBSONDocument) read.object()).isUnmodified());
+		uuidDocs.update(read).get();
+		assertEquals("Denver", ((BSONObject) uuidDocs.read(nested.identifier()).get().object().get("address")).get("city"));
+
+		// Direct (non-array) buffers are decoded too.
+		byte[] bytes = org.bson.BSON.encode(BSON);
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		assertEquals(BSON, new LazyBSONDocument(direct));
+	}
+
+	@Test
+	public void shouldEncodeWithPooledCodec()
+	throws Exception
+	{
+		BSONCodec codec = BSONCodec.INSTANCE;
+		ByteBuffer encoded = codec.serialize(BSON, ProtocolVersion.NEWEST_SUPPORTED);
+		assertEquals(ByteBuffer.wrap(org.bson.BSON.encode(BSON)), encoded);
+		assertEquals(BSON, codec.deserialize(encoded, ProtocolVersion.NEWEST_SUPPORTED));
+		assertNull(codec.serialize(null, ProtocolVersion.NEWEST_SUPPORTED));
+
+		// The pooled buffer is reused: a small document after a large one encodes to just its own bytes.
+		BasicDBObject large = new BasicDBObject("big", new byte[64 * 1024]);
+		assertEquals(ByteBuffer.wrap(org.bson.BSON.encode(large)), BSONCodec.encode(large));
+		assertEquals(ByteBuffer.wrap(org.bson.BSON.encode(BSON)), BSONCodec.encode(BSON));
+
+		// Beyond the retention cap too.
+		BasicDBObject huge = new BasicDBObject("huge", new byte[BSONCodec.MAX_RETAINED_BYTES * 2]);
+		assertEquals(ByteBuffer.wrap(org.bson.BSON.encode(huge)), BSONCodec.encode(huge));
+		assertEquals(ByteBuffer.wrap(org.bson.BSON.encode(BSON)), BSONCodec.encode(BSON));
+
+		// Documents written through the codec read back intact.
+		Document doc = new Document(large);
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(doc).get();
+		assertEquals(large.keySet(), uuidDocs.read(doc.identifier()).get().object().keySet());
+	}
+
+	@Test
+	public void shouldCompressDocuments()
+	throws Exception
+	{
+		new MetadataRepository.Schema().create(CassandraManager.session(), CassandraManager.keyspace());
+		TableRepository tables = new TableRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
+		Table compressed = new Table();
+		compressed.name("compressed");
+		compressed.database("db1");
+		compressed.compression(Compression.ZSTD);
+		compressed.description("a test table with compressed documents");
+		Table compressedTable = tables.create(compressed).get();
+		assertEquals(Compression.ZSTD, tables.read(compressedTable.identifier()).get().compression());
+
+		DocumentRepositoryFactoryImpl factory = new DocumentRepositoryFactoryImpl(CassandraManager.session(), CassandraManager.keyspace());
+		AbstractDocumentRepository docs = factory.newInstance(compressedTable).prepareStatements().get();
+		List<Document> written = new ArrayList<>();
+
+		for (int i = 0; i < 200; i++)
+		{
+			Document doc = new Document((BSONObject) BasicDBObject.parse("{'name':'user" + i + "', 'status':'active', 'role':'member', 'description':'a fairly repetitive description of user number " + i + "'}"));
+			doc.identifier(new Identifier(UUID.randomUUID()));
+			written.add(docs.create(doc).get());
+		}
+
+		assertEquals(written.get(7), docs.read(written.get(7).identifier()).get());
+		ByteBuffer stored = CassandraManager.session().execute("select object from " + CassandraManager.keyspace() + "." + compressedTable.toDbTable() + " limit 1").one().getBytes(0);
+		assertEquals('H', stored.get(stored.position()));
+		assertEquals('Z', stored.get(stored.position() + 1));
+
+		// Train a dictionary; documents written before and after it read back, including in a new factory.
+		int version = factory.compressionDictionaries().train(docs, 200, 1024).get();
+		assertEquals(1, version);
+		assertEquals(1, docs.compressor().dictionaryVersion());
+		Document after = new Document(written.get(0).object());
+		after.identifier(new Identifier(UUID.randomUUID()));
+		docs.create(after).get();
+		assertEquals(after, docs.read(after.identifier()).get());
+
+		AbstractDocumentRepository reloaded = new DocumentRepositoryFactoryImpl(CassandraManager.session(), CassandraManager.keyspace()).newInstance(compressedTable).prepareStatements().get();
+		assertEquals(1, reloaded.compressor().dictionaryVersion());
+		assertEquals(after, reloaded.read(after.identifier()).get());
+		assertEquals(written.get(9), reloaded.read(written.get(9).identifier()).get());
+
+		// LZ4, and plain documents pass through.
+		DocumentCompressor lz4 = new DocumentCompressor(Compression.LZ4);
+		ByteBuffer bson = new Document(new BasicDBObject("text", String.join(" ", Collections.nCopies(100, "repeated")))).bson();
+		ByteBuffer lz4Compressed = lz4.compress(bson);
+		assertTrue(lz4Compressed.remaining() < bson.remaining());
+		assertEquals(bson, lz4.decompress(lz4Compressed));
+		assertEquals(bson, lz4.decompress(bson));
+	}
+
+	@Test
+	public void shouldProjectFields()
+	throws Exception
+	{
+		Document doc = new Document((BSONObject) BasicDBObject.parse("{'a':'some', 'b':1, 'nested':{'x':1, 'y':'why', 'z':{'deep':true}}, 'items':[{'k':'one', 'v':1}, 'scalar', {'k':'two', 'v':2}], 'big':'" + String.join("", Collections.nCopies(1000, "x")) + "'}"));
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(doc).get();
+
+		BSONObject included = uuidDocs.read(doc.identifier(), Projection.parse("a, nested.y, nested.z.deep, items.k"), null).get().object();
+		assertEquals(BasicDBObject.parse("{'a':'some', 'nested':{'y':'why', 'z':{'deep':true}}, 'items':[{'k':'one'}, {'k':'two'}]}").toMap(), included.toMap());
+
+		BSONObject excluded = uuidDocs.read(doc.identifier(), Projection.parse("-big,-nested.x,-items.v"), null).get().object();
+		assertEquals(BasicDBObject.parse("{'a':'some', 'b':1, 'nested':{'y':'why', 'z':{'deep':true}}, 'items':[{'k':'one'}, 'scalar', {'k':'two'}]}").toMap(), excluded.toMap());
+
+		// A whole field wins over its sub-paths, and missing fields are ignored.
+		assertEquals(doc.object().get("nested"), uuidDocs.read(doc.identifier(), Projection.include("nested.x", "nested", "missing"), null).get().object().get("nested"));
+		assertEquals(doc, uuidDocs.read(doc.identifier(), Projection.parse(""), null).get());
+
+		try
+		{
+			Projection.parse("a,-b");
+			fail("Mixed includes and excludes should be rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void shouldPatchDocuments()
+	throws Exception
+	{
+		Document doc = new Document((BSONObject) BasicDBObject.parse("{'status':'new', 'visits':1, 'nickname':'nick', 'address':{'city':'Boulder', 'zip':'80301'}}"));
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(doc).get();
+
+		DocumentPatch.Result result = uuidDocs.patch(doc.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'status':'active', 'address.city':'Denver', 'tags.first':'a'}, '$unset':{'nickname':'', 'missing.field':''}, '$inc':{'visits':2, 'logins':1}}")), null).get();
+		assertEquals(doc.object().toMap(), result.before().object().toMap());
+		assertEquals(BasicDBObject.parse("{'status':'active', 'visits':3, 'address':{'city':'Denver', 'zip':'80301'}, 'tags':{'first':'a'}, 'logins':1}").toMap(), result.after().object().toMap());
+		assertTrue(result.after().updatedAt().after(result.before().updatedAt()));
+		assertEquals(result.after(), uuidDocs.read(doc.identifier()).get());
+
+		result = uuidDocs.patch(doc.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'status':'closed', 'address':{'zip':null}, 'tags':null}")), null).get();
+		assertEquals(BasicDBObject.parse("{'status':'closed', 'visits':3, 'address':{'city':'Denver'}, 'logins':1}").toMap(), uuidDocs.read(doc.identifier()).get().object().toMap());
+
+		// Patches touching only nested paths.
+		Document nested = new Document((BSONObject) BasicDBObject.parse("{'name':'nested', 'address':{'city':'Boulder', 'zip':'80301', 'street':'Pearl'}}"));
+		nested.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(nested).get();
+		uuidDocs.patch(nested.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'address.city':'Denver'}}")), null).get();
+		assertEquals(BasicDBObject.parse("{'name':'nested', 'address':{'city':'Denver', 'zip':'80301', 'street':'Pearl'}}").toMap(), uuidDocs.read(nested.identifier()).get().object().toMap());
+		uuidDocs.patch(nested.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$unset':{'address.zip':''}}")), null).get();
+		assertEquals(BasicDBObject.parse("{'name':'nested', 'address':{'city':'Denver', 'street':'Pearl'}}").toMap(), uuidDocs.read(nested.identifier()).get().object().toMap());
+		uuidDocs.patch(nested.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'address':{'street':null}}")), null).get();
+		assertEquals(BasicDBObject.parse("{'name':'nested', 'address':{'city':'Denver'}}").toMap(), uuidDocs.read(nested.identifier()).get().object().toMap());
+
+		try
+		{
+			uuidDocs.patch(new Identifier(UUID.randomUUID()), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'a':1}")), null).get();
+			fail("Patching a missing document should fail");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+
+		try
+		{
+			DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'a':1}, 'b':2}"));
+			fail("Mixed operators and fields should be rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void shouldChunkLargeDocuments()
+	throws Exception
+	{
+		AbstractDocumentRepository chunked = new DocumentRepository(CassandraManager.session(), CassandraManager.keyspace(), uuidTable).prepareStatements().get();
+		chunked.chunks(new DocumentChunks(1024, 300));
+		String table = CassandraManager.keyspace() + "." + uuidTable.toDbTable();
+		UUID id = UUID.randomUUID();
+
+		Document doc = new Document((BSONObject) BasicDBObject.parse("{'name':'large', 'text':'" + String.join(" ", Collections.nCopies(500, "chunk")) + "', 'nested':{'n':1}}"));
+		doc.identifier(new Identifier(id));
+		int length = doc.bson().remaining();
+		chunked.create(doc).get();
+
+		ByteBuffer stored = CassandraManager.session().execute("select object from " + table + " where id = ?", id).one().getBytes(0);
+		assertTrue(DocumentChunks.isManifest(stored));
+		assertEquals((length + 299) / 300, chunkCount(table, id));
+
+		// Read back whatever the reader's setting, including projected, listed and streamed.
+		assertEquals(doc.object().toMap(), chunked.read(doc.identifier()).get().object().toMap());
+		assertEquals(doc.object().toMap(), uuidDocs.read(doc.identifier()).get().object().toMap());
+		assertEquals(BasicDBObject.parse("{'nested':{'n':1}}").toMap(), chunked.read(doc.identifier(), Projection.include("nested"), null).get().object().toMap());
+		assertEquals(doc.object().toMap(), chunked.readIn(doc.identifier()).get().get(0).object().toMap());
+		assertEquals(doc.object().toMap(), chunked.readAll(id).get().get(0).object().toMap());
+		assertEquals(doc.object().toMap(), chunked.streamAll(0, null, id).next().get().items().get(0).object().toMap());
+
+		// Rewrites replace the previous chunks.
+		Document larger = new Document((BSONObject) BasicDBObject.parse("{'name':'larger', 'text':'" + String.join(" ", Collections.nCopies(800, "chunk")) + "'}"));
+		larger.identifier(new Identifier(id));
+		chunked.update(larger).get();
+		assertEquals(larger.object().toMap(), chunked.read(doc.identifier()).get().object().toMap());
+		assertEquals((larger.bson().remaining() + 299) / 300, chunkCount(table, id));
+
+		Document small = new Document((BSONObject) BasicDBObject.parse("{'name':'small'}"));
+		small.identifier(new Identifier(id));
+		chunked.update(small).get();
+		assertFalse(DocumentChunks.isManifest(CassandraManager.session().execute("select object from " + table + " where id = ?", id).one().getBytes(0)));
+		assertEquals(small.object().toMap(), chunked.read(doc.identifier()).get().object().toMap());
+		assertEquals(0, chunkCount(table, id));
+
+		// As do unconditional writes and patches.
+		chunked.upsert(larger).get();
+		chunked.upsert(larger).get();
+		assertEquals((larger.bson().remaining() + 299) / 300, chunkCount(table, id));
+		DocumentPatch.Result patched = chunked.patch(doc.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'name':'patched'}}")), null).get();
+		assertEquals((patched.after().bson().remaining() + 299) / 300, chunkCount(table, id));
+		assertEquals(patched.after().object().toMap(), chunked.read(doc.identifier()).get().object().toMap());
+
+		// A reader whose chunks are replaced while it reads them reads the replacement.
+		ByteBuffer stale = CassandraManager.session().execute("select object from " + table + " where id = ?", id).one().getBytes(0);
+		chunked.update(larger).get();
+		Document reading = new Document();
+		reading.identifier(new Identifier(id));
+		reading.pendingChunks(new DocumentChunks.Pending(DocumentChunks.Manifest.parse(stale), Projection.ALL));
+		assertEquals(larger.object().toMap(), chunked.completer().apply(reading).get().object().toMap());
+
+		chunked.delete(doc.identifier()).get();
+		assertEquals(0, chunkCount(table, id));
+	}
+
+	private long chunkCount(String table, UUID id)
+	{
+		return CassandraManager.session().execute("select count(*) from " + table + DocumentChunks.TABLE_SUFFIX + " where id = ?", id).one().getLong(0);
+	}
+
+	@Test
+	public void shouldApplyTtls()
+	throws Exception
+	{
+		AbstractDocumentRepository expiring = new DocumentRepository(CassandraManager.session(), CassandraManager.keyspace(), uuidTable).prepareStatements().get();
+		expiring.ttl(3600);
+		String table = CassandraManager.keyspace() + "." + uuidTable.toDbTable();
+
+		Document doc = new Document((BSONObject) BasicDBObject.parse("{'name':'expiring'}"));
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		expiring.create(doc).get();
+		int ttl = ttlOf(table, doc);
+		assertTrue(ttl > 3500 && ttl <= 3600);
+
+		// A document's own TTL wins over the table's.
+		Document own = new Document((BSONObject) BasicDBObject.parse("{'name':'own'}"));
+		own.identifier(new Identifier(UUID.randomUUID()));
+		own.ttl(60);
+		expiring.upsert(own).get();
+		ttl = ttlOf(table, own);
+		assertTrue(ttl > 0 && ttl <= 60);
+
+		// Read back with the time it has left, which a patch keeps.
+		int left = expiring.read(own.identifier()).get().ttl();
+		assertTrue(left > 0 && left <= 60);
+		DocumentPatch.Result patched = expiring.patch(own.identifier(), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'name':'patched'}}")), null).get();
+		assertTrue(patched.after().ttl() > 0 && patched.after().ttl() <= 60);
+		ttl = ttlOf(table, own);
+		assertTrue(ttl > 0 && ttl <= 60);
+
+		// No TTL at all writes documents that never expire.
+		Document forever = new Document((BSONObject) BasicDBObject.parse("{'name':'forever'}"));
+		forever.identifier(new Identifier(UUID.randomUUID()));
+		uuidDocs.create(forever).get();
+		assertTrue(CassandraManager.session().execute("select ttl(object) from " + table + " where id = ?", forever.identifier().components().get(0)).one().isNull(0));
+
+		try
+		{
+			own.ttl(-1);
+			fail("Negative TTL accepted");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	private int ttlOf(String table, Document document)
+	{
+		return CassandraManager.session().execute("select ttl(object) from " + table + " where id = ?", document.identifier().components().get(0)).one().getInt(0);
+	}
+
+	@Test
+	public void shouldCacheDocuments()
+	throws Exception
+	{
+		AbstractDocumentRepository cached = new DocumentRepository(CassandraManager.session(), CassandraManager.keyspace(), uuidTable).prepareStatements().get();
+		DocumentCache cache = new DocumentCache(1024 * 1024);
+		cached.cache(cache);
+
+		Document doc = new Document((BSONObject) BasicDBObject.parse("{'name':'cached', 'nested':{'n':1}}"));
+		doc.identifier(new Identifier(UUID.randomUUID()));
+		cached.create(doc).get();
+		assertEquals(0, cache.entries());
+
+		// The first read fills the cache, the second is served from it.
+		assertEquals(doc.object().toMap(), cached.read(doc.identifier()).get().object().toMap());
+		assertEquals(1, cache.misses());
+		Document hit = cached.read(doc.identifier()).get();
+		assertEquals(1, cache.hits());
+		assertEquals(doc.object().toMap(), hit.object().toMap());
+		assertNotNull(hit.createdAt());
+		assertEquals(BasicDBObject.parse("{'nested':{'n':1}}").toMap(), cached.read(doc.identifier(), Projection.include("nested"), null).get().object().toMap());
+		assertEquals(2, cache.hits());
+
+		// Writes through the repository invalidate it.
+		Document updated = new Document((BSONObject) BasicDBObject.parse("{'name':'updated'}"));
+		updated.identifier(doc.identifier());
+		cached.update(updated).get();
+		assertEquals(0, cache.entries());
+		assertEquals(updated.object().toMap(), cached.read(doc.identifier()).get().object().toMap());
+		assertEquals(updated.object().toMap(), cached.read(doc.identifier()).get().object().toMap());
+
+		cached.delete(doc.identifier()).get();
+		assertEquals(0, cache.entries());
+
+		try
+		{
+			cached.read(doc.identifier()).get();
+			fail("Deleted document read from cache");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+
+		// A document written with its own TTL isn't cached.
+		Document expiring = new Document((BSONObject) BasicDBObject.parse("{'name':'expiring'}"));
+		expiring.identifier(new Identifier(UUID.randomUUID()));
+		expiring.ttl(3600);
+		cached.create(expiring).get();
+		assertEquals(expiring.object().toMap(), cached.read(expiring.identifier()).get().object().toMap());
+		assertEquals(0, cache.entries());
+	}
+
+	@Test
+	public void shouldReadRanges()
+	throws Exception
+	{
+		TableRepository tables = new TableRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
+		Table events = new Table();
+		events.name("events");
+		events.database("db1");
+		events.keys("(customer:uuid), -at:timestamp");
+		AbstractDocumentRepository eventDocs = new DocumentRepository(CassandraManager.session(), CassandraManager.keyspace(), tables.create(events).get()).prepareStatements().get();
+		UUID customer = UUID.randomUUID();
+		List<Document> all = new ArrayList<>();
+
+		for (int i = 1; i <= 10; i++)
+		{
+			Document doc = new Document((BSONObject) BasicDBObject.parse("{'n':" + i + "}"));
+			doc.identifier(new Identifier(customer, new Date(i * 1000L)));
+			all.add(doc);
+		}
+
+		eventDocs.createAll(all).get();
+		Identifier partition = new Identifier(customer);
+
+		// Latest first, in the clustering order.
+		assertEquals(Arrays.asList(10, 9, 8), ns(eventDocs.streamRange(new RangeQuery(partition).limit(3), 0, null).next().get()));
+		assertEquals(Arrays.asList(1, 2, 3), ns(eventDocs.streamRange(new RangeQuery(partition).order(Ordering.ASC).limit(3), 0, null).next().get()));
+		assertEquals(Arrays.asList(5, 4, 3), ns(eventDocs.streamRange(new RangeQuery(partition).from(new Date(3000L), true).to(new Date(6000L), false), 0, null).next().get()));
+		assertEquals(Arrays.asList(4, 5, 6), ns(eventDocs.streamRange(new RangeQuery(partition).from(new Date(3000L), false).to(new Date(6000L), true).order(Ordering.ASC), 0, null).next().get()));
+		assertEquals(Arrays.asList(7), ns(eventDocs.streamRange(new RangeQuery(partition).prefix(new Date(7000L)), 0, null).next().get()));
+
+		// Paged, and resumed from a paging state.
+		RangeQuery query = new RangeQuery(partition).limit(6);
+		ResultPage<Document> first = eventDocs.streamRange(query, 4, null).next().get();
+		assertEquals(Arrays.asList(10, 9, 8, 7), ns(first));
+		assertTrue(first.hasMore());
+		ResultPage<Document> second = eventDocs.streamRange(query, 4, first.pagingState()).next().get();
+		assertEquals(Arrays.asList(6, 5), ns(second));
+		assertFalse(second.hasMore());
+
+		try
+		{
+			eventDocs.streamRange(new RangeQuery(partition).prefix(new Date(7000L)).from(new Date(1000L), true), 0, null).next().get();
+			fail("Bounded a column past the clustering key");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	private List<Integer> ns(ResultPage<Document> page)
+	{
+		List<Integer> ns = new ArrayList<>();
+
+		for (Document document : page.items())
+		{
+			ns.add((Integer) document.object().get("n"));
+		}
+
+		return ns;
+	}
+
+	@Test
+	public void shouldQueryDocuments()
+	throws Exception
+	{
+		TableRepository tables = new TableRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
+		Table orders = new Table();
+		orders.name("orders");
+		orders.database("db1");
+		orders.keys("(customer:uuid), -at:timestamp");
+		AbstractDocumentRepository orderDocs = new DocumentRepository(CassandraManager.session(), CassandraManager.keyspace(), tables.create(orders).get()).prepareStatements().get();
+		UUID customer = UUID.randomUUID();
+		UUID other = UUID.randomUUID();
+		List<Document> all = new ArrayList<>();
+
+		for (int i = 1; i <= 10; i++)
+		{
+			String status = (i % 3 == 0 ? "held" : (i % 2 == 0 ? "open" : "closed"));
+			UUID owner = (i <= 8 ? customer : other);
+			// The key fields are also in the object, as strings, as a client would send them.
+			Document doc = new Document((BSONObject) BasicDBObject.parse("{'customer':'" + owner + "', 'at':'1970-01-01T00:00:" + String.format("%02d", i) + "Z', 'n':" + i + ", 'status':'" + status + "', 'total':" + (i * 10) + (i == 4 ? ", 'tags':['rush', 'gift']" : "") + "}"));
+			doc.identifier(new Identifier(owner, new Date(i * 1000L)));
+			all.add(doc);
+		}
+
+		orderDocs.createAll(all).get();
+
+		// The partition and time bounds are pushed down; status is filtered.
+		DocumentQuery query = DocumentQuery.parse(parse("{'customer':'" + customer + "', 'at':{'$gte':'1970-01-01T00:00:02Z', '$lt':'1970-01-01T00:00:08Z'}, 'status':'open'}"));
+		assertEquals(Arrays.asList(4, 2), ns(orderDocs.streamQuery(query, 0, null).next().get()));
+		query = DocumentQuery.parse(parse("{'customer':'" + customer + "', 'status':{'$ne':'closed'}}")).order(Ordering.ASC).limit(3);
+		assertEquals(Arrays.asList(2, 3, 4), ns(orderDocs.streamQuery(query, 0, null).next().get()));
+		query = DocumentQuery.parse(parse("{'customer':'" + customer + "', 'at':'1970-01-01T00:00:05Z'}"));
+		assertEquals(Arrays.asList(5), ns(orderDocs.streamQuery(query, 0, null).next().get()));
+
+		// No partition: a filtered scan.
+		query = DocumentQuery.parse(parse("{'$or':[{'total':{'$gt':85}}, {'tags':'rush'}]}"));
+		assertEquals(Arrays.asList(4, 9, 10), sorted(ns(orderDocs.streamQuery(query, 0, null).next().get())));
+		query = DocumentQuery.parse(parse("{'status':{'$in':['held']}, 'tags':{'$exists':false}, 'customer':'" + other + "'}"));
+		assertEquals(Arrays.asList(9), ns(orderDocs.streamQuery(query, 0, null).next().get()));
+		query = DocumentQuery.parse(parse("{'status':{'$nin':['open', 'held']}}")).limit(2);
+		assertEquals(2, orderDocs.streamQuery(query, 0, null).next().get().size());
+
+		// Key conditions that aren't pushed down compare the typed key, not the object's string field.
+		query = DocumentQuery.parse(parse("{'customer':{'$in':['" + other + "']}}"));
+		assertEquals(Arrays.asList(9, 10), sorted(ns(orderDocs.streamQuery(query, 0, null).next().get())));
+		query = DocumentQuery.parse(parse("{'customer':{'$ne':'" + customer + "'}}"));
+		assertEquals(Arrays.asList(9, 10), sorted(ns(orderDocs.streamQuery(query, 0, null).next().get())));
+		query = DocumentQuery.parse(parse("{'at':{'$gte':'1970-01-01T00:00:09Z'}}"));
+		assertEquals(Arrays.asList(9, 10), sorted(ns(orderDocs.streamQuery(query, 0, null).next().get())));
+
+		// Small underlying pages: skipped when nothing matches, resumed from the paging state.
+		query = DocumentQuery.parse(parse("{'customer':'" + customer + "', 'status':'held'}"));
+		FilteredStream<Document> stream = orderDocs.streamQuery(query, 2, null);
+		ResultPage<Document> first = stream.next().get();
+		assertEquals(Arrays.asList(6), ns(first));
+		assertTrue(first.hasMore());
+		assertEquals(Arrays.asList(3), ns(orderDocs.streamQuery(query, 2, first.pagingState()).next().get()));
+
+		try
+		{
+			orderDocs.streamQuery(DocumentQuery.parse(parse("{'status':'open'}")).order(Ordering.ASC), 0, null).next().get();
+			fail("Ordered a scan");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+
+		try
+		{
+			DocumentQuery.parse(parse("{'status':{'$like':'o%'}}"));
+			fail("Parsed an unknown operator");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void shouldAggregateDocuments()
+	throws Exception
+	{
+		TableRepository tables = new TableRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
+		Table ledger = new Table();
+		ledger.name("ledger");
+		ledger.database("db1");
+		ledger.keys("(customer:uuid), -at:timestamp");
+		AbstractDocumentRepository ledgerDocs = new DocumentRepository(CassandraManager.session(), CassandraManager.keyspace(), tables.create(ledger).get()).prepareStatements().get();
+		UUID customer = UUID.randomUUID();
+		UUID other = UUID.randomUUID();
+		List<Document> all = new ArrayList<>();
+
+		for (int i = 1; i <= 10; i++)
+		{
+			UUID owner = (i <= 8 ? customer : other);
+			Document doc = new Document(parse("{'customer':'" + owner + "', 'status':'" + (i % 2 == 0 ? "open" : "closed") + "', 'total':" + (i * 10) + "}"));
+			doc.identifier(new Identifier(owner, new Date(i * 1000L)));
+			all.add(doc);
+		}
+
+		ledgerDocs.createAll(all).get();
+		DocumentQuery byCustomer = DocumentQuery.parse(parse("{'customer':'" + customer + "'}"));
+
+		// Key columns only: computed by Cassandra.
+		List<BSONObject> results = ledgerDocs.aggregate(new Aggregation(byCustomer).count("n").min("first", "at").max("last", "at")).get();
+		assertEquals(1, results.size());
+		assertEquals(8L, results.get(0).get("n"));
+		assertEquals(new Date(1000L), results.get(0).get("first"));
+		assertEquals(new Date(8000L), results.get(0).get("last"));
+
+		results = ledgerDocs.aggregate(new Aggregation(null).groupBy("customer").count("n")).get();
+		assertEquals(2, results.size());
+
+		for (BSONObject result : results)
+		{
+			assertEquals((customer.equals(result.get("customer")) ? 8L : 2L), result.get("n"));
+		}
+
+		// Document fields: computed as the documents are read.
+		results = ledgerDocs.aggregate(new Aggregation(byCustomer).groupBy("status").count("n").sum("sum", "total").max("max", "total")).get();
+		assertEquals(2, results.size());
+
+		for (BSONObject result : results)
+		{
+			boolean isOpen = "open".equals(result.get("status"));
+			assertEquals(4L, result.get("n"));
+			assertEquals((isOpen ? 200L : 160L), result.get("sum"));
+			assertEquals((isOpen ? 80 : 70), result.get("max"));
+		}
+
+		// Grouped by a key column as the documents are read, the group is the typed key, as when pushed down.
+		results = ledgerDocs.aggregate(new Aggregation(null).groupBy("customer").sum("sum", "total")).get();
+		assertEquals(2, results.size());
+
+		for (BSONObject result : results)
+		{
+			assertEquals((customer.equals(result.get("customer")) ? 360L : 190L), result.get("sum"));
+		}
+
+		results = ledgerDocs.aggregate(new Aggregation(DocumentQuery.parse(parse("{'status':'held'}"))).count("n").sum("sum", "total").min("min", "total")).get();
+		assertEquals(1, results.size());
+		assertEquals(0L, results.get(0).get("n"));
+		assertEquals(0L, results.get(0).get("sum"));
+		assertNull(results.get(0).get("min"));
+	}
+
+	private BSONObject parse(String json)
+	{
+		return (BSONObject) BasicDBObject.parse(json);
+	}
+
+	private List<Integer> sorted(List<Integer> ns)
+	{
+		Collections.sort(ns);
+		return ns;
+	}
+
+	@Test
+	public void shouldCreateAndUpsertAll()
+	throws Exception
+	{
+		List<Document> docs = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++)
+		{
+			Document doc = new Document(BSON);
+			doc.identifier(new Identifier(UUID.randomUUID()));
+			docs.add(doc);
+		}
+
+		List<Document> created = uuidDocs.createAll(docs).get();
+		assertEquals(docs, created);
+		assertEquals(docs.get(7), uuidDocs.read(docs.get(7).identifier()).get());
+
+		// Creating an existing document fails; upserting it succeeds.
+		try
+		{
+			uuidDocs.createAll(Arrays.asList(docs.get(3))).get();
+			fail("Expected DuplicateItemException");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof DuplicateItemException);
+		}
+
+		List<Document> upserted = uuidDocs.upsertAll(docs).get();
+		assertEquals(10, upserted.size());
+		assertTrue(uuidDocs.exists(docs.get(3).identifier()).get());
+	}
+
 	@Test
 	public void shouldCRUDUUIDsSynchronously()
 	throws Exception
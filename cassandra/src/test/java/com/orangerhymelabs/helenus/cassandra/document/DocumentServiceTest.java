@@ -24,7 +24,11 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
@@ -45,11 +49,15 @@ import com.orangerhymelabs.helenus.cassandra.TestCallback;
 import com.orangerhymelabs.helenus.cassandra.database.Database;
 import com.orangerhymelabs.helenus.cassandra.database.DatabaseRepository;
 import com.orangerhymelabs.helenus.cassandra.database.DatabaseService;
+import com.orangerhymelabs.helenus.cassandra.geo.GeoQuery;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.TableRepository;
 import com.orangerhymelabs.helenus.cassandra.table.TableService;
+import com.orangerhymelabs.helenus.cassandra.search.SearchQuery;
+import com.orangerhymelabs.helenus.cassandra.view.View;
 import com.orangerhymelabs.helenus.cassandra.view.ViewRepository;
 import com.orangerhymelabs.helenus.cassandra.view.ViewService;
+import com.orangerhymelabs.helenus.cassandra.view.ViewType;
 import com.orangerhymelabs.helenus.exception.DuplicateItemException;
 import com.orangerhymelabs.helenus.exception.InvalidIdentifierException;
 import com.orangerhymelabs.helenus.exception.ItemNotFoundException;
@@ -63,11 +71,16 @@ public class DocumentServiceTest
 {
 	private static final String DATES_TABLE = "dates";
 	private static final String UUIDS_TABLE = "uuids";
+	private static final String ARTICLES_TABLE = "articles";
+	private static final String PLACES_TABLE = "places";
+	private static final String EVENTS_TABLE = "events";
 	private static final String DB_NAME = "db3";
 	private static final int CALLBACK_TIMEOUT = 2000;
 	private static final BSONObject BSON = (BSONObject) BasicDBObject.parse("{'a':'some', 'b':1, 'c':'excitement'}");
 
 	private static DocumentService allDocs;
+	private static TableService tables;
+	private static ViewService views;
 
 	@BeforeClass
 	public static void beforeClass()
@@ -78,8 +91,8 @@ public class DocumentServiceTest
 		
 		DatabaseRepository dbr = new DatabaseRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace());
 		DatabaseService dbs = new DatabaseService(dbr);
-		TableService tables = new TableService(dbs, new TableRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace()));
-		ViewService views = new ViewService(new ViewRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace()), tables);
+		tables = new TableService(dbs, new TableRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace()));
+		views = new ViewService(new ViewRepository(CassandraManager.cluster().connect(CassandraManager.keyspace()), CassandraManager.keyspace()), tables);
 
 		Database db = new Database();
 		db.name(DB_NAME);
@@ -631,6 +644,255 @@ public class DocumentServiceTest
 		assertTrue(callback.throwable() instanceof InvalidIdentifierException);
 	}
 
+	@Test
+	public void shouldSearchDocuments()
+	throws Exception
+	{
+		Table articles = new Table();
+		articles.name(ARTICLES_TABLE);
+		articles.database(DB_NAME);
+		articles.keys("id:int");
+		articles.description("a test table with a search view");
+		articles = tables.create(articles).get();
+
+		View search = new View();
+		search.name("text");
+		search.table(articles);
+		search.type(ViewType.SEARCH);
+		search.fields("title, body, tags");
+		views.create(search).get();
+
+		String[][] texts = {
+			{"Cassandra data modeling", "Partition keys and clustering columns", "nosql"},
+			{"Search with Lucene", "Inverted indexes for full-text search", "search"},
+			{"Cassandra search", "Secondary indexes versus inverted index tables", "nosql"},
+			{"Ada Lovelace", "The first programmer", "history"},
+			{"Café culture", "Résumé of the season", "travel"}
+		};
+
+		List<Document> docs = new ArrayList<>();
+
+		for (int i = 0; i < texts.length; i++)
+		{
+			Document doc = new Document((BSONObject) BasicDBObject.parse("{'title':'" + texts[i][0] + "', 'body':'" + texts[i][1] + "', 'tags':['" + texts[i][2] + "']}"));
+			doc.identifier(new Identifier(i));
+			docs.add(doc);
+		}
+
+		allDocs.create(DB_NAME, ARTICLES_TABLE, docs.get(0)).get();
+		allDocs.createAll(DB_NAME, ARTICLES_TABLE, docs.subList(1, docs.size())).get();
+
+		assertEquals(Arrays.asList(2), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("cassandra search")).get()));
+		assertEquals(Arrays.asList(0, 2), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("NoSQL")).get()));
+		assertEquals(Arrays.asList(1, 2, 3), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("invert* OR programmer")).get()));
+		assertEquals(Arrays.asList(0, 1, 2), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("cassandra OR search lucene OR partition")).get()));
+		assertEquals(Arrays.asList(4), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("cafe resume")).get()));
+		assertEquals(Arrays.asList(0), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("cass*").limit(1)).get()));
+		assertTrue(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("scylla")).get().isEmpty());
+
+		// Patching re-indexes the changed fields.
+		allDocs.patch(DB_NAME, ARTICLES_TABLE, new Identifier(3), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'title':'Scylla and Cassandra'}}"))).get();
+		assertEquals(Arrays.asList(3), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("scylla")).get()));
+		assertTrue(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("lovelace")).get().isEmpty());
+		assertEquals(Arrays.asList(0, 2, 3), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("cassandra")).get()));
+
+		// Upserting indexes the new terms; the old ones' stale postings are filtered out.
+		Document replaced = new Document((BSONObject) BasicDBObject.parse("{'title':'Grace Hopper', 'body':'Compilers', 'tags':['history']}"));
+		replaced.identifier(new Identifier(3));
+		allDocs.upsert(DB_NAME, ARTICLES_TABLE, replaced).get();
+		assertEquals(Arrays.asList(3), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("hopper")).get()));
+		assertEquals(Arrays.asList(0, 2), ids(allDocs.search(DB_NAME, ARTICLES_TABLE, "text", SearchQuery.parse("cassandra")).get()));
+
+		try
+		{
+			allDocs.search(DB_NAME, ARTICLES_TABLE, "missing", SearchQuery.parse("cassandra")).get();
+			fail("Searched a missing view");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+	}
+
+	@Test
+	public void shouldLocateDocuments()
+	throws Exception
+	{
+		Table places = new Table();
+		places.name(PLACES_TABLE);
+		places.database(DB_NAME);
+		places.keys("id:int");
+		places.description("a test table with a geospatial view");
+		places = tables.create(places).get();
+
+		View geo = new View();
+		geo.name("nearby");
+		geo.table(places);
+		geo.type(ViewType.GEO);
+		geo.fields("location.lat, location.lon");
+		views.create(geo).get();
+
+		double[][] locations = {
+			{39.7392, -104.9903},	// 0: Denver
+			{40.0150, -105.2705},	// 1: Boulder, ~39km from Denver
+			{39.7555, -105.2211},	// 2: Golden, ~20km
+			{38.8339, -104.8214},	// 3: Colorado Springs, ~100km
+			{-16.4330, 179.3640},	// 4: Labasa, west of the antimeridian
+			{-16.9000, -179.9000}	// 5: east of it
+		};
+
+		List<Document> docs = new ArrayList<>();
+
+		for (int i = 0; i < locations.length; i++)
+		{
+			Document doc = new Document((BSONObject) BasicDBObject.parse("{'name':'place" + i + "', 'location':{'lat':" + locations[i][0] + ", 'lon':" + locations[i][1] + "}}"));
+			doc.identifier(new Identifier(i));
+			docs.add(doc);
+		}
+
+		// No location, so not in the view.
+		Document nowhere = new Document((BSONObject) BasicDBObject.parse("{'name':'nowhere'}"));
+		nowhere.identifier(new Identifier(99));
+		docs.add(nowhere);
+
+		allDocs.create(DB_NAME, PLACES_TABLE, docs.get(0)).get();
+		allDocs.createAll(DB_NAME, PLACES_TABLE, docs.subList(1, docs.size())).get();
+
+		assertEquals(Arrays.asList("place0"), names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.radius(39.7392, -104.9903, 500)).get()));
+		assertEquals(Arrays.asList("place0", "place2"), names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.radius(39.7392, -104.9903, 30000)).get()));
+		assertEquals(Arrays.asList("place0", "place2", "place1"), names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.radius(39.7392, -104.9903, 50000)).get()));
+		assertEquals(Arrays.asList("place2", "place0"), names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.radius(39.7555, -105.2211, 150000).limit(2)).get()));
+		assertEquals(Arrays.asList("place1", "place2"), sorted(names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.box(39.75, -105.5, 40.5, -105.1)).get())));
+		assertEquals(Arrays.asList("place4", "place5"), sorted(names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.box(-17.5, 179.0, -16.0, -179.5)).get())));
+
+		// Patching the location moves the document.
+		allDocs.patch(DB_NAME, PLACES_TABLE, new Identifier(3), DocumentPatch.from((BSONObject) BasicDBObject.parse("{'$set':{'location.lat':39.7400, 'location.lon':-104.9900}}"))).get();
+		assertEquals(Arrays.asList("place0", "place3"), names(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.radius(39.7392, -104.9903, 500)).get()));
+		assertTrue(allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.radius(38.8339, -104.8214, 10000)).get().isEmpty());
+
+		try
+		{
+			allDocs.locate(DB_NAME, PLACES_TABLE, "nearby", GeoQuery.box(-60, -180, 60, 180)).get();
+			fail("Located documents across too many partitions");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	@Test
+	public void shouldWriteViewsConcurrently()
+	throws Exception
+	{
+		Table events = new Table();
+		events.name(EVENTS_TABLE);
+		events.database(DB_NAME);
+		events.keys("id:int");
+		events.description("a test table with two views");
+		events = tables.create(events).get();
+
+		View byKind = new View();
+		byKind.name("byKind");
+		byKind.table(events);
+		byKind.keys("(kind:text), n:int");
+		views.create(byKind).get();
+
+		View byUser = new View();
+		byUser.name("byUser");
+		byUser.table(events);
+		byUser.keys("user:text");
+		views.create(byUser).get();
+
+		Document doc = new Document((BSONObject) BasicDBObject.parse("{'kind':'click', 'n':1, 'user':'ann'}"));
+		doc.identifier(new Identifier(1));
+		allDocs.create(DB_NAME, EVENTS_TABLE, doc).get();
+
+		assertNotNull(allDocs.read(DB_NAME, EVENTS_TABLE, "byKind", new Identifier("click", 1)).get());
+		assertNotNull(allDocs.read(DB_NAME, EVENTS_TABLE, "byUser", new Identifier("ann")).get());
+
+		try
+		{
+			allDocs.read(DB_NAME, EVENTS_TABLE, "missing", new Identifier("ann")).get();
+			fail("Read via a missing view");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+
+		assertEquals(1L, allDocs.viewMetrics().writes(byKind));
+		assertEquals(0L, allDocs.viewMetrics().failures(byKind));
+		assertEquals(1L, allDocs.viewMetrics().latencies(byKind).getCount());
+		assertEquals(1L, allDocs.viewMetrics().writes(byUser));
+
+		// A view write fails (n isn't an int): the create fails once every view write completes, but the
+		// table and other view are written.
+		Document bad = new Document((BSONObject) BasicDBObject.parse("{'kind':'click', 'n':'two', 'user':'bob'}"));
+		bad.identifier(new Identifier(2));
+
+		try
+		{
+			allDocs.create(DB_NAME, EVENTS_TABLE, bad).get();
+			fail("View write failure not returned");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof ViewWriteException);
+			assertEquals(new Identifier(2), ((Document) ((ViewWriteException) e.getCause()).written()).identifier());
+		}
+
+		assertNotNull(allDocs.read(DB_NAME, EVENTS_TABLE, new Identifier(2)).get());
+		assertNotNull(allDocs.read(DB_NAME, EVENTS_TABLE, "byUser", new Identifier("bob")).get());
+		assertEquals(1L, allDocs.viewMetrics().failures(byKind));
+		assertEquals(0L, allDocs.viewMetrics().failures(byUser));
+
+		// Acknowledged once the table is written, so the view failure isn't returned.
+		allDocs.viewAck(ViewAck.TABLE);
+
+		try
+		{
+			bad.identifier(new Identifier(3));
+			assertEquals(new Identifier(3), allDocs.create(DB_NAME, EVENTS_TABLE, bad).get().identifier());
+		}
+		finally
+		{
+			allDocs.viewAck(ViewAck.VIEWS);
+		}
+
+		assertNotNull(allDocs.read(DB_NAME, EVENTS_TABLE, new Identifier(3)).get());
+	}
+
+	private List<String> names(List<Document> documents)
+	{
+		List<String> names = new ArrayList<>(documents.size());
+
+		for (Document document : documents)
+		{
+			names.add((String) document.object().get("name"));
+		}
+
+		return names;
+	}
+
+	private List<String> sorted(List<String> names)
+	{
+		Collections.sort(names);
+		return names;
+	}
+
+	private List<Object> ids(List<Document> documents)
+	{
+		List<Object> ids = new ArrayList<>(documents.size());
+
+		for (Document document : documents)
+		{
+			ids.add(document.identifier().components().get(0));
+		}
+
+		return ids;
+	}
+
 	private void waitFor(TestCallback<?> callback)
 	throws InterruptedException
     {
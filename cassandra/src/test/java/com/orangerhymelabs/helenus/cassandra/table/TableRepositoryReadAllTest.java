@@ -34,6 +34,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.orangerhymelabs.helenus.cassandra.CassandraManager;
 import com.orangerhymelabs.helenus.cassandra.KeyspaceSchema;
+import com.orangerhymelabs.helenus.cassandra.ResultPage;
 import com.orangerhymelabs.helenus.cassandra.TestCallback;
 import com.orangerhymelabs.helenus.cassandra.table.Table;
 import com.orangerhymelabs.helenus.cassandra.table.TableRepository;
@@ -75,6 +76,7 @@ public class TableRepositoryReadAllTest
 		populateDatabase();
 		shouldReturnListSynchronously();
 		shouldReturnListAsynchronously();
+		shouldStreamPages();
 	}
 
 	private void shouldReturnEmptyListSynchronously()
@@ -136,6 +138,20 @@ public class TableRepositoryReadAllTest
 		assertEquals(4, entities.size());
     }
 
+	private void shouldStreamPages()
+	throws InterruptedException, ExecutionException
+	{
+		ResultPage<Table> first = tables.streamAll(3, null, "database1").next().get();
+		assertEquals(3, first.size());
+		assertTrue(first.hasMore());
+
+		ResultPage<Table> second = tables.streamAll(3, first.pagingState(), "database1").next().get();
+		assertEquals(1, second.size());
+		assertFalse(second.hasMore());
+
+		assertEquals(4L, tables.streamAll(3, null, "database1").forEach(t -> assertNotNull(t.name())).get().longValue());
+	}
+
 	private void waitFor(TestCallback<List<Table>> callback)
 	throws InterruptedException
     {
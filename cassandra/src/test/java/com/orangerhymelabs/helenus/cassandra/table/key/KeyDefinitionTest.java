@@ -101,6 +101,18 @@ public class KeyDefinitionTest
 		assertEquals(3.14159, components.get(1));
 	}
 
+	@Test
+	public void shouldReturnPartitionIdentifier()
+	throws KeyDefinitionException
+	{
+		KeyDefinition kd = new KeyDefinition();
+		kd.addPartitionKey(new KeyComponent("alpha", DataTypes.TEXT))
+			.addPartitionKey(new KeyComponent("beta", DataTypes.INTEGER))
+			.addClusteringKey(new ClusteringKeyComponent("chi", DataTypes.TEXT, Ordering.ASC));
+		Identifier partition = kd.partitionIdentifier(kd.identifier(BSON));
+		assertEquals(new Identifier("some", 1), partition);
+	}
+
 	@Test(expected=KeyDefinitionException.class)
 	public void shouldThrowWithMissingClusteringProperty()
 	throws KeyDefinitionException
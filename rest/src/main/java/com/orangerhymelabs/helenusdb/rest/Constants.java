@@ -12,6 +12,8 @@ public class Constants
 		public static final String INDEX = "index";
 		public static final String DOCUMENT_ID = "documentId";
 		public static final String QUERY_ID = "queryId";
+		public static final String FIELDS = "fields";
+		public static final String TTL = "ttl";
 	}
 
 	/**
@@ -3,6 +3,7 @@ package com.orangerhymelabs.helenusdb.rest;
 import static io.netty.handler.codec.http.HttpMethod.DELETE;
 import static io.netty.handler.codec.http.HttpMethod.GET;
 import static io.netty.handler.codec.http.HttpMethod.OPTIONS;
+import static io.netty.handler.codec.http.HttpMethod.PATCH;
 import static io.netty.handler.codec.http.HttpMethod.POST;
 import static io.netty.handler.codec.http.HttpMethod.PUT;
 
@@ -37,7 +38,7 @@ public abstract class Routes
                 .name(Constants.Routes.DOCUMENTS);
 
         server.uri("/{database}/{table}/{documentId}", config.getDocumentController())
-                .method(GET, PUT, DELETE)
+                .method(GET, PUT, PATCH, DELETE)
                 .name(Constants.Routes.DOCUMENT);
     }
 }
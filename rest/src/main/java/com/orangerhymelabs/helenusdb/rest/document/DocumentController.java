@@ -7,7 +7,9 @@ import org.restexpress.Response;
 import org.restexpress.exception.BadRequestException;
 
 import com.orangerhymelabs.helenus.cassandra.document.Document;
+import com.orangerhymelabs.helenus.cassandra.document.DocumentPatch;
 import com.orangerhymelabs.helenus.cassandra.document.DocumentService;
+import com.orangerhymelabs.helenus.cassandra.document.Projection;
 import com.orangerhymelabs.helenus.persistence.Identifier;
 import com.orangerhymelabs.helenusdb.rest.Constants;
 import com.strategicgains.hyperexpress.HyperExpress;
@@ -40,7 +42,9 @@ public class DocumentController
 			throw new BadRequestException("No document data provided");
 		}
 
-		Document saved = documents.create(database, table, new Document(BSON.decode(data.getBytes())));
+		Document document = new Document(BSON.decode(data.getBytes()));
+		document.ttl(ttl(request));
+		Document saved = documents.create(database, table, document);
 
 		// Construct the response for create...
 		response.setResponseCreated();
@@ -67,8 +71,20 @@ public class DocumentController
 		    "No table provided");
 		String id = request.getHeader(Constants.Url.DOCUMENT_ID,
 		    "No document ID supplied");
+		Projection projection;
+
+		try
+		{
+			// e.g. ?fields=name,address.city or ?fields=-history
+			projection = Projection.parse(request.getHeader(Constants.Url.FIELDS));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new BadRequestException(e.getMessage());
+		}
+
 		Document document = documents.read(database, table,
-		    new Identifier(database, table, id));
+		    new Identifier(database, table, id), projection);
 
 		// enrich the entity with links, etc. here...
 		HyperExpress.bind(Constants.Url.DOCUMENT_ID, document.id().toString());
@@ -113,10 +129,68 @@ public class DocumentController
 		Document document = new Document();
 		document.id(id);
 		document.object(BSON.decode(data.getBytes()));
+		document.ttl(ttl(request));
 		documents.update(database, table, document);
 		response.setResponseNoContent();
 	}
 
+	/**
+	 * Apply a partial update, either operator-style ({"$set": {...}, "$unset": {...}, "$inc": {...}})
+	 * or a JSON Merge Patch, without rewriting the whole document from the client.
+	 */
+	public void patch(Request request, Response response)
+	{
+		String database = request.getHeader(Constants.Url.DATABASE,
+		    "No database provided");
+		String table = request.getHeader(Constants.Url.TABLE,
+		    "No table provided");
+		String id = request.getHeader(Constants.Url.DOCUMENT_ID,
+		    "No document ID supplied");
+		String data = request.getBody().toString(ContentType.CHARSET);
+
+		if (data == null || data.isEmpty())
+		{
+			throw new BadRequestException("No patch provided");
+		}
+
+		DocumentPatch patch;
+
+		try
+		{
+			patch = DocumentPatch.from(BSON.decode(data.getBytes()));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new BadRequestException(e.getMessage());
+		}
+
+		documents.patch(database, table, new Identifier(database, table, id), patch);
+		response.setResponseNoContent();
+	}
+
+	/**
+	 * Returns the document's TTL in seconds (e.g. ?ttl=86400), or zero to use the table's.
+	 */
+	private int ttl(Request request)
+	{
+		String ttl = request.getHeader(Constants.Url.TTL);
+
+		if (ttl == null || ttl.isEmpty()) return 0;
+
+		try
+		{
+			int seconds = Integer.parseInt(ttl);
+
+			if (seconds >= 0) return seconds;
+		}
+		catch (NumberFormatException e)
+		{
+			// fall through
+		}
+
+		throw new BadRequestException("Invalid TTL: " + ttl);
+	}
+
 	public void delete(Request request, Response response)
 	{
 		String database = request.getHeader(Constants.Url.DATABASE,